@@ -20,12 +20,9 @@ package ubic.basecode.dataStructure.matrix;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author pavlidis
@@ -34,26 +31,29 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
 
     protected static final int MAX_ROWS_TO_PRINT = 100;
 
-    private static final long serialVersionUID = 1L;
-    private Map<C, Integer> colMap;
-    private List<C> colNames;
-    private int lastColumnIndex = 0;
+    /*
+     * 2: names are kept in NameIndex instances rather than a map and a list.
+     */
+    private static final long serialVersionUID = 2L;
 
-    private int lastRowIndex = 0;
-    private Map<R, Integer> rowMap; // contains a map of each row and elements in the row
+    /*
+     * Name indexes may be shared with other matrices (copies, transposes etc.); see mutableColIndex().
+     */
+    private NameIndex<C> colIndex;
 
-    private List<R> rowNames;
+    private transient List<C> colNames;
+
+    private NameIndex<R> rowIndex;
+
+    private transient List<R> rowNames;
 
     /**
      *
      *
      */
     public AbstractMatrix() {
-        rowMap = new LinkedHashMap<>(); // contains a map of each row name to index
-        // of the row.
-        colMap = new LinkedHashMap<>();
-        rowNames = new ArrayList<>();
-        colNames = new ArrayList<>();
+        rowIndex = new NameIndex<>( 0 );
+        colIndex = new NameIndex<>( 0 );
     }
 
     /**
@@ -69,13 +69,11 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
             throw new IllegalArgumentException( "Column name cannot be null" );
         }
 
-        if ( colMap.containsKey( s ) ) {
+        if ( colIndex.contains( s ) ) {
             throw new IllegalArgumentException( "Duplicate column name " + s );
         }
 
-        this.colNames.add( s );
-        this.colMap.put( s, lastColumnIndex );
-        lastColumnIndex++;
+        mutableColIndex().add( s );
 
     }
 
@@ -90,13 +88,11 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
         if ( s == null ) {
             throw new IllegalArgumentException( "Row name cannot be null" );
         }
-        if ( rowMap.containsKey( s ) ) {
+        if ( rowIndex.contains( s ) ) {
             throw new IllegalArgumentException( "Duplicate row name " + s );
         }
 
-        this.rowNames.add( s );
-        this.rowMap.put( s, lastRowIndex );
-        lastRowIndex++;
+        mutableRowIndex().add( s );
     }
 
     /*
@@ -163,7 +159,7 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
 
     @Override
     public final boolean containsColumnName( C columnName ) {
-        return colMap.containsKey( columnName );
+        return colIndex.contains( columnName );
     }
 
     @Override
@@ -177,9 +173,9 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
      */
     @Override
     public final int getColIndexByName( C columnKey ) {
-        Integer c = colMap.get( columnKey );
-        if ( c == null ) throw new IllegalArgumentException( "'" + columnKey + "' not found" );
-        return c.intValue();
+        int c = colIndex.indexOf( columnKey );
+        if ( c < 0 ) throw new IllegalArgumentException( "'" + columnKey + "' not found" );
+        return c;
     }
 
     /**
@@ -188,8 +184,17 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
      */
     @Override
     public final C getColName( int i ) {
-        if ( !this.hasColNames() || this.colNames.size() < i + 1 ) return null;
-        return colNames.get( i );
+        if ( !this.hasColNames() || this.colIndex.size() < i + 1 ) return null;
+        return colIndex.get( i );
+    }
+
+    /**
+     * @return the index of column names. It is immutable, and can be passed to setColumnNameIndex() of another matrix
+     *         with the same columns, so the two share it. This freezes the index of this matrix too, so a later change
+     *         to its column names first makes a private copy of the index.
+     */
+    public final NameIndex<C> getColNameIndex() {
+        return colIndex.freeze();
     }
 
     /*
@@ -199,6 +204,14 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
      */
     @Override
     public final List<C> getColNames() {
+        if ( colNames == null ) {
+            colNames = new NameIndex.View<C>() {
+                @Override
+                NameIndex<C> index() {
+                    return colIndex;
+                }
+            };
+        }
         return colNames;
     }
 
@@ -208,9 +221,9 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
      */
     @Override
     public final int getRowIndexByName( R s ) {
-        Integer r = rowMap.get( s );
-        if ( r == null ) throw new IllegalArgumentException( s + " not found" );
-        return r.intValue();
+        int r = rowIndex.indexOf( s );
+        if ( r < 0 ) throw new IllegalArgumentException( s + " not found" );
+        return r;
     }
 
     /**
@@ -220,22 +233,39 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
     @Override
     public final R getRowName( int i ) {
         if ( !this.hasRowNames() ) return null;
-        return rowNames.get( i );
+        return getRowNames().get( i );
+    }
+
+    /**
+     * @return the index of row names. It is immutable, and can be passed to setRowNameIndex() of another matrix with
+     *         the same rows, so the two share it. This freezes the index of this matrix too, so a later change to its
+     *         row names first makes a private copy of the index.
+     */
+    public final NameIndex<R> getRowNameIndex() {
+        return rowIndex.freeze();
     }
 
     @Override
     public final Iterator<R> getRowNameMapIterator() {
-        return this.rowMap.keySet().iterator();
+        return this.getRowNames().iterator();
     }
 
     @Override
     public final List<R> getRowNames() {
+        if ( rowNames == null ) {
+            rowNames = new NameIndex.View<R>() {
+                @Override
+                NameIndex<R> index() {
+                    return rowIndex;
+                }
+            };
+        }
         return rowNames;
     }
 
     @Override
     public final boolean hasColNames() {
-        return colNames.size() > 0;
+        return colIndex.size() > 0;
     }
 
     /**
@@ -258,12 +288,12 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
 
     @Override
     public final boolean hasRow( R r ) {
-        return this.rowMap.containsKey( r );
+        return this.rowIndex.contains( r );
     }
 
     @Override
     public final boolean hasRowNames() {
-        return rowNames.size() > 0;
+        return rowIndex.size() > 0;
     }
 
     /*
@@ -293,23 +323,36 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
             throw new IllegalArgumentException( "Column name cannot be null" );
         }
 
-        if ( colMap.containsKey( s ) ) {
+        if ( colIndex.contains( s ) ) {
             throw new IllegalArgumentException( "Duplicate column name " + s );
         }
 
-        if ( this.colNames.size() > i ) {
-            this.colNames.set( i, s );
-        } else {
-            this.colNames.add( s );
-        }
+        mutableColIndex().set( i, s );
+    }
 
-        this.colMap.put( s, i );
+    /**
+     * Use the given column names, sharing the index rather than copying it.
+     *
+     * @param index of column names; an empty index clears the column names.
+     */
+    public final void setColumnNameIndex( NameIndex<C> index ) {
+        if ( index.size() > 0 && index.size() != this.columns() ) {
+            throw new IllegalArgumentException( "Cannot add " + index.size() + " column names to a matrix with "
+                    + this.columns() + " columns" );
+        }
+        this.colIndex = index.freeze();
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public void setColumnNames( List<C> v ) {
-        this.colNames.clear();
-        this.colMap.clear();
+        if ( v instanceof NameIndex.View ) {
+            // names from another matrix: share them.
+            this.colIndex = ( ( NameIndex.View<C> ) v ).index().freeze();
+            return;
+        }
+
+        this.colIndex = new NameIndex<>( v.size() );
 
         for ( int i = 0; i < v.size(); i++ ) {
             setColumnName( v.get( i ), i );
@@ -330,20 +373,41 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
             throw new IllegalArgumentException( "Duplicate row name " + s );
         }
 
-        this.rowNames.add( s );
-        this.rowMap.put( s, i );
+        mutableRowIndex().set( i, s );
+    }
+
+    /**
+     * Use the given row names, sharing the index rather than copying it.
+     *
+     * @param index of row names; an empty index clears the row names.
+     */
+    public final void setRowNameIndex( NameIndex<R> index ) {
+        if ( index.size() > 0 && index.size() != this.rows() ) {
+            throw new IllegalArgumentException( "Cannot add " + index.size() + " row names to a matrix with "
+                    + this.rows() + " rows" );
+        }
+        this.rowIndex = index.freeze();
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public final void setRowNames( List<R> v ) {
-        this.rowNames.clear();
-        this.rowMap.clear();
+        NameIndex<R> shared = v instanceof NameIndex.View ? ( ( NameIndex.View<R> ) v ).index() : null;
+        int n = v.size();
+
+        this.rowIndex = new NameIndex<>( n );
 
-        if ( v.size() != this.rows() ) {
-            throw new IllegalArgumentException( "Cannot add " + v.size() + " row names to a matrix with " + this.rows()
+        if ( n != this.rows() ) {
+            throw new IllegalArgumentException( "Cannot add " + n + " row names to a matrix with " + this.rows()
                     + " rows" );
         }
 
+        if ( shared != null ) {
+            // names from another matrix: share them.
+            this.rowIndex = shared.freeze();
+            return;
+        }
+
         for ( int i = 0; i < v.size(); i++ ) {
             R rowName = v.get( i );
             this.setRowName( rowName, i );
@@ -362,6 +426,38 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
 
     }
 
+    /**
+     * @param names
+     * @return the positions of the given columns, in the same order.
+     * @throws IllegalArgumentException if any of the columns are not in the matrix.
+     */
+    protected int[] colIndicesOf( List<C> names ) {
+        int[] result = new int[names.size()];
+        int k = 0;
+        for ( C c : names ) {
+            result[k++] = getColIndexByName( c );
+        }
+        return result;
+    }
+
+    /**
+     * @param names
+     * @return the positions of the given rows, in the same order.
+     * @throws IllegalArgumentException if any of the rows are not in the matrix.
+     */
+    protected int[] rowIndicesOf( List<R> names ) {
+        int[] result = new int[names.size()];
+        int k = 0;
+        for ( R r : names ) {
+            int i = rowIndex.indexOf( r );
+            if ( i < 0 ) {
+                throw new IllegalArgumentException( "Invalid rows to select, some are not in the original matrix" );
+            }
+            result[k++] = i;
+        }
+        return result;
+    }
+
     protected void checkRowRange( int startRow, int endRow ) {
         if ( startRow < 0 || startRow > rows() - 1 || startRow > endRow ) {
             throw new IllegalArgumentException( "Invalid start row" );
@@ -371,4 +467,18 @@ public abstract class AbstractMatrix<R, C, V> implements Matrix2D<R, C, V>, java
         }
 
     }
+
+    private NameIndex<C> mutableColIndex() {
+        if ( colIndex.isFrozen() ) {
+            colIndex = colIndex.mutableCopy();
+        }
+        return colIndex;
+    }
+
+    private NameIndex<R> mutableRowIndex() {
+        if ( rowIndex.isFrozen() ) {
+            rowIndex = rowIndex.mutableCopy();
+        }
+        return rowIndex;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.util.concurrent.RecursiveAction;
+
+import ubic.basecode.util.ParallelUtils;
+
+/**
+ * Bulk overlap (AND + popcount) of bit vectors, for the bit matrices. The bit vectors of the cells are packed into one
+ * array, <code>wordsPerCell</code> longs per cell, and compared block by block so that both blocks stay in cache; the
+ * blocks are spread over the shared fork-join pool.
+ *
+ * @author paul
+ */
+final class BitOverlaps {
+
+    /**
+     * Computes one block of rows of the result.
+     */
+    private static abstract class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int from;
+        final int to;
+        final int blockSize;
+
+        BlockTask( int from, int to, int blockSize ) {
+            this.from = from;
+            this.to = to;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from <= blockSize ) {
+                computeBlock();
+                return;
+            }
+            int mid = from + ( ( to - from ) / 2 / blockSize + 1 ) * blockSize;
+            if ( mid >= to ) mid = from + ( to - from ) / 2;
+            invokeAll( split( from, mid ), split( mid, to ) );
+        }
+
+        abstract void computeBlock();
+
+        abstract BlockTask split( int f, int t );
+    }
+
+    /*
+     * Words per block of cells: 4096 longs is 32kb, so a pair of blocks fits in a typical L2 cache.
+     */
+    private static final int WORDS_PER_BLOCK = 4096;
+
+    /**
+     * Compute the overlap of every cell in a with every cell in b.
+     *
+     * @param a packed bits of the first set of cells
+     * @param na number of cells in a
+     * @param b packed bits of the second set of cells
+     * @param nb number of cells in b
+     * @param wordsPerCell
+     * @return matrix of overlaps, na x nb
+     */
+    static int[][] overlaps( final long[] a, final int na, final long[] b, final int nb, final int wordsPerCell ) {
+        final int[][] result = new int[na][nb];
+        if ( na == 0 || nb == 0 ) return result;
+        final int bs = blockSize( wordsPerCell );
+
+        class Task extends BlockTask {
+            private static final long serialVersionUID = 1L;
+
+            Task( int f, int t ) {
+                super( f, t, bs );
+            }
+
+            @Override
+            void computeBlock() {
+                for ( int jb = 0; jb < nb; jb += bs ) {
+                    int jEnd = Math.min( nb, jb + bs );
+                    for ( int i = from; i < to; i++ ) {
+                        int[] r = result[i];
+                        int oi = i * wordsPerCell;
+                        for ( int j = jb; j < jEnd; j++ ) {
+                            r[j] = overlap( a, oi, b, j * wordsPerCell, wordsPerCell );
+                        }
+                    }
+                }
+            }
+
+            @Override
+            BlockTask split( int f, int t ) {
+                return new Task( f, t );
+            }
+        }
+
+        ParallelUtils.getPool().invoke( new Task( 0, na ) );
+        return result;
+    }
+
+    /**
+     * Compare every pair of cells i &lt; j in a, and report those whose overlap is at least minOverlap.
+     *
+     * @param a packed bits of the cells
+     * @param n number of cells
+     * @param wordsPerCell
+     * @param minOverlap
+     * @param handler
+     */
+    static void overlaps( final long[] a, final int n, final int wordsPerCell, final int minOverlap,
+            final CellOverlapHandler handler ) {
+        if ( n < 2 ) return;
+        final int bs = blockSize( wordsPerCell );
+
+        class Task extends BlockTask {
+            private static final long serialVersionUID = 1L;
+
+            Task( int f, int t ) {
+                super( f, t, bs );
+            }
+
+            @Override
+            void computeBlock() {
+                for ( int jb = from; jb < n; jb += bs ) {
+                    int jEnd = Math.min( n, jb + bs );
+                    for ( int i = from; i < to; i++ ) {
+                        int oi = i * wordsPerCell;
+                        for ( int j = Math.max( jb, i + 1 ); j < jEnd; j++ ) {
+                            int o = overlap( a, oi, a, j * wordsPerCell, wordsPerCell );
+                            if ( o >= minOverlap ) {
+                                handler.handle( i, j, o );
+                            }
+                        }
+                    }
+                }
+            }
+
+            @Override
+            BlockTask split( int f, int t ) {
+                return new Task( f, t );
+            }
+        }
+
+        ParallelUtils.getPool().invoke( new Task( 0, n ) );
+    }
+
+    private static int blockSize( int wordsPerCell ) {
+        return Math.max( 8, WORDS_PER_BLOCK / wordsPerCell );
+    }
+
+    private static int overlap( long[] a, int oa, long[] b, int ob, int wordsPerCell ) {
+        int bits = 0;
+        for ( int k = 0; k < wordsPerCell; k++ ) {
+            bits += Long.bitCount( a[oa + k] & b[ob + k] );
+        }
+        return bits;
+    }
+
+    private BitOverlaps() {
+    }
+}
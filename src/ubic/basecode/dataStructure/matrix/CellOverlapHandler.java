@@ -0,0 +1,37 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+/**
+ * Receives pairs of bit matrix cells whose overlap meets a threshold; see
+ * {@link SparseBitMatrix#overlap(int[], int[], int, CellOverlapHandler)}.
+ * <p>
+ * Implementations must be thread-safe, as pairs are reported from several threads at once and in no particular order.
+ *
+ * @author paul
+ */
+public interface CellOverlapHandler {
+
+    /**
+     * @param i position of the first cell in the list of cells that was passed in
+     * @param j position of the second cell; always greater than i
+     * @param overlap number of bits the two cells have in common
+     */
+    public void handle( int i, int j, int overlap );
+}
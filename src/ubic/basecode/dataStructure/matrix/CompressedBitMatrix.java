@@ -247,6 +247,38 @@ public class CompressedBitMatrix<R, C> extends AbstractMatrix<R, C, double[]> im
         return bits;
     }
 
+    /**
+     * Compute the overlaps of many pairs of cells at once, in parallel. This is much faster than calling
+     * {@link #overlap(int, int, int, int)} for each pair.
+     *
+     * @param rows1 rows of the first set of cells
+     * @param cols1 columns of the first set of cells (same length as rows1)
+     * @param rows2 rows of the second set of cells
+     * @param cols2 columns of the second set of cells (same length as rows2)
+     * @return matrix of overlaps; element [i][j] is the overlap of cell (rows1[i], cols1[i]) with cell (rows2[j],
+     *         cols2[j]).
+     * @see SparseBitMatrix#overlap(int[], int[], int[], int[])
+     */
+    public int[][] overlap( int[] rows1, int[] cols1, int[] rows2, int[] cols2 ) {
+        long[] a = gather( rows1, cols1 );
+        long[] b = gather( rows2, cols2 );
+        return BitOverlaps.overlaps( a, rows1.length, b, rows2.length, matrix.length );
+    }
+
+    /**
+     * Compare every pair of the given cells, in parallel, and pass those with at least minOverlap bits in common to
+     * the handler.
+     *
+     * @param rows rows of the cells
+     * @param cols columns of the cells (same length as rows)
+     * @param minOverlap threshold
+     * @param handler receives the positions (in rows/cols) of each qualifying pair; must be thread-safe.
+     */
+    public void overlap( int[] rows, int[] cols, int minOverlap, CellOverlapHandler handler ) {
+        long[] a = gather( rows, cols );
+        BitOverlaps.overlaps( a, rows.length, matrix.length, minOverlap, handler );
+    }
+
     public void reset( int r, int c ) {
         for ( FlexCompRowMatrix cell : this.matrix ) {
             cell.set( r, c, 0 );
@@ -449,6 +481,23 @@ public class CompressedBitMatrix<R, C> extends AbstractMatrix<R, C, double[]> im
         matrix[num].set( row, col, res );
     }
 
+    /**
+     * @return the raw bits of the given cells packed into one array, one long per stacked matrix for each cell.
+     */
+    private long[] gather( int[] rowIndices, int[] colIndices ) {
+        if ( rowIndices.length != colIndices.length ) {
+            throw new IllegalArgumentException( "Must have the same number of rows and columns" );
+        }
+        int n = this.matrix.length;
+        long[] result = new long[rowIndices.length * n];
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            for ( int i = 0; i < n; i++ ) {
+                result[k * n + i] = Double.doubleToRawLongBits( this.matrix[i].get( rowIndices[k], colIndices[k] ) );
+            }
+        }
+        return result;
+    }
+
     /**
      * Count the number of one-bits of the passed-in <code>double</code> val.
      * 
@@ -18,11 +18,16 @@
  */
 package ubic.basecode.dataStructure.matrix;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import no.uib.cipr.matrix.DenseMatrix;
 import no.uib.cipr.matrix.sparse.FlexCompRowMatrix;
 import no.uib.cipr.matrix.sparse.SparseVector;
+import cern.colt.function.DoubleFunction;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 
@@ -35,10 +40,13 @@ import cern.colt.matrix.DoubleMatrix1D;
  */
 public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
 
-    private static final long serialVersionUID = 5771918031750038719L;
+    /*
+     * Changed when the rows came to be written by writeObject, so that instances serialized before are rejected.
+     */
+    private static final long serialVersionUID = -3203865172417312655L;
 
     /*
-     * FlexCompRowMatrix isn't serializable, so either is this in any useful way, despite claim.
+     * FlexCompRowMatrix isn't serializable; the rows are written by writeObject.
      */
     private transient FlexCompRowMatrix matrix;
 
@@ -73,6 +81,24 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         return result;
     }
 
+    /**
+     * If the function maps zero to zero, only the stored values are visited.
+     */
+    @Override
+    public void assign( DoubleFunction function ) {
+        if ( function.apply( 0.0 ) != 0.0 ) {
+            super.assign( function );
+            return;
+        }
+        for ( int i = 0; i < matrix.numRows(); i++ ) {
+            SparseVector row = matrix.getRow( i );
+            double[] data = row.getData();
+            for ( int k = 0, used = row.getUsed(); k < used; k++ ) {
+                data[k] = function.apply( data[k] );
+            }
+        }
+    }
+
     /**
      * @return
      */
@@ -100,19 +126,58 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
      */
     @Override
     public DoubleMatrix<R, C> copy() {
-        DoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( this.rows(), this.columns() );
+        CompressedSparseDoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( this.rows(),
+                this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
 
         for ( int i = 0; i < this.rows(); i++ ) {
-            returnval.setRowName( this.getRowName( i ), i );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( i == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
+            returnval.matrix.setRow( i, matrix.getRow( i ).copy() );
+        }
+        return returnval;
+
+    }
+
+    /**
+     * Make an immutable copy in compressed-row form, which is more compact and has fast (parallel) arithmetic. Names
+     * are shared with this matrix; explicitly stored zeros are dropped.
+     * 
+     * @return
+     */
+    public FrozenSparseDoubleMatrix<R, C> freeze() {
+        int n = rows();
+        int[] ptr = new int[n + 1];
+        for ( int i = 0; i < n; i++ ) {
+            SparseVector row = matrix.getRow( i );
+            double[] data = row.getData();
+            int count = 0;
+            for ( int k = 0, used = row.getUsed(); k < used; k++ ) {
+                if ( data[k] != 0.0 ) count++;
+            }
+            ptr[i + 1] = ptr[i] + count;
+        }
+
+        int[] indices = new int[ptr[n]];
+        double[] values = new double[ptr[n]];
+        int pos = 0;
+        for ( int i = 0; i < n; i++ ) {
+            SparseVector row = matrix.getRow( i );
+            int[] index = row.getIndex();
+            double[] data = row.getData();
+            for ( int k = 0, used = row.getUsed(); k < used; k++ ) {
+                if ( data[k] != 0.0 ) {
+                    indices[pos] = index[k];
+                    values[pos] = data[k];
+                    pos++;
                 }
-                returnval.set( i, j, this.get( i, j ) );
             }
         }
-        return returnval;
 
+        FrozenSparseDoubleMatrix<R, C> result = new FrozenSparseDoubleMatrix<R, C>( n, columns(), ptr, indices,
+                values );
+        result.setRowNameIndex( this.getRowNameIndex() );
+        result.setColumnNameIndex( this.getColNameIndex() );
+        return result;
     }
 
     /**
@@ -144,20 +209,17 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         super.checkColRange( startCol, endCol );
 
         DoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
-        int k = 0;
-        for ( int i = startCol; i <= endCol; i++ ) {
-            C colName = this.getColName( i );
-            if ( colName != null ) {
-                returnval.setColumnName( colName, i );
-            }
-            for ( int j = 0, m = this.rows(); j < m; j++ ) {
-                if ( i == startCol ) {
-                    R rowName = this.getRowName( j );
-                    returnval.setRowName( rowName, j );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        for ( int i = 0; i < this.rows(); i++ ) {
+            SparseVector row = matrix.getRow( i );
+            int[] indices = row.getIndex();
+            double[] data = row.getData();
+            for ( int k = 0, used = row.getUsed(); k < used; k++ ) {
+                if ( indices[k] >= startCol && indices[k] <= endCol ) {
+                    returnval.setQuick( i, indices[k] - startCol, data[k] );
                 }
-                returnval.set( j, k, this.get( j, i ) );
             }
-            k++;
         }
         return returnval;
     }
@@ -239,20 +301,13 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
         super.checkRowRange( startRow, endRow );
 
-        DoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( endRow + 1 - startRow, this.columns() );
+        CompressedSparseDoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( endRow + 1 - startRow,
+                this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
         int k = 0;
         for ( int i = startRow; i <= endRow; i++ ) {
-            R rowName = this.getRowName( i );
-            if ( rowName != null ) {
-                returnval.setRowName( rowName, i );
-            }
-            for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( i == 0 ) {
-                    C colName = this.getColName( j );
-                    returnval.setColumnName( colName, j );
-                }
-                returnval.set( k, j, this.get( i, j ) );
-            }
+            returnval.matrix.setRow( k, matrix.getRow( i ).copy() );
             k++;
         }
         return returnval;
@@ -278,6 +333,36 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         matrix.set( row, column, value );
     }
 
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        matrix.set( row, column, value );
+    }
+
+    /**
+     * Zeros in the values are not stored.
+     */
+    @Override
+    public void setRow( int row, double[] values ) {
+        if ( values.length != columns() ) {
+            throw new IllegalArgumentException( "Expected " + columns() + " values, got " + values.length );
+        }
+        int used = 0;
+        for ( double v : values ) {
+            if ( v != 0.0 ) used++;
+        }
+        int[] index = new int[used];
+        double[] data = new double[used];
+        int k = 0;
+        for ( int j = 0; j < values.length; j++ ) {
+            if ( values[j] != 0.0 ) {
+                index[k] = j;
+                data[k] = values[j];
+                k++;
+            }
+        }
+        matrix.setRow( row, new SparseVector( values.length, index, data, false ) );
+    }
+
     /**
      * @return
      */
@@ -294,49 +379,42 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     @Override
     public DoubleMatrix<R, C> subsetColumns( List<C> columns ) {
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), columns.size() );
-        returnval.setRowNames( this.getRowNames() );
-        for ( int i = 0; i < this.rows(); i++ ) {
-            int currentColumn = 0;
-            for ( C c : columns ) {
-                int j = this.getColIndexByName( c );
-
-                returnval.set( i, currentColumn, this.get( i, j ) );
+        int[] colIndices = this.colIndicesOf( columns );
+        int[] columnMap = new int[this.columns()];
+        Arrays.fill( columnMap, -1 );
+        for ( int k = 0; k < colIndices.length; k++ ) {
+            columnMap[colIndices[k]] = k;
+        }
 
-                if ( i == 0 ) {
-                    returnval.setColumnName( c, currentColumn );
+        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        for ( int i = 0; i < this.rows(); i++ ) {
+            SparseVector row = matrix.getRow( i );
+            int[] indices = row.getIndex();
+            double[] data = row.getData();
+            for ( int k = 0, used = row.getUsed(); k < used; k++ ) {
+                int j = columnMap[indices[k]];
+                if ( j >= 0 ) {
+                    returnval.setQuick( i, j, data[k] );
                 }
-
-                currentColumn++;
-
             }
-
         }
         return returnval;
     }
 
     @Override
     public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
-        DoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( rowNames.size(), this.columns() );
-
-        int currentRow = 0;
-        for ( R rowName : rowNames ) {
-
-            if ( !this.containsRowName( rowName ) ) continue;
-
-            int i = this.getRowIndexByName( rowName );
-            returnval.setRowName( rowName, currentRow );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( currentRow == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
-                }
-                returnval.set( currentRow, j, this.get( i, j ) );
-            }
-            currentRow++;
-        }
-        if ( !returnval.getRowNames().containsAll( rowNames ) ) {
-            throw new IllegalArgumentException( "Invalid rows to select, some are not in the original matrix" );
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        CompressedSparseDoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( rowIndices.length,
+                this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            returnval.matrix.setRow( k, matrix.getRow( rowIndices[k] ).copy() );
         }
+
         return returnval;
     }
 
@@ -373,4 +451,50 @@ public class CompressedSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         return new DenseDoubleMatrix1D( getRow( row ) );
     }
 
+    /**
+     * @param row
+     * @return the underlying (not copied) sparse vector for the row.
+     */
+    SparseVector getRowVector( int row ) {
+        return matrix.getRow( row );
+    }
+
+    /**
+     * @param row
+     * @param vector becomes the row; it is not copied.
+     */
+    void setRowVector( int row, SparseVector vector ) {
+        matrix.setRow( row, vector );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int rows = in.readInt();
+        int columns = in.readInt();
+        matrix = new FlexCompRowMatrix( rows, columns );
+        for ( int i = 0; i < rows; i++ ) {
+            int[] index = ( int[] ) in.readObject();
+            double[] data = ( double[] ) in.readObject();
+            if ( index.length > 0 ) {
+                matrix.setRow( i, new SparseVector( columns, index, data, false ) );
+            }
+        }
+    }
+
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt( rows() );
+        out.writeInt( columns() );
+        for ( int i = 0; i < rows(); i++ ) {
+            SparseVector row = matrix.getRow( i );
+            int used = row.getUsed();
+            int[] index = new int[used];
+            double[] data = new double[used];
+            System.arraycopy( row.getIndex(), 0, index, 0, used );
+            System.arraycopy( row.getData(), 0, data, 0, used );
+            out.writeObject( index );
+            out.writeObject( data );
+        }
+    }
+
 }
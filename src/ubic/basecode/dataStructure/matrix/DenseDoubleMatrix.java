@@ -20,6 +20,7 @@ package ubic.basecode.dataStructure.matrix;
 
 import java.util.List;
 
+import cern.colt.function.DoubleFunction;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
@@ -62,6 +63,11 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         return matrix.toArray();
     }
 
+    @Override
+    public void assign( DoubleFunction function ) {
+        matrix.assign( function );
+    }
+
     @Override
     public int columns() {
         return matrix.columns();
@@ -72,22 +78,24 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
      */
     @Override
     public DoubleMatrix<R, C> copy() {
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), this.columns() );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), this.columns() );
+        // Fine, if you don't want row names
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        returnval.matrix.assign( this.matrix );
+        return returnval;
+    }
+
+    @Override
+    public void forEachNonMissing( RowColValueConsumer consumer ) {
         for ( int i = 0, n = this.rows(); i < n; i++ ) {
-            R rowName = this.getRowName( i );
-            // Fine, if you don't want row names
-            if ( rowName != null )
-                returnval.setRowName( rowName, i );
             for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( i == 0 ) {
-                    C colName = this.getColName( j );
-                    if ( colName != null )
-                        returnval.setColumnName( colName, j );
+                double v = matrix.getQuick( i, j );
+                if ( !Double.isNaN( v ) ) {
+                    consumer.accept( i, j, v );
                 }
-                returnval.set( i, j, this.get( i, j ) );
             }
         }
-        return returnval;
     }
 
     /**
@@ -129,22 +137,10 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
         super.checkColRange( startCol, endCol );
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
-        int k = 0;
-        for ( int i = startCol; i <= endCol; i++ ) {
-            C colName = this.getColName( i );
-            if ( colName != null ) {
-                returnval.addColumnName( colName );
-            }
-            for ( int j = 0, m = this.rows(); j < m; j++ ) {
-                if ( i == startCol ) {
-                    R rowName = this.getRowName( j );
-                    if ( rowName != null ) returnval.addRowName( rowName );
-                }
-                returnval.set( j, k, this.get( j, i ) );
-            }
-            k++;
-        }
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        returnval.matrix.assign( this.matrix.viewPart( 0, startCol, this.rows(), 1 + endCol - startCol ) );
         return returnval;
     }
 
@@ -232,22 +228,10 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
         super.checkRowRange( startRow, endRow );
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( 1 + endRow - startRow, this.columns() );
-        int k = 0;
-        for ( int i = startRow; i <= endRow; i++ ) {
-            R rowName = this.getRowName( i );
-            if ( rowName != null ) {
-                returnval.setRowName( rowName, i );
-            }
-            for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( i == startRow ) {
-                    C colName = this.getColName( j );
-                    returnval.setColumnName( colName, j );
-                }
-                returnval.set( k, j, this.get( i, j ) );
-            }
-            k++;
-        }
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( 1 + endRow - startRow, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        returnval.matrix.assign( this.matrix.viewPart( startRow, 0, 1 + endRow - startRow, this.columns() ) );
         return returnval;
     }
 
@@ -266,6 +250,21 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         matrix.set( row, column, value );
     }
 
+    @Override
+    public void setColumn( int column, double[] values ) {
+        matrix.viewColumn( column ).assign( values );
+    }
+
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        matrix.setQuick( row, column, value );
+    }
+
+    @Override
+    public void setRow( int row, double[] values ) {
+        matrix.viewRow( row ).assign( values );
+    }
+
     /**
      * @return int
      * @see AbstractMatrix2D#size()
@@ -283,75 +282,35 @@ public class DenseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     @Override
     public DoubleMatrix<R, C> subsetColumns( List<C> columns ) {
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), columns.size() );
-        returnval.setRowNames( this.getRowNames() );
-        for ( int i = 0; i < this.rows(); i++ ) {
-            int currentColumn = 0;
-            for ( C c : columns ) {
-                int j = this.getColIndexByName( c );
-
-                returnval.set( i, currentColumn, this.get( i, j ) );
-
-                if ( i == 0 ) {
-                    returnval.setColumnName( c, currentColumn );
-                }
-
-                currentColumn++;
-
-            }
-
-        }
+        int[] colIndices = this.colIndicesOf( columns );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        returnval.matrix.assign( this.matrix.viewSelection( null, colIndices ) );
         return returnval;
     }
 
     @Override
     public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
-
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rowNames.size(), this.columns() );
-
-        int currentRow = 0;
-        for ( R rowName : rowNames ) {
-
-            if ( !this.containsRowName( rowName ) ) continue;
-
-            int i = this.getRowIndexByName( rowName );
-
-            returnval.setRowName( rowName, currentRow );
-            for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( currentRow == 0 ) {
-                    C colName = this.getColName( j );
-                    returnval.setColumnName( colName, j );
-                }
-                returnval.set( currentRow, j, this.get( i, j ) );
-            }
-            currentRow++;
-        }
-
-        if ( !returnval.getRowNames().containsAll( rowNames ) ) {
-            throw new IllegalArgumentException( "Invalid rows to select, some are not in the original matrix" );
-        }
-
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rowIndices.length, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        returnval.matrix.assign( this.matrix.viewSelection( rowIndices, null ) );
         return returnval;
-
     }
 
     @Override
     public DoubleMatrix<C, R> transpose() {
 
-        DoubleMatrix<C, R> result = new DenseDoubleMatrix<C, R>( this.columns(), this.rows() );
+        DenseDoubleMatrix<C, R> result = new DenseDoubleMatrix<C, R>( this.columns(), this.rows() );
         if ( this.getColNames().size() > 0 ) {
             result.setRowNames( this.getColNames() );
         }
         if ( this.getRowNames().size() > 0 ) {
             result.setColumnNames( this.getRowNames() );
         }
-
-        for ( int i = 0; i < this.rows(); i++ ) {
-            for ( int j = 0; j < this.columns(); j++ ) {
-                result.set( j, i, this.get( i, j ) );
-            }
-        }
-
+        result.matrix.assign( this.matrix.viewDice() );
         return result;
 
     }
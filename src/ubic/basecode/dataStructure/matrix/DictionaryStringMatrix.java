@@ -0,0 +1,532 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import cern.colt.list.IntArrayList;
+import cern.colt.matrix.ObjectMatrix1D;
+import cern.colt.matrix.ObjectMatrix2D;
+import cern.colt.matrix.impl.DenseObjectMatrix1D;
+import cern.colt.matrix.impl.DenseObjectMatrix2D;
+
+/**
+ * A StringMatrix that stores each distinct value once, in a symbol table, and the cells as integer codes into that
+ * table. This is meant for matrices with few distinct values, such as absent/present flags ("A", "P", "M") or sample
+ * annotations. The codes are stored in a byte array for up to 255 distinct values, and widened to a short or int array
+ * as more values are added. Code 0 is reserved for null.
+ * <p>
+ * Subsets share the symbol table of the matrix they were made from. The symbol table is thread-safe, so matrices that
+ * share it can be used from different threads; as with other matrices, setting cells of one matrix from several
+ * threads needs outside synchronization. Values can be compared by code, see {@link #getCode(String)},
+ * {@link #countMatches(int, int)} and {@link #getRowsMatching(int, int)}.
+ *
+ * @author paul
+ */
+public class DictionaryStringMatrix<R, C> extends StringMatrix<R, C> {
+
+    /**
+     * Builds a matrix one row at a time, when the number of rows is not known in advance, without holding the values
+     * as strings.
+     */
+    public static class Builder<R, C> {
+
+        private Codes codes;
+        private final int columns;
+        private int rows = 0;
+        private final SymbolTable symbols = new SymbolTable();
+
+        /**
+         * @param columns
+         */
+        public Builder( int columns ) {
+            this.columns = columns;
+            this.codes = new Codes( ( int ) Math.min( Integer.MAX_VALUE, Math.max( columns, 1 ) * 16L ), 0 );
+        }
+
+        /**
+         * Add a row. If there are fewer values than columns, the remaining cells are set to the empty string.
+         *
+         * @param values
+         * @throws IllegalArgumentException if there are more values than columns.
+         */
+        public void addRow( List<String> values ) {
+            if ( values.size() > columns ) {
+                throw new IllegalArgumentException( "Expected at most " + columns + " values, got " + values.size() );
+            }
+            long needed = ( long ) ( rows + 1 ) * columns;
+            if ( needed > Integer.MAX_VALUE ) {
+                throw new IllegalArgumentException( "Too many cells for a single matrix" );
+            }
+            if ( needed > codes.length() ) {
+                codes.resize( ( int ) Math.min( Integer.MAX_VALUE, Math.max( needed, 2L * codes.length() ) ) );
+            }
+            int offset = rows * columns;
+            int j = 0;
+            for ( String v : values ) {
+                codes.set( offset + j++, symbols.encode( v ) );
+            }
+            if ( j < columns ) {
+                int blank = symbols.encode( "" );
+                for ( ; j < columns; j++ ) {
+                    codes.set( offset + j, blank );
+                }
+            }
+            rows++;
+        }
+
+        /**
+         * @return the matrix. The builder should not be used afterwards.
+         */
+        public DictionaryStringMatrix<R, C> build() {
+            codes.resize( rows * columns );
+            return new DictionaryStringMatrix<R, C>( rows, columns, symbols, codes );
+        }
+
+        /**
+         * @return number of columns.
+         */
+        public int columns() {
+            return columns;
+        }
+
+        /**
+         * @return number of rows added so far.
+         */
+        public int rows() {
+            return rows;
+        }
+    }
+
+    /**
+     * Cell codes, stored in the narrowest array that can hold them.
+     */
+    private static class Codes implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private byte[] bytes;
+        private int[] ints;
+        private short[] shorts;
+
+        /**
+         * @param n number of cells
+         * @param maxCode the largest code that will be stored initially.
+         */
+        Codes( int n, int maxCode ) {
+            if ( maxCode <= 0xFF ) {
+                bytes = new byte[n];
+            } else if ( maxCode <= 0xFFFF ) {
+                shorts = new short[n];
+            } else {
+                ints = new int[n];
+            }
+        }
+
+        int get( int i ) {
+            if ( bytes != null ) return bytes[i] & 0xFF;
+            if ( shorts != null ) return shorts[i] & 0xFFFF;
+            return ints[i];
+        }
+
+        int length() {
+            if ( bytes != null ) return bytes.length;
+            if ( shorts != null ) return shorts.length;
+            return ints.length;
+        }
+
+        void resize( int n ) {
+            if ( bytes != null ) {
+                bytes = Arrays.copyOf( bytes, n );
+            } else if ( shorts != null ) {
+                shorts = Arrays.copyOf( shorts, n );
+            } else {
+                ints = Arrays.copyOf( ints, n );
+            }
+        }
+
+        void set( int i, int code ) {
+            if ( bytes != null ) {
+                if ( code <= 0xFF ) {
+                    bytes[i] = ( byte ) code;
+                    return;
+                }
+                widen( code );
+            }
+            if ( shorts != null ) {
+                if ( code <= 0xFFFF ) {
+                    shorts[i] = ( short ) code;
+                    return;
+                }
+                widen( code );
+            }
+            ints[i] = code;
+        }
+
+        private void widen( int code ) {
+            int n = length();
+            if ( bytes != null && code <= 0xFFFF ) {
+                shorts = new short[n];
+                for ( int i = 0; i < n; i++ ) {
+                    shorts[i] = ( short ) ( bytes[i] & 0xFF );
+                }
+                bytes = null;
+                return;
+            }
+            ints = new int[n];
+            for ( int i = 0; i < n; i++ ) {
+                ints[i] = get( i );
+            }
+            bytes = null;
+            shorts = null;
+        }
+    }
+
+    /**
+     * A row or column of the matrix. Like the views of a colt matrix, it shows later changes to the matrix, and
+     * values set through it are set in the matrix.
+     */
+    private class CellView extends ObjectMatrix1D {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Positions of the cells, for a selection; if null, the cells are at zero + rank * stride.
+         */
+        private final int[] offsets;
+
+        CellView( int size, int zero, int stride ) {
+            this.offsets = null;
+            setUp( size, zero, stride );
+        }
+
+        CellView( int[] offsets ) {
+            this.offsets = offsets;
+            setUp( offsets.length );
+        }
+
+        @Override
+        public Object getQuick( int index ) {
+            return symbols.get( codes.get( index( index ) ) );
+        }
+
+        @Override
+        public ObjectMatrix1D like( int n ) {
+            return new DenseObjectMatrix1D( n );
+        }
+
+        @Override
+        public ObjectMatrix2D like2D( int r, int c ) {
+            return new DenseObjectMatrix2D( r, c );
+        }
+
+        @Override
+        public void setQuick( int index, Object value ) {
+            codes.set( index( index ), symbols.encode( ( String ) value ) );
+        }
+
+        @Override
+        protected int _offset( int absRank ) {
+            return offsets == null ? absRank : offsets[absRank];
+        }
+
+        @Override
+        protected ObjectMatrix1D viewSelectionLike( int[] selected ) {
+            return new CellView( selected );
+        }
+    }
+
+    /**
+     * The distinct values; code 0 is null. Lookups do not lock; adding a value does.
+     */
+    private static class SymbolTable implements Serializable {
+
+        private static final long serialVersionUID = 2L;
+
+        private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+
+        /*
+         * A value is stored before its code is published in the map, so a code obtained from the map is always valid.
+         */
+        private volatile int size = 1;
+        private volatile String[] symbols = new String[16];
+
+        int encode( String value ) {
+            if ( value == null ) return 0;
+            Integer code = codes.get( value );
+            if ( code != null ) return code;
+            synchronized ( this ) {
+                code = codes.get( value );
+                if ( code == null ) {
+                    code = size;
+                    String[] s = symbols;
+                    if ( code == s.length ) {
+                        s = Arrays.copyOf( s, 2 * s.length );
+                    }
+                    s[code] = value;
+                    symbols = s;
+                    size = code + 1;
+                    codes.put( value, code );
+                }
+            }
+            return code;
+        }
+
+        String get( int code ) {
+            if ( code < 0 || code >= size ) {
+                throw new IndexOutOfBoundsException( "Code: " + code + ", Symbols: " + size );
+            }
+            return symbols[code];
+        }
+
+        int lookup( String value ) {
+            if ( value == null ) return 0;
+            Integer code = codes.get( value );
+            return code == null ? -1 : code;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private Codes codes;
+    private final int columns;
+    private final int rows;
+    private final SymbolTable symbols;
+
+    /**
+     * @param rows
+     * @param columns
+     */
+    public DictionaryStringMatrix( int rows, int columns ) {
+        this( rows, columns, new SymbolTable(), null );
+    }
+
+    private DictionaryStringMatrix( int rows, int columns, SymbolTable symbols, Codes codes ) {
+        super();
+        if ( rows < 0 || columns < 0 ) {
+            throw new IllegalArgumentException( "Dimensions must be non-negative" );
+        }
+        if ( ( long ) rows * columns > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "Too many cells for a single matrix: " + rows + " x " + columns );
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.symbols = symbols;
+        this.codes = codes == null ? new Codes( rows * columns, symbols.size() - 1 ) : codes;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * @param row
+     * @param code
+     * @return how many cells in the row have the value with the given code.
+     */
+    public int countMatches( int row, int code ) {
+        checkRow( row );
+        int offset = row * columns;
+        int count = 0;
+        for ( int j = 0; j < columns; j++ ) {
+            if ( codes.get( offset + j ) == code ) count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String get( int row, int column ) {
+        return symbols.get( getCode( row, column ) );
+    }
+
+    /**
+     * @param row
+     * @param column
+     * @return the code of the value in the cell; 0 if it is null.
+     */
+    public int getCode( int row, int column ) {
+        checkIndex( row, column );
+        return codes.get( row * columns + column );
+    }
+
+    /**
+     * @param value
+     * @return the code for the value, or -1 if it does not occur in the symbol table (so no cell can have it). The
+     *         code for null is 0.
+     */
+    public int getCode( String value ) {
+        return symbols.lookup( value );
+    }
+
+    @Override
+    public String[] getColumn( int col ) {
+        checkColumn( col );
+        String[] result = new String[rows];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = symbols.get( codes.get( i * columns + col ) );
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of entries in the symbol table, including null. This may be more than the number of distinct
+     *         values in this matrix if the table is shared with other matrices.
+     */
+    public int getNumSymbols() {
+        return symbols.size();
+    }
+
+    @Override
+    public String[] getRow( int row ) {
+        checkRow( row );
+        String[] result = new String[columns];
+        int offset = row * columns;
+        for ( int j = 0; j < columns; j++ ) {
+            result[j] = symbols.get( codes.get( offset + j ) );
+        }
+        return result;
+    }
+
+    /**
+     * @param column
+     * @param code
+     * @return indices of the rows which have the value with the given code in the column.
+     */
+    public int[] getRowsMatching( int column, int code ) {
+        checkColumn( column );
+        IntArrayList result = new IntArrayList();
+        for ( int i = 0; i < rows; i++ ) {
+            if ( codes.get( i * columns + column ) == code ) result.add( i );
+        }
+        result.trimToSize();
+        return result.elements();
+    }
+
+    /**
+     * @param code
+     * @return the value for the code
+     */
+    public String getSymbol( int code ) {
+        return symbols.get( code );
+    }
+
+    /**
+     * Strings are considered missing if they are whitespace, null or empty.
+     */
+    @Override
+    public boolean isMissing( int i, int j ) {
+        return StringUtils.isBlank( get( i, j ) );
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public void set( int row, int column, String value ) {
+        checkIndex( row, column );
+        codes.set( row * columns + column, symbols.encode( value ) );
+    }
+
+    @Override
+    public int size() {
+        return rows * columns;
+    }
+
+    @Override
+    public ObjectMatrix<R, C, String> subset( int startRow, int startCol, int numRow, int numCol ) {
+        int endRow = startRow + numRow - 1;
+        super.checkRowRange( startRow, endRow );
+        int endCol = startCol + numCol - 1;
+        super.checkColRange( startCol, endCol );
+        DictionaryStringMatrix<R, C> result = new DictionaryStringMatrix<R, C>( numRow, numCol, symbols, null );
+        for ( int i = 0; i < numRow; i++ ) {
+            int offset = ( startRow + i ) * columns + startCol;
+            for ( int j = 0; j < numCol; j++ ) {
+                result.codes.set( i * numCol + j, codes.get( offset + j ) );
+            }
+        }
+        result.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        result.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        return result;
+    }
+
+    @Override
+    public ObjectMatrix<R, C, String> subsetColumns( List<C> cols ) {
+        int[] indices = colIndicesOf( cols );
+        int n = indices.length;
+        DictionaryStringMatrix<R, C> result = new DictionaryStringMatrix<R, C>( rows, n, symbols, null );
+        for ( int i = 0; i < rows; i++ ) {
+            int offset = i * columns;
+            for ( int j = 0; j < n; j++ ) {
+                result.codes.set( i * n + j, codes.get( offset + indices[j] ) );
+            }
+        }
+        result.setRowNameIndex( this.getRowNameIndex() );
+        result.setColumnNameIndex( this.getColNameIndex().subset( indices ) );
+        return result;
+    }
+
+    /**
+     * @return a view of the column, backed by this matrix.
+     */
+    @Override
+    public ObjectMatrix1D viewColumn( int column ) {
+        checkColumn( column );
+        return new CellView( rows, column, columns );
+    }
+
+    /**
+     * @return a view of the row, backed by this matrix.
+     */
+    @Override
+    public ObjectMatrix1D viewRow( int row ) {
+        checkRow( row );
+        return new CellView( columns, row * columns, 1 );
+    }
+
+    private void checkColumn( int column ) {
+        if ( column < 0 || column >= columns ) {
+            throw new IndexOutOfBoundsException( "Column: " + column + ", Columns: " + columns );
+        }
+    }
+
+    private void checkIndex( int row, int column ) {
+        checkRow( row );
+        checkColumn( column );
+    }
+
+    private void checkRow( int row ) {
+        if ( row < 0 || row >= rows ) {
+            throw new IndexOutOfBoundsException( "Row: " + row + ", Rows: " + rows );
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+import cern.colt.list.DoubleArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * Dense 2D matrix stored row by row in a {@link DoubleBuffer}, which can wrap an array or be a view of a
+ * memory-mapped file. Nothing is copied, so changes are written through to the buffer; if the buffer is read-only,
+ * setting a value fails with a ReadOnlyBufferException.
+ * <p>
+ * Methods that make new matrices (copies, subsets, the transpose) return DenseDoubleMatrix on the heap. A serialized
+ * matrix is read back into a heap buffer.
+ *
+ * @author paul
+ */
+public class DoubleBufferMatrix<R, C> extends DoubleMatrix<R, C> {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient DoubleBuffer buffer;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * @param buffer values in row-major order, starting at index 0 of the buffer (regardless of its position).
+     * @param rows
+     * @param columns
+     */
+    public DoubleBufferMatrix( DoubleBuffer buffer, int rows, int columns ) {
+        super();
+        if ( rows < 0 || columns < 0 ) {
+            throw new IllegalArgumentException( "Dimensions must be non-negative" );
+        }
+        if ( ( long ) rows * columns > buffer.capacity() ) {
+            throw new IllegalArgumentException( "Buffer holds " + buffer.capacity() + " values, need " + rows + " x "
+                    + columns );
+        }
+        this.buffer = buffer;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * @param rows
+     * @param columns
+     */
+    public DoubleBufferMatrix( int rows, int columns ) {
+        this( DoubleBuffer.allocate( checkedSize( rows, columns ) ), rows, columns );
+    }
+
+    @Override
+    public double[][] asArray() {
+        double[][] result = new double[rows][];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = getRow( i );
+        }
+        return result;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * @return a copy on the heap.
+     */
+    @Override
+    public DoubleMatrix<R, C> copy() {
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.asArray() );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        return returnval;
+    }
+
+    @Override
+    public double get( int row, int column ) {
+        return buffer.get( index( row, column ) );
+    }
+
+    /**
+     * @return the underlying buffer (not a copy).
+     */
+    public DoubleBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public Double[] getColObj( int col ) {
+        Double[] result = new Double[rows];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = get( i, col );
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
+        super.checkColRange( startCol, endCol );
+        int n = 1 + endCol - startCol;
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rows, n );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        double[] row = new double[n];
+        for ( int i = 0; i < rows; i++ ) {
+            read( index( i, startCol ), row );
+            returnval.setRow( i, row );
+        }
+        return returnval;
+    }
+
+    @Override
+    public double[] getColumn( int j ) {
+        double[] result = new double[rows];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = get( i, j );
+        }
+        return result;
+    }
+
+    @Override
+    public Double getObject( int row, int col ) {
+        return get( row, col );
+    }
+
+    @Override
+    public double[] getRow( int i ) {
+        double[] result = new double[columns];
+        read( index( i, 0 ), result );
+        return result;
+    }
+
+    @Override
+    public DoubleArrayList getRowArrayList( int i ) {
+        return new DoubleArrayList( getRow( i ) );
+    }
+
+    @Override
+    public Double[] getRowObj( int row ) {
+        Double[] result = new Double[columns];
+        for ( int j = 0; j < columns; j++ ) {
+            result[j] = get( row, j );
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
+        super.checkRowRange( startRow, endRow );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( 1 + endRow - startRow, columns );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        for ( int i = startRow; i <= endRow; i++ ) {
+            returnval.setRow( i - startRow, this.getRow( i ) );
+        }
+        return returnval;
+    }
+
+    @Override
+    public boolean isMissing( int i, int j ) {
+        return Double.isNaN( get( i, j ) );
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public void set( int row, int column, Double value ) {
+        setQuick( row, column, value );
+    }
+
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        buffer.put( index( row, column ), value );
+    }
+
+    @Override
+    public void setRow( int row, double[] values ) {
+        if ( values.length != columns ) {
+            throw new IllegalArgumentException( "Expected " + columns + " values, got " + values.length );
+        }
+        DoubleBuffer b = buffer.duplicate();
+        b.position( index( row, 0 ) );
+        b.put( values );
+    }
+
+    @Override
+    public int size() {
+        return rows * columns;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetColumns( List<C> cols ) {
+        int[] colIndices = this.colIndicesOf( cols );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rows, colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        double[] row = new double[columns];
+        for ( int i = 0; i < rows; i++ ) {
+            read( index( i, 0 ), row );
+            for ( int k = 0; k < colIndices.length; k++ ) {
+                returnval.setQuick( i, k, row[colIndices[k]] );
+            }
+        }
+        return returnval;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        DenseDoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rowIndices.length, columns );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            returnval.setRow( k, this.getRow( rowIndices[k] ) );
+        }
+        return returnval;
+    }
+
+    @Override
+    public DoubleMatrix<C, R> transpose() {
+        DenseDoubleMatrix<C, R> result = new DenseDoubleMatrix<C, R>( columns, rows );
+        result.setRowNameIndex( this.getColNameIndex() );
+        result.setColumnNameIndex( this.getRowNameIndex() );
+        double[] row = new double[columns];
+        for ( int i = 0; i < rows; i++ ) {
+            read( index( i, 0 ), row );
+            result.setColumn( i, row );
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the column
+     */
+    @Override
+    public DoubleMatrix1D viewColumn( int column ) {
+        return new DenseDoubleMatrix1D( getColumn( column ) );
+    }
+
+    /**
+     * @return a copy of the row
+     */
+    @Override
+    public DoubleMatrix1D viewRow( int row ) {
+        return new DenseDoubleMatrix1D( getRow( row ) );
+    }
+
+    private int index( int row, int column ) {
+        if ( row < 0 || row >= rows || column < 0 || column >= columns ) {
+            throw new IndexOutOfBoundsException( "Index out of range: " + row + ", " + column + " for " + rows + " x "
+                    + columns );
+        }
+        return row * columns + column;
+    }
+
+    /**
+     * Bulk read starting at the given index, without changing the position of the shared buffer.
+     */
+    private void read( int index, double[] dest ) {
+        DoubleBuffer b = buffer.duplicate();
+        b.position( index );
+        b.get( dest );
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        double[] values = ( double[] ) in.readObject();
+        buffer = DoubleBuffer.wrap( values );
+    }
+
+    private void writeObject( ObjectOutputStream out ) throws IOException {
+        out.defaultWriteObject();
+        double[] values = new double[rows * columns];
+        DoubleBuffer b = buffer.duplicate();
+        b.position( 0 );
+        b.get( values );
+        out.writeObject( values );
+    }
+
+    private static int checkedSize( int rows, int columns ) {
+        if ( rows < 0 || columns < 0 ) {
+            throw new IllegalArgumentException( "Dimensions must be non-negative" );
+        }
+        long n = ( long ) rows * columns;
+        if ( n > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "Too many values for one buffer: " + rows + " x " + columns );
+        }
+        return ( int ) n;
+    }
+
+}
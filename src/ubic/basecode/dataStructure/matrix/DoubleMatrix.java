@@ -23,6 +23,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import cern.colt.function.DoubleFunction;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 
@@ -38,8 +39,38 @@ public abstract class DoubleMatrix<R, C> extends AbstractMatrix<R, C, Double> im
 
     public abstract double[][] asArray();
 
+    /**
+     * Replace each value with the result of applying the function to it. Subclasses implement this on their underlying
+     * storage.
+     * 
+     * @param function
+     */
+    public void assign( DoubleFunction function ) {
+        for ( int i = 0, n = rows(); i < n; i++ ) {
+            for ( int j = 0, m = columns(); j < m; j++ ) {
+                setQuick( i, j, function.apply( get( i, j ) ) );
+            }
+        }
+    }
+
     public abstract DoubleMatrix<R, C> copy();
 
+    /**
+     * Visit each value that is not missing (NaN), row by row.
+     * 
+     * @param consumer
+     */
+    public void forEachNonMissing( RowColValueConsumer consumer ) {
+        for ( int i = 0, n = rows(); i < n; i++ ) {
+            for ( int j = 0, m = columns(); j < m; j++ ) {
+                double v = get( i, j );
+                if ( !Double.isNaN( v ) ) {
+                    consumer.accept( i, j, v );
+                }
+            }
+        }
+    }
+
     /**
      * @param j
      * @param i
@@ -106,6 +137,47 @@ public abstract class DoubleMatrix<R, C> extends AbstractMatrix<R, C, Double> im
         this.set( getRowIndexByName( r ), getColIndexByName( c ), v );
     }
 
+    /**
+     * Replace the values in a column.
+     * 
+     * @param column
+     * @param values must be the same length as the column
+     */
+    public void setColumn( int column, double[] values ) {
+        if ( values.length != rows() ) {
+            throw new IllegalArgumentException( "Expected " + rows() + " values, got " + values.length );
+        }
+        for ( int i = 0; i < values.length; i++ ) {
+            setQuick( i, column, values[i] );
+        }
+    }
+
+    /**
+     * Set a value without boxing. Subclasses need not check the indices.
+     * 
+     * @param row
+     * @param column
+     * @param value
+     */
+    public void setQuick( int row, int column, double value ) {
+        set( row, column, Double.valueOf( value ) );
+    }
+
+    /**
+     * Replace the values in a row. The array is copied.
+     * 
+     * @param row
+     * @param values must be the same length as the row
+     */
+    public void setRow( int row, double[] values ) {
+        if ( values.length != columns() ) {
+            throw new IllegalArgumentException( "Expected " + columns() + " values, got " + values.length );
+        }
+        for ( int j = 0; j < values.length; j++ ) {
+            setQuick( row, j, values[j] );
+        }
+    }
+
     /**
      * @param i
      * @param descending
@@ -64,6 +64,23 @@ public class DoubleMatrixFactory {
         return new FastRowAccessDoubleMatrix<String, String>( rows, cols );
     }
 
+    /**
+     * @param T the data are copied
+     * @return a matrix stored in tiles, for fast access to both rows and columns
+     */
+    public static TiledDoubleMatrix<String, String> tiled( double T[][] ) {
+        return new TiledDoubleMatrix<String, String>( T );
+    }
+
+    /**
+     * @param rows
+     * @param cols
+     * @return an empty (all zero) matrix stored in tiles, for fast access to both rows and columns
+     */
+    public static TiledDoubleMatrix<String, String> tiled( int rows, int cols ) {
+        return new TiledDoubleMatrix<String, String>( rows, cols );
+    }
+
     public static SparseDoubleMatrix<String, String> sparse( double T[][] ) {
         return new SparseDoubleMatrix<String, String>( T );
     }
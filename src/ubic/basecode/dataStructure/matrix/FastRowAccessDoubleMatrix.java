@@ -20,6 +20,7 @@ package ubic.basecode.dataStructure.matrix;
 
 import java.util.List;
 
+import cern.colt.function.DoubleFunction;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 
@@ -75,6 +76,16 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         return result;
     }
 
+    @Override
+    public void assign( DoubleFunction function ) {
+        for ( DoubleArrayList row : data ) {
+            double[] elements = row.elements();
+            for ( int j = 0, m = row.size(); j < m; j++ ) {
+                elements[j] = function.apply( elements[j] );
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -95,20 +106,28 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     @Override
     public DoubleMatrix<R, C> copy() {
         DoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( this.rows(), this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
 
         for ( int i = 0; i < this.rows(); i++ ) {
-            returnval.setRowName( this.getRowName( i ), i );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( i == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
-                }
-                returnval.set( i, j, this.get( i, j ) );
-            }
+            returnval.setRow( i, this.getRow( i ) );
         }
         return returnval;
 
     }
 
+    @Override
+    public void forEachNonMissing( RowColValueConsumer consumer ) {
+        for ( int i = 0; i < data.length; i++ ) {
+            double[] elements = data[i].elements();
+            for ( int j = 0, m = data[i].size(); j < m; j++ ) {
+                if ( !Double.isNaN( elements[j] ) ) {
+                    consumer.accept( i, j, elements[j] );
+                }
+            }
+        }
+    }
+
     @Override
     public double get( int x, int y ) {
         assert data[x] != null;
@@ -128,21 +147,13 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
         super.checkColRange( startCol, endCol );
 
-        DoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
-        int k = 0;
-        for ( int i = startCol; i <= endCol; i++ ) {
-            C colName = this.getColName( i );
-            if ( colName != null ) {
-                returnval.setColumnName( colName, i );
-            }
-            for ( int j = 0, m = this.rows(); j < m; j++ ) {
-                if ( i == startCol ) {
-                    R rowName = this.getRowName( j );
-                    returnval.setRowName( rowName, j );
-                }
-                returnval.set( j, k, this.get( j, i ) );
-            }
-            k++;
+        FastRowAccessDoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( this.rows(),
+                1 + endCol - startCol );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        for ( int i = 0; i < this.rows(); i++ ) {
+            System.arraycopy( this.data[i].elements(), startCol, returnval.data[i].elements(), 0, 1 + endCol
+                    - startCol );
         }
         return returnval;
     }
@@ -206,23 +217,11 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         super.checkRowRange( startRow, endRow );
 
         DoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( endRow + 1 - startRow, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
         int k = 0;
         for ( int i = startRow; i <= endRow; i++ ) {
-            R rowName = this.getRowName( i );
-            if ( rowName != null ) {
-                returnval.setRowName( rowName, i );
-            }
-            for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( i == 0 ) {
-                    C colName = this.getColName( j );
-                    returnval.setColumnName( colName, j );
-                }
-                double value = this.get( i, j );
-                assert k < returnval.rows();
-                assert j < returnval.columns();
-                returnval.set( k, j, value );
-
-            }
+            returnval.setRow( k, this.getRow( i ) );
             k++;
         }
         return returnval;
@@ -247,6 +246,29 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         data[x].set( y, value );
     }
 
+    @Override
+    public void setColumn( int column, double[] values ) {
+        if ( values.length != rows() ) {
+            throw new IllegalArgumentException( "Expected " + rows() + " values, got " + values.length );
+        }
+        for ( int i = 0; i < values.length; i++ ) {
+            data[i].setQuick( column, values[i] );
+        }
+    }
+
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        data[row].setQuick( column, value );
+    }
+
+    @Override
+    public void setRow( int row, double[] values ) {
+        if ( values.length != data[row].size() ) {
+            throw new IllegalArgumentException( "Expected " + data[row].size() + " values, got " + values.length );
+        }
+        System.arraycopy( values, 0, data[row].elements(), 0, values.length );
+    }
+
     @Override
     public int size() {
         return this.data.length * this.data[0].size();
@@ -260,23 +282,15 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     @Override
     public DoubleMatrix<R, C> subsetColumns( List<C> columns ) {
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), columns.size() );
-        returnval.setRowNames( this.getRowNames() );
+        int[] colIndices = this.colIndicesOf( columns );
+        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
         for ( int i = 0; i < this.rows(); i++ ) {
-            int currentColumn = 0;
-            for ( C c : columns ) {
-                int j = this.getColIndexByName( c );
-
-                returnval.set( i, currentColumn, this.get( i, j ) );
-
-                if ( i == 0 ) {
-                    returnval.setColumnName( c, currentColumn );
-                }
-
-                currentColumn++;
-
+            double[] row = this.data[i].elements();
+            for ( int k = 0; k < colIndices.length; k++ ) {
+                returnval.setQuick( i, k, row[colIndices[k]] );
             }
-
         }
         return returnval;
     }
@@ -288,26 +302,13 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
      */
     @Override
     public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
-        DoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( rowNames.size(), this.columns() );
-
-        int currentRow = 0;
-        for ( R rowName : rowNames ) {
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        DoubleMatrix<R, C> returnval = new FastRowAccessDoubleMatrix<R, C>( rowIndices.length, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
 
-            if ( !this.containsRowName( rowName ) ) continue;
-
-            int i = this.getRowIndexByName( rowName );
-            returnval.setRowName( rowName, currentRow );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( currentRow == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
-                }
-                returnval.set( currentRow, j, this.get( i, j ) );
-            }
-            currentRow++;
-        }
-
-        if ( !returnval.getRowNames().containsAll( rowNames ) ) {
-            throw new IllegalArgumentException( "Invalid rows to select, some are not in the original matrix" );
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            returnval.setRow( k, this.getRow( rowIndices[k] ) );
         }
 
         return returnval;
@@ -321,9 +322,7 @@ public class FastRowAccessDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         result.setColumnNames( this.getRowNames() );
 
         for ( int i = 0; i < this.rows(); i++ ) {
-            for ( int j = 0; j < this.columns(); j++ ) {
-                result.set( j, i, this.get( i, j ) );
-            }
+            result.setColumn( i, this.getRow( i ) );
         }
 
         return result;
@@ -0,0 +1,904 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import no.uib.cipr.matrix.sparse.SparseVector;
+import ubic.basecode.util.ParallelUtils;
+import cern.colt.function.DoubleFunction;
+import cern.colt.list.DoubleArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * An immutable sparse matrix in compressed-row (CSR) form, as made by {@link CompressedSparseDoubleMatrix#freeze()}.
+ * Values are stored in three arrays (row pointers, column indices and values), so this uses much less memory than the
+ * mutable matrix and supports fast, multi-threaded kernels: matrix-vector and matrix-matrix products, row and column
+ * sums and thresholded iteration over the non-zero values. The kernels are run on row blocks with similar numbers of
+ * non-zero values, on the shared pool.
+ * <p>
+ * Column-wise operations ({@link #getColumn(int)}, {@link #multTranspose(double[])}, {@link #columnSums()}) are
+ * faster with a column index (CSC mirror), which doubles the memory used; see {@link #withColumnIndex()}.
+ * <p>
+ * The values can't be changed; the methods that would modify them throw UnsupportedOperationException. Names can still
+ * be set. Missing values (NaN) are stored like any other non-zero and propagate through the arithmetic.
+ *
+ * @author paul
+ */
+public class FrozenSparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
+
+    /**
+     * Builds a matrix from (row, column, value) entries, without going through a mutable matrix. The entries are kept
+     * in primitive arrays and sorted into compressed-row form when the matrix is built. If an entry is added more than
+     * once, the last value wins; zeros are dropped.
+     * <p>
+     * If the number of entries in each row is known in advance (for example, from a first pass over a file), give the
+     * counts to the constructor: the entries then go straight into their final place, so the builder needs only the
+     * memory of the finished matrix (12 bytes per entry), instead of about three times as much.
+     */
+    public static class Builder<R, C> {
+
+        private int[] columnIndices;
+
+        /*
+         * Next free slot of each row, when the counts are known.
+         */
+        private int[] fill;
+
+        private int maxColumn = -1;
+
+        private int maxRow = -1;
+
+        private int[] rowIndices;
+
+        private int[] rowPointers;
+
+        private int size = 0;
+
+        private double[] values;
+
+        /**
+         * A builder for entries in any order.
+         */
+        public Builder() {
+            this.rowIndices = new int[16];
+            this.columnIndices = new int[16];
+            this.values = new double[16];
+        }
+
+        /**
+         * A builder that puts the entries straight into their rows.
+         *
+         * @param rowCounts the (maximum) number of entries that will be added to each row.
+         */
+        public Builder( int[] rowCounts ) {
+            this.rowPointers = new int[rowCounts.length + 1];
+            for ( int i = 0; i < rowCounts.length; i++ ) {
+                rowPointers[i + 1] = rowPointers[i] + rowCounts[i];
+                if ( rowCounts[i] < 0 || rowPointers[i + 1] < rowPointers[i] ) {
+                    throw new IllegalArgumentException( "Invalid row counts" );
+                }
+            }
+            this.fill = Arrays.copyOf( rowPointers, rowCounts.length );
+            this.columnIndices = new int[rowPointers[rowCounts.length]];
+            this.values = new double[columnIndices.length];
+        }
+
+        /**
+         * @param row
+         * @param column
+         * @param value
+         * @throws IllegalArgumentException if the row is full (when the row counts were given).
+         */
+        public void add( int row, int column, double value ) {
+            if ( row < 0 || column < 0 ) throw new IndexOutOfBoundsException( "Negative index" );
+            if ( rowPointers != null ) {
+                if ( row >= fill.length || fill[row] == rowPointers[row + 1] ) {
+                    throw new IllegalArgumentException( "More entries than expected in row " + row );
+                }
+                columnIndices[fill[row]] = column;
+                values[fill[row]++] = value;
+            } else {
+                if ( size == values.length ) {
+                    int capacity = ( int ) Math.min( Integer.MAX_VALUE - 8, size + ( size >> 1 ) + 16L );
+                    if ( capacity <= size ) throw new IllegalStateException( "Too many entries" );
+                    rowIndices = Arrays.copyOf( rowIndices, capacity );
+                    columnIndices = Arrays.copyOf( columnIndices, capacity );
+                    values = Arrays.copyOf( values, capacity );
+                }
+                rowIndices[size] = row;
+                columnIndices[size] = column;
+                values[size++] = value;
+            }
+            if ( row > maxRow ) maxRow = row;
+            if ( column > maxColumn ) maxColumn = column;
+        }
+
+        /**
+         * Build the matrix; the builder can't be used afterwards.
+         *
+         * @param rows
+         * @param columns
+         * @return the matrix, without names.
+         * @throws IllegalArgumentException if an entry is outside the matrix.
+         */
+        public FrozenSparseDoubleMatrix<R, C> build( int rows, int columns ) {
+            if ( maxRow >= rows || maxColumn >= columns ) {
+                throw new IllegalArgumentException( "Entries up to (" + maxRow + ", " + maxColumn
+                        + ") don't fit in a " + rows + " x " + columns + " matrix" );
+            }
+            if ( rowPointers == null ) {
+                toRows( rows );
+            } else if ( rows != fill.length ) {
+                // the builder was sized for a different number of rows.
+                int[] ptr = Arrays.copyOf( rowPointers, rows + 1 );
+                int[] ends = Arrays.copyOf( fill, rows );
+                for ( int i = fill.length; i < rows; i++ ) {
+                    ptr[i + 1] = ptr[i];
+                    ends[i] = ptr[i];
+                }
+                rowPointers = ptr;
+                fill = ends;
+            }
+            int n = compact();
+            FrozenSparseDoubleMatrix<R, C> result = new FrozenSparseDoubleMatrix<R, C>( rows, columns, rowPointers,
+                    n == columnIndices.length ? columnIndices : Arrays.copyOf( columnIndices, n ),
+                    n == values.length ? values : Arrays.copyOf( values, n ) );
+            rowPointers = null;
+            fill = null;
+            columnIndices = null;
+            values = null;
+            return result;
+        }
+
+        /**
+         * Sort the columns of each row, keep the last of repeated entries and drop zeros, moving the rows down to close
+         * the gaps.
+         *
+         * @return the number of entries kept.
+         */
+        private int compact() {
+            int rows = fill.length;
+            long[] keys = new long[0];
+            int[] scratchColumns = new int[0];
+            double[] scratchValues = new double[0];
+            int w = 0;
+            for ( int i = 0; i < rows; i++ ) {
+                int start = rowPointers[i];
+                int end = fill[i];
+                rowPointers[i] = w;
+
+                boolean sorted = true;
+                for ( int k = start + 1; k < end && sorted; k++ ) {
+                    sorted = columnIndices[k] > columnIndices[k - 1];
+                }
+                if ( sorted ) {
+                    for ( int k = start; k < end; k++ ) {
+                        if ( values[k] == 0.0 ) continue;
+                        columnIndices[w] = columnIndices[k];
+                        values[w++] = values[k];
+                    }
+                    continue;
+                }
+
+                // stable sort by column, by sorting (column, position) pairs.
+                int length = end - start;
+                if ( keys.length < length ) {
+                    keys = new long[length];
+                    scratchColumns = new int[length];
+                    scratchValues = new double[length];
+                }
+                for ( int k = 0; k < length; k++ ) {
+                    keys[k] = ( long ) columnIndices[start + k] << 32 | k;
+                }
+                Arrays.sort( keys, 0, length );
+                int m = 0;
+                for ( int k = 0; k < length; k++ ) {
+                    if ( k + 1 < length && keys[k + 1] >>> 32 == keys[k] >>> 32 ) continue; // a later one wins.
+                    int from = start + ( int ) keys[k];
+                    if ( values[from] == 0.0 ) continue;
+                    scratchColumns[m] = columnIndices[from];
+                    scratchValues[m++] = values[from];
+                }
+                System.arraycopy( scratchColumns, 0, columnIndices, w, m );
+                System.arraycopy( scratchValues, 0, values, w, m );
+                w += m;
+            }
+            rowPointers[rows] = w;
+            return w;
+        }
+
+        /**
+         * Move the entries into rows (a counting sort, which keeps the order in which they were added).
+         */
+        private void toRows( int rows ) {
+            int[] ptr = new int[rows + 1];
+            for ( int k = 0; k < size; k++ ) {
+                ptr[rowIndices[k] + 1]++;
+            }
+            for ( int i = 0; i < rows; i++ ) {
+                ptr[i + 1] += ptr[i];
+            }
+            int[] next = Arrays.copyOf( ptr, rows );
+            int[] cols = new int[size];
+            double[] vals = new double[size];
+            for ( int k = 0; k < size; k++ ) {
+                int slot = next[rowIndices[k]]++;
+                cols[slot] = columnIndices[k];
+                vals[slot] = values[k];
+            }
+            rowIndices = null;
+            rowPointers = ptr;
+            fill = next;
+            columnIndices = cols;
+            values = vals;
+        }
+    }
+
+    /**
+     * Work on a range of rows.
+     */
+    private interface RowKernel {
+        void apply( int startRow, int endRow );
+    }
+
+    /**
+     * Runs a kernel on a range of row blocks, splitting in half until there is one block.
+     */
+    private static final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final int from;
+        private final RowKernel kernel;
+        private final int to;
+
+        RowTask( RowKernel kernel, int[] bounds, int from, int to ) {
+            this.kernel = kernel;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from == 1 ) {
+                kernel.apply( bounds[from], bounds[to] );
+                return;
+            }
+            int mid = ( from + to ) >>> 1;
+            invokeAll( new RowTask( kernel, bounds, from, mid ), new RowTask( kernel, bounds, mid, to ) );
+        }
+    }
+
+    /*
+     * Smallest number of non-zeros worth handing to another thread.
+     */
+    private static final int MIN_BLOCK_NONZEROS = 1 << 14;
+
+    private static final long serialVersionUID = 1L;
+
+    private final int columns;
+
+    private final int[] columnIndices;
+
+    /*
+     * The transpose, in CSR form; that is, this matrix in CSC form.
+     */
+    private transient volatile FrozenSparseDoubleMatrix<C, R> columnIndex;
+
+    private final int[] rowPointers;
+
+    private final int rows;
+
+    /*
+     * Boundaries of the row blocks used by the kernels.
+     */
+    private transient volatile int[] rowBlocks;
+
+    private final double[] values;
+
+    /**
+     * @param rows
+     * @param columns
+     * @param rowPointers length rows + 1; the values for row i are at rowPointers[i] .. rowPointers[i + 1] - 1
+     * @param columnIndices sorted within each row
+     * @param values
+     */
+    FrozenSparseDoubleMatrix( int rows, int columns, int[] rowPointers, int[] columnIndices, double[] values ) {
+        super();
+        assert rowPointers.length == rows + 1;
+        assert columnIndices.length == values.length;
+        this.rows = rows;
+        this.columns = columns;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    @Override
+    public double[][] asArray() {
+        double[][] result = new double[rows][];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = getRow( i );
+        }
+        return result;
+    }
+
+    /**
+     * Not supported, the values can't be changed.
+     */
+    @Override
+    public void assign( DoubleFunction function ) {
+        throw new UnsupportedOperationException( "Matrix is immutable" );
+    }
+
+    /**
+     * @return the number of stored (non-zero) values.
+     */
+    public int cardinality() {
+        return values.length;
+    }
+
+    /**
+     * @return the sum of each column.
+     */
+    public double[] columnSums() {
+        double[] ones = new double[rows];
+        Arrays.fill( ones, 1.0 );
+        return multTranspose( ones );
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * @return a mutable copy.
+     */
+    @Override
+    public DoubleMatrix<R, C> copy() {
+        return thaw();
+    }
+
+    /**
+     * Visit every value that is not missing, including the zeros, row by row.
+     */
+    @Override
+    public void forEachNonMissing( RowColValueConsumer consumer ) {
+        for ( int i = 0; i < rows; i++ ) {
+            int j = 0;
+            for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                for ( ; j < columnIndices[k]; j++ ) {
+                    consumer.accept( i, j, 0.0 );
+                }
+                if ( !Double.isNaN( values[k] ) ) {
+                    consumer.accept( i, j, values[k] );
+                }
+                j++;
+            }
+            for ( ; j < columns; j++ ) {
+                consumer.accept( i, j, 0.0 );
+            }
+        }
+    }
+
+    /**
+     * Visit the stored values whose absolute value is at least the threshold (so missing values are skipped). The
+     * rows are processed in parallel, so the consumer must be thread-safe; within a row, values are visited in column
+     * order.
+     *
+     * @param threshold
+     * @param consumer
+     */
+    public void forEachNonZero( final double threshold, final RowColValueConsumer consumer ) {
+        forEachRowBlock( new RowKernel() {
+            @Override
+            public void apply( int startRow, int endRow ) {
+                for ( int i = startRow; i < endRow; i++ ) {
+                    for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                        if ( Math.abs( values[k] ) >= threshold ) {
+                            consumer.accept( i, columnIndices[k], values[k] );
+                        }
+                    }
+                }
+            }
+        } );
+    }
+
+    @Override
+    public double get( int row, int column ) {
+        int k = find( row, column );
+        return k < 0 ? 0.0 : values[k];
+    }
+
+    @Override
+    public Double[] getColObj( int col ) {
+        double[] column = getColumn( col );
+        Double[] result = new Double[rows];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = column[i];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
+        super.checkColRange( startCol, endCol );
+        int[] columnMap = new int[columns];
+        Arrays.fill( columnMap, -1 );
+        for ( int j = startCol; j <= endCol; j++ ) {
+            columnMap[j] = j - startCol;
+        }
+        FrozenSparseDoubleMatrix<R, C> returnval = selectColumns( columnMap, 1 + endCol - startCol );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        return returnval;
+    }
+
+    @Override
+    public double[] getColumn( int col ) {
+        FrozenSparseDoubleMatrix<C, R> t = columnIndex;
+        if ( t != null ) {
+            return t.getRow( col );
+        }
+        double[] result = new double[rows];
+        for ( int i = 0; i < rows; i++ ) {
+            int k = find( i, col );
+            if ( k >= 0 ) result[i] = values[k];
+        }
+        return result;
+    }
+
+    @Override
+    public Double getObject( int row, int col ) {
+        return get( row, col );
+    }
+
+    @Override
+    public double[] getRow( int row ) {
+        double[] result = new double[columns];
+        for ( int k = rowPointers[row]; k < rowPointers[row + 1]; k++ ) {
+            result[columnIndices[k]] = values[k];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleArrayList getRowArrayList( int i ) {
+        return new DoubleArrayList( getRow( i ) );
+    }
+
+    @Override
+    public Double[] getRowObj( int row ) {
+        double[] r = getRow( row );
+        Double[] result = new Double[columns];
+        for ( int j = 0; j < columns; j++ ) {
+            result[j] = r[j];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
+        super.checkRowRange( startRow, endRow );
+        int start = rowPointers[startRow];
+        int end = rowPointers[endRow + 1];
+        int[] ptr = new int[endRow - startRow + 2];
+        for ( int i = startRow; i <= endRow + 1; i++ ) {
+            ptr[i - startRow] = rowPointers[i] - start;
+        }
+        FrozenSparseDoubleMatrix<R, C> returnval = new FrozenSparseDoubleMatrix<R, C>( endRow - startRow + 1,
+                columns, ptr, Arrays.copyOfRange( columnIndices, start, end ), Arrays.copyOfRange( values, start,
+                        end ) );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        return returnval;
+    }
+
+    /**
+     * @return true if the column index has been built.
+     */
+    public boolean hasColumnIndex() {
+        return columnIndex != null;
+    }
+
+    @Override
+    public boolean isMissing( int i, int j ) {
+        return Double.isNaN( get( i, j ) );
+    }
+
+    /**
+     * Sparse-dense matrix-vector product.
+     *
+     * @param x vector with one value per column
+     * @return this * x, one value per row
+     */
+    public double[] mult( final double[] x ) {
+        if ( x.length != columns ) {
+            throw new IllegalArgumentException( "Expected " + columns + " values, got " + x.length );
+        }
+        final double[] y = new double[rows];
+        forEachRowBlock( new RowKernel() {
+            @Override
+            public void apply( int startRow, int endRow ) {
+                for ( int i = startRow; i < endRow; i++ ) {
+                    double s = 0.0;
+                    for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                        s += values[k] * x[columnIndices[k]];
+                    }
+                    y[i] = s;
+                }
+            }
+        } );
+        return y;
+    }
+
+    /**
+     * Sparse-dense matrix-matrix product.
+     *
+     * @param b dense matrix, as an array of rows, with one row per column of this
+     * @return this * b, as an array of rows
+     */
+    public double[][] mult( final double[][] b ) {
+        if ( b.length != columns ) {
+            throw new IllegalArgumentException( "Nonconformant matrices: " + b.length + " != " + columns );
+        }
+        final int p = b.length == 0 ? 0 : b[0].length;
+        final double[][] result = new double[rows][p];
+        forEachRowBlock( new RowKernel() {
+            @Override
+            public void apply( int startRow, int endRow ) {
+                for ( int i = startRow; i < endRow; i++ ) {
+                    double[] ri = result[i];
+                    for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                        double v = values[k];
+                        double[] bj = b[columnIndices[k]];
+                        for ( int m = 0; m < p; m++ ) {
+                            ri[m] += v * bj[m];
+                        }
+                    }
+                }
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Product of the transpose of this matrix with a vector (equivalently, x * this). Uses the column index if it has
+     * been built; otherwise each thread accumulates into its own array.
+     *
+     * @param x vector with one value per row
+     * @return one value per column
+     */
+    public double[] multTranspose( final double[] x ) {
+        if ( x.length != rows ) {
+            throw new IllegalArgumentException( "Expected " + rows + " values, got " + x.length );
+        }
+        FrozenSparseDoubleMatrix<C, R> t = columnIndex;
+        if ( t != null ) {
+            return t.mult( x );
+        }
+
+        int[] blocks = rowBlocks();
+        int nChunks = Math.min( ParallelUtils.getParallelism(), blocks.length - 1 );
+        final int[] chunks = new int[nChunks + 1];
+        for ( int c = 0; c <= nChunks; c++ ) {
+            chunks[c] = blocks[( int ) ( ( long ) c * ( blocks.length - 1 ) / nChunks )];
+        }
+        final double[][] partials = new double[nChunks][];
+        RowKernel kernel = new RowKernel() {
+            @Override
+            public void apply( int startRow, int endRow ) {
+                double[] y = new double[columns];
+                for ( int i = startRow; i < endRow; i++ ) {
+                    double xi = x[i];
+                    for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                        y[columnIndices[k]] += values[k] * xi;
+                    }
+                }
+                partials[Arrays.binarySearch( chunks, 0, chunks.length - 1, startRow )] = y;
+            }
+        };
+        if ( nChunks == 1 ) {
+            kernel.apply( 0, rows );
+        } else {
+            ParallelUtils.getPool().invoke( new RowTask( kernel, chunks, 0, nChunks ) );
+        }
+
+        double[] result = partials[0];
+        for ( int c = 1; c < nChunks; c++ ) {
+            for ( int j = 0; j < columns; j++ ) {
+                result[j] += partials[c][j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the sum of each row.
+     */
+    public double[] rowSums() {
+        final double[] result = new double[rows];
+        forEachRowBlock( new RowKernel() {
+            @Override
+            public void apply( int startRow, int endRow ) {
+                for ( int i = startRow; i < endRow; i++ ) {
+                    double s = 0.0;
+                    for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                        s += values[k];
+                    }
+                    result[i] = s;
+                }
+            }
+        } );
+        return result;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Not supported, the values can't be changed.
+     */
+    @Override
+    public void set( int row, int column, Double value ) {
+        throw new UnsupportedOperationException( "Matrix is immutable" );
+    }
+
+    /**
+     * Not supported, the values can't be changed.
+     */
+    @Override
+    public void setColumn( int column, double[] v ) {
+        throw new UnsupportedOperationException( "Matrix is immutable" );
+    }
+
+    /**
+     * Not supported, the values can't be changed.
+     */
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        throw new UnsupportedOperationException( "Matrix is immutable" );
+    }
+
+    /**
+     * Not supported, the values can't be changed.
+     */
+    @Override
+    public void setRow( int row, double[] v ) {
+        throw new UnsupportedOperationException( "Matrix is immutable" );
+    }
+
+    @Override
+    public int size() {
+        return rows * columns;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetColumns( List<C> cols ) {
+        int[] colIndices = this.colIndicesOf( cols );
+        int[] columnMap = new int[columns];
+        Arrays.fill( columnMap, -1 );
+        for ( int k = 0; k < colIndices.length; k++ ) {
+            columnMap[colIndices[k]] = k;
+        }
+
+        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( rows, colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        for ( int i = 0; i < rows; i++ ) {
+            for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                int j = columnMap[columnIndices[k]];
+                if ( j >= 0 ) {
+                    returnval.setQuick( i, j, values[k] );
+                }
+            }
+        }
+        return returnval;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        int[] ptr = new int[rowIndices.length + 1];
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            int i = rowIndices[k];
+            ptr[k + 1] = ptr[k] + rowPointers[i + 1] - rowPointers[i];
+        }
+        int[] idx = new int[ptr[rowIndices.length]];
+        double[] vals = new double[idx.length];
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            int i = rowIndices[k];
+            System.arraycopy( columnIndices, rowPointers[i], idx, ptr[k], ptr[k + 1] - ptr[k] );
+            System.arraycopy( values, rowPointers[i], vals, ptr[k], ptr[k + 1] - ptr[k] );
+        }
+
+        FrozenSparseDoubleMatrix<R, C> returnval = new FrozenSparseDoubleMatrix<R, C>( rowIndices.length, columns,
+                ptr, idx, vals );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        return returnval;
+    }
+
+    /**
+     * @return a mutable copy of this.
+     */
+    public CompressedSparseDoubleMatrix<R, C> thaw() {
+        CompressedSparseDoubleMatrix<R, C> returnval = new CompressedSparseDoubleMatrix<R, C>( rows, columns );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        for ( int i = 0; i < rows; i++ ) {
+            int n = rowPointers[i + 1] - rowPointers[i];
+            if ( n == 0 ) continue;
+            returnval.setRowVector( i, new SparseVector( columns, Arrays.copyOfRange( columnIndices,
+                    rowPointers[i], rowPointers[i + 1] ), Arrays.copyOfRange( values, rowPointers[i],
+                    rowPointers[i + 1] ), false ) );
+        }
+        return returnval;
+    }
+
+    /**
+     * The transpose shares its storage with the column index of this matrix, which is built if necessary.
+     */
+    @Override
+    public DoubleMatrix<C, R> transpose() {
+        FrozenSparseDoubleMatrix<C, R> t = buildColumnIndex();
+        FrozenSparseDoubleMatrix<C, R> returnval = new FrozenSparseDoubleMatrix<C, R>( columns, rows, t.rowPointers,
+                t.columnIndices, t.values );
+        returnval.columnIndex = this;
+        returnval.setRowNameIndex( this.getColNameIndex() );
+        returnval.setColumnNameIndex( this.getRowNameIndex() );
+        return returnval;
+    }
+
+    @Override
+    public DoubleMatrix1D viewColumn( int column ) {
+        return new DenseDoubleMatrix1D( getColumn( column ) );
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow( int row ) {
+        return new DenseDoubleMatrix1D( getRow( row ) );
+    }
+
+    /**
+     * Build the column index, if it hasn't been already.
+     *
+     * @return this
+     */
+    public FrozenSparseDoubleMatrix<R, C> withColumnIndex() {
+        buildColumnIndex();
+        return this;
+    }
+
+    private FrozenSparseDoubleMatrix<C, R> buildColumnIndex() {
+        FrozenSparseDoubleMatrix<C, R> t = columnIndex;
+        if ( t != null ) return t;
+        synchronized ( this ) {
+            if ( columnIndex != null ) return columnIndex;
+
+            int[] ptr = new int[columns + 1];
+            for ( int j : columnIndices ) {
+                ptr[j + 1]++;
+            }
+            for ( int j = 0; j < columns; j++ ) {
+                ptr[j + 1] += ptr[j];
+            }
+            int[] next = Arrays.copyOf( ptr, columns );
+            int[] idx = new int[values.length];
+            double[] vals = new double[values.length];
+            for ( int i = 0; i < rows; i++ ) {
+                for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                    int pos = next[columnIndices[k]]++;
+                    idx[pos] = i;
+                    vals[pos] = values[k];
+                }
+            }
+            t = new FrozenSparseDoubleMatrix<C, R>( columns, rows, ptr, idx, vals );
+            t.columnIndex = this;
+            columnIndex = t;
+            return t;
+        }
+    }
+
+    /**
+     * @return position of the value in the arrays, or a negative number if it is not stored.
+     */
+    private int find( int row, int column ) {
+        return Arrays.binarySearch( columnIndices, rowPointers[row], rowPointers[row + 1], column );
+    }
+
+    /**
+     * Run the kernel over all the rows, in parallel if there is enough work.
+     */
+    private void forEachRowBlock( RowKernel kernel ) {
+        int[] blocks = rowBlocks();
+        if ( blocks.length <= 2 ) {
+            kernel.apply( 0, rows );
+        } else {
+            ParallelUtils.getPool().invoke( new RowTask( kernel, blocks, 0, blocks.length - 1 ) );
+        }
+    }
+
+    /**
+     * @return boundaries of blocks of rows with roughly equal numbers of non-zeros; the first is 0 and the last is
+     *         the number of rows.
+     */
+    private int[] rowBlocks() {
+        int[] b = rowBlocks;
+        if ( b != null ) return b;
+
+        long target = Math.max( MIN_BLOCK_NONZEROS, values.length / ( 4L * ParallelUtils.getParallelism() ) );
+        int[] bounds = new int[rows + 1];
+        int n = 1;
+        int start = 0;
+        for ( int i = 0; i < rows; i++ ) {
+            if ( rowPointers[i + 1] - rowPointers[start] >= target ) {
+                bounds[n++] = i + 1;
+                start = i + 1;
+            }
+        }
+        if ( n == 1 ) {
+            // one block, which is empty if there are no rows.
+            b = new int[] { 0, rows };
+        } else {
+            if ( bounds[n - 1] != rows ) {
+                bounds[n++] = rows;
+            }
+            b = Arrays.copyOf( bounds, n );
+        }
+        rowBlocks = b;
+        return b;
+    }
+
+    /**
+     * @param columnMap new position of each column, or -1 to drop it
+     * @param newColumns
+     */
+    private FrozenSparseDoubleMatrix<R, C> selectColumns( int[] columnMap, int newColumns ) {
+        int[] ptr = new int[rows + 1];
+        for ( int i = 0; i < rows; i++ ) {
+            int n = 0;
+            for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                if ( columnMap[columnIndices[k]] >= 0 ) n++;
+            }
+            ptr[i + 1] = ptr[i] + n;
+        }
+        int[] idx = new int[ptr[rows]];
+        double[] vals = new double[idx.length];
+        int pos = 0;
+        for ( int i = 0; i < rows; i++ ) {
+            for ( int k = rowPointers[i]; k < rowPointers[i + 1]; k++ ) {
+                int j = columnMap[columnIndices[k]];
+                if ( j >= 0 ) {
+                    idx[pos] = j;
+                    vals[pos] = values[k];
+                    pos++;
+                }
+            }
+        }
+        return new FrozenSparseDoubleMatrix<R, C>( rows, newColumns, ptr, idx, vals );
+    }
+}
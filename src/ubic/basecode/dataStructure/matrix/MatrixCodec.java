@@ -0,0 +1,600 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import no.uib.cipr.matrix.sparse.SparseVector;
+import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
+
+/**
+ * Compact binary format for the dense, sparse, string and object matrices, much faster than Java serialization.
+ * <p>
+ * A file consists of an eight byte header (magic number, format version, matrix type and flags) followed by the
+ * payload: the dimensions, the row and column names (each stored once) and the values. Numbers are written as
+ * little-endian blocks; double matrices are written row by row, {@link SparseDoubleMatrix} as (row, column, value)
+ * triples and {@link CompressedSparseDoubleMatrix} row by row in compressed-row form. Strings are UTF-8. Names that are
+ * not all Strings, and the values of an {@link ObjectMatrixImpl}, fall back on Java serialization.
+ * <p>
+ * The payload can optionally be compressed with a fast setting of deflate (LZ77); this usually pays off for sparse or
+ * low-precision data, and for files that go over the network.
+ *
+ * @author paul
+ */
+public class MatrixCodec {
+
+    /**
+     * Buffered reads of little-endian primitives from a channel.
+     */
+    private static final class In {
+        private final ByteBuffer buf = ByteBuffer.allocate( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+        private final ReadableByteChannel ch;
+
+        In( ReadableByteChannel ch ) {
+            this.ch = ch;
+            buf.limit( 0 );
+        }
+
+        byte getByte() throws IOException {
+            require( 1, 1 );
+            return buf.get();
+        }
+
+        void getBytes( byte[] a ) throws IOException {
+            int off = 0;
+            while ( off < a.length ) {
+                require( 1, a.length - off );
+                int n = Math.min( a.length - off, buf.remaining() );
+                buf.get( a, off, n );
+                off += n;
+            }
+        }
+
+        void getDoubles( double[] a, int off, int len ) throws IOException {
+            while ( len > 0 ) {
+                require( 8, 8L * len );
+                int n = Math.min( len, buf.remaining() / 8 );
+                buf.asDoubleBuffer().get( a, off, n );
+                buf.position( buf.position() + n * 8 );
+                off += n;
+                len -= n;
+            }
+        }
+
+        int getInt() throws IOException {
+            require( 4, 4 );
+            return buf.getInt();
+        }
+
+        void getInts( int[] a, int off, int len ) throws IOException {
+            while ( len > 0 ) {
+                require( 4, 4L * len );
+                int n = Math.min( len, buf.remaining() / 4 );
+                buf.asIntBuffer().get( a, off, n );
+                buf.position( buf.position() + n * 4 );
+                off += n;
+                len -= n;
+            }
+        }
+
+        String getString() throws IOException {
+            int len = getInt();
+            if ( len < 0 ) return null;
+            byte[] b = new byte[len];
+            getBytes( b );
+            return new String( b, UTF8 );
+        }
+
+        /**
+         * Make sure at least n bytes are buffered, reading no more than the caller is going to use, so that nothing
+         * after the matrix is taken from the stream.
+         *
+         * @param n bytes needed now
+         * @param wanted bytes the caller will read in all, at least n
+         */
+        private void require( int n, long wanted ) throws IOException {
+            if ( buf.remaining() >= n ) return;
+            buf.compact();
+            buf.limit( ( int ) Math.min( buf.capacity(), Math.max( n, wanted ) ) );
+            while ( buf.position() < n ) {
+                if ( ch.read( buf ) < 0 ) {
+                    throw new EOFException( "Unexpected end of matrix data" );
+                }
+            }
+            buf.flip();
+        }
+    }
+
+    /**
+     * Buffered writes of little-endian primitives to a channel.
+     */
+    private static final class Out {
+        private final ByteBuffer buf = ByteBuffer.allocate( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+        private final WritableByteChannel ch;
+
+        Out( WritableByteChannel ch ) {
+            this.ch = ch;
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while ( buf.hasRemaining() ) {
+                ch.write( buf );
+            }
+            buf.clear();
+        }
+
+        void putByte( byte b ) throws IOException {
+            ensure( 1 );
+            buf.put( b );
+        }
+
+        void putBytes( byte[] a ) throws IOException {
+            int off = 0;
+            while ( off < a.length ) {
+                ensure( 1 );
+                int n = Math.min( a.length - off, buf.remaining() );
+                buf.put( a, off, n );
+                off += n;
+            }
+        }
+
+        void putDoubles( double[] a, int off, int len ) throws IOException {
+            while ( len > 0 ) {
+                ensure( 8 );
+                int n = Math.min( len, buf.remaining() / 8 );
+                buf.asDoubleBuffer().put( a, off, n );
+                buf.position( buf.position() + n * 8 );
+                off += n;
+                len -= n;
+            }
+        }
+
+        void putInt( int i ) throws IOException {
+            ensure( 4 );
+            buf.putInt( i );
+        }
+
+        void putInts( int[] a, int off, int len ) throws IOException {
+            while ( len > 0 ) {
+                ensure( 4 );
+                int n = Math.min( len, buf.remaining() / 4 );
+                buf.asIntBuffer().put( a, off, n );
+                buf.position( buf.position() + n * 4 );
+                off += n;
+                len -= n;
+            }
+        }
+
+        void putString( String s ) throws IOException {
+            if ( s == null ) {
+                putInt( -1 );
+                return;
+            }
+            byte[] b = s.getBytes( UTF8 );
+            putInt( b.length );
+            putBytes( b );
+        }
+
+        private void ensure( int n ) throws IOException {
+            if ( buf.remaining() < n ) flush();
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte FLAG_COMPRESSED = 1;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x42434D58; // "BCMX"
+
+    private static final byte NAMES_NONE = 0;
+    private static final byte NAMES_SERIALIZED = 2;
+    private static final byte NAMES_STRING = 1;
+
+    private static final byte TYPE_COMPRESSED_SPARSE = 3;
+    private static final byte TYPE_DENSE = 1;
+    private static final byte TYPE_FAST_ROW = 2;
+    private static final byte TYPE_OBJECT = 6;
+    private static final byte TYPE_SPARSE = 4;
+    private static final byte TYPE_STRING = 5;
+
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * @param file written by one of the write methods.
+     * @return a matrix of the same type as was written.
+     * @throws IOException
+     */
+    public static <R, C> Matrix2D<R, C, ?> read( File file ) throws IOException {
+        try (InputStream is = new FileInputStream( file )) {
+            return read( is );
+        }
+    }
+
+    /**
+     * Read a matrix. The stream is not closed, and if the matrix was written uncompressed, it is left positioned just
+     * after the matrix, so more data can follow it. A compressed payload is inflated with buffering, so the stream may
+     * be read past the end of the matrix.
+     *
+     * @param is
+     * @return a matrix of the same type as was written.
+     * @throws IOException if the data are not in this format, or are truncated.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R, C> Matrix2D<R, C, ?> read( InputStream is ) throws IOException {
+        byte[] header = new byte[8];
+        int off = 0;
+        while ( off < header.length ) {
+            int n = is.read( header, off, header.length - off );
+            if ( n < 0 ) throw new EOFException( "Unexpected end of matrix data" );
+            off += n;
+        }
+        ByteBuffer hb = ByteBuffer.wrap( header ).order( ByteOrder.LITTLE_ENDIAN );
+        if ( hb.getInt() != MAGIC ) {
+            throw new IOException( "Not a matrix file" );
+        }
+        byte version = hb.get();
+        if ( version != FORMAT_VERSION ) {
+            throw new IOException( "Unsupported matrix file version: " + version );
+        }
+        byte type = hb.get();
+        byte flags = hb.get();
+
+        Inflater inflater = null;
+        InputStream payload = is;
+        if ( ( flags & FLAG_COMPRESSED ) != 0 ) {
+            inflater = new Inflater();
+            payload = new InflaterInputStream( is, inflater, BUFFER_SIZE );
+        }
+
+        try {
+            In in = new In( Channels.newChannel( payload ) );
+            int rows = in.getInt();
+            int columns = in.getInt();
+            List<Object> rowNames = readNames( in );
+            List<Object> colNames = readNames( in );
+
+            AbstractMatrix<Object, Object, ?> result;
+            switch ( type ) {
+                case TYPE_DENSE:
+                case TYPE_FAST_ROW:
+                    double[][] data = new double[rows][columns];
+                    for ( int i = 0; i < rows; i++ ) {
+                        in.getDoubles( data[i], 0, columns );
+                    }
+                    result = type == TYPE_DENSE ? new DenseDoubleMatrix<Object, Object>( data )
+                            : new FastRowAccessDoubleMatrix<Object, Object>( data );
+                    break;
+                case TYPE_SPARSE:
+                    result = readSparse( in, rows, columns );
+                    break;
+                case TYPE_COMPRESSED_SPARSE:
+                    result = readCompressedSparse( in, rows, columns );
+                    break;
+                case TYPE_STRING:
+                    StringMatrix<Object, Object> sm = new DictionaryStringMatrix<Object, Object>( rows, columns );
+                    for ( int i = 0; i < rows; i++ ) {
+                        for ( int j = 0; j < columns; j++ ) {
+                            sm.set( i, j, in.getString() );
+                        }
+                    }
+                    result = sm;
+                    break;
+                case TYPE_OBJECT:
+                    result = readObjects( in, rows, columns );
+                    break;
+                default:
+                    throw new IOException( "Unknown matrix type: " + type );
+            }
+
+            if ( !rowNames.isEmpty() ) result.setRowNames( rowNames );
+            if ( !colNames.isEmpty() ) result.setColumnNames( colNames );
+            return ( Matrix2D<R, C, ?> ) result;
+        } finally {
+            if ( inflater != null ) inflater.end();
+        }
+    }
+
+    /**
+     * @param file
+     * @return the matrix
+     * @throws IOException if the file does not hold a DoubleMatrix.
+     */
+    @SuppressWarnings("unchecked")
+    public static <R, C> DoubleMatrix<R, C> readDoubleMatrix( File file ) throws IOException {
+        Matrix2D<R, C, ?> m = read( file );
+        if ( !( m instanceof DoubleMatrix ) ) {
+            throw new IOException( "File does not contain a double matrix: " + file );
+        }
+        return ( DoubleMatrix<R, C> ) m;
+    }
+
+    /**
+     * @param matrix
+     * @param file
+     * @param compress if true, the payload is deflated.
+     * @throws IOException
+     */
+    public static void write( Matrix2D<?, ?, ?> matrix, File file, boolean compress ) throws IOException {
+        try (OutputStream os = new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE )) {
+            write( matrix, os, compress );
+        }
+    }
+
+    /**
+     * Write a matrix. The stream is flushed but not closed.
+     *
+     * @param matrix a DenseDoubleMatrix, FastRowAccessDoubleMatrix, SparseDoubleMatrix, CompressedSparseDoubleMatrix,
+     *        StringMatrix or ObjectMatrixImpl.
+     * @param os
+     * @param compress if true, the payload is deflated.
+     * @throws IOException
+     */
+    public static void write( Matrix2D<?, ?, ?> matrix, OutputStream os, boolean compress ) throws IOException {
+        byte type = typeOf( matrix );
+
+        ByteBuffer hb = ByteBuffer.allocate( 8 ).order( ByteOrder.LITTLE_ENDIAN );
+        hb.putInt( MAGIC );
+        hb.put( FORMAT_VERSION );
+        hb.put( type );
+        hb.put( compress ? FLAG_COMPRESSED : 0 );
+        hb.put( ( byte ) 0 );
+        os.write( hb.array() );
+
+        Deflater deflater = null;
+        DeflaterOutputStream dos = null;
+        OutputStream payload = os;
+        if ( compress ) {
+            deflater = new Deflater( Deflater.BEST_SPEED );
+            dos = new DeflaterOutputStream( os, deflater, BUFFER_SIZE );
+            payload = dos;
+        }
+
+        try {
+            Out out = new Out( Channels.newChannel( payload ) );
+            int rows = matrix.rows();
+            int columns = matrix.columns();
+            out.putInt( rows );
+            out.putInt( columns );
+            writeNames( out, matrix.hasRowNames() ? matrix.getRowNames() : null );
+            writeNames( out, matrix.hasColNames() ? matrix.getColNames() : null );
+
+            switch ( type ) {
+                case TYPE_DENSE:
+                case TYPE_FAST_ROW:
+                    DoubleMatrix<?, ?> dm = ( DoubleMatrix<?, ?> ) matrix;
+                    for ( int i = 0; i < rows; i++ ) {
+                        out.putDoubles( dm.getRow( i ), 0, columns );
+                    }
+                    break;
+                case TYPE_SPARSE:
+                    writeSparse( out, ( SparseDoubleMatrix<?, ?> ) matrix );
+                    break;
+                case TYPE_COMPRESSED_SPARSE:
+                    writeCompressedSparse( out, ( CompressedSparseDoubleMatrix<?, ?> ) matrix );
+                    break;
+                case TYPE_STRING:
+                    StringMatrix<?, ?> sm = ( StringMatrix<?, ?> ) matrix;
+                    for ( int i = 0; i < rows; i++ ) {
+                        for ( int j = 0; j < columns; j++ ) {
+                            out.putString( sm.get( i, j ) );
+                        }
+                    }
+                    break;
+                case TYPE_OBJECT:
+                    writeObjects( out, ( ObjectMatrixImpl<?, ?, ?> ) matrix );
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+
+            out.flush();
+            if ( dos != null ) dos.finish();
+            os.flush();
+        } finally {
+            if ( deflater != null ) deflater.end();
+        }
+    }
+
+    private static CompressedSparseDoubleMatrix<Object, Object> readCompressedSparse( In in, int rows, int columns )
+            throws IOException {
+        CompressedSparseDoubleMatrix<Object, Object> result = new CompressedSparseDoubleMatrix<Object, Object>( rows,
+                columns );
+        for ( int i = 0; i < rows; i++ ) {
+            int used = in.getInt();
+            if ( used == 0 ) continue;
+            int[] index = new int[used];
+            double[] data = new double[used];
+            in.getInts( index, 0, used );
+            in.getDoubles( data, 0, used );
+            result.setRowVector( i, new SparseVector( columns, index, data, false ) );
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> readNames( In in ) throws IOException {
+        byte kind = in.getByte();
+        List<Object> result = new ArrayList<Object>();
+        switch ( kind ) {
+            case NAMES_NONE:
+                break;
+            case NAMES_STRING:
+                int n = in.getInt();
+                for ( int i = 0; i < n; i++ ) {
+                    result.add( in.getString() );
+                }
+                break;
+            case NAMES_SERIALIZED:
+                result.addAll( ( List<Object> ) readSerialized( in ) );
+                break;
+            default:
+                throw new IOException( "Unknown name encoding: " + kind );
+        }
+        return result;
+    }
+
+    private static ObjectMatrixImpl<Object, Object, Object> readObjects( In in, int rows, int columns )
+            throws IOException {
+        Object[] values = ( Object[] ) readSerialized( in );
+        ObjectMatrixImpl<Object, Object, Object> result = new ObjectMatrixImpl<Object, Object, Object>( rows, columns );
+        int k = 0;
+        for ( int i = 0; i < rows; i++ ) {
+            for ( int j = 0; j < columns; j++ ) {
+                result.set( i, j, values[k++] );
+            }
+        }
+        return result;
+    }
+
+    private static Object readSerialized( In in ) throws IOException {
+        byte[] b = new byte[in.getInt()];
+        in.getBytes( b );
+        try (ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( new ByteArrayInputStream( b ) ) )) {
+            return ois.readObject();
+        } catch ( ClassNotFoundException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    private static SparseDoubleMatrix<Object, Object> readSparse( In in, int rows, int columns ) throws IOException {
+        int n = in.getInt();
+        int[] r = new int[n];
+        int[] c = new int[n];
+        double[] v = new double[n];
+        in.getInts( r, 0, n );
+        in.getInts( c, 0, n );
+        in.getDoubles( v, 0, n );
+        SparseDoubleMatrix<Object, Object> result = new SparseDoubleMatrix<Object, Object>( rows, columns,
+                Math.max( n * 2, 16 ), 0.2, 0.5 );
+        for ( int k = 0; k < n; k++ ) {
+            result.setQuick( r[k], c[k], v[k] );
+        }
+        return result;
+    }
+
+    private static byte typeOf( Matrix2D<?, ?, ?> matrix ) {
+        if ( matrix instanceof DenseDoubleMatrix ) return TYPE_DENSE;
+        if ( matrix instanceof FastRowAccessDoubleMatrix ) return TYPE_FAST_ROW;
+        if ( matrix instanceof SparseDoubleMatrix ) return TYPE_SPARSE;
+        if ( matrix instanceof CompressedSparseDoubleMatrix ) return TYPE_COMPRESSED_SPARSE;
+        if ( matrix instanceof StringMatrix ) return TYPE_STRING;
+        if ( matrix instanceof ObjectMatrixImpl ) return TYPE_OBJECT;
+        throw new IllegalArgumentException( "Unsupported matrix type: " + matrix.getClass().getName() );
+    }
+
+    private static void writeCompressedSparse( Out out, CompressedSparseDoubleMatrix<?, ?> matrix ) throws IOException {
+        for ( int i = 0, n = matrix.rows(); i < n; i++ ) {
+            SparseVector row = matrix.getRowVector( i );
+            int used = row.getUsed();
+            out.putInt( used );
+            out.putInts( row.getIndex(), 0, used );
+            out.putDoubles( row.getData(), 0, used );
+        }
+    }
+
+    private static void writeNames( Out out, List<?> names ) throws IOException {
+        if ( names == null || names.isEmpty() ) {
+            out.putByte( NAMES_NONE );
+            return;
+        }
+
+        boolean strings = true;
+        for ( Object o : names ) {
+            if ( !( o instanceof String ) ) {
+                strings = false;
+                break;
+            }
+        }
+
+        if ( strings ) {
+            out.putByte( NAMES_STRING );
+            out.putInt( names.size() );
+            for ( Object o : names ) {
+                out.putString( ( String ) o );
+            }
+        } else {
+            out.putByte( NAMES_SERIALIZED );
+            writeSerialized( out, new ArrayList<Object>( names ) );
+        }
+    }
+
+    private static void writeObjects( Out out, ObjectMatrixImpl<?, ?, ?> matrix ) throws IOException {
+        Object[] values = new Object[matrix.rows() * matrix.columns()];
+        int k = 0;
+        for ( int i = 0; i < matrix.rows(); i++ ) {
+            for ( int j = 0; j < matrix.columns(); j++ ) {
+                values[k++] = matrix.get( i, j );
+            }
+        }
+        writeSerialized( out, values );
+    }
+
+    private static void writeSerialized( Out out, Object o ) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream( bos )) {
+            oos.writeObject( o );
+        }
+        byte[] b = bos.toByteArray();
+        out.putInt( b.length );
+        out.putBytes( b );
+    }
+
+    private static void writeSparse( Out out, SparseDoubleMatrix<?, ?> matrix ) throws IOException {
+        IntArrayList r = new IntArrayList();
+        IntArrayList c = new IntArrayList();
+        DoubleArrayList v = new DoubleArrayList();
+        matrix.getNonZeros( r, c, v );
+        int n = r.size();
+        out.putInt( n );
+        out.putInts( r.elements(), 0, n );
+        out.putInts( c.elements(), 0, n );
+        out.putDoubles( v.elements(), 0, n );
+    }
+
+    private MatrixCodec() {
+    }
+}
@@ -22,8 +22,10 @@ package ubic.basecode.dataStructure.matrix;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 import ubic.basecode.math.Constants;
+import ubic.basecode.util.ParallelUtils;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.DoubleMatrix2D;
@@ -34,6 +36,17 @@ import cern.colt.matrix.impl.DenseDoubleMatrix2D;
  */
 public class MatrixUtil {
 
+    /*
+     * Rows (of the result) per block in multWithMissing; blocks of the operands of this many rows fit in cache for
+     * typical numbers of samples.
+     */
+    private static final int MULT_BLOCK_SIZE = 64;
+
+    /*
+     * Below this many multiplications, multWithMissing doesn't bother with threads.
+     */
+    private static final long PARALLEL_MULT_THRESHOLD = 1L << 20;
+
     /**
      * @param  d
      * @return   true if any of the values are very close to zero.
@@ -210,37 +223,32 @@ public class MatrixUtil {
 
     /**
      * Multiple two matrices, tolerate missing values.
+     * <p>
+     * Implementation note: the operands are copied to arrays (with b transposed, so the inner products run over
+     * contiguous memory), and the result is computed in cache-sized blocks, in parallel for large matrices. Missing
+     * values are only checked for in the rows of a and columns of b that actually contain any. The terms of each sum
+     * are added in the same order as in a plain triple loop over the elements, so the results are identical.
      * 
      * @param  a
      * @param  b
      * @return
      */
     public static DoubleMatrix2D multWithMissing( DoubleMatrix2D a, DoubleMatrix2D b ) {
-        int m = a.rows();
-        int n = a.columns();
-        int p = b.columns();
-
         if ( b.rows() != a.columns() ) {
             throw new IllegalArgumentException( "Nonconformant matrices: " + b.rows() + " != " + a.columns() );
         }
 
-        DoubleMatrix2D C = new DenseDoubleMatrix2D( m, p );
-        C.assign( 0.0 );
-        for ( int i = 0; i < p; i++ ) {
-            for ( int j = 0; j < m; j++ ) {
-                double s = 0.0;
-                for ( int k = 0; k < n; k++ ) {
-                    double aval = a.getQuick( j, k );
-                    double bval = b.getQuick( k, i );
-                    if ( Double.isNaN( aval ) || Double.isNaN( bval ) ) {
-                        continue;
-                    }
-                    s += aval * bval;
-                }
-                C.setQuick( j, i, s + C.getQuick( j, i ) );
-            }
+        double[][] aa = a.toArray();
+        double[][] bt = b.viewDice().toArray();
+        double[][] c = new double[a.rows()][b.columns()];
+
+        MultTask task = new MultTask( aa, hasMissing( aa ), bt, hasMissing( bt ), c, 0, aa.length );
+        if ( ( long ) a.rows() * a.columns() * b.columns() < PARALLEL_MULT_THRESHOLD ) {
+            task.compute();
+        } else {
+            ParallelUtils.getPool().invoke( task );
         }
-        return C;
+        return new DenseDoubleMatrix2D( c );
     }
 
     public static List<Integer> notNearlyZeroIndices( DoubleMatrix1D d ) {
@@ -402,4 +410,86 @@ public class MatrixUtil {
         return new DoubleArrayList( vector.toArray() );
     }
 
-}
+
+    /**
+     * @param  rows
+     * @return      for each row, whether it contains any NaN values.
+     */
+    private static boolean[] hasMissing( double[][] rows ) {
+        boolean[] result = new boolean[rows.length];
+        for ( int i = 0; i < rows.length; i++ ) {
+            for ( double v : rows[i] ) {
+                if ( Double.isNaN( v ) ) {
+                    result[i] = true;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes a block of rows of c = a * b, given a and the transpose of b.
+     */
+    private static class MultTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] a;
+        private final boolean[] aMissing;
+        private final double[][] bt;
+        private final boolean[] btMissing;
+        private final double[][] c;
+        private final int from;
+        private final int to;
+
+        MultTask( double[][] a, boolean[] aMissing, double[][] bt, boolean[] btMissing, double[][] c, int from,
+                int to ) {
+            this.a = a;
+            this.aMissing = aMissing;
+            this.bt = bt;
+            this.btMissing = btMissing;
+            this.c = c;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ( to - from > MULT_BLOCK_SIZE ) {
+                int mid = ( from + to ) >>> 1;
+                invokeAll( new MultTask( a, aMissing, bt, btMissing, c, from, mid ),
+                        new MultTask( a, aMissing, bt, btMissing, c, mid, to ) );
+                return;
+            }
+
+            int p = bt.length;
+            for ( int jb = 0; jb < p; jb += MULT_BLOCK_SIZE ) {
+                int jEnd = Math.min( p, jb + MULT_BLOCK_SIZE );
+                for ( int i = from; i < to; i++ ) {
+                    double[] ai = a[i];
+                    double[] ci = c[i];
+                    for ( int j = jb; j < jEnd; j++ ) {
+                        double[] bj = bt[j];
+                        double s = 0.0;
+                        if ( aMissing[i] || btMissing[j] ) {
+                            for ( int k = 0; k < ai.length; k++ ) {
+                                double aval = ai[k];
+                                double bval = bj[k];
+                                if ( Double.isNaN( aval ) || Double.isNaN( bval ) ) {
+                                    continue;
+                                }
+                                s += aval * bval;
+                            }
+                        } else {
+                            for ( int k = 0; k < ai.length; k++ ) {
+                                s += ai[k] * bj[k];
+                            }
+                        }
+                        ci[j] = s;
+                    }
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
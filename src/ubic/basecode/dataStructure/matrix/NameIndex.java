@@ -0,0 +1,403 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Compact mapping of row or column names to their index in a matrix.
+ * <p>
+ * Implementation note: names are kept in an array in index order, with their hash codes cached alongside; lookups go
+ * through an open-addressing (linear probing) table of indices. This uses far less memory than a
+ * <code>LinkedHashMap&lt;T,Integer&gt;</code> plus a <code>List&lt;T&gt;</code>, and derived indexes (subsets,
+ * ranges) can be built from the cached hash codes without calling <code>hashCode()</code> on the names again.
+ * <p>
+ * Instances handed out by the public API are frozen and can safely be shared between matrices; for example a copy or
+ * transpose of a matrix will refer to the same index as the original. Matrices that need to change a shared index
+ * work on a private copy.
+ *
+ * @author paul
+ */
+public final class NameIndex<T> implements java.io.Serializable {
+
+    /**
+     * Read-only list view of the names in an index.
+     */
+    static abstract class View<T> extends AbstractList<T> implements RandomAccess {
+
+        @Override
+        public boolean contains( Object o ) {
+            return index().contains( o );
+        }
+
+        @Override
+        public T get( int i ) {
+            NameIndex<T> index = index();
+            if ( i < 0 || i >= index.size() ) {
+                throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + index.size() );
+            }
+            return index.get( i );
+        }
+
+        @Override
+        public int indexOf( Object o ) {
+            return index().indexOf( o );
+        }
+
+        @Override
+        public int lastIndexOf( Object o ) {
+            return index().indexOf( o );
+        }
+
+        @Override
+        public int size() {
+            return index().size();
+        }
+
+        /**
+         * @return the index currently backing this view.
+         */
+        abstract NameIndex<T> index();
+    }
+
+    private static final int EMPTY = -1;
+
+    private static final int MIN_CAPACITY = 8;
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param hash
+     * @return the hash with the high bits mixed in, so that keys with poor hash codes still spread over the table.
+     */
+    private static int spread( int hash ) {
+        int h = hash * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+
+    /**
+     * @param size
+     * @return a power of two large enough to hold size entries at a load factor of at most 0.5.
+     */
+    private static int tableSizeFor( int size ) {
+        int n = MIN_CAPACITY;
+        while ( n < size * 2 ) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private boolean frozen = false;
+
+    /*
+     * Cached hash codes of the names; recomputed on deserialization since the names' hash codes may not be stable
+     * between JVMs.
+     */
+    private transient int[] hashes;
+
+    private Object[] names;
+
+    private int size = 0;
+
+    /*
+     * Open-addressing table holding indices into names, or EMPTY.
+     */
+    private transient int[] table;
+
+    /**
+     * Create a (frozen) index for the given names, in iteration order.
+     *
+     * @param names
+     * @throws IllegalArgumentException if any of the names are null or duplicated.
+     */
+    public NameIndex( Collection<? extends T> names ) {
+        this( names.size() );
+        for ( T n : names ) {
+            if ( n == null ) {
+                throw new IllegalArgumentException( "Name cannot be null" );
+            }
+            if ( this.contains( n ) ) {
+                throw new IllegalArgumentException( "Duplicate name " + n );
+            }
+            this.add( n );
+        }
+        this.frozen = true;
+    }
+
+    /**
+     * Create an empty, modifiable index.
+     *
+     * @param expectedSize
+     */
+    NameIndex( int expectedSize ) {
+        int capacity = Math.max( expectedSize, MIN_CAPACITY );
+        this.names = new Object[capacity];
+        this.hashes = new int[capacity];
+        this.table = newTable( tableSizeFor( capacity ) );
+    }
+
+    /**
+     * Copy constructor; the copy is modifiable and shares nothing with the original.
+     */
+    private NameIndex( NameIndex<T> other ) {
+        this.names = Arrays.copyOf( other.names, Math.max( other.size, MIN_CAPACITY ) );
+        this.hashes = Arrays.copyOf( other.hashes, this.names.length );
+        this.table = other.table.clone();
+        this.size = other.size;
+    }
+
+    /**
+     * @return a read-only list view of the names.
+     */
+    public List<T> asList() {
+        final NameIndex<T> self = this;
+        return new View<T>() {
+            @Override
+            NameIndex<T> index() {
+                return self;
+            }
+        };
+    }
+
+    /**
+     * @param name
+     * @return true if the name is in the index.
+     */
+    public boolean contains( Object name ) {
+        return indexOf( name ) >= 0;
+    }
+
+    /**
+     * @param i
+     * @return the name at the given index.
+     */
+    @SuppressWarnings("unchecked")
+    public T get( int i ) {
+        return ( T ) names[i];
+    }
+
+    /**
+     * @param name
+     * @return the index of the name, or -1 if it is not present.
+     */
+    public int indexOf( Object name ) {
+        if ( name == null || size == 0 ) return -1;
+        int h = name.hashCode();
+        int mask = table.length - 1;
+        int slot = spread( h ) & mask;
+        while ( true ) {
+            int idx = table[slot];
+            if ( idx == EMPTY ) return -1;
+            if ( hashes[idx] == h && name.equals( names[idx] ) ) return idx;
+            slot = ( slot + 1 ) & mask;
+        }
+    }
+
+    /**
+     * @param startIndex inclusive, numbered from zero
+     * @param endIndex inclusive
+     * @return a new (frozen) index holding the names in the given range; positions past the end of this index are
+     *         ignored, so if this index is empty, so is the result.
+     */
+    public NameIndex<T> range( int startIndex, int endIndex ) {
+        if ( startIndex < 0 || startIndex > endIndex + 1 ) {
+            throw new IndexOutOfBoundsException( "Invalid range " + startIndex + "-" + endIndex );
+        }
+        int end = Math.min( endIndex, size - 1 );
+        NameIndex<T> result = new NameIndex<T>( Math.max( end - startIndex + 1, 0 ) );
+        for ( int i = startIndex; i <= end; i++ ) {
+            result.insert( names[i], hashes[i] );
+        }
+        return result.freeze();
+    }
+
+    /**
+     * @return the number of names.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param indices positions of the names to keep, in the desired order.
+     * @return a new (frozen) index holding the selected names.
+     * @throws IllegalArgumentException if an index is repeated.
+     */
+    public NameIndex<T> subset( int[] indices ) {
+        NameIndex<T> result = new NameIndex<T>( indices.length );
+        for ( int i : indices ) {
+            if ( i < 0 || i >= size ) {
+                throw new IndexOutOfBoundsException( "Index: " + i + ", Size: " + size );
+            }
+            if ( result.indexOf( names[i] ) >= 0 ) {
+                throw new IllegalArgumentException( "Duplicate name " + names[i] );
+            }
+            result.insert( names[i], hashes[i] );
+        }
+        return result.freeze();
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    /**
+     * Append a name. The caller is responsible for checking it is not null and not already present.
+     *
+     * @param name
+     * @return the index assigned to the name.
+     */
+    int add( T name ) {
+        checkNotFrozen();
+        return insert( name, name.hashCode() );
+    }
+
+    /**
+     * Mark the index as immutable, so it can be shared.
+     *
+     * @return this
+     */
+    NameIndex<T> freeze() {
+        this.frozen = true;
+        return this;
+    }
+
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @return a modifiable copy of this index.
+     */
+    NameIndex<T> mutableCopy() {
+        return new NameIndex<T>( this );
+    }
+
+    /**
+     * Put a name at the given position, replacing any name that was there. If the position is at or beyond the end of
+     * the index, the name is appended. The caller is responsible for checking it is not null and not already present.
+     *
+     * @param i
+     * @param name
+     * @return the index assigned to the name.
+     */
+    int set( int i, T name ) {
+        checkNotFrozen();
+        if ( i >= size ) {
+            return insert( name, name.hashCode() );
+        }
+        removeFromTable( slotOf( i ) );
+        int h = name.hashCode();
+        names[i] = name;
+        hashes[i] = h;
+        placeInTable( i, h );
+        return i;
+    }
+
+    private void checkNotFrozen() {
+        if ( frozen ) {
+            throw new IllegalStateException( "Name index is shared and cannot be modified" );
+        }
+    }
+
+    private int[] newTable( int length ) {
+        int[] t = new int[length];
+        Arrays.fill( t, EMPTY );
+        return t;
+    }
+
+    private int insert( Object name, int hash ) {
+        if ( size == names.length ) {
+            int capacity = size + ( size >> 1 ) + 1;
+            names = Arrays.copyOf( names, capacity );
+            hashes = Arrays.copyOf( hashes, capacity );
+        }
+        if ( ( size + 1 ) * 2 > table.length ) {
+            rehash( table.length << 1 );
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        placeInTable( size, hash );
+        return size++;
+    }
+
+    private void placeInTable( int idx, int hash ) {
+        int mask = table.length - 1;
+        int slot = spread( hash ) & mask;
+        while ( table[slot] != EMPTY ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        table[slot] = idx;
+    }
+
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.hashes = new int[names.length];
+        for ( int i = 0; i < size; i++ ) {
+            hashes[i] = names[i].hashCode();
+        }
+        rehash( tableSizeFor( Math.max( size, MIN_CAPACITY ) ) );
+    }
+
+    private void rehash( int length ) {
+        this.table = newTable( length );
+        for ( int i = 0; i < size; i++ ) {
+            placeInTable( i, hashes[i] );
+        }
+    }
+
+    /**
+     * Empty a slot, shifting back any entries further along the probe sequence so lookups don't stop early.
+     */
+    private void removeFromTable( int slot ) {
+        int mask = table.length - 1;
+        int gap = slot;
+        table[gap] = EMPTY;
+        int j = gap;
+        while ( true ) {
+            j = ( j + 1 ) & mask;
+            int idx = table[j];
+            if ( idx == EMPTY ) return;
+            int home = spread( hashes[idx] ) & mask;
+            boolean stays = gap <= j ? ( gap < home && home <= j ) : ( gap < home || home <= j );
+            if ( !stays ) {
+                table[gap] = idx;
+                table[j] = EMPTY;
+                gap = j;
+            }
+        }
+    }
+
+    private int slotOf( int idx ) {
+        int mask = table.length - 1;
+        int slot = spread( hashes[idx] ) & mask;
+        while ( table[slot] != idx ) {
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+}
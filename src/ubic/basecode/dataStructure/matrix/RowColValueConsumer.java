@@ -0,0 +1,34 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+/**
+ * Receives the cells of a {@link DoubleMatrix}; see {@link DoubleMatrix#forEachNonMissing(RowColValueConsumer)}.
+ *
+ * @author paul
+ */
+public interface RowColValueConsumer {
+
+    /**
+     * @param row
+     * @param column
+     * @param value
+     */
+    public void accept( int row, int column, double value );
+}
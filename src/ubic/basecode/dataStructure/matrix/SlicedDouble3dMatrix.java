@@ -0,0 +1,301 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import cern.colt.matrix.DoubleMatrix2D;
+import cern.colt.matrix.impl.DenseDoubleMatrix2D;
+
+/**
+ * A 3D matrix in which each slice is a separate 2D matrix: either allocated on its own, or a view of part of a
+ * memory-mapped file (see {@link #map(File, int, int, int)}), so the whole cube need not be on the heap.
+ * {@link #getSliceMatrix(int)} and {@link #sliceIterator()} return the slices themselves, not copies; they share the
+ * row and column names of this matrix (as long as those are set with setRowNames and setColumnNames).
+ * <p>
+ * The colt views ({@link #viewSlice(int)}, {@link #viewRow(int)}, {@link #viewColumn(int)}) are copies.
+ *
+ * @author paul
+ */
+public class SlicedDouble3dMatrix<R, C, S> extends DoubleMatrix3D<R, C, S> {
+
+    private final int columns;
+    private final int rows;
+    private final List<DoubleMatrix<R, C>> slices;
+
+    /**
+     * Allocate each slice separately on the heap.
+     *
+     * @param slices
+     * @param rows
+     * @param columns
+     */
+    public SlicedDouble3dMatrix( int slices, int rows, int columns ) {
+        super();
+        this.rows = rows;
+        this.columns = columns;
+        this.slices = new ArrayList<DoubleMatrix<R, C>>( slices );
+        for ( int k = 0; k < slices; k++ ) {
+            this.slices.add( new DoubleBufferMatrix<R, C>( rows, columns ) );
+        }
+    }
+
+    /**
+     * Use existing matrices as the slices; they are not copied.
+     *
+     * @param slices which must all have the same dimensions.
+     */
+    public SlicedDouble3dMatrix( List<? extends DoubleMatrix<R, C>> slices ) {
+        super();
+        if ( slices.isEmpty() ) {
+            throw new IllegalArgumentException( "Need at least one slice" );
+        }
+        this.rows = slices.get( 0 ).rows();
+        this.columns = slices.get( 0 ).columns();
+        for ( DoubleMatrix<R, C> slice : slices ) {
+            if ( slice.rows() != rows || slice.columns() != columns ) {
+                throw new IllegalArgumentException( "Slices must all be " + rows + " x " + columns + ", got "
+                        + slice.rows() + " x " + slice.columns() );
+            }
+        }
+        this.slices = new ArrayList<DoubleMatrix<R, C>>( slices );
+    }
+
+    /**
+     * Map a file of doubles (little-endian, slice by slice, each slice row by row) as a 3D matrix. The file is created
+     * or extended if needed. Changes are written through to the file.
+     *
+     * @param file
+     * @param slices
+     * @param rows
+     * @param columns
+     * @return
+     * @throws IOException
+     */
+    public static <R, C, S> SlicedDouble3dMatrix<R, C, S> map( File file, int slices, int rows, int columns )
+            throws IOException {
+        long sliceBytes = ( long ) rows * columns * 8L;
+        if ( sliceBytes > Integer.MAX_VALUE ) {
+            throw new IllegalArgumentException( "Slices of " + rows + " x " + columns + " are too large to map" );
+        }
+        List<DoubleMatrix<R, C>> mapped = new ArrayList<DoubleMatrix<R, C>>( slices );
+        try (RandomAccessFile raf = new RandomAccessFile( file, "rw" ); FileChannel channel = raf.getChannel()) {
+            if ( raf.length() < sliceBytes * slices ) {
+                raf.setLength( sliceBytes * slices );
+            }
+            for ( int k = 0; k < slices; k++ ) {
+                // the mapping stays valid after the channel is closed.
+                mapped.add( new DoubleBufferMatrix<R, C>( channel
+                        .map( FileChannel.MapMode.READ_WRITE, k * sliceBytes, sliceBytes )
+                        .order( ByteOrder.LITTLE_ENDIAN ).asDoubleBuffer(), rows, columns ) );
+            }
+        }
+        return new SlicedDouble3dMatrix<R, C, S>( mapped, rows, columns );
+    }
+
+    private SlicedDouble3dMatrix( List<DoubleMatrix<R, C>> slices, int rows, int columns ) {
+        super();
+        this.slices = slices;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    @Override
+    public int columns() {
+        return columns;
+    }
+
+    @Override
+    public double get( int slice, int row, int column ) {
+        return slices.get( slice ).get( row, column );
+    }
+
+    @Override
+    public Double[][] getColObj( int col ) {
+        Double[][] result = new Double[slices()][];
+        for ( int k = 0; k < slices(); k++ ) {
+            result[k] = slices.get( k ).getColObj( col );
+        }
+        return result;
+    }
+
+    @Override
+    public double[][] getColumn( int col ) {
+        double[][] result = new double[slices()][];
+        for ( int k = 0; k < slices(); k++ ) {
+            result[k] = slices.get( k ).getColumn( col );
+        }
+        return result;
+    }
+
+    @Override
+    public Double getObject( int slice, int row, int col ) {
+        return get( slice, row, col );
+    }
+
+    /**
+     * @return the row in each slice, as [slice][column].
+     */
+    @Override
+    public double[][] getRow( int row ) {
+        double[][] result = new double[slices()][];
+        for ( int k = 0; k < slices(); k++ ) {
+            result[k] = slices.get( k ).getRow( row );
+        }
+        return result;
+    }
+
+    @Override
+    public Double[][] getRowObj( int row ) {
+        Double[][] result = new Double[slices()][];
+        for ( int k = 0; k < slices(); k++ ) {
+            result[k] = slices.get( k ).getRowObj( row );
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the slice; see {@link #getSliceMatrix(int)} for a view.
+     */
+    @Override
+    public double[][] getSlice( int slice ) {
+        return slices.get( slice ).asArray();
+    }
+
+    /**
+     * @param slice
+     * @return the slice itself; changes to it are changes to this matrix.
+     */
+    public DoubleMatrix<R, C> getSliceMatrix( int slice ) {
+        return slices.get( slice );
+    }
+
+    @Override
+    public Double[][] getSliceObj( int slice ) {
+        DoubleMatrix<R, C> m = slices.get( slice );
+        Double[][] result = new Double[rows][];
+        for ( int i = 0; i < rows; i++ ) {
+            result[i] = m.getRowObj( i );
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isMissing( int slice, int row, int col ) {
+        return Double.isNaN( get( slice, row, col ) );
+    }
+
+    @Override
+    public int numMissing() {
+        int num = 0;
+        for ( DoubleMatrix<R, C> slice : slices ) {
+            num += slice.numMissing();
+        }
+        return num;
+    }
+
+    @Override
+    public int rows() {
+        return rows;
+    }
+
+    @Override
+    public void set( int slice, int row, int column, double value ) {
+        slices.get( slice ).setQuick( row, column, value );
+    }
+
+    /**
+     * Also sets the column names of each slice.
+     */
+    @Override
+    public void setColumnNames( List<C> v ) {
+        super.setColumnNames( v );
+        if ( slices.isEmpty() ) return;
+        DoubleMatrix<R, C> first = slices.get( 0 );
+        first.setColumnNames( v );
+        for ( DoubleMatrix<R, C> slice : slices.subList( 1, slices.size() ) ) {
+            slice.setColumnNameIndex( first.getColNameIndex() );
+        }
+    }
+
+    @Override
+    public void setQuick( int slice, int row, int column, double value ) {
+        slices.get( slice ).setQuick( row, column, value );
+    }
+
+    /**
+     * Also sets the row names of each slice.
+     */
+    @Override
+    public void setRowNames( List<R> v ) {
+        super.setRowNames( v );
+        if ( slices.isEmpty() ) return;
+        DoubleMatrix<R, C> first = slices.get( 0 );
+        first.setRowNames( v );
+        for ( DoubleMatrix<R, C> slice : slices.subList( 1, slices.size() ) ) {
+            slice.setRowNameIndex( first.getRowNameIndex() );
+        }
+    }
+
+    /**
+     * @return the slices in order, which are not copied; they are only read (or paged in, if mapped) as they are
+     *         used.
+     */
+    public Iterator<DoubleMatrix<R, C>> sliceIterator() {
+        return Collections.unmodifiableList( slices ).iterator();
+    }
+
+    @Override
+    public int slices() {
+        return slices.size();
+    }
+
+    /**
+     * @return a copy, as [slice][row]
+     */
+    @Override
+    public DoubleMatrix2D viewColumn( int column ) {
+        return new DenseDoubleMatrix2D( getColumn( column ) );
+    }
+
+    /**
+     * @return a copy, as [slice][column]
+     */
+    @Override
+    public DoubleMatrix2D viewRow( int row ) {
+        return new DenseDoubleMatrix2D( getRow( row ) );
+    }
+
+    /**
+     * @return a copy; see {@link #getSliceMatrix(int)} for a view.
+     */
+    @Override
+    public DoubleMatrix2D viewSlice( int slice ) {
+        return new DenseDoubleMatrix2D( getSlice( slice ) );
+    }
+
+}
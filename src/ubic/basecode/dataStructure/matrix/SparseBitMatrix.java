@@ -0,0 +1,734 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Named sparse bit matrix: each non-empty cell holds a bit vector of a fixed length.
+ * <p>
+ * Implementation note: unlike {@link CompressedBitMatrix}, which keeps 63 bits in each double of a stack of MTJ
+ * matrices, this packs all the bits of a cell into consecutive <code>long</code> words (64 bits each). Each row keeps
+ * a sorted array of the columns of its non-empty cells and one array of words for those cells, so the bits of a cell
+ * are contiguous and counting is done with {@link Long#bitCount(long)}. Cells whose bits are all cleared are removed.
+ * <p>
+ * The matrix can be saved to and read back from a compact binary file. Files written by
+ * {@link CompressedBitMatrix#toFile(String)} can also be read.
+ *
+ * @author paul
+ */
+public class SparseBitMatrix<R, C> extends AbstractMatrix<R, C, long[]> implements ObjectMatrix<R, C, long[]> {
+
+    /**
+     * Marks the binary file format ("BITM").
+     */
+    static final int MAGIC = 0x4249544D;
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int INITIAL_ROW_CAPACITY = 4;
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Read a matrix saved with {@link #toFile(String)}, or the text format written by
+     * {@link CompressedBitMatrix#toFile(String)}. Files ending in ".gz" are decompressed.
+     *
+     * @param fileName
+     * @return matrix, using the names in the file (as Strings) if there are any.
+     * @throws IOException
+     */
+    public static SparseBitMatrix<String, String> readFile( String fileName ) throws IOException {
+        try (InputStream raw = new FileInputStream( new File( fileName ) );
+                BufferedInputStream bis = new BufferedInputStream( fileName.endsWith( ".gz" ) ? new GZIPInputStream(
+                        raw ) : raw, 1 << 16 )) {
+            bis.mark( 4 );
+            DataInputStream in = new DataInputStream( bis );
+            int magic = in.readInt();
+            if ( magic == MAGIC ) {
+                return readBinary( in );
+            }
+            bis.reset();
+            return readText( new BufferedReader( new InputStreamReader( bis ) ) );
+        }
+    }
+
+    /**
+     * @param totalBitsPerItem
+     * @return the number of longs needed to hold that many bits.
+     */
+    static int wordsFor( int totalBitsPerItem ) {
+        return Math.max( 1, ( totalBitsPerItem + Long.SIZE - 1 ) / Long.SIZE );
+    }
+
+    private static SparseBitMatrix<String, String> readBinary( DataInputStream in ) throws IOException {
+        int version = in.readInt();
+        if ( version != FORMAT_VERSION ) {
+            throw new IOException( "Unsupported bit matrix format version " + version );
+        }
+        int rows = in.readInt();
+        int cols = in.readInt();
+        int totalBits = in.readInt();
+        SparseBitMatrix<String, String> result = new SparseBitMatrix<String, String>( rows, cols, totalBits );
+
+        int numRowNames = in.readInt();
+        for ( int i = 0; i < numRowNames; i++ ) {
+            result.addRowName( in.readUTF() );
+        }
+        int numColNames = in.readInt();
+        for ( int i = 0; i < numColNames; i++ ) {
+            result.addColumnName( in.readUTF() );
+        }
+
+        int wpc = result.wordsPerCell;
+        byte[] buf = new byte[0];
+        for ( int r = 0; r < rows; r++ ) {
+            int n = in.readInt();
+            if ( n == 0 ) continue;
+            int len = n * ( Integer.SIZE / Byte.SIZE ) + n * wpc * ( Long.SIZE / Byte.SIZE );
+            if ( buf.length < len ) buf = new byte[len];
+            in.readFully( buf, 0, len );
+            ByteBuffer bb = ByteBuffer.wrap( buf, 0, len );
+            int[] colIndices = new int[n];
+            long[] w = new long[n * wpc];
+            bb.asIntBuffer().get( colIndices );
+            bb.position( n * ( Integer.SIZE / Byte.SIZE ) );
+            bb.asLongBuffer().get( w );
+            result.columnIndices[r] = colIndices;
+            result.words[r] = w;
+            result.used[r] = n;
+        }
+        return result;
+    }
+
+    /**
+     * Read the format written by CompressedBitMatrix.toFile: a header line (rows, columns, bits per cell), a line of
+     * row names, a line of column names, then one line per non-empty cell holding the row, column and one hex value
+     * per 63 bits.
+     */
+    private static SparseBitMatrix<String, String> readText( BufferedReader in ) throws IOException {
+        String header = in.readLine();
+        if ( header == null ) {
+            throw new IOException( "File was empty" );
+        }
+        String[] fields = header.split( "\t" );
+        if ( fields.length < 3 ) {
+            throw new IOException( "Invalid header line: " + header );
+        }
+        int rows = Integer.parseInt( fields[0].trim() );
+        int cols = Integer.parseInt( fields[1].trim() );
+        int totalBits = Integer.parseInt( fields[2].trim() );
+        SparseBitMatrix<String, String> result = new SparseBitMatrix<String, String>( rows, cols, totalBits );
+
+        String rowNames = in.readLine();
+        if ( rowNames != null && !rowNames.isEmpty() ) {
+            for ( String r : rowNames.split( "\t" ) ) {
+                result.addRowName( r );
+            }
+        }
+        String colNames = in.readLine();
+        if ( colNames != null && !colNames.isEmpty() ) {
+            for ( String c : colNames.split( "\t" ) ) {
+                result.addColumnName( c );
+            }
+        }
+
+        long[] cell = new long[result.wordsPerCell];
+        String line;
+        while ( ( line = in.readLine() ) != null ) {
+            if ( line.isEmpty() ) continue;
+            String[] f = line.split( "\t" );
+            int r = Integer.parseInt( f[0] );
+            int c = Integer.parseInt( f[1] );
+            Arrays.fill( cell, 0L );
+            for ( int k = 2; k < f.length; k++ ) {
+                long legacy = Long.parseLong( f[k], 16 );
+                int offset = ( k - 2 ) * CompressedBitMatrix.BITS_PER_ELEMENT;
+                while ( legacy != 0 ) {
+                    int bit = offset + Long.numberOfTrailingZeros( legacy );
+                    cell[bit / Long.SIZE] |= 1L << ( bit % Long.SIZE );
+                    legacy &= legacy - 1;
+                }
+            }
+            result.set( r, c, cell );
+        }
+        return result;
+    }
+
+    private int[][] columnIndices;
+
+    private final int cols;
+
+    private final int rows;
+
+    private final int totalBitsPerItem;
+
+    private int[] used;
+
+    private long[][] words;
+
+    private final int wordsPerCell;
+
+    /**
+     * Constructs a matrix with specified rows, columns, and total bits per cell
+     *
+     * @param rows - number of rows in the matrix
+     * @param cols - number of columns in the matrix
+     * @param totalBitsPerItem - the number of bits for each cell
+     */
+    public SparseBitMatrix( int rows, int cols, int totalBitsPerItem ) {
+        super();
+        this.rows = rows;
+        this.cols = cols;
+        this.totalBitsPerItem = totalBitsPerItem;
+        this.wordsPerCell = wordsFor( totalBitsPerItem );
+        this.columnIndices = new int[rows][];
+        this.words = new long[rows][];
+        this.used = new int[rows];
+    }
+
+    /**
+     * Copy the contents of a CompressedBitMatrix, sharing its row and column names.
+     *
+     * @param source
+     */
+    public SparseBitMatrix( CompressedBitMatrix<R, C> source ) {
+        this( source.rows(), source.columns(), source.getBitNum() );
+        this.setRowNameIndex( source.getRowNameIndex() );
+        this.setColumnNameIndex( source.getColNameIndex() );
+        long[] cell = new long[wordsPerCell];
+        for ( int i = 0; i < rows; i++ ) {
+            int[] counts = source.getRowBitCount( i );
+            for ( int j = 0; j < cols; j++ ) {
+                if ( counts[j] == 0 ) continue;
+                Arrays.fill( cell, 0L );
+                long[] legacy = source.getAllBits( i, j );
+                for ( int k = 0; k < legacy.length; k++ ) {
+                    long v = legacy[k];
+                    int offset = k * CompressedBitMatrix.BITS_PER_ELEMENT;
+                    while ( v != 0 ) {
+                        int bit = offset + Long.numberOfTrailingZeros( v );
+                        cell[bit / Long.SIZE] |= 1L << ( bit % Long.SIZE );
+                        v &= v - 1;
+                    }
+                }
+                this.set( i, j, cell );
+            }
+        }
+    }
+
+    /**
+     * Count the number of one-bits at the specified cell position
+     *
+     * @param r
+     * @param c
+     * @return
+     */
+    public int bitCount( int r, int c ) {
+        if ( r < 0 || r >= this.rows || c < 0 || c >= this.cols ) return 0;
+        int p = find( r, c );
+        if ( p < 0 ) return 0;
+        return countBits( words[r], p * wordsPerCell );
+    }
+
+    /**
+     * @return the number of cells that have at least one bit set.
+     */
+    public long cardinality() {
+        long result = 0L;
+        for ( int n : used ) {
+            result += n;
+        }
+        return result;
+    }
+
+    @Override
+    public int columns() {
+        return this.cols;
+    }
+
+    /**
+     * @return a copy of the bits of the cell, packed 64 to a long; bit i is <code>(a[i / 64] >>> (i % 64)) & 1</code>.
+     */
+    @Override
+    public long[] get( int row, int col ) {
+        long[] a = new long[wordsPerCell];
+        int p = find( row, col );
+        if ( p >= 0 ) {
+            System.arraycopy( words[row], p * wordsPerCell, a, 0, wordsPerCell );
+        }
+        return a;
+    }
+
+    /**
+     * Checks the bit of the specified cell at the specified index.
+     *
+     * @param row - matrix row
+     * @param col - matrix column
+     * @param index - bit vector index
+     * @return true if bit is 1, false if 0.
+     */
+    public boolean get( int row, int col, int index ) {
+        checkBitIndex( row, col, index );
+        int p = find( row, col );
+        if ( p < 0 ) return false;
+        return ( words[row][p * wordsPerCell + index / Long.SIZE] & 1L << ( index % Long.SIZE ) ) != 0;
+    }
+
+    /**
+     * Returns all of the bits for a cell; same as get(row, col).
+     *
+     * @param row - the cell row
+     * @param col - the cell column
+     * @return all the bits encoded as an array of <code>longs</code>
+     */
+    public long[] getAllBits( int row, int col ) {
+        return get( row, col );
+    }
+
+    /**
+     * Returns the total number of bits in a matrix cell
+     *
+     * @return the number of bits per cell
+     */
+    public int getBitNum() {
+        return this.totalBitsPerItem;
+    }
+
+    @Override
+    public long[] getByKeys( R r, C c ) {
+        return this.get( getRowIndexByName( r ), getColIndexByName( c ) );
+    }
+
+    @Override
+    public long[][] getColumn( int i ) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long[] getEntry( int row, int column ) {
+        return get( row, column );
+    }
+
+    @Override
+    public long[][] getRow( int i ) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @param row
+     * @return - array of counts of one-bits for each cell in the row.
+     */
+    public int[] getRowBitCount( int row ) {
+        int[] bits = new int[columns()];
+        for ( int p = 0; p < used[row]; p++ ) {
+            bits[columnIndices[row][p]] = countBits( words[row], p * wordsPerCell );
+        }
+        return bits;
+    }
+
+    /**
+     * @return the number of longs used to store each cell.
+     */
+    public int getWordsPerCell() {
+        return wordsPerCell;
+    }
+
+    @Override
+    public boolean isMissing( int i, int j ) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Counts the number of one-bits that are in common between the two specified cells; i.e. performs an AND operation
+     * on the two bit vectors and counts the remaining 1 bits.
+     *
+     * @param row1 - cell 1 row
+     * @param col1 - cell 1 column
+     * @param row2 - cell 2 row
+     * @param col2 - cell 2 column
+     * @return number of bits in common
+     */
+    public int overlap( int row1, int col1, int row2, int col2 ) {
+        int p1 = find( row1, col1 );
+        if ( p1 < 0 ) return 0;
+        int p2 = find( row2, col2 );
+        if ( p2 < 0 ) return 0;
+        long[] w1 = words[row1];
+        long[] w2 = words[row2];
+        int o1 = p1 * wordsPerCell;
+        int o2 = p2 * wordsPerCell;
+        int bits = 0;
+        for ( int k = 0; k < wordsPerCell; k++ ) {
+            bits += Long.bitCount( w1[o1 + k] & w2[o2 + k] );
+        }
+        return bits;
+    }
+
+    /**
+     * Compute the overlaps of many pairs of cells at once, in parallel. This is much faster than calling
+     * {@link #overlap(int, int, int, int)} for each pair.
+     *
+     * @param rows1 rows of the first set of cells
+     * @param cols1 columns of the first set of cells (same length as rows1)
+     * @param rows2 rows of the second set of cells
+     * @param cols2 columns of the second set of cells (same length as rows2)
+     * @return matrix of overlaps; element [i][j] is the overlap of cell (rows1[i], cols1[i]) with cell (rows2[j],
+     *         cols2[j]).
+     */
+    public int[][] overlap( int[] rows1, int[] cols1, int[] rows2, int[] cols2 ) {
+        long[] a = gather( rows1, cols1 );
+        long[] b = gather( rows2, cols2 );
+        return BitOverlaps.overlaps( a, rows1.length, b, rows2.length, wordsPerCell );
+    }
+
+    /**
+     * Compare every pair of the given cells, in parallel, and pass those with at least minOverlap bits in common to
+     * the handler.
+     *
+     * @param rows rows of the cells
+     * @param cols columns of the cells (same length as rows)
+     * @param minOverlap threshold
+     * @param handler receives the positions (in rows/cols) of each qualifying pair; must be thread-safe.
+     */
+    public void overlap( int[] rows, int[] cols, int minOverlap, CellOverlapHandler handler ) {
+        long[] a = gather( rows, cols );
+        BitOverlaps.overlaps( a, rows.length, wordsPerCell, minOverlap, handler );
+    }
+
+    /**
+     * Clear all the bits of a cell.
+     *
+     * @param r
+     * @param c
+     */
+    public void reset( int r, int c ) {
+        int p = find( r, c );
+        if ( p >= 0 ) {
+            remove( r, p );
+        }
+    }
+
+    @Override
+    public int rows() {
+        return this.rows;
+    }
+
+    /**
+     * Set the matrix cell to the specified bit vector
+     *
+     * @param row
+     * @param col
+     * @param val bits packed 64 to a long, as returned by get(row, col).
+     */
+    @Override
+    public void set( int row, int col, long[] val ) {
+        if ( val.length != this.wordsPerCell || row < 0 || row >= this.rows || col < 0 || col >= this.cols )
+            throw new IllegalArgumentException( "Value out of range" );
+        boolean empty = true;
+        for ( long v : val ) {
+            if ( v != 0L ) {
+                empty = false;
+                break;
+            }
+        }
+        int p = find( row, col );
+        if ( empty ) {
+            if ( p >= 0 ) remove( row, p );
+            return;
+        }
+        if ( p < 0 ) {
+            p = insert( row, col, -( p + 1 ) );
+        }
+        System.arraycopy( val, 0, words[row], p * wordsPerCell, wordsPerCell );
+    }
+
+    /**
+     * Sets the bit of the specified cell at the specified index to 1.
+     *
+     * @param row - matrix row
+     * @param col - matrix column
+     * @param index - bit vector index
+     */
+    public void set( int row, int col, int index ) {
+        checkBitIndex( row, col, index );
+        int p = find( row, col );
+        if ( p < 0 ) {
+            p = insert( row, col, -( p + 1 ) );
+        }
+        words[row][p * wordsPerCell + index / Long.SIZE] |= 1L << ( index % Long.SIZE );
+    }
+
+    @Override
+    public void setByKeys( R r, C c, long[] v ) {
+        this.set( getRowIndexByName( r ), getColIndexByName( c ), v );
+    }
+
+    @Override
+    public int size() {
+        return this.rows() * this.columns();
+    }
+
+    @Override
+    public ObjectMatrix<R, C, long[]> subset( int startRow, int startCol, int numRow, int numCol ) {
+        int endRow = startRow + numRow - 1;
+        super.checkRowRange( startRow, endRow );
+        int endCol = startCol + numCol - 1;
+        if ( startCol < 0 || endCol >= this.cols || numCol < 1 ) {
+            throw new IllegalArgumentException( "Invalid column range" );
+        }
+        SparseBitMatrix<R, C> result = new SparseBitMatrix<R, C>( numRow, numCol, this.totalBitsPerItem );
+        result.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        result.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        for ( int i = startRow; i <= endRow; i++ ) {
+            for ( int p = 0; p < used[i]; p++ ) {
+                int j = columnIndices[i][p];
+                if ( j < startCol ) continue;
+                if ( j > endCol ) break;
+                result.appendCell( i - startRow, j - startCol, words[i], p * wordsPerCell );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ObjectMatrix<R, C, long[]> subsetColumns( List<C> columns ) {
+        SparseBitMatrix<R, C> returnval = new SparseBitMatrix<R, C>( this.rows(), columns.size(),
+                this.totalBitsPerItem );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        int[] colIndices = new int[columns.size()];
+        int k = 0;
+        for ( C c : columns ) {
+            colIndices[k] = this.getColIndexByName( c );
+            returnval.setColumnName( c, k );
+            k++;
+        }
+        for ( int i = 0; i < this.rows(); i++ ) {
+            if ( used[i] == 0 ) continue;
+            for ( int currentColumn = 0; currentColumn < colIndices.length; currentColumn++ ) {
+                int p = find( i, colIndices[currentColumn] );
+                if ( p < 0 ) continue;
+                returnval.appendCell( i, currentColumn, words[i], p * wordsPerCell );
+            }
+        }
+        return returnval;
+    }
+
+    /**
+     * Save the matrix to the specified file, in a binary format that can be read with {@link #readFile(String)}. Row
+     * and column names are saved as Strings.
+     *
+     * @param fileName - save file
+     */
+    public void toFile( String fileName ) throws IOException {
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( new File(
+                fileName ) ), 1 << 16 ) )) {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeInt( this.rows );
+            out.writeInt( this.cols );
+            out.writeInt( this.totalBitsPerItem );
+
+            List<R> rowNames = this.getRowNames();
+            out.writeInt( rowNames.size() );
+            for ( R r : rowNames ) {
+                out.writeUTF( r.toString() );
+            }
+            List<C> colNames = this.getColNames();
+            out.writeInt( colNames.size() );
+            for ( C c : colNames ) {
+                out.writeUTF( c.toString() );
+            }
+
+            ByteBuffer bb = ByteBuffer.allocate( 0 );
+            for ( int i = 0; i < this.rows; i++ ) {
+                int n = used[i];
+                out.writeInt( n );
+                if ( n == 0 ) continue;
+                int len = n * ( Integer.SIZE / Byte.SIZE ) + n * wordsPerCell * ( Long.SIZE / Byte.SIZE );
+                if ( bb.capacity() < len ) bb = ByteBuffer.allocate( len );
+                bb.clear();
+                bb.asIntBuffer().put( columnIndices[i], 0, n );
+                bb.position( n * ( Integer.SIZE / Byte.SIZE ) );
+                bb.asLongBuffer().put( words[i], 0, n * wordsPerCell );
+                out.write( bb.array(), 0, len );
+            }
+        }
+    }
+
+    /**
+     * Number of ones in the entire matrix.
+     *
+     * @return
+     */
+    public long totalBitCount() {
+        long result = 0L;
+        for ( int i = 0; i < rows; i++ ) {
+            long[] w = words[i];
+            for ( int k = 0, n = used[i] * wordsPerCell; k < n; k++ ) {
+                result += Long.bitCount( w[k] );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the bit of the specified cell at the specified index to 0.
+     *
+     * @param row
+     * @param col
+     * @param index
+     */
+    public void unset( int row, int col, int index ) {
+        checkBitIndex( row, col, index );
+        int p = find( row, col );
+        if ( p < 0 ) return;
+        int offset = p * wordsPerCell;
+        words[row][offset + index / Long.SIZE] &= ~( 1L << ( index % Long.SIZE ) );
+        if ( countBits( words[row], offset ) == 0 ) {
+            remove( row, p );
+        }
+    }
+
+    /**
+     * @param row
+     * @return the column indices of the non-empty cells in the row, in increasing order. Do not modify.
+     */
+    int[] columnIndices( int row ) {
+        return columnIndices[row];
+    }
+
+    /**
+     * @param row
+     * @param col
+     * @return the position of the cell among the non-empty cells of the row, or <code>-(insertion point + 1)</code> if
+     *         the cell is empty.
+     */
+    int find( int row, int col ) {
+        if ( used[row] == 0 ) return -1;
+        return Arrays.binarySearch( columnIndices[row], 0, used[row], col );
+    }
+
+    /**
+     * @param row
+     * @return the number of non-empty cells in the row.
+     */
+    int used( int row ) {
+        return used[row];
+    }
+
+    /**
+     * @param row
+     * @return the words of the non-empty cells in the row, wordsPerCell for each. Do not modify.
+     */
+    long[] words( int row ) {
+        return words[row];
+    }
+
+    /**
+     * Add a cell after the last non-empty cell of the row; used when copying cells in column order.
+     */
+    private void appendCell( int row, int col, long[] src, int srcOffset ) {
+        int p = insert( row, col, used[row] );
+        System.arraycopy( src, srcOffset, words[row], p * wordsPerCell, wordsPerCell );
+    }
+
+    /**
+     * @return the bits of the given cells packed into one array, wordsPerCell longs per cell.
+     */
+    private long[] gather( int[] rowIndices, int[] colIndices ) {
+        if ( rowIndices.length != colIndices.length ) {
+            throw new IllegalArgumentException( "Must have the same number of rows and columns" );
+        }
+        long[] result = new long[rowIndices.length * wordsPerCell];
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            int p = find( rowIndices[k], colIndices[k] );
+            if ( p >= 0 ) {
+                System.arraycopy( words[rowIndices[k]], p * wordsPerCell, result, k * wordsPerCell, wordsPerCell );
+            }
+        }
+        return result;
+    }
+
+    private void checkBitIndex( int row, int col, int index ) {
+        if ( index < 0 || index >= this.totalBitsPerItem || row < 0 || row >= this.rows || col < 0
+                || col >= this.cols ) {
+            throw new ArrayIndexOutOfBoundsException( "Attempt to access row=" + row + " col=" + col + " index="
+                    + index );
+        }
+    }
+
+    private int countBits( long[] w, int offset ) {
+        int bits = 0;
+        for ( int k = 0; k < wordsPerCell; k++ ) {
+            bits += Long.bitCount( w[offset + k] );
+        }
+        return bits;
+    }
+
+    /**
+     * Make room for a new (empty) cell at position p in the row.
+     *
+     * @return p
+     */
+    private int insert( int row, int col, int p ) {
+        int n = used[row];
+        if ( columnIndices[row] == null ) {
+            columnIndices[row] = new int[INITIAL_ROW_CAPACITY];
+            words[row] = new long[INITIAL_ROW_CAPACITY * wordsPerCell];
+        } else if ( n == columnIndices[row].length ) {
+            int capacity = n + ( n >> 1 ) + 1;
+            columnIndices[row] = Arrays.copyOf( columnIndices[row], capacity );
+            words[row] = Arrays.copyOf( words[row], capacity * wordsPerCell );
+        }
+        int[] ci = columnIndices[row];
+        long[] w = words[row];
+        System.arraycopy( ci, p, ci, p + 1, n - p );
+        System.arraycopy( w, p * wordsPerCell, w, ( p + 1 ) * wordsPerCell, ( n - p ) * wordsPerCell );
+        ci[p] = col;
+        Arrays.fill( w, p * wordsPerCell, ( p + 1 ) * wordsPerCell, 0L );
+        used[row] = n + 1;
+        return p;
+    }
+
+    private void remove( int row, int p ) {
+        int n = used[row];
+        int[] ci = columnIndices[row];
+        long[] w = words[row];
+        System.arraycopy( ci, p + 1, ci, p, n - p - 1 );
+        System.arraycopy( w, ( p + 1 ) * wordsPerCell, w, p * wordsPerCell, ( n - p - 1 ) * wordsPerCell );
+        Arrays.fill( w, ( n - 1 ) * wordsPerCell, n * wordsPerCell, 0L );
+        used[row] = n - 1;
+    }
+
+}
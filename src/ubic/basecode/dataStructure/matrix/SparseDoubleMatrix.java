@@ -18,9 +18,13 @@
  */
 package ubic.basecode.dataStructure.matrix;
 
+import java.util.Arrays;
 import java.util.List;
 
+import cern.colt.function.DoubleFunction;
+import cern.colt.function.IntIntDoubleFunction;
 import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 import cern.colt.matrix.impl.SparseDoubleMatrix2D;
 
@@ -72,13 +76,21 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
      */
     @Override
     public double[][] asArray() {
-        double[][] result = new double[rows()][];
-        for ( int i = 0; i < rows(); i++ ) {
-            result[i] = getRow( i );
-        }
+        final double[][] result = new double[rows()][columns()];
+        forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                result[row][column] = value;
+            }
+        } );
         return result;
     }
 
+    @Override
+    public void assign( DoubleFunction function ) {
+        matrix.assign( function );
+    }
+
     /**
      * @return
      */
@@ -97,17 +109,17 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
 
     @Override
     public DoubleMatrix<R, C> copy() {
-        DoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( this.rows(), this.columns() );
-
-        for ( int i = 0; i < this.rows(); i++ ) {
-            returnval.setRowName( this.getRowName( i ), i );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( i == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
-                }
-                returnval.set( i, j, this.get( i, j ) );
+        final SparseDoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( this.rows(), this.columns(),
+                Math.max( 2 * matrix.cardinality(), 16 ), 0.2, 0.5 );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+
+        forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                returnval.matrix.setQuick( row, column, value );
             }
-        }
+        } );
         return returnval;
 
     }
@@ -122,6 +134,23 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         return matrix.get( row, column );
     }
 
+    /**
+     * Visit the stored (non-zero) cells, in no particular order. This only touches the stored cells, so it is much
+     * faster than looping over the rows and columns. Missing values (NaN) are stored, so they are included. The
+     * matrix must not be modified by the consumer.
+     * 
+     * @param consumer
+     */
+    public void forEachNonZero( final RowColValueConsumer consumer ) {
+        matrix.forEachNonZero( new IntIntDoubleFunction() {
+            @Override
+            public double apply( int row, int column, double value ) {
+                consumer.accept( row, column, value );
+                return value;
+            }
+        } );
+    }
+
     @Override
     public Double[] getColObj( int col ) {
         Double[] result = new Double[rows()];
@@ -135,22 +164,16 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
         super.checkColRange( startCol, endCol );
 
-        DoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
-        int k = 0;
-        for ( int i = startCol; i <= endCol; i++ ) {
-            C colName = this.getColName( i );
-            if ( colName != null ) {
-                returnval.setColumnName( colName, i );
-            }
-            for ( int j = 0, m = this.rows(); j < m; j++ ) {
-                if ( i == startCol ) {
-                    R rowName = this.getRowName( j );
-                    returnval.setRowName( rowName, j );
-                }
-                returnval.set( j, k, this.get( j, i ) );
-            }
-            k++;
+        int[] columnMap = new int[this.columns()];
+        Arrays.fill( columnMap, -1 );
+        for ( int j = startCol; j <= endCol; j++ ) {
+            columnMap[j] = j - startCol;
         }
+
+        SparseDoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        copyNonZeros( returnval, null, columnMap );
         return returnval;
     }
 
@@ -221,22 +244,16 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
         super.checkRowRange( startRow, endRow );
 
-        DoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( endRow + 1 - startRow, this.columns() );
-        int k = 0;
+        int[] rowMap = new int[this.rows()];
+        Arrays.fill( rowMap, -1 );
         for ( int i = startRow; i <= endRow; i++ ) {
-            R rowName = this.getRowName( i );
-            if ( rowName != null ) {
-                returnval.setRowName( rowName, i );
-            }
-            for ( int j = 0, m = this.columns(); j < m; j++ ) {
-                if ( i == 0 ) {
-                    C colName = this.getColName( j );
-                    returnval.setColumnName( colName, j );
-                }
-                returnval.set( k, j, this.get( i, j ) );
-            }
-            k++;
+            rowMap[i] = i - startRow;
         }
+
+        SparseDoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( endRow + 1 - startRow, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        copyNonZeros( returnval, rowMap, null );
         return returnval;
     }
 
@@ -258,6 +275,21 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
         matrix.set( row, column, value );
     }
 
+    @Override
+    public void setColumn( int column, double[] values ) {
+        matrix.viewColumn( column ).assign( values );
+    }
+
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        matrix.setQuick( row, column, value );
+    }
+
+    @Override
+    public void setRow( int row, double[] values ) {
+        matrix.viewRow( row ).assign( values );
+    }
+
     /**
      * @return
      */
@@ -274,58 +306,54 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     @Override
     public DoubleMatrix<R, C> subsetColumns( List<C> columns ) {
 
-        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), columns.size() );
-        returnval.setRowNames( this.getRowNames() );
-        for ( int i = 0; i < this.rows(); i++ ) {
-            int currentColumn = 0;
-            for ( C c : columns ) {
-                int j = this.getColIndexByName( c );
-
-                returnval.set( i, currentColumn, this.get( i, j ) );
-
-                if ( i == 0 ) {
-                    returnval.setColumnName( c, currentColumn );
-                }
-
-                currentColumn++;
-
-            }
-
+        int[] colIndices = this.colIndicesOf( columns );
+        int[] columnMap = new int[this.columns()];
+        Arrays.fill( columnMap, -1 );
+        for ( int k = 0; k < colIndices.length; k++ ) {
+            columnMap[colIndices[k]] = k;
         }
+
+        DoubleMatrix<R, C> returnval = new DenseDoubleMatrix<R, C>( this.rows(), colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        copyNonZeros( returnval, null, columnMap );
         return returnval;
     }
 
     @Override
     public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
-        DoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( rowNames.size(), this.columns() );
-
-        int currentRow = 0;
-        for ( R rowName : rowNames ) {
-
-            if ( !this.containsRowName( rowName ) ) continue;
-
-            int i = this.getRowIndexByName( rowName );
-
-            returnval.setRowName( rowName, currentRow );
-            for ( int j = 0; j < this.columns(); j++ ) {
-                if ( currentRow == 0 ) {
-                    returnval.setColumnName( this.getColName( j ), j );
-                }
-                returnval.set( currentRow, j, this.get( i, j ) );
-            }
-            currentRow++;
-        }
-
-        if ( !returnval.getRowNames().containsAll( rowNames ) ) {
-            throw new IllegalArgumentException( "Invalid rows to select, some are not in the original matrix" );
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        DoubleMatrix<R, C> returnval = new SparseDoubleMatrix<R, C>( rowIndices.length, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+
+        int[] rowMap = new int[this.rows()];
+        Arrays.fill( rowMap, -1 );
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            rowMap[rowIndices[k]] = k;
         }
+        copyNonZeros( returnval, rowMap, null );
 
         return returnval;
     }
 
     @Override
     public DoubleMatrix<C, R> transpose() {
-        throw new UnsupportedOperationException();
+        final SparseDoubleMatrix<C, R> result = new SparseDoubleMatrix<C, R>( this.columns(), this.rows(), Math.max(
+                2 * matrix.cardinality(), 16 ), 0.2, 0.5 );
+        if ( this.getColNames().size() > 0 ) {
+            result.setRowNames( this.getColNames() );
+        }
+        if ( this.getRowNames().size() > 0 ) {
+            result.setColumnNames( this.getRowNames() );
+        }
+        forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                result.matrix.setQuick( column, row, value );
+            }
+        } );
+        return result;
     }
 
     /**
@@ -352,4 +380,46 @@ public class SparseDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
     public DoubleMatrix1D viewRow( int row ) {
         return matrix.viewRow( row );
     }
-}
\ No newline at end of file
+
+    /**
+     * Copy the non-zero cells into another matrix, visiting only the stored cells.
+     * 
+     * @param target
+     * @param rowMap position in the target of each row, or -1 to skip the row; null to keep rows in place
+     * @param columnMap position in the target of each column, or -1 to skip it; null to keep columns in place
+     */
+    private void copyNonZeros( final DoubleMatrix<R, C> target, final int[] rowMap, final int[] columnMap ) {
+        forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                int i = rowMap == null ? row : rowMap[row];
+                int j = columnMap == null ? column : columnMap[column];
+                if ( i >= 0 && j >= 0 ) {
+                    target.setQuick( i, j, value );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Collect the non-zero cells, in no particular order.
+     * 
+     * @param rowList to be filled with the row indices
+     * @param columnList to be filled with the column indices
+     * @param valueList to be filled with the values
+     */
+    void getNonZeros( final IntArrayList rowList, final IntArrayList columnList, final DoubleArrayList valueList ) {
+        rowList.clear();
+        columnList.clear();
+        valueList.clear();
+        forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                rowList.add( row );
+                columnList.add( column );
+                valueList.add( value );
+            }
+        } );
+    }
+
+}
@@ -69,6 +69,13 @@ public class StringMatrix<R, C> extends AbstractMatrix<R, C, String> implements
         matrix = new DenseObjectMatrix2D( x, y );
     }
 
+    /**
+     * For subclasses that store the values themselves; they must override every method that uses the colt matrix.
+     */
+    protected StringMatrix() {
+        super();
+    }
+
     /**
      * @return
      */
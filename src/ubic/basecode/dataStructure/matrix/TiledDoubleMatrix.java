@@ -0,0 +1,578 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import cern.colt.function.DoubleFunction;
+import cern.colt.list.DoubleArrayList;
+import cern.colt.matrix.DoubleMatrix1D;
+
+/**
+ * Dense 2D matrix stored in square tiles of {@link #TILE_SIZE} x {@link #TILE_SIZE} values, each tile in its own
+ * contiguous array. Unlike DenseDoubleMatrix (where a column is spread over the whole array) and
+ * FastRowAccessDoubleMatrix (where a column touches every row object), reading a column only touches the tiles in one
+ * tile column, so row and column access are about equally fast. Use {@link #rowIterator()} and
+ * {@link #columnIterator()} to visit all rows or columns; they read each tile once.
+ * <p>
+ * {@link #transpose()} returns a view that shares the storage. {@link #transposeInPlace()} transposes the storage
+ * itself, without copying it, so that the transpose is stored row-wise; views that share the storage remain valid.
+ *
+ * @author paul
+ */
+public class TiledDoubleMatrix<R, C> extends DoubleMatrix<R, C> {
+
+    /**
+     * Visits the rows or columns one band of tiles at a time. Each array returned is a copy.
+     */
+    private class BandIterator implements Iterator<double[]> {
+
+        private double[][] band;
+        private int bandStart = 0;
+        private final boolean byRow;
+        private int next = 0;
+        private final int size;
+
+        BandIterator( boolean byRow ) {
+            this.byRow = byRow;
+            this.size = byRow ? rows() : columns();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public double[] next() {
+            if ( next >= size ) throw new NoSuchElementException();
+            if ( band == null || next - bandStart >= band.length ) {
+                bandStart = next;
+                band = byRow != swapped() ? storage.rowBand( next >> SHIFT ) : storage.columnBand( next >> SHIFT );
+            }
+            return band[next++ - bandStart];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The tiles, in physical coordinates. A tile is stored row by row.
+     */
+    private static class Storage implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int columns;
+
+        /**
+         * True if the storage has been transposed in place an odd number of times.
+         */
+        private boolean flipped = false;
+        private int rows;
+        private int tileColumns;
+        private int tileRows;
+        private double[][] tiles;
+
+        Storage( int rows, int columns ) {
+            if ( rows < 0 || columns < 0 ) {
+                throw new IllegalArgumentException( "Dimensions must be non-negative" );
+            }
+            this.rows = rows;
+            this.columns = columns;
+            this.tileRows = ( rows + TILE_SIZE - 1 ) >> SHIFT;
+            this.tileColumns = ( columns + TILE_SIZE - 1 ) >> SHIFT;
+            this.tiles = new double[tileRows * tileColumns][];
+            for ( int ti = 0; ti < tileRows; ti++ ) {
+                for ( int tj = 0; tj < tileColumns; tj++ ) {
+                    tiles[ti * tileColumns + tj] = new double[height( ti ) * width( tj )];
+                }
+            }
+        }
+
+        Storage copy() {
+            Storage result = new Storage( rows, columns );
+            result.flipped = flipped;
+            for ( int k = 0; k < tiles.length; k++ ) {
+                System.arraycopy( tiles[k], 0, result.tiles[k], 0, tiles[k].length );
+            }
+            return result;
+        }
+
+        double get( int i, int j ) {
+            checkIndex( i, j );
+            int tj = j >> SHIFT;
+            return tiles[( i >> SHIFT ) * tileColumns + tj][( i & MASK ) * width( tj ) + ( j & MASK )];
+        }
+
+        double[] getColumn( int j ) {
+            checkColumn( j );
+            double[] result = new double[rows];
+            int tj = j >> SHIFT;
+            int w = width( tj );
+            int c = j & MASK;
+            for ( int ti = 0; ti < tileRows; ti++ ) {
+                double[] tile = tiles[ti * tileColumns + tj];
+                int offset = ti << SHIFT;
+                for ( int r = 0, h = height( ti ); r < h; r++ ) {
+                    result[offset + r] = tile[r * w + c];
+                }
+            }
+            return result;
+        }
+
+        double[] getRow( int i ) {
+            checkRow( i );
+            double[] result = new double[columns];
+            int ti = i >> SHIFT;
+            int r = i & MASK;
+            for ( int tj = 0; tj < tileColumns; tj++ ) {
+                int w = width( tj );
+                System.arraycopy( tiles[ti * tileColumns + tj], r * w, result, tj << SHIFT, w );
+            }
+            return result;
+        }
+
+        /**
+         * @return the columns in tile column tj.
+         */
+        double[][] columnBand( int tj ) {
+            int w = width( tj );
+            double[][] result = new double[w][rows];
+            for ( int ti = 0; ti < tileRows; ti++ ) {
+                double[] tile = tiles[ti * tileColumns + tj];
+                int offset = ti << SHIFT;
+                for ( int r = 0, h = height( ti ); r < h; r++ ) {
+                    for ( int c = 0; c < w; c++ ) {
+                        result[c][offset + r] = tile[r * w + c];
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the rows in tile row ti.
+         */
+        double[][] rowBand( int ti ) {
+            int h = height( ti );
+            double[][] result = new double[h][columns];
+            for ( int tj = 0; tj < tileColumns; tj++ ) {
+                double[] tile = tiles[ti * tileColumns + tj];
+                int w = width( tj );
+                for ( int r = 0; r < h; r++ ) {
+                    System.arraycopy( tile, r * w, result[r], tj << SHIFT, w );
+                }
+            }
+            return result;
+        }
+
+        void set( int i, int j, double value ) {
+            checkIndex( i, j );
+            int tj = j >> SHIFT;
+            tiles[( i >> SHIFT ) * tileColumns + tj][( i & MASK ) * width( tj ) + ( j & MASK )] = value;
+        }
+
+        void setColumn( int j, double[] values ) {
+            checkColumn( j );
+            int tj = j >> SHIFT;
+            int w = width( tj );
+            int c = j & MASK;
+            for ( int ti = 0; ti < tileRows; ti++ ) {
+                double[] tile = tiles[ti * tileColumns + tj];
+                int offset = ti << SHIFT;
+                for ( int r = 0, h = height( ti ); r < h; r++ ) {
+                    tile[r * w + c] = values[offset + r];
+                }
+            }
+        }
+
+        void setRow( int i, double[] values ) {
+            checkRow( i );
+            int ti = i >> SHIFT;
+            int r = i & MASK;
+            for ( int tj = 0; tj < tileColumns; tj++ ) {
+                int w = width( tj );
+                System.arraycopy( values, tj << SHIFT, tiles[ti * tileColumns + tj], r * w, w );
+            }
+        }
+
+        /**
+         * Transpose each tile in place (using one tile of scratch space) and the grid of tiles.
+         */
+        void transpose() {
+            double[] scratch = new double[TILE_SIZE * TILE_SIZE];
+            double[][] transposed = new double[tiles.length][];
+            for ( int ti = 0; ti < tileRows; ti++ ) {
+                int h = height( ti );
+                for ( int tj = 0; tj < tileColumns; tj++ ) {
+                    int w = width( tj );
+                    double[] tile = tiles[ti * tileColumns + tj];
+                    System.arraycopy( tile, 0, scratch, 0, tile.length );
+                    for ( int r = 0; r < h; r++ ) {
+                        for ( int c = 0; c < w; c++ ) {
+                            tile[c * h + r] = scratch[r * w + c];
+                        }
+                    }
+                    transposed[tj * tileRows + ti] = tile;
+                }
+            }
+            tiles = transposed;
+            int t = rows;
+            rows = columns;
+            columns = t;
+            t = tileRows;
+            tileRows = tileColumns;
+            tileColumns = t;
+            flipped = !flipped;
+        }
+
+        private void checkColumn( int j ) {
+            if ( j < 0 || j >= columns ) {
+                throw new IndexOutOfBoundsException( "Column: " + j + ", Columns: " + columns );
+            }
+        }
+
+        private void checkIndex( int i, int j ) {
+            checkRow( i );
+            checkColumn( j );
+        }
+
+        private void checkRow( int i ) {
+            if ( i < 0 || i >= rows ) {
+                throw new IndexOutOfBoundsException( "Row: " + i + ", Rows: " + rows );
+            }
+        }
+
+        private int height( int ti ) {
+            return Math.min( TILE_SIZE, rows - ( ti << SHIFT ) );
+        }
+
+        private int width( int tj ) {
+            return Math.min( TILE_SIZE, columns - ( tj << SHIFT ) );
+        }
+    }
+
+    /**
+     * Number of rows and columns in a tile; a full tile is 32 kB.
+     */
+    public static final int TILE_SIZE = 64;
+
+    private static final int MASK = TILE_SIZE - 1;
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int SHIFT = 6;
+
+    private final Storage storage;
+
+    /**
+     * If true, the rows of this matrix are the columns of the storage (before any in-place transposition).
+     */
+    private final boolean transposed;
+
+    /**
+     * The data are copied.
+     *
+     * @param t
+     */
+    public TiledDoubleMatrix( double[][] t ) {
+        this( t.length, t.length == 0 ? 0 : t[0].length );
+        for ( int i = 0; i < t.length; i++ ) {
+            setRow( i, t[i] );
+        }
+    }
+
+    /**
+     * @param rows
+     * @param columns
+     */
+    public TiledDoubleMatrix( int rows, int columns ) {
+        this( new Storage( rows, columns ), false );
+    }
+
+    private TiledDoubleMatrix( Storage storage, boolean transposed ) {
+        super();
+        this.storage = storage;
+        this.transposed = transposed;
+    }
+
+    @Override
+    public double[][] asArray() {
+        double[][] result = new double[rows()][];
+        Iterator<double[]> it = rowIterator();
+        for ( int i = 0; it.hasNext(); i++ ) {
+            result[i] = it.next();
+        }
+        return result;
+    }
+
+    @Override
+    public void assign( DoubleFunction function ) {
+        for ( double[] tile : storage.tiles ) {
+            for ( int k = 0; k < tile.length; k++ ) {
+                tile[k] = function.apply( tile[k] );
+            }
+        }
+    }
+
+    @Override
+    public int columns() {
+        return swapped() ? storage.rows : storage.columns;
+    }
+
+    /**
+     * @return an iterator over the columns, in order. Each array is a copy.
+     */
+    public Iterator<double[]> columnIterator() {
+        return new BandIterator( false );
+    }
+
+    /**
+     * @return a copy which does not share storage with this.
+     */
+    @Override
+    public DoubleMatrix<R, C> copy() {
+        TiledDoubleMatrix<R, C> returnval = new TiledDoubleMatrix<R, C>( storage.copy(), transposed );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        return returnval;
+    }
+
+    @Override
+    public void forEachNonMissing( RowColValueConsumer consumer ) {
+        Iterator<double[]> it = rowIterator();
+        for ( int i = 0; it.hasNext(); i++ ) {
+            double[] row = it.next();
+            for ( int j = 0; j < row.length; j++ ) {
+                if ( !Double.isNaN( row[j] ) ) {
+                    consumer.accept( i, j, row[j] );
+                }
+            }
+        }
+    }
+
+    @Override
+    public double get( int row, int column ) {
+        return swapped() ? storage.get( column, row ) : storage.get( row, column );
+    }
+
+    @Override
+    public Double[] getColObj( int col ) {
+        double[] column = getColumn( col );
+        Double[] result = new Double[column.length];
+        for ( int i = 0; i < column.length; i++ ) {
+            result[i] = column[i];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getColRange( int startCol, int endCol ) {
+        super.checkColRange( startCol, endCol );
+        TiledDoubleMatrix<R, C> returnval = new TiledDoubleMatrix<R, C>( this.rows(), 1 + endCol - startCol );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().range( startCol, endCol ) );
+        for ( int j = startCol; j <= endCol; j++ ) {
+            returnval.setColumn( j - startCol, this.getColumn( j ) );
+        }
+        return returnval;
+    }
+
+    /**
+     * @return a copy of the column
+     */
+    @Override
+    public double[] getColumn( int j ) {
+        return swapped() ? storage.getRow( j ) : storage.getColumn( j );
+    }
+
+    @Override
+    public Double getObject( int row, int col ) {
+        return get( row, col );
+    }
+
+    /**
+     * @return a copy of the row
+     */
+    @Override
+    public double[] getRow( int i ) {
+        return swapped() ? storage.getColumn( i ) : storage.getRow( i );
+    }
+
+    @Override
+    public DoubleArrayList getRowArrayList( int i ) {
+        return new DoubleArrayList( getRow( i ) );
+    }
+
+    @Override
+    public Double[] getRowObj( int r ) {
+        double[] row = getRow( r );
+        Double[] result = new Double[row.length];
+        for ( int j = 0; j < row.length; j++ ) {
+            result[j] = row[j];
+        }
+        return result;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> getRowRange( int startRow, int endRow ) {
+        super.checkRowRange( startRow, endRow );
+        TiledDoubleMatrix<R, C> returnval = new TiledDoubleMatrix<R, C>( 1 + endRow - startRow, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().range( startRow, endRow ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        for ( int i = startRow; i <= endRow; i++ ) {
+            returnval.setRow( i - startRow, this.getRow( i ) );
+        }
+        return returnval;
+    }
+
+    @Override
+    public boolean isMissing( int i, int j ) {
+        return Double.isNaN( get( i, j ) );
+    }
+
+    /**
+     * @return an iterator over the rows, in order. Each array is a copy.
+     */
+    public Iterator<double[]> rowIterator() {
+        return new BandIterator( true );
+    }
+
+    @Override
+    public int rows() {
+        return swapped() ? storage.columns : storage.rows;
+    }
+
+    @Override
+    public void set( int row, int column, Double value ) {
+        setQuick( row, column, value );
+    }
+
+    @Override
+    public void setColumn( int column, double[] values ) {
+        if ( values.length != rows() ) {
+            throw new IllegalArgumentException( "Expected " + rows() + " values, got " + values.length );
+        }
+        if ( swapped() ) {
+            storage.setRow( column, values );
+        } else {
+            storage.setColumn( column, values );
+        }
+    }
+
+    @Override
+    public void setQuick( int row, int column, double value ) {
+        if ( swapped() ) {
+            storage.set( column, row, value );
+        } else {
+            storage.set( row, column, value );
+        }
+    }
+
+    @Override
+    public void setRow( int row, double[] values ) {
+        if ( values.length != columns() ) {
+            throw new IllegalArgumentException( "Expected " + columns() + " values, got " + values.length );
+        }
+        if ( swapped() ) {
+            storage.setColumn( row, values );
+        } else {
+            storage.setRow( row, values );
+        }
+    }
+
+    @Override
+    public int size() {
+        return storage.rows * storage.columns;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetColumns( List<C> columns ) {
+        int[] colIndices = this.colIndicesOf( columns );
+        TiledDoubleMatrix<R, C> returnval = new TiledDoubleMatrix<R, C>( this.rows(), colIndices.length );
+        returnval.setRowNameIndex( this.getRowNameIndex() );
+        returnval.setColumnNameIndex( this.getColNameIndex().subset( colIndices ) );
+        for ( int k = 0; k < colIndices.length; k++ ) {
+            returnval.setColumn( k, this.getColumn( colIndices[k] ) );
+        }
+        return returnval;
+    }
+
+    @Override
+    public DoubleMatrix<R, C> subsetRows( List<R> rowNames ) {
+        int[] rowIndices = this.rowIndicesOf( rowNames );
+        TiledDoubleMatrix<R, C> returnval = new TiledDoubleMatrix<R, C>( rowIndices.length, this.columns() );
+        returnval.setRowNameIndex( this.getRowNameIndex().subset( rowIndices ) );
+        returnval.setColumnNameIndex( this.getColNameIndex() );
+        for ( int k = 0; k < rowIndices.length; k++ ) {
+            returnval.setRow( k, this.getRow( rowIndices[k] ) );
+        }
+        return returnval;
+    }
+
+    /**
+     * @return a view of the transpose, which shares storage with this matrix; nothing is copied.
+     */
+    @Override
+    public TiledDoubleMatrix<C, R> transpose() {
+        TiledDoubleMatrix<C, R> result = new TiledDoubleMatrix<C, R>( storage, !transposed );
+        result.setRowNameIndex( this.getColNameIndex() );
+        result.setColumnNameIndex( this.getRowNameIndex() );
+        return result;
+    }
+
+    /**
+     * Transpose the storage in place, so that the rows of the transpose are stored row-wise, and return the transpose.
+     * This matrix (and any other view of the same storage) remains valid, but is now stored column-wise.
+     *
+     * @return a view of the transpose, sharing storage with this matrix.
+     */
+    public TiledDoubleMatrix<C, R> transposeInPlace() {
+        storage.transpose();
+        return transpose();
+    }
+
+    /**
+     * @return a copy of the column
+     */
+    @Override
+    public DoubleMatrix1D viewColumn( int column ) {
+        return new DenseDoubleMatrix1D( getColumn( column ) );
+    }
+
+    /**
+     * @return a copy of the row
+     */
+    @Override
+    public DoubleMatrix1D viewRow( int row ) {
+        return new DenseDoubleMatrix1D( getRow( row ) );
+    }
+
+    private boolean swapped() {
+        return transposed != storage.flipped;
+    }
+
+}
@@ -14,14 +14,18 @@
  */
 package ubic.basecode.dataStructure.params;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import ubic.basecode.io.excel.SpreadSheetSchema;
+import ubic.basecode.io.excel.SpreadSheetWriter;
+import ubic.basecode.io.excel.XmlSpreadSheetWriter;
 
 /**
  * Keeps track of results in the form of several key/value maps (each one can represent an experiment run), can output
@@ -48,6 +52,37 @@ public class ParamKeeper {
         return result;
     }
 
+    /**
+     * Write the parameters to a spreadsheet without building it in memory, for sweeps too large for
+     * {@link #writeExcel(String)}. The columns are the parameter names, sorted. Delimited files get the values exactly
+     * as given; in an XML spreadsheet, values that look like numbers are written as numbers.
+     * 
+     * @param filename ending in .csv, .tsv, .txt or .xml, optionally followed by .gz
+     * @throws IOException
+     * @see SpreadSheetWriter#open(String, SpreadSheetSchema)
+     */
+    public void write( String filename ) throws IOException {
+        Set<String> keySet = new TreeSet<String>();
+        for ( Map<String, String> params : paramLines ) {
+            keySet.addAll( params.keySet() );
+        }
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        for ( String key : keySet ) {
+            positions.put( key, positions.size() );
+        }
+
+        try (SpreadSheetWriter writer = SpreadSheetWriter.open( filename, new SpreadSheetSchema( positions ) )) {
+            boolean typed = writer instanceof XmlSpreadSheetWriter;
+            for ( Map<String, String> params : paramLines ) {
+                Map<String, Object> row = new HashMap<String, Object>();
+                for ( Map.Entry<String, String> e : params.entrySet() ) {
+                    row.put( e.getKey(), typed ? toCell( e.getValue() ) : e.getValue() );
+                }
+                writer.addRow( row );
+            }
+        }
+    }
+
     public void writeExcel( String filename ) throws Exception {
         // get all the keys
         Set<String> keySet = new HashSet<String>();
@@ -71,4 +106,22 @@ public class ParamKeeper {
         s.save();
     }
 
+    /**
+     * @param value
+     * @return the value as a Double if it looks like a number, otherwise the value itself. Java-only forms such as
+     *         "2f" are left as text.
+     */
+    private Object toCell( String value ) {
+        if ( value == null || value.isEmpty() ) return value;
+        char last = value.charAt( value.length() - 1 );
+        if ( !Character.isDigit( last ) && last != '.' ) return value;
+        try {
+            double d = Double.parseDouble( value );
+            if ( !Double.isNaN( d ) ) return d;
+        } catch ( NumberFormatException e ) {
+            // not a number
+        }
+        return value;
+    }
+
 }
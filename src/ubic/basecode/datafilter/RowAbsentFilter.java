@@ -21,6 +21,9 @@ package ubic.basecode.datafilter;
 import java.util.List;
 import java.util.Vector;
 
+import org.apache.commons.lang3.StringUtils;
+
+import ubic.basecode.dataStructure.matrix.DictionaryStringMatrix;
 import ubic.basecode.dataStructure.matrix.Matrix2D;
 import ubic.basecode.dataStructure.matrix.MatrixUtil;
 import ubic.basecode.dataStructure.matrix.StringMatrix;
@@ -36,6 +39,12 @@ import ubic.basecode.dataStructure.matrix.StringMatrix;
  */
 public class RowAbsentFilter<M extends Matrix2D<R, C, V>, R, C, V> extends AbstractFilter<M, R, C, V> {
 
+    private static final int ABSENT = 0;
+    private static final int MARGINAL = 1;
+    private static final int MISSING = 2;
+    private static final int PRESENT = 3;
+    private static final int UNKNOWN = 4;
+
     private boolean countIsSet = false;
 
     private StringMatrix<R, C> flags = null;
@@ -89,6 +98,25 @@ public class RowAbsentFilter<M extends Matrix2D<R, C, V>, R, C, V> extends Abstr
         List<V[]> MTemp = new Vector<V[]>();
         List<R> rowNames = new Vector<R>();
 
+        /*
+         * Look up the flag columns once. For dictionary-encoded flags, each distinct flag is classified once and cells
+         * are compared by code.
+         */
+        int[] flagColumns = new int[numCols];
+        for ( int j = 0; j < numCols; j++ ) {
+            C colName = data.getColName( j );
+            flagColumns[j] = flags.containsColumnName( colName ) ? flags.getColIndexByName( colName ) : -1;
+        }
+        DictionaryStringMatrix<R, C> encodedFlags = null;
+        int[] flagTypes = null;
+        if ( flags instanceof DictionaryStringMatrix ) {
+            encodedFlags = ( DictionaryStringMatrix<R, C> ) flags;
+            flagTypes = new int[encodedFlags.getNumSymbols()];
+            for ( int code = 0; code < flagTypes.length; code++ ) {
+                flagTypes[code] = flagType( encodedFlags.getSymbol( code ) );
+            }
+        }
+
         int kept = 0;
         for ( int i = 0; i < numRows; i++ ) {
             R rowName = data.getRowName( i );
@@ -97,13 +125,14 @@ public class RowAbsentFilter<M extends Matrix2D<R, C, V>, R, C, V> extends Abstr
                 log.debug( "Row " + rowName + " not found in flags, skipping." );
                 continue;
             }
+            int flagRow = flags.getRowIndexByName( rowName );
 
             int numPresent = 0;
             for ( int j = 0; j < numCols; j++ ) {
-                C colName = data.getColName( j );
+                int flagColumn = flagColumns[j];
 
-                if ( !flags.containsColumnName( colName ) ) {
-                    log.debug( "Column " + colName + " not found in flags, skipping." );
+                if ( flagColumn < 0 ) {
+                    log.debug( "Column " + data.getColName( j ) + " not found in flags, skipping." );
                     continue;
                 }
 
@@ -114,16 +143,18 @@ public class RowAbsentFilter<M extends Matrix2D<R, C, V>, R, C, V> extends Abstr
                     continue;
                 }
 
-                String flag = flags.get( flags.getRowIndexByName( rowName ), flags.getColIndexByName( colName ) );
+                int type = encodedFlags == null ? flagType( flags.get( flagRow, flagColumn ) )
+                        : flagTypes[encodedFlags.getCode( flagRow, flagColumn )];
 
-                if ( flags.isMissing( flags.getRowIndexByName( rowName ), flags.getColIndexByName( colName ) ) ) {
+                if ( type == MISSING ) {
                     log.warn( "Flags had no value for an item, counting as present." );
-                } else if ( flag.equals( "A" ) ) {
+                } else if ( type == ABSENT ) {
                     continue;
-                } else if ( flag.equals( "M" ) && !keepMarginal ) {
+                } else if ( type == MARGINAL && !keepMarginal ) {
                     continue;
-                } else if ( !flag.equals( "P" ) && !flag.equals( "M" ) ) {
-                    log.warn( "Found a flag I don't know about, ignoring " + flag + " and counting as present." );
+                } else if ( type == UNKNOWN ) {
+                    log.warn( "Found a flag I don't know about, ignoring " + flags.get( flagRow, flagColumn )
+                            + " and counting as present." );
                 }
 
                 numPresent++;
@@ -191,6 +222,18 @@ public class RowAbsentFilter<M extends Matrix2D<R, C, V>, R, C, V> extends Abstr
         fractionIsSet = true;
     }
 
+    /**
+     * @param flag
+     * @return one of ABSENT, MARGINAL, MISSING, PRESENT or UNKNOWN
+     */
+    private int flagType( String flag ) {
+        if ( StringUtils.isBlank( flag ) ) return MISSING;
+        if ( flag.equals( "A" ) ) return ABSENT;
+        if ( flag.equals( "M" ) ) return MARGINAL;
+        if ( flag.equals( "P" ) ) return PRESENT;
+        return UNKNOWN;
+    }
+
     /**
      * @param data NamedMatrix
      * @todo this should check more carefully - actually test that the rows are all the same.
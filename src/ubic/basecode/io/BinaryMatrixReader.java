@@ -0,0 +1,262 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleBufferMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+
+/**
+ * Reads matrices written by {@link BinaryMatrixWriter}. The header and names are read when the reader is created; the
+ * values can then be copied into a matrix on the heap ({@link #read()}) or, for row-major doubles, memory-mapped
+ * without copying ({@link #map()}).
+ *
+ * @author paul
+ */
+public class BinaryMatrixReader {
+
+    private final List<String> columnNames;
+    private final int columns;
+    private final long dataOffset;
+    private final int elementSize;
+    private final int elementType;
+    private final File file;
+    private final int layout;
+    private final long missingOffset;
+    private final List<String> rowNames;
+    private final int rows;
+
+    /**
+     * Read the header and names.
+     *
+     * @param file
+     * @throws IOException if the file is not in the format.
+     */
+    public BinaryMatrixReader( File file ) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            if ( channel.size() < BinaryMatrixWriter.HEADER_SIZE ) {
+                throw new IOException( file + " is not a binary matrix file" );
+            }
+            ByteBuffer header = readFully( channel, 0, BinaryMatrixWriter.HEADER_SIZE );
+            if ( header.getInt() != BinaryMatrixWriter.MAGIC ) {
+                throw new IOException( file + " is not a binary matrix file" );
+            }
+            byte version = header.get();
+            if ( version != BinaryMatrixWriter.VERSION ) {
+                throw new IOException( "Unsupported binary matrix format version " + version + " in " + file );
+            }
+            this.elementType = header.get();
+            this.layout = header.get();
+            byte flags = header.get();
+            this.rows = header.getInt();
+            this.columns = header.getInt();
+            this.dataOffset = header.getLong();
+            long rowNamesOffset = header.getLong();
+            long columnNamesOffset = header.getLong();
+            long bitmap = header.getLong();
+            this.missingOffset = ( flags & BinaryMatrixWriter.FLAG_MISSING ) != 0 ? bitmap : 0;
+            if ( elementType != BinaryMatrixWriter.DOUBLE && elementType != BinaryMatrixWriter.FLOAT ) {
+                throw new IOException( "Unknown element type " + elementType + " in " + file );
+            }
+            if ( layout != BinaryMatrixWriter.ROW_MAJOR && layout != BinaryMatrixWriter.COLUMN_MAJOR ) {
+                throw new IOException( "Unknown layout " + layout + " in " + file );
+            }
+            this.elementSize = elementType == BinaryMatrixWriter.DOUBLE ? 8 : 4;
+
+            this.rowNames = readNames( channel, rowNamesOffset, columnNamesOffset );
+            this.columnNames = readNames( channel, columnNamesOffset, missingOffset > 0 ? missingOffset
+                    : channel.size() );
+        }
+    }
+
+    /**
+     * @return the column names, or null if the columns are not named.
+     */
+    public List<String> getColumnNames() {
+        return columnNames == null ? null : Collections.unmodifiableList( columnNames );
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return {@link BinaryMatrixWriter#DOUBLE} or {@link BinaryMatrixWriter#FLOAT}
+     */
+    public int getElementType() {
+        return elementType;
+    }
+
+    /**
+     * @return {@link BinaryMatrixWriter#ROW_MAJOR} or {@link BinaryMatrixWriter#COLUMN_MAJOR}
+     */
+    public int getLayout() {
+        return layout;
+    }
+
+    /**
+     * @return the row names, or null if the rows are not named.
+     */
+    public List<String> getRowNames() {
+        return rowNames == null ? null : Collections.unmodifiableList( rowNames );
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return true if the file has a bitmap of missing values.
+     */
+    public boolean hasMissingBitmap() {
+        return missingOffset > 0;
+    }
+
+    /**
+     * Map the values of a file of doubles in the row-major layout, without copying them. The matrix is read-only;
+     * setting values fails with a ReadOnlyBufferException. Copies and subsets of it are ordinary matrices on the heap.
+     *
+     * @return the matrix
+     * @throws IOException
+     * @throws IllegalStateException if the file is not row-major doubles, or is too large to map in one piece; use
+     *         {@link #read()} instead.
+     */
+    public DoubleMatrix<String, String> map() throws IOException {
+        if ( elementType != BinaryMatrixWriter.DOUBLE || layout != BinaryMatrixWriter.ROW_MAJOR ) {
+            throw new IllegalStateException( "Only row-major matrices of doubles can be mapped" );
+        }
+        long size = ( long ) rows * columns * 8L;
+        if ( size > Integer.MAX_VALUE ) {
+            throw new IllegalStateException( rows + " x " + columns + " is too large to map" );
+        }
+        DoubleBuffer values;
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed.
+            values = channel.map( FileChannel.MapMode.READ_ONLY, dataOffset, size ).order( ByteOrder.LITTLE_ENDIAN )
+                    .asDoubleBuffer();
+        }
+        return setNames( new DoubleBufferMatrix<String, String>( values, rows, columns ) );
+    }
+
+    /**
+     * Read the values into a matrix on the heap. Floats are converted to doubles.
+     *
+     * @return the matrix
+     * @throws IOException
+     */
+    public DoubleMatrix<String, String> read() throws IOException {
+        DenseDoubleMatrix<String, String> matrix = new DenseDoubleMatrix<String, String>( rows, columns );
+        boolean rowMajor = layout == BinaryMatrixWriter.ROW_MAJOR;
+        int length = rowMajor ? columns : rows;
+        int count = rowMajor ? rows : columns;
+        double[] values = new double[length];
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            for ( int k = 0; k < count; k++ ) {
+                ByteBuffer buf = readFully( channel, dataOffset + ( long ) k * length * elementSize,
+                        length * elementSize );
+                if ( elementType == BinaryMatrixWriter.DOUBLE ) {
+                    buf.asDoubleBuffer().get( values );
+                } else {
+                    for ( int i = 0; i < length; i++ ) {
+                        values[i] = buf.getFloat();
+                    }
+                }
+                if ( rowMajor ) {
+                    matrix.setRow( k, values );
+                } else {
+                    matrix.setColumn( k, values );
+                }
+            }
+        }
+        return setNames( matrix );
+    }
+
+    /**
+     * @return the missing-value bitmap: bit (row * columns + column) is set if the value is missing.
+     * @throws IOException
+     * @throws IllegalStateException if there is no bitmap.
+     */
+    public long[] readMissingBitmap() throws IOException {
+        if ( !hasMissingBitmap() ) {
+            throw new IllegalStateException( file + " has no missing-value bitmap" );
+        }
+        long bits = ( long ) rows * columns;
+        long[] result = new long[( int ) ( ( bits + 63 ) / 64 )];
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            readFully( channel, missingOffset, result.length * 8 ).asLongBuffer().get( result );
+        }
+        return result;
+    }
+
+    private ByteBuffer readFully( FileChannel channel, long position, int length ) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+        while ( buf.hasRemaining() ) {
+            if ( channel.read( buf, position + buf.position() ) < 0 ) {
+                throw new IOException( "Unexpected end of " + file );
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * @param end of the block (it may be followed by padding)
+     */
+    private List<String> readNames( FileChannel channel, long offset, long end ) throws IOException {
+        if ( end - offset > Integer.MAX_VALUE ) {
+            throw new IOException( "Name block too large in " + file );
+        }
+        ByteBuffer buf = readFully( channel, offset, ( int ) ( end - offset ) );
+        int n = buf.getInt();
+        if ( n < 0 ) return null;
+        List<String> names = new ArrayList<String>( n );
+        for ( int i = 0; i < n; i++ ) {
+            int length = buf.getInt();
+            names.add( new String( buf.array(), buf.position(), length, StandardCharsets.UTF_8 ) );
+            buf.position( buf.position() + length );
+        }
+        return names;
+    }
+
+    private DoubleMatrix<String, String> setNames( DoubleMatrix<String, String> matrix ) {
+        if ( rowNames != null ) matrix.setRowNames( rowNames );
+        if ( columnNames != null ) matrix.setColumnNames( columnNames );
+        return matrix;
+    }
+
+}
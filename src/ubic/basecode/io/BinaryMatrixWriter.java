@@ -0,0 +1,349 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+
+/**
+ * Writes numeric matrices in a binary format that can be memory-mapped by {@link BinaryMatrixReader}, so matrices can
+ * be passed between programs without formatting and parsing text. Rows are written one at a time, so the matrix need
+ * not be in memory.
+ * <p>
+ * The file starts with a 64-byte header (all numbers are little-endian):
+ *
+ * <pre>
+ *  0  int   magic number ("BCBM")
+ *  4  byte  format version
+ *  5  byte  element type ({@link #DOUBLE} or {@link #FLOAT})
+ *  6  byte  layout ({@link #ROW_MAJOR} or {@link #COLUMN_MAJOR})
+ *  7  byte  flags (1 if there is a missing-value bitmap)
+ *  8  int   number of rows
+ * 12  int   number of columns
+ * 16  long  offset of the values
+ * 24  long  offset of the row names
+ * 32  long  offset of the column names
+ * 40  long  offset of the missing-value bitmap, or 0
+ * </pre>
+ *
+ * The values follow the header, in rows or columns. Each of the other blocks starts at a multiple of 64 bytes. A
+ * block of names is a count (-1 if there are no names) followed by each name as a byte count and UTF-8 bytes. The
+ * bitmap has one bit per value, in row-major order, set for missing (NaN) values, stored as longs.
+ *
+ * @author paul
+ */
+public class BinaryMatrixWriter implements Closeable {
+
+    public static final int COLUMN_MAJOR = 1;
+    public static final int DOUBLE = 1;
+    public static final int FLOAT = 2;
+    public static final int ROW_MAJOR = 0;
+
+    static final int ALIGNMENT = 64;
+    static final byte FLAG_MISSING = 1;
+    static final int HEADER_SIZE = 64;
+    static final int MAGIC = 0x4243424D; // "BCBM"
+    static final byte VERSION = 1;
+
+    /**
+     * Number of rows buffered before they are written, for the column-major layout.
+     */
+    private static final int BLOCK_ROWS = 256;
+
+    private final FileChannel channel;
+    private final List<String> columnNames;
+    private final int columns;
+    private final int elementSize;
+    private final int elementType;
+    private final File file;
+    private final int layout;
+    private long[] missing = null;
+    private double[][] pending;
+    private int pendingRows = 0;
+    private final RandomAccessFile raf;
+    private Boolean rowsNamed = null;
+    private final List<String> rowNames;
+    private final int rows;
+    private int rowsWritten = 0;
+
+    /**
+     * Write a matrix of doubles, row by row.
+     *
+     * @param file
+     * @param columnNames
+     * @param rows the number of rows that will be written
+     * @throws IOException
+     */
+    public BinaryMatrixWriter( File file, List<String> columnNames, int rows ) throws IOException {
+        this( file, columnNames, columnNames.size(), rows, ROW_MAJOR, DOUBLE );
+    }
+
+    /**
+     * @param file
+     * @param columnNames null if the columns are not named
+     * @param columns
+     * @param rows the number of rows that will be written
+     * @param layout {@link #ROW_MAJOR} or {@link #COLUMN_MAJOR}
+     * @param elementType {@link #DOUBLE} or {@link #FLOAT}
+     * @throws IOException
+     */
+    public BinaryMatrixWriter( File file, List<String> columnNames, int columns, int rows, int layout,
+            int elementType ) throws IOException {
+        if ( layout != ROW_MAJOR && layout != COLUMN_MAJOR ) {
+            throw new IllegalArgumentException( "Unknown layout: " + layout );
+        }
+        if ( elementType != DOUBLE && elementType != FLOAT ) {
+            throw new IllegalArgumentException( "Unknown element type: " + elementType );
+        }
+        if ( rows < 0 || columns < 0 ) {
+            throw new IllegalArgumentException( "Dimensions must be non-negative" );
+        }
+        if ( columnNames != null && columnNames.size() != columns ) {
+            throw new IllegalArgumentException( "Expected " + columns + " column names, got " + columnNames.size() );
+        }
+        this.file = file;
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.rows = rows;
+        this.layout = layout;
+        this.elementType = elementType;
+        this.elementSize = elementType == DOUBLE ? 8 : 4;
+        this.rowNames = new ArrayList<String>( rows );
+        this.raf = new RandomAccessFile( file, "rw" );
+        this.raf.setLength( 0 );
+        this.channel = raf.getChannel();
+        if ( layout == COLUMN_MAJOR ) {
+            this.pending = new double[Math.min( BLOCK_ROWS, Math.max( rows, 1 ) )][];
+        }
+    }
+
+    /**
+     * Write a matrix of doubles, row by row, with the names.
+     *
+     * @param matrix
+     * @param file
+     * @throws IOException
+     */
+    public static void write( DoubleMatrix<String, String> matrix, File file ) throws IOException {
+        write( matrix, file, ROW_MAJOR, DOUBLE, false );
+    }
+
+    /**
+     * @param matrix
+     * @param file
+     * @param layout {@link #ROW_MAJOR} or {@link #COLUMN_MAJOR}
+     * @param elementType {@link #DOUBLE} or {@link #FLOAT}
+     * @param missingBitmap whether to write a bitmap of the missing values
+     * @throws IOException
+     */
+    public static void write( DoubleMatrix<String, String> matrix, File file, int layout, int elementType,
+            boolean missingBitmap ) throws IOException {
+        List<String> colNames = matrix.hasColNames() ? matrix.getColNames() : null;
+        try (BinaryMatrixWriter writer = new BinaryMatrixWriter( file, colNames, matrix.columns(), matrix.rows(),
+                layout, elementType )) {
+            writer.setMissingBitmap( missingBitmap );
+            boolean named = matrix.hasRowNames();
+            for ( int i = 0; i < matrix.rows(); i++ ) {
+                writer.writeRow( named ? matrix.getRowName( i ) : null, matrix.getRow( i ) );
+            }
+        }
+    }
+
+    /**
+     * Finish writing the file: the remaining values, the names and the header.
+     *
+     * @throws IOException if fewer rows were written than expected.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if ( rowsWritten != rows ) {
+                throw new IOException( "Expected " + rows + " rows, got " + rowsWritten + " in " + file );
+            }
+            flushPending();
+
+            long dataEnd = HEADER_SIZE + ( long ) rows * columns * elementSize;
+            long rowNamesOffset = align( dataEnd );
+            long end = writeNames( rowsNamed != null && rowsNamed ? rowNames : null, rowNamesOffset );
+            long columnNamesOffset = align( end );
+            end = writeNames( columnNames, columnNamesOffset );
+            long missingOffset = 0;
+            if ( missing != null ) {
+                missingOffset = align( end );
+                ByteBuffer buf = ByteBuffer.allocate( missing.length * 8 ).order( ByteOrder.LITTLE_ENDIAN );
+                buf.asLongBuffer().put( missing );
+                writeFully( buf, missingOffset );
+            }
+
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+            header.putInt( MAGIC );
+            header.put( VERSION );
+            header.put( ( byte ) elementType );
+            header.put( ( byte ) layout );
+            header.put( missing != null ? FLAG_MISSING : 0 );
+            header.putInt( rows );
+            header.putInt( columns );
+            header.putLong( HEADER_SIZE );
+            header.putLong( rowNamesOffset );
+            header.putLong( columnNamesOffset );
+            header.putLong( missingOffset );
+            header.clear();
+            writeFully( header, 0 );
+        } finally {
+            channel.close();
+            raf.close();
+        }
+    }
+
+    /**
+     * Whether to write a bitmap of the missing values, for programs that do not treat NaN as missing. Must be set
+     * before the first row is written.
+     *
+     * @param missingBitmap
+     */
+    public void setMissingBitmap( boolean missingBitmap ) {
+        if ( rowsWritten > 0 ) {
+            throw new IllegalStateException( "Must be set before writing rows" );
+        }
+        if ( !missingBitmap ) {
+            this.missing = null;
+            return;
+        }
+        long bits = ( long ) rows * columns;
+        if ( ( bits + 63 ) / 64 > Integer.MAX_VALUE / 8 ) {
+            throw new IllegalArgumentException( "Matrix too large for a missing-value bitmap" );
+        }
+        this.missing = new long[( int ) ( ( bits + 63 ) / 64 )];
+    }
+
+    /**
+     * @param rowName null if the rows are not named (in which case none of them may be)
+     * @param values
+     * @throws IOException
+     */
+    public void writeRow( String rowName, double[] values ) throws IOException {
+        if ( rowsWritten == rows ) {
+            throw new IllegalStateException( "All " + rows + " rows have been written" );
+        }
+        if ( values.length != columns ) {
+            throw new IllegalArgumentException( "Expected " + columns + " values, got " + values.length );
+        }
+        if ( rowsNamed == null ) {
+            rowsNamed = rowName != null;
+        } else if ( rowsNamed != ( rowName != null ) ) {
+            throw new IllegalArgumentException( "Either all rows or none must have names" );
+        }
+        rowNames.add( rowName );
+
+        if ( missing != null ) {
+            long bit = ( long ) rowsWritten * columns;
+            for ( int j = 0; j < values.length; j++, bit++ ) {
+                if ( Double.isNaN( values[j] ) ) missing[( int ) ( bit >>> 6 )] |= 1L << ( bit & 63 );
+            }
+        }
+
+        if ( layout == ROW_MAJOR ) {
+            ByteBuffer buf = encode( values, 0, values.length );
+            writeFully( buf, HEADER_SIZE + ( long ) rowsWritten * columns * elementSize );
+            rowsWritten++;
+        } else {
+            pending[pendingRows++] = values.clone();
+            rowsWritten++;
+            if ( pendingRows == pending.length ) flushPending();
+        }
+    }
+
+    private long align( long offset ) {
+        return ( offset + ALIGNMENT - 1 ) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private ByteBuffer encode( double[] values, int offset, int length ) {
+        ByteBuffer buf = ByteBuffer.allocate( length * elementSize ).order( ByteOrder.LITTLE_ENDIAN );
+        if ( elementType == DOUBLE ) {
+            buf.asDoubleBuffer().put( values, offset, length );
+        } else {
+            for ( int i = 0; i < length; i++ ) {
+                buf.putFloat( ( float ) values[offset + i] );
+            }
+            buf.clear();
+        }
+        return buf;
+    }
+
+    /**
+     * For the column-major layout, write the buffered rows: a strip of each column.
+     */
+    private void flushPending() throws IOException {
+        if ( pendingRows == 0 ) return;
+        int firstRow = rowsWritten - pendingRows;
+        double[] strip = new double[pendingRows];
+        for ( int j = 0; j < columns; j++ ) {
+            for ( int k = 0; k < pendingRows; k++ ) {
+                strip[k] = pending[k][j];
+            }
+            writeFully( encode( strip, 0, pendingRows ), HEADER_SIZE + ( ( long ) j * rows + firstRow ) * elementSize );
+        }
+        pendingRows = 0;
+    }
+
+    private void writeFully( ByteBuffer buf, long position ) throws IOException {
+        while ( buf.hasRemaining() ) {
+            position += channel.write( buf, position );
+        }
+    }
+
+    /**
+     * @return the end of the block.
+     */
+    private long writeNames( List<String> names, long offset ) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate( 1 << 16 ).order( ByteOrder.LITTLE_ENDIAN );
+        buf.putInt( names == null ? -1 : names.size() );
+        long position = offset;
+        if ( names != null ) {
+            for ( String name : names ) {
+                byte[] b = name.getBytes( StandardCharsets.UTF_8 );
+                if ( buf.remaining() < 4 + b.length ) {
+                    buf.flip();
+                    writeFully( buf, position );
+                    position += buf.limit();
+                    buf.clear();
+                    if ( buf.capacity() < 4 + b.length ) {
+                        buf = ByteBuffer.allocate( 4 + b.length ).order( ByteOrder.LITTLE_ENDIAN );
+                    }
+                }
+                buf.putInt( b.length );
+                buf.put( b );
+            }
+        }
+        buf.flip();
+        writeFully( buf, position );
+        return position + buf.limit();
+    }
+
+}
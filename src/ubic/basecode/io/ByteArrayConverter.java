@@ -24,16 +24,21 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 
+import ubic.basecode.dataStructure.matrix.DoubleBufferMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
 import cern.colt.list.ByteArrayList;
 import cern.colt.list.DoubleArrayList;
 
@@ -46,6 +51,35 @@ import cern.colt.list.DoubleArrayList;
  */
 public final class ByteArrayConverter {
 
+    /**
+     * Codec for doubles: eight big-endian bytes per value, with no header. This is the default, and arrays in it can be
+     * read by older versions.
+     */
+    public static final int CODEC_RAW = 0;
+
+    /**
+     * Codec for doubles: the bytes of the values are grouped by position (all the first bytes, then all the second
+     * bytes, and so on) and deflated. Lossless; works well when values have similar magnitudes.
+     */
+    public static final int CODEC_SHUFFLE_DEFLATE = 1;
+
+    /**
+     * Codec for doubles: each value is stored as the meaningful bits of its XOR with the previous one, as in
+     * Facebook's Gorilla. Lossless; works well when neighbouring values are equal or close.
+     */
+    public static final int CODEC_XOR_DELTA = 2;
+
+    /**
+     * Codec for doubles: values are rounded to single precision (4 bytes each). Lossy.
+     */
+    public static final int CODEC_FLOAT32 = 3;
+
+    /**
+     * Codec for doubles: values are rounded to half precision (2 bytes each; about 3 significant digits, and values
+     * with magnitude above 65504 become infinite). Lossy.
+     */
+    public static final int CODEC_FLOAT16 = 4;
+
     // sizes are in bytes.
 
     /**
@@ -68,8 +102,30 @@ public final class ByteArrayConverter {
      */
     private static final int BOOL_SIZE = 1; // erm...this seems to work.
 
+    private static final int CHAR_SIZE = 2;
+
     private static final int DOUBLE_SIZE = 8;
 
+    private static final int INT_SIZE = 4;
+
+    private static final int LONG_SIZE = 8;
+
+    /**
+     * @return a view of the buffer, big-endian, positioned at the offset.
+     */
+    private static ByteBuffer view( ByteBuffer buf, int offset ) {
+        ByteBuffer result = buf.duplicate().order( ByteOrder.BIG_ENDIAN );
+        result.position( offset );
+        return result;
+    }
+
+    /**
+     * @throws BufferOverflowException if the buffer does not have the given number of bytes remaining.
+     */
+    private static void checkRoom( ByteBuffer dest, long bytes ) {
+        if ( dest.remaining() < bytes ) throw new BufferOverflowException();
+    }
+
     /**
      * @param boolarray
      * @return byte[]
@@ -157,7 +213,10 @@ public final class ByteArrayConverter {
      */
     public double[][] byteArrayToDoubleMatrix( byte[] barray, int width ) throws IllegalArgumentException {
 
-        int numDoubles = barray.length / DOUBLE_SIZE;
+        boolean raw = DoubleArrayCodec.codecOf( barray ) == CODEC_RAW;
+        double[] values = raw ? null : DoubleArrayCodec.decode( barray );
+
+        int numDoubles = raw ? barray.length / DOUBLE_SIZE : values.length;
         if ( numDoubles % width != 0 ) {
             throw new IllegalArgumentException( "The number of doubles in the byte array (" + numDoubles
                     + ") does not divide evenly into the number of items expected per row (" + width + ")." );
@@ -167,28 +226,27 @@ public final class ByteArrayConverter {
 
         double[][] answer = new double[numRows][];
 
-        byte[] row = new byte[width * DOUBLE_SIZE];
-        int bytesPerRow = width * DOUBLE_SIZE;
+        DoubleBuffer buf = raw ? ByteBuffer.wrap( barray ).asDoubleBuffer() : DoubleBuffer.wrap( values );
         for ( int rownum = 0; rownum < numRows; rownum++ ) {
-
-            int offset = rownum * bytesPerRow;
-            System.arraycopy( barray, offset, row, 0, bytesPerRow );
-            // for ( int i = 0; i < bytesPerRow; i++ ) {
-            // row[i] = barray[i + offset];
-            // }
-
-            answer[rownum] = byteArrayToDoubles( row );
+            answer[rownum] = new double[width];
+            buf.get( answer[rownum] );
         }
         return answer;
     }
 
     /**
-     * @param barray
+     * @param barray in the raw format, or any of the other codecs (which is detected from the header).
      * @return double[]
+     * @throws IllegalArgumentException if the array has a header but cannot be decoded.
+     * @see #doubleArrayToBytes(double[], int)
      */
     public double[] byteArrayToDoubles( byte[] barray ) {
         if ( barray == null ) return null;
 
+        if ( DoubleArrayCodec.codecOf( barray ) != CODEC_RAW ) {
+            return DoubleArrayCodec.decode( barray );
+        }
+
         DoubleBuffer buf = ByteBuffer.wrap( barray ).asDoubleBuffer();
         double[] array = new double[buf.remaining()];
         buf.get( array );
@@ -197,6 +255,130 @@ public final class ByteArrayConverter {
 
     }
 
+    /**
+     * Decode doubles into an existing array.
+     * 
+     * @param barray in the raw format, or any of the other codecs.
+     * @param dest
+     * @param destOffset
+     * @return the number of values decoded.
+     * @throws IndexOutOfBoundsException if they do not fit.
+     */
+    public int byteArrayToDoubles( byte[] barray, double[] dest, int destOffset ) {
+        if ( DoubleArrayCodec.codecOf( barray ) != CODEC_RAW ) {
+            DoubleArrayCodec.decode( barray, dest, destOffset );
+            return DoubleArrayCodec.count( barray );
+        }
+        int n = barray.length / DOUBLE_SIZE;
+        byteBufferToDoubles( ByteBuffer.wrap( barray ), 0, dest, destOffset, n );
+        return n;
+    }
+
+    /**
+     * Decode one row of a matrix in place. For a {@link DoubleBufferMatrix}, the values go straight into its buffer; so
+     * a batch of arrays (for example, Blobs) can be decoded into one contiguous matrix without making an array per row.
+     * 
+     * @param barray in the raw format, or any of the other codecs.
+     * @param matrix
+     * @param row
+     * @throws IllegalArgumentException if the array does not hold exactly one row of the matrix.
+     * @see #byteArraysToDoubleMatrix(Collection, int)
+     */
+    public void byteArrayToDoubleMatrixRow( byte[] barray, DoubleMatrix<?, ?> matrix, int row ) {
+        int columns = matrix.columns();
+        if ( row < 0 || row >= matrix.rows() ) {
+            throw new IndexOutOfBoundsException( "Row " + row + " of a matrix with " + matrix.rows() + " rows" );
+        }
+        boolean raw = DoubleArrayCodec.codecOf( barray ) == CODEC_RAW;
+        int n = raw ? barray.length / DOUBLE_SIZE : DoubleArrayCodec.count( barray );
+        if ( n != columns ) {
+            throw new IllegalArgumentException( "Expected " + columns + " values, the array holds " + n );
+        }
+
+        if ( matrix instanceof DoubleBufferMatrix ) {
+            DoubleBuffer buf = ( ( DoubleBufferMatrix<?, ?> ) matrix ).getBuffer();
+            if ( raw ) {
+                DoubleBuffer target = buf.duplicate();
+                target.position( row * columns );
+                target.put( ByteBuffer.wrap( barray ).asDoubleBuffer() );
+                return;
+            } else if ( buf.hasArray() ) {
+                DoubleArrayCodec.decode( barray, buf.array(), buf.arrayOffset() + row * columns );
+                return;
+            }
+        }
+
+        if ( raw ) {
+            DoubleBuffer values = ByteBuffer.wrap( barray ).asDoubleBuffer();
+            for ( int j = 0; j < columns; j++ ) {
+                matrix.setQuick( row, j, values.get( j ) );
+            }
+        } else {
+            matrix.setRow( row, DoubleArrayCodec.decode( barray ) );
+        }
+    }
+
+    /**
+     * Decode a batch of arrays, one per row, into one contiguous matrix.
+     * 
+     * @param rows each in the raw format or any of the other codecs, holding the given number of values.
+     * @param columns
+     * @return a matrix backed by a single buffer; it has no row or column names.
+     */
+    public DoubleMatrix<String, String> byteArraysToDoubleMatrix( Collection<byte[]> rows, int columns ) {
+        DoubleBufferMatrix<String, String> matrix = new DoubleBufferMatrix<String, String>( rows.size(), columns );
+        int i = 0;
+        for ( byte[] row : rows ) {
+            byteArrayToDoubleMatrixRow( row, matrix, i++ );
+        }
+        return matrix;
+    }
+
+    /**
+     * Decode raw (big-endian) doubles from a buffer into an existing array. The position and order of the buffer are
+     * not changed.
+     * 
+     * @param src
+     * @param srcOffset offset in bytes of the first value in src
+     * @param dest
+     * @param destOffset
+     * @param length number of values
+     * @throws java.nio.BufferUnderflowException if src does not hold that many values.
+     */
+    public void byteBufferToDoubles( ByteBuffer src, int srcOffset, double[] dest, int destOffset, int length ) {
+        view( src, srcOffset ).asDoubleBuffer().get( dest, destOffset, length );
+    }
+
+    /**
+     * Decode raw (big-endian) ints from a buffer into an existing array. The position and order of the buffer are not
+     * changed.
+     * 
+     * @param src
+     * @param srcOffset offset in bytes of the first value in src
+     * @param dest
+     * @param destOffset
+     * @param length number of values
+     * @throws java.nio.BufferUnderflowException if src does not hold that many values.
+     */
+    public void byteBufferToInts( ByteBuffer src, int srcOffset, int[] dest, int destOffset, int length ) {
+        view( src, srcOffset ).asIntBuffer().get( dest, destOffset, length );
+    }
+
+    /**
+     * Decode raw (big-endian) longs from a buffer into an existing array. The position and order of the buffer are not
+     * changed.
+     * 
+     * @param src
+     * @param srcOffset offset in bytes of the first value in src
+     * @param dest
+     * @param destOffset
+     * @param length number of values
+     * @throws java.nio.BufferUnderflowException if src does not hold that many values.
+     */
+    public void byteBufferToLongs( ByteBuffer src, int srcOffset, long[] dest, int destOffset, int length ) {
+        view( src, srcOffset ).asLongBuffer().get( dest, destOffset, length );
+    }
+
     /**
      * @param barray
      * @return int[]
@@ -296,39 +478,54 @@ public final class ByteArrayConverter {
      */
     public byte[] charArrayToBytes( char[] carray ) {
         if ( carray == null ) return null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream( bos );
+        ByteBuffer buf = ByteBuffer.allocate( carray.length * CHAR_SIZE );
+        buf.asCharBuffer().put( carray );
+        return buf.array();
+    }
 
-        try {
-            for ( char element : carray ) {
-                dos.writeChar( element );
-            }
-            dos.close();
-            bos.close();
+    /**
+     * @param darray
+     * @return byte[]
+     */
+    public byte[] doubleArrayToBytes( double[] darray ) {
+        if ( darray == null ) return null;
+        byte[] result = new byte[darray.length * DOUBLE_SIZE];
+        doubleArrayToByteBuffer( darray, 0, darray.length, ByteBuffer.wrap( result ) );
+        return result;
+    }
 
-        } catch ( IOException e ) {
-            // do nothing.
+    /**
+     * Encode doubles in the raw format into a buffer (for example, a direct or pooled one), starting at its position,
+     * which is advanced past them. They are big-endian whatever the order of the buffer.
+     * 
+     * @param darray
+     * @param offset of the first value to encode
+     * @param length number of values
+     * @param dest
+     * @return dest
+     * @throws BufferOverflowException if there is not enough room; nothing is written.
+     */
+    public ByteBuffer doubleArrayToByteBuffer( double[] darray, int offset, int length, ByteBuffer dest ) {
+        checkRoom( dest, ( long ) length * DOUBLE_SIZE );
+        ByteBuffer out = view( dest, dest.position() );
+        for ( int i = offset; i < offset + length; i++ ) {
+            // not a bulk put: that would not make NaNs canonical, as DataOutputStream always did.
+            out.putLong( Double.doubleToLongBits( darray[i] ) );
         }
-
-        return bos.toByteArray();
+        dest.position( out.position() );
+        return dest;
     }
 
     /**
      * @param darray
+     * @param codec one of the CODEC constants; {@link #CODEC_RAW} is the same as {@link #doubleArrayToBytes(double[])}.
+     *        The other codecs add a small header that {@link #byteArrayToDoubles(byte[])} uses to decode them.
      * @return byte[]
      */
-    public byte[] doubleArrayToBytes( double[] darray ) {
+    public byte[] doubleArrayToBytes( double[] darray, int codec ) {
         if ( darray == null ) return null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream( bos );
-        try {
-            for ( double element : darray ) {
-                dos.writeDouble( element );
-            }
-        } catch ( IOException e ) {
-            // do nothing
-        }
-        return bos.toByteArray();
+        if ( codec == CODEC_RAW ) return doubleArrayToBytes( darray );
+        return DoubleArrayCodec.encode( darray, codec );
     }
 
     /**
@@ -336,7 +533,8 @@ public final class ByteArrayConverter {
      * @return byte[]
      */
     public byte[] doubleArrayToBytes( Double[] darray ) {
-        return doubleArrayToBytes( ArrayUtils.toPrimitive( darray ) );
+        if ( darray == null ) return null;
+        return toBytes( ( Object[] ) darray );
     }
 
     /**
@@ -344,7 +542,9 @@ public final class ByteArrayConverter {
      * @return
      */
     public byte[] doubleArrayToBytes( DoubleArrayList darray ) {
-        return doubleArrayToBytes( ( Double[] ) darray.toList().toArray( new Double[] {} ) );
+        byte[] result = new byte[darray.size() * DOUBLE_SIZE];
+        doubleArrayToByteBuffer( darray.elements(), 0, darray.size(), ByteBuffer.wrap( result ) );
+        return result;
     }
 
     /**
@@ -369,24 +569,41 @@ public final class ByteArrayConverter {
 
     }
 
+    /**
+     * @param barray an array of doubles as from {@link #doubleArrayToBytes(double[], int)}
+     * @return the codec it was written with.
+     */
+    public int getCodec( byte[] barray ) {
+        return DoubleArrayCodec.codecOf( barray );
+    }
+
     /**
      * @param iarray
      * @return byte[]
      */
     public byte[] intArrayToBytes( int[] iarray ) {
         if ( iarray == null ) return null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream( bos );
-        try {
-            for ( int element : iarray ) {
-                dos.writeInt( element );
-            }
-            dos.close();
-            bos.close();
-        } catch ( IOException e ) {
-            // do nothing
-        }
-        return bos.toByteArray();
+        byte[] result = new byte[iarray.length * INT_SIZE];
+        intArrayToByteBuffer( iarray, 0, iarray.length, ByteBuffer.wrap( result ) );
+        return result;
+    }
+
+    /**
+     * Encode ints into a buffer, starting at its position, which is advanced past them. They are big-endian whatever
+     * the order of the buffer.
+     * 
+     * @param iarray
+     * @param offset of the first value to encode
+     * @param length number of values
+     * @param dest
+     * @return dest
+     * @throws BufferOverflowException if there is not enough room; nothing is written.
+     */
+    public ByteBuffer intArrayToByteBuffer( int[] iarray, int offset, int length, ByteBuffer dest ) {
+        checkRoom( dest, ( long ) length * INT_SIZE );
+        view( dest, dest.position() ).asIntBuffer().put( iarray, offset, length );
+        dest.position( dest.position() + length * INT_SIZE );
+        return dest;
     }
 
     /**
@@ -395,18 +612,27 @@ public final class ByteArrayConverter {
      */
     public byte[] longArrayToBytes( long[] larray ) {
         if ( larray == null ) return null;
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream( bos );
-        try {
-            for ( long element : larray ) {
-                dos.writeLong( element );
-            }
-            dos.close();
-            bos.close();
-        } catch ( IOException e ) {
-            // do nothing
-        }
-        return bos.toByteArray();
+        byte[] result = new byte[larray.length * LONG_SIZE];
+        longArrayToByteBuffer( larray, 0, larray.length, ByteBuffer.wrap( result ) );
+        return result;
+    }
+
+    /**
+     * Encode longs into a buffer, starting at its position, which is advanced past them. They are big-endian whatever
+     * the order of the buffer.
+     * 
+     * @param larray
+     * @param offset of the first value to encode
+     * @param length number of values
+     * @param dest
+     * @return dest
+     * @throws BufferOverflowException if there is not enough room; nothing is written.
+     */
+    public ByteBuffer longArrayToByteBuffer( long[] larray, int offset, int length, ByteBuffer dest ) {
+        checkRoom( dest, ( long ) length * LONG_SIZE );
+        view( dest, dest.position() ).asLongBuffer().put( larray, offset, length );
+        dest.position( dest.position() + length * LONG_SIZE );
+        return dest;
     }
 
     /**
@@ -469,35 +695,31 @@ public final class ByteArrayConverter {
             }
             return booleanArrayToBytes( toConvert );
         } else if ( array[0] instanceof Double ) {
-            double[] toConvert = new double[array.length];
-            for ( int i = 0; i < array.length; i++ ) {
-                double object = ( ( Double ) array[i] ).doubleValue();
-                toConvert[i] = object;
+            ByteBuffer buf = ByteBuffer.allocate( array.length * DOUBLE_SIZE );
+            for ( Object element : array ) {
+                buf.putLong( Double.doubleToLongBits( ( ( Double ) element ).doubleValue() ) );
             }
-            return doubleArrayToBytes( toConvert );
+            return buf.array();
         } else if ( array[0] instanceof Character ) {
-            char[] toConvert = new char[array.length];
-            for ( int i = 0; i < array.length; i++ ) {
-                char object = ( ( Character ) array[i] ).charValue();
-                toConvert[i] = object;
+            ByteBuffer buf = ByteBuffer.allocate( array.length * CHAR_SIZE );
+            for ( Object element : array ) {
+                buf.putChar( ( ( Character ) element ).charValue() );
             }
-            return charArrayToBytes( toConvert );
+            return buf.array();
         } else if ( array[0] instanceof String ) {
             return stringArrayToBytes( array );
         } else if ( array[0] instanceof Integer ) {
-            int[] toConvert = new int[array.length];
-            for ( int i = 0; i < array.length; i++ ) {
-                int object = ( ( Integer ) array[i] ).intValue();
-                toConvert[i] = object;
+            ByteBuffer buf = ByteBuffer.allocate( array.length * INT_SIZE );
+            for ( Object element : array ) {
+                buf.putInt( ( ( Integer ) element ).intValue() );
             }
-            return intArrayToBytes( toConvert );
+            return buf.array();
         } else if ( array[0] instanceof Long ) {
-            long[] toConvert = new long[array.length];
-            for ( int i = 0; i < array.length; i++ ) {
-                int object = ( ( Long ) array[i] ).intValue();
-                toConvert[i] = object;
+            ByteBuffer buf = ByteBuffer.allocate( array.length * LONG_SIZE );
+            for ( Object element : array ) {
+                buf.putLong( ( ( Long ) element ).longValue() );
             }
-            return longArrayToBytes( toConvert );
+            return buf.array();
         } else {
             throw new UnsupportedOperationException( "Can't convert " + array[0].getClass() + " to bytes" );
         }
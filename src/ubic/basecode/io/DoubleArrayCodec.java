@@ -0,0 +1,400 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The compact encodings of double arrays used by {@link ByteArrayConverter}. An encoded array starts with an 8-byte
+ * header: two magic bytes, the format version, the codec and the number of values (big-endian). The encoded length is
+ * never a multiple of 8 (a pad byte is added if needed), which is what tells encoded arrays apart from the legacy raw
+ * format: that is always a whole number of doubles.
+ *
+ * @author paul
+ */
+final class DoubleArrayCodec {
+
+    /**
+     * Writes bits most significant first.
+     */
+    private static class BitWriter {
+        private byte[] buf;
+        private int bits = 0; // bits used in the current byte
+        private int pos;
+
+        BitWriter( int offset, int capacity ) {
+            this.buf = new byte[offset + capacity];
+            this.pos = offset;
+        }
+
+        /**
+         * @return the buffer, trimmed to the bytes written.
+         */
+        byte[] toArray() {
+            return Arrays.copyOf( buf, bits > 0 ? pos + 1 : pos );
+        }
+
+        /**
+         * Write the low n bits of v.
+         */
+        void write( long v, int n ) {
+            while ( n > 0 ) {
+                if ( pos + 1 >= buf.length ) buf = Arrays.copyOf( buf, buf.length * 2 );
+                int k = Math.min( n, 8 - bits );
+                int chunk = ( int ) ( v >>> ( n - k ) ) & ( ( 1 << k ) - 1 );
+                buf[pos] |= chunk << ( 8 - bits - k );
+                bits += k;
+                n -= k;
+                if ( bits == 8 ) {
+                    pos++;
+                    bits = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads bits written by {@link BitWriter}.
+     */
+    private static class BitReader {
+        private int bits = 0;
+        private final byte[] buf;
+        private int pos;
+
+        BitReader( byte[] buf, int offset ) {
+            this.buf = buf;
+            this.pos = offset;
+        }
+
+        long read( int n ) {
+            long v = 0;
+            while ( n > 0 ) {
+                if ( pos >= buf.length ) throw new IllegalArgumentException( "Truncated XOR-delta data" );
+                int k = Math.min( n, 8 - bits );
+                int chunk = ( buf[pos] >>> ( 8 - bits - k ) ) & ( ( 1 << k ) - 1 );
+                v = v << k | chunk;
+                bits += k;
+                n -= k;
+                if ( bits == 8 ) {
+                    pos++;
+                    bits = 0;
+                }
+            }
+            return v;
+        }
+    }
+
+    static final int HEADER_SIZE = 8;
+    static final byte MAGIC_0 = ( byte ) 0xBA;
+    static final byte MAGIC_1 = ( byte ) 0x5E;
+    static final byte VERSION = 1;
+
+    private DoubleArrayCodec() {
+    }
+
+    /**
+     * @param b
+     * @return the codec of the array, or {@link ByteArrayConverter#CODEC_RAW} if it has no header.
+     * @throws IllegalArgumentException if the header is from a later version
+     */
+    static int codecOf( byte[] b ) {
+        if ( b.length < HEADER_SIZE || b.length % 8 == 0 || b[0] != MAGIC_0 || b[1] != MAGIC_1 ) {
+            return ByteArrayConverter.CODEC_RAW;
+        }
+        if ( b[2] > VERSION ) {
+            throw new IllegalArgumentException( "Unsupported encoding version " + b[2] );
+        }
+        return b[3];
+    }
+
+    /**
+     * @param b an encoded array (not raw)
+     * @return the number of values in it.
+     */
+    static int count( byte[] b ) {
+        int n = getInt( b, 4 );
+        if ( n < 0 ) throw new IllegalArgumentException( "Corrupt header: " + n + " values" );
+        return n;
+    }
+
+    /**
+     * @param b an encoded array (not raw)
+     * @return the values.
+     */
+    static double[] decode( byte[] b ) {
+        double[] result = new double[count( b )];
+        decode( b, result, 0 );
+        return result;
+    }
+
+    /**
+     * @param b an encoded array (not raw)
+     * @param dest to decode into; must have room for {@link #count(byte[])} values after the offset.
+     * @param off
+     */
+    static void decode( byte[] b, double[] dest, int off ) {
+        int codec = codecOf( b );
+        int n = count( b );
+        if ( off < 0 || off + n > dest.length ) {
+            throw new IndexOutOfBoundsException( "No room for " + n + " values at " + off );
+        }
+        switch ( codec ) {
+            case ByteArrayConverter.CODEC_SHUFFLE_DEFLATE:
+                decodeShuffled( b, n, dest, off );
+                break;
+            case ByteArrayConverter.CODEC_XOR_DELTA:
+                decodeXorDelta( b, n, dest, off );
+                break;
+            case ByteArrayConverter.CODEC_FLOAT32:
+                checkLength( b, HEADER_SIZE + 4L * n );
+                for ( int i = 0, j = HEADER_SIZE; i < n; i++, j += 4 ) {
+                    dest[off + i] = Float.intBitsToFloat( getInt( b, j ) );
+                }
+                break;
+            case ByteArrayConverter.CODEC_FLOAT16:
+                checkLength( b, HEADER_SIZE + 2L * n );
+                for ( int i = 0, j = HEADER_SIZE; i < n; i++, j += 2 ) {
+                    dest[off + i] = fromHalf( ( b[j] & 0xff ) << 8 | b[j + 1] & 0xff );
+                }
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown codec " + codec );
+        }
+    }
+
+    /**
+     * @param values
+     * @param codec one of the codecs in {@link ByteArrayConverter}, except raw.
+     * @return the encoded array, with its header.
+     */
+    static byte[] encode( double[] values, int codec ) {
+        byte[] result;
+        switch ( codec ) {
+            case ByteArrayConverter.CODEC_SHUFFLE_DEFLATE:
+                result = encodeShuffled( values );
+                break;
+            case ByteArrayConverter.CODEC_XOR_DELTA:
+                result = encodeXorDelta( values );
+                break;
+            case ByteArrayConverter.CODEC_FLOAT32:
+                result = new byte[HEADER_SIZE + 4 * values.length];
+                for ( int i = 0; i < values.length; i++ ) {
+                    putInt( result, HEADER_SIZE + 4 * i, Float.floatToIntBits( ( float ) values[i] ) );
+                }
+                break;
+            case ByteArrayConverter.CODEC_FLOAT16:
+                result = new byte[HEADER_SIZE + 2 * values.length];
+                for ( int i = 0; i < values.length; i++ ) {
+                    int h = toHalf( ( float ) values[i] );
+                    result[HEADER_SIZE + 2 * i] = ( byte ) ( h >>> 8 );
+                    result[HEADER_SIZE + 2 * i + 1] = ( byte ) h;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown codec " + codec );
+        }
+        if ( result.length % 8 == 0 ) result = Arrays.copyOf( result, result.length + 1 );
+        result[0] = MAGIC_0;
+        result[1] = MAGIC_1;
+        result[2] = VERSION;
+        result[3] = ( byte ) codec;
+        putInt( result, 4, values.length );
+        return result;
+    }
+
+    /**
+     * Half-precision bits to float.
+     */
+    static float fromHalf( int h ) {
+        int sign = ( h & 0x8000 ) << 16;
+        int exp = ( h >>> 10 ) & 0x1f;
+        int mant = h & 0x3ff;
+        if ( exp == 0x1f ) return Float.intBitsToFloat( sign | 0x7f800000 | mant << 13 );
+        if ( exp == 0 ) {
+            float v = mant * 0x1p-24f;
+            return sign != 0 ? -v : v;
+        }
+        return Float.intBitsToFloat( sign | ( exp + 112 ) << 23 | mant << 13 );
+    }
+
+    /**
+     * Float to half-precision bits, rounding to nearest even. Values too large become infinite.
+     */
+    static int toHalf( float f ) {
+        int bits = Float.floatToIntBits( f );
+        int sign = ( bits >>> 16 ) & 0x8000;
+        int exp = ( bits >>> 23 ) & 0xff;
+        int mant = bits & 0x7fffff;
+        if ( exp == 0xff ) return sign | 0x7c00 | ( mant != 0 ? 0x200 : 0 );
+        int e = exp - 112;
+        if ( e >= 0x1f ) return sign | 0x7c00;
+        if ( e <= 0 ) {
+            // subnormal, or zero.
+            if ( e < -10 ) return sign;
+            mant |= 0x800000;
+            int shift = 14 - e;
+            int m = mant >> shift;
+            int rem = mant & ( ( 1 << shift ) - 1 );
+            int half = 1 << ( shift - 1 );
+            if ( rem > half || rem == half && ( m & 1 ) != 0 ) m++;
+            return sign | m;
+        }
+        int h = sign | e << 10 | mant >> 13;
+        int rem = mant & 0x1fff;
+        if ( rem > 0x1000 || rem == 0x1000 && ( h & 1 ) != 0 ) h++; // a carry into the exponent is correct.
+        return h;
+    }
+
+    /**
+     * Inflate the byte planes and put the values back together from them.
+     */
+    private static void decodeShuffled( byte[] b, int n, double[] dest, int off ) {
+        byte[] planes = new byte[8 * n];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput( b, HEADER_SIZE, b.length - HEADER_SIZE );
+            int k = 0;
+            while ( k < planes.length ) {
+                int r = inflater.inflate( planes, k, planes.length - k );
+                if ( r == 0 && ( inflater.finished() || inflater.needsInput() || inflater.needsDictionary() ) ) {
+                    throw new IllegalArgumentException( "Truncated deflated data" );
+                }
+                k += r;
+            }
+        } catch ( DataFormatException e ) {
+            throw new IllegalArgumentException( "Corrupt deflated data", e );
+        } finally {
+            inflater.end();
+        }
+        for ( int i = 0; i < n; i++ ) {
+            long bits = 0;
+            for ( int p = 0, j = i; p < 8; p++, j += n ) {
+                bits = bits << 8 | planes[j] & 0xff;
+            }
+            dest[off + i] = Double.longBitsToDouble( bits );
+        }
+    }
+
+    private static void decodeXorDelta( byte[] b, int n, double[] dest, int off ) {
+        if ( n == 0 ) return;
+        BitReader in = new BitReader( b, HEADER_SIZE );
+        long prev = in.read( 64 );
+        dest[off] = Double.longBitsToDouble( prev );
+        int leading = 0;
+        int length = 0;
+        for ( int i = 1; i < n; i++ ) {
+            if ( in.read( 1 ) != 0 ) {
+                if ( in.read( 1 ) != 0 ) {
+                    leading = ( int ) in.read( 5 );
+                    length = ( int ) in.read( 6 );
+                    if ( length == 0 ) length = 64;
+                }
+                prev ^= in.read( length ) << ( 64 - leading - length );
+            }
+            dest[off + i] = Double.longBitsToDouble( prev );
+        }
+    }
+
+    /**
+     * Split the values into eight planes, one for each byte of the value, and deflate them: the sign, exponent and
+     * high mantissa bytes of similar values are nearly constant, and compress much better together.
+     */
+    private static byte[] encodeShuffled( double[] values ) {
+        int n = values.length;
+        byte[] planes = new byte[8 * n];
+        for ( int i = 0; i < n; i++ ) {
+            long bits = Double.doubleToLongBits( values[i] );
+            for ( int p = 7, j = 7 * n + i; p >= 0; p--, j -= n ) {
+                planes[j] = ( byte ) bits;
+                bits >>>= 8;
+            }
+        }
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput( planes );
+            deflater.finish();
+            byte[] result = new byte[HEADER_SIZE + planes.length / 2 + 64];
+            int k = HEADER_SIZE;
+            while ( !deflater.finished() ) {
+                if ( k == result.length ) result = Arrays.copyOf( result, result.length * 2 );
+                k += deflater.deflate( result, k, result.length - k );
+            }
+            return Arrays.copyOf( result, k );
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Gorilla-style compression: each value is XORed with the previous one, and only the bits between the leading and
+     * trailing zeros of the result are written, reusing the previous window when they fit in it. Repeated and slowly
+     * changing values take a few bits.
+     */
+    private static byte[] encodeXorDelta( double[] values ) {
+        BitWriter out = new BitWriter( HEADER_SIZE, 8 * values.length );
+        if ( values.length == 0 ) return out.toArray();
+        long prev = Double.doubleToLongBits( values[0] );
+        out.write( prev, 64 );
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for ( int i = 1; i < values.length; i++ ) {
+            long bits = Double.doubleToLongBits( values[i] );
+            long xor = bits ^ prev;
+            prev = bits;
+            if ( xor == 0 ) {
+                out.write( 0, 1 );
+                continue;
+            }
+            int leading = Math.min( Long.numberOfLeadingZeros( xor ), 31 );
+            int trailing = Long.numberOfTrailingZeros( xor );
+            if ( prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing ) {
+                out.write( 2, 2 );
+                out.write( xor >>> prevTrailing, 64 - prevLeading - prevTrailing );
+            } else {
+                int length = 64 - leading - trailing;
+                out.write( 3, 2 );
+                out.write( leading, 5 );
+                out.write( length == 64 ? 0 : length, 6 );
+                out.write( xor >>> trailing, length );
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+        return out.toArray();
+    }
+
+    private static void checkLength( byte[] b, long length ) {
+        if ( b.length < length ) throw new IllegalArgumentException( "Truncated data" );
+    }
+
+    private static int getInt( byte[] b, int off ) {
+        return ( b[off] & 0xff ) << 24 | ( b[off + 1] & 0xff ) << 16 | ( b[off + 2] & 0xff ) << 8 | b[off + 3] & 0xff;
+    }
+
+    private static void putInt( byte[] b, int off, int v ) {
+        b[off] = ( byte ) ( v >>> 24 );
+        b[off + 1] = ( byte ) ( v >>> 16 );
+        b[off + 2] = ( byte ) ( v >>> 8 );
+        b[off + 3] = ( byte ) v;
+    }
+
+}
@@ -25,7 +25,8 @@ import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 
 /**
- * TODO Document Me
+ * Creates an Excel workbook with a header row from a {@link SpreadSheetSchema}. The whole workbook is held in memory
+ * until {@link #save()}; for large tables use a {@link SpreadSheetWriter} instead.
  * 
  * @author lfrench
  * 
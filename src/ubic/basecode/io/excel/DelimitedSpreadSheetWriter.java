@@ -0,0 +1,103 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.excel;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * Writes a spreadsheet as delimited text. With a comma as the separator, fields are quoted as for CSV; with any other
+ * separator (typically a tab) they are written exactly as they are, without quoting or escaping. A field that contains
+ * the separator or a line break cannot be written that way, so it is rejected with an IllegalArgumentException when the
+ * row is added (or, for a column name, when the writer is created).
+ *
+ * @author paul
+ */
+public class DelimitedSpreadSheetWriter extends SpreadSheetWriter {
+
+    private final CSVWriter csv;
+    private final Writer out;
+
+    /**
+     * True if fields are written as they are, so they must not contain the separator or line breaks.
+     */
+    private final boolean raw;
+    private final char separator;
+
+    /**
+     * @param out
+     * @param schema
+     * @param windowSize number of rows to hold before writing them out
+     * @param separator
+     * @throws IllegalArgumentException if the separator is not a comma and a column name contains it or a line break.
+     */
+    public DelimitedSpreadSheetWriter( Writer out, SpreadSheetSchema schema, int windowSize, char separator ) {
+        super( schema, windowSize );
+        this.out = out;
+        this.separator = separator;
+        this.raw = separator != ',';
+        if ( raw ) {
+            this.csv = new CSVWriter( out, separator, CSVWriter.NO_QUOTE_CHARACTER, CSVWriter.NO_ESCAPE_CHARACTER,
+                    "\n" );
+            checkRow( schema.getHeaderRow() );
+        } else {
+            this.csv = new CSVWriter( out, separator, CSVWriter.DEFAULT_QUOTE_CHARACTER, "\n" );
+        }
+    }
+
+    @Override
+    protected void checkRow( Object[] values ) {
+        if ( !raw ) return;
+        for ( Object v : values ) {
+            if ( v == null ) continue;
+            String s = v.toString();
+            if ( s.indexOf( separator ) >= 0 || s.indexOf( '\n' ) >= 0 || s.indexOf( '\r' ) >= 0 ) {
+                throw new IllegalArgumentException( "Cannot write a value containing the separator or a line break: "
+                        + s );
+            }
+        }
+    }
+
+    @Override
+    protected Writer getOut() {
+        return out;
+    }
+
+    @Override
+    protected void writeEnd() throws IOException {
+        csv.flush();
+    }
+
+    @Override
+    protected void writeHeader( String[] header ) throws IOException {
+        csv.writeNext( header );
+    }
+
+    @Override
+    protected void writeRow( Object[] values, int columns ) throws IOException {
+        String[] fields = new String[columns];
+        for ( int i = 0; i < columns; i++ ) {
+            fields[i] = i < values.length && values[i] != null ? values[i].toString() : "";
+        }
+        csv.writeNext( fields );
+    }
+
+}
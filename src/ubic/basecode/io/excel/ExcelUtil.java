@@ -20,6 +20,7 @@ package ubic.basecode.io.excel;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -148,6 +149,53 @@ public class ExcelUtil {
         return result;
     }
 
+    /**
+     * Gets all the strings from a column of a sheet in a file, like
+     * {@link #grabColumnValuesList(HSSFSheet, int, boolean, boolean)}, but reads the file as a stream instead of
+     * loading the workbook, so it can be used on very large sheets.
+     * 
+     * @param filename
+     * @param sheetName
+     * @param column the index of the column to get
+     * @param header if there is a header row to be skipped
+     * @param clean if true it will trim and lowercase the strings
+     * @return
+     * @throws IOException
+     * @see StreamingSheetReader
+     */
+    public static List<String> grabColumnValuesList( String filename, String sheetName, int column,
+            final boolean header, final boolean clean ) throws IOException {
+        final List<String> result = new ArrayList<String>();
+        StreamingSheetReader reader = new StreamingSheetReader( filename, sheetName );
+        reader.setColumns( column );
+        reader.read( new SpreadSheetRowHandler() {
+            @Override
+            public void handleRow( int row, String[] values ) {
+                if ( header && row == 0 ) return;
+                String term = values[0].trim();
+                if ( clean ) term = term.toLowerCase();
+                result.add( term );
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * Streaming version of {@link #grabColumnValues(HSSFSheet, int, boolean, boolean)}.
+     * 
+     * @param filename
+     * @param sheetName
+     * @param column
+     * @param header
+     * @param clean
+     * @return
+     * @throws IOException
+     */
+    public static Set<String> grabColumnValues( String filename, String sheetName, int column, boolean header,
+            boolean clean ) throws IOException {
+        return new HashSet<String>( grabColumnValuesList( filename, sheetName, column, header, clean ) );
+    }
+
     public static void main( String args[] ) {
         HSSFWorkbook workbook = new HSSFWorkbook();
         HSSFSheet spreadsheet = workbook.createSheet();
@@ -0,0 +1,222 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.excel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ubic.basecode.util.BlockGzipOutputStream;
+import ubic.basecode.util.FileTools;
+
+/**
+ * Writes a table to a spreadsheet file row by row, as an alternative to {@link CreateSpreadSheet} for tables too large
+ * to build as a workbook in memory. The columns and the header row come from a {@link SpreadSheetSchema}. Rows are
+ * kept until a window of them is full and then written out, so at most {@link #getWindowSize()} rows are held at a
+ * time.
+ * <p>
+ * Cells that are {@link Number}s are written as numbers; anything else is written as its string value, and null as an
+ * empty cell. Use {@link #open(String, SpreadSheetSchema)} to choose the format from the file name.
+ *
+ * @author paul
+ */
+public abstract class SpreadSheetWriter implements Closeable, Flushable {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+
+    private static final int FILE_BUFFER_SIZE = 1 << 16;
+
+    private boolean closed = false;
+    private boolean headerWritten = false;
+    private int rowCount = 0;
+    private final SpreadSheetSchema schema;
+    private final int width;
+    private final List<Object[]> window;
+    private final int windowSize;
+
+    /**
+     * @param schema
+     * @param windowSize number of rows to hold before writing them out
+     */
+    protected SpreadSheetWriter( SpreadSheetSchema schema, int windowSize ) {
+        if ( windowSize < 1 ) throw new IllegalArgumentException( "Window size must be at least 1" );
+        this.schema = schema;
+        this.width = schema.getHeaderRow().length;
+        this.windowSize = windowSize;
+        this.window = new ArrayList<Object[]>( Math.min( windowSize, DEFAULT_WINDOW_SIZE ) );
+    }
+
+    /**
+     * Open a writer for a file, in a format chosen by its extension: comma-separated for ".csv", tab-separated for
+     * ".tsv" or ".txt", and XML Spreadsheet (which Excel opens directly) for ".xml". Any of these can be followed by
+     * ".gz" to compress the output.
+     *
+     * @param filename
+     * @param schema
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException if the format cannot be streamed; use {@link CreateSpreadSheet} for ".xls".
+     */
+    public static SpreadSheetWriter open( String filename, SpreadSheetSchema schema ) throws IOException {
+        String name = FileTools.isGZipped( filename ) ? FileTools.chompExtension( filename ) : filename;
+        String extension = FileTools.getExtension( name );
+        if ( !"csv".equals( extension ) && !"tsv".equals( extension ) && !"txt".equals( extension )
+                && !"xml".equals( extension ) ) {
+            throw new IllegalArgumentException( "Cannot stream spreadsheet as " + extension
+                    + "; use .csv, .tsv, .txt or .xml" );
+        }
+
+        OutputStream os = new FileOutputStream( filename );
+        if ( FileTools.isGZipped( filename ) ) os = new BlockGzipOutputStream( os );
+        Writer out = new OutputStreamWriter( new BufferedOutputStream( os, FILE_BUFFER_SIZE ), StandardCharsets.UTF_8 );
+
+        if ( "xml".equals( extension ) ) {
+            return new XmlSpreadSheetWriter( out, schema, DEFAULT_WINDOW_SIZE );
+        }
+        return new DelimitedSpreadSheetWriter( out, schema, DEFAULT_WINDOW_SIZE, "csv".equals( extension ) ? ','
+                : '\t' );
+    }
+
+    /**
+     * @param values the cells, with keys from the schema
+     * @throws IOException
+     * @throws IllegalArgumentException if a key is not in the schema
+     */
+    public void addRow( Map<String, ?> values ) throws IOException {
+        Object[] row = new Object[width];
+        for ( Map.Entry<String, ?> e : values.entrySet() ) {
+            Integer pos = schema.getPosition( e.getKey() );
+            if ( pos == null ) throw new IllegalArgumentException( "Not in the schema: " + e.getKey() );
+            row[pos] = e.getValue();
+        }
+        add( row );
+    }
+
+    /**
+     * @param values the cells, in column order; there can be fewer than the number of columns.
+     * @throws IOException
+     */
+    public void addRow( Object... values ) throws IOException {
+        if ( values.length > width ) {
+            throw new IllegalArgumentException( "Expected at most " + width + " values, got " + values.length );
+        }
+        add( values.clone() );
+    }
+
+    /**
+     * Write the remaining rows and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if ( closed ) return;
+        try {
+            writeWindow();
+            writeEnd();
+        } finally {
+            closed = true;
+            getOut().close();
+        }
+    }
+
+    /**
+     * Write the rows held so far. Does nothing once the writer is closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        if ( closed ) return;
+        writeWindow();
+        getOut().flush();
+    }
+
+    /**
+     * @return number of rows added, not counting the header.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the most rows held in memory at a time.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Check the cells of a row as it is added, so that a value the format cannot hold is reported to the caller
+     * rather than when the window is written. By default, anything is accepted.
+     *
+     * @param values the cells; null for an empty cell.
+     * @throws IllegalArgumentException if a value cannot be written.
+     */
+    protected void checkRow( Object[] values ) {
+        // anything goes.
+    }
+
+    /**
+     * @return the underlying writer.
+     */
+    protected abstract Writer getOut();
+
+    /**
+     * Write anything needed to complete the file, after the last row.
+     */
+    protected abstract void writeEnd() throws IOException;
+
+    /**
+     * @param header the column names; only called once, before any rows.
+     */
+    protected abstract void writeHeader( String[] header ) throws IOException;
+
+    /**
+     * @param values the cells; null for an empty cell.
+     * @param columns the number of columns; values may be shorter.
+     */
+    protected abstract void writeRow( Object[] values, int columns ) throws IOException;
+
+    private void add( Object[] row ) throws IOException {
+        if ( closed ) throw new IOException( "Writer closed" );
+        checkRow( row );
+        window.add( row );
+        rowCount++;
+        if ( window.size() >= windowSize ) writeWindow();
+    }
+
+    private void writeWindow() throws IOException {
+        if ( closed ) return;
+        if ( !headerWritten ) {
+            writeHeader( schema.getHeaderRow() );
+            headerWritten = true;
+        }
+        for ( Object[] row : window ) {
+            writeRow( row, width );
+        }
+        window.clear();
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.excel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.EventWorkbookBuilder.SheetRecordCollectingListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.model.HSSFFormulaParser;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+import ubic.basecode.dataStructure.matrix.DictionaryStringMatrix;
+
+/**
+ * Reads one sheet of an Excel (.xls) file with the POI event API, passing each row to a
+ * {@link SpreadSheetRowHandler} as it is read. Unlike {@link ExcelUtil#getSheetFromFile(String, String)}, the workbook
+ * is never built in memory: only the shared string table and the current row are held, so large sheets can be
+ * processed in about constant memory. Reading stops at the end of the requested sheet.
+ * <p>
+ * Values are formatted as by {@link ExcelUtil#getValue}: strings as they are, numbers with
+ * {@link Double#toString(double)}, formulas as the formula text and other cells as the empty string. Rows with no cells
+ * in the selected columns are not passed on.
+ *
+ * @author paul
+ */
+public class StreamingSheetReader {
+
+    /**
+     * Index of each column in the row values, or -1 if it is not selected; null to select all columns.
+     */
+    private int[] columnIndex = null;
+
+    private int[] columns = null;
+    private final File file;
+    private final String sheetName;
+
+    /**
+     * @param filename
+     * @param sheetName
+     */
+    public StreamingSheetReader( String filename, String sheetName ) {
+        this.file = new File( filename );
+        this.sheetName = sheetName;
+    }
+
+    /**
+     * @param handler receives each row
+     * @throws IOException
+     * @throws IllegalArgumentException if there is no sheet with the name given.
+     */
+    public void read( SpreadSheetRowHandler handler ) throws IOException {
+        SheetListener listener = new SheetListener( handler );
+        HSSFRequest request = new HSSFRequest();
+        request.addListenerForAllRecords( listener );
+        try (NPOIFSFileSystem fs = new NPOIFSFileSystem( file, true )) {
+            new HSSFEventFactory().abortableProcessWorkbookEvents( request, fs.getRoot() );
+        } catch ( HSSFUserException e ) {
+            throw new IOException( e );
+        }
+        if ( !listener.found ) {
+            throw new IllegalArgumentException( "No sheet named '" + sheetName + "' in " + file );
+        }
+    }
+
+    /**
+     * Read the selected columns into a matrix.
+     *
+     * @param header if true, the first row read gives the column names; otherwise the columns are named by their
+     *        index in the sheet.
+     * @return matrix whose row names are the indices of the rows in the sheet
+     * @throws IOException
+     */
+    public DictionaryStringMatrix<Integer, String> readMatrix( final boolean header ) throws IOException {
+        final List<Integer> rowNames = new ArrayList<Integer>();
+        final List<String> columnNames = new ArrayList<String>();
+        // without a column selection the width is not known until the end, so the rows are kept until then.
+        final List<String[]> rows = new ArrayList<String[]>();
+        final DictionaryStringMatrix.Builder<Integer, String> selected = columns == null ? null
+                : new DictionaryStringMatrix.Builder<Integer, String>( columns.length );
+
+        read( new SpreadSheetRowHandler() {
+            private boolean first = true;
+
+            @Override
+            public void handleRow( int row, String[] values ) {
+                if ( header && first ) {
+                    first = false;
+                    columnNames.addAll( Arrays.asList( values ) );
+                    return;
+                }
+                first = false;
+                rowNames.add( row );
+                if ( selected != null ) {
+                    selected.addRow( Arrays.asList( values ) );
+                } else {
+                    rows.add( values );
+                }
+            }
+        } );
+
+        DictionaryStringMatrix.Builder<Integer, String> builder = selected;
+        if ( builder == null ) {
+            int width = columnNames.size();
+            for ( String[] r : rows ) {
+                width = Math.max( width, r.length );
+            }
+            builder = new DictionaryStringMatrix.Builder<Integer, String>( width );
+            for ( String[] r : rows ) {
+                builder.addRow( Arrays.asList( Arrays.copyOf( r, width ) ) );
+            }
+            rows.clear();
+        }
+
+        DictionaryStringMatrix<Integer, String> matrix = builder.build();
+        matrix.setRowNames( rowNames );
+        List<String> names = new ArrayList<String>();
+        for ( int j = 0; j < builder.columns(); j++ ) {
+            String name = j < columnNames.size() ? columnNames.get( j ) : null;
+            names.add( name == null ? String.valueOf( columns == null ? j : columns[j] ) : name );
+        }
+        matrix.setColumnNames( names );
+        return matrix;
+    }
+
+    /**
+     * @param selected indices of the columns to read, in the order they are wanted; none to read all columns.
+     */
+    public void setColumns( int... selected ) {
+        if ( selected == null || selected.length == 0 ) {
+            this.columns = null;
+            this.columnIndex = null;
+            return;
+        }
+        int max = 0;
+        for ( int c : selected ) {
+            if ( c < 0 || c > 255 ) throw new IllegalArgumentException( "Invalid column " + c );
+            max = Math.max( max, c );
+        }
+        int[] index = new int[max + 1];
+        Arrays.fill( index, -1 );
+        for ( int i = 0; i < selected.length; i++ ) {
+            if ( index[selected[i]] >= 0 ) throw new IllegalArgumentException( "Column selected twice: " + selected[i] );
+            index[selected[i]] = i;
+        }
+        this.columns = selected.clone();
+        this.columnIndex = index;
+    }
+
+    /**
+     * Picks out the cells of the requested sheet and assembles them into rows.
+     */
+    private class SheetListener extends AbortableHSSFListener {
+
+        /**
+         * Collects the workbook records needed to turn formulas back into text.
+         */
+        private final SheetRecordCollectingListener collector = new SheetRecordCollectingListener(
+                new HSSFListener() {
+                    @Override
+                    public void processRecord( Record record ) {
+                        // only the collected records are used.
+                    }
+                } );
+
+        private int depth = 0;
+        private boolean found = false;
+        private final SpreadSheetRowHandler handler;
+        private boolean inSheet = false;
+        private int row = -1;
+        private int sheet = -1;
+        private int target = -1;
+        private String[] values = null;
+
+        SheetListener( SpreadSheetRowHandler handler ) {
+            this.handler = handler;
+        }
+
+        @Override
+        public short abortableProcessRecord( Record record ) {
+            collector.processRecordInternally( record );
+
+            if ( record instanceof BOFRecord ) {
+                if ( depth == 0 && ( ( BOFRecord ) record ).getType() != BOFRecord.TYPE_WORKBOOK ) {
+                    if ( sheet < 0 ) target = findSheet();
+                    sheet++;
+                    inSheet = sheet == target;
+                    found |= inSheet;
+                }
+                depth++;
+                return 0;
+            }
+
+            if ( record instanceof EOFRecord ) {
+                depth--;
+                if ( inSheet && depth == 0 ) {
+                    endRow();
+                    return 1; // done: skip the rest of the workbook
+                }
+                return 0;
+            }
+
+            if ( !inSheet || depth != 1 || !( record instanceof CellValueRecordInterface ) ) return 0;
+
+            CellValueRecordInterface cell = ( CellValueRecordInterface ) record;
+            int c = cell.getColumn();
+            int i = c;
+            if ( columnIndex != null ) {
+                if ( c >= columnIndex.length || columnIndex[c] < 0 ) return 0;
+                i = columnIndex[c];
+            }
+            if ( cell.getRow() != row ) {
+                endRow();
+                row = cell.getRow();
+                values = new String[columns == null ? c + 1 : columns.length];
+            }
+            if ( i >= values.length ) values = Arrays.copyOf( values, i + 1 );
+            values[i] = format( record );
+            return 0;
+        }
+
+        private void endRow() {
+            if ( values != null ) handler.handleRow( row, values );
+            values = null;
+        }
+
+        /**
+         * @return the position of the requested sheet among the sheets, or -1 if there is none.
+         */
+        private int findSheet() {
+            BoundSheetRecord[] sheets = BoundSheetRecord.orderByBofPosition( Arrays.asList( collector
+                    .getBoundSheetRecords() ) );
+            for ( int i = 0; i < sheets.length; i++ ) {
+                if ( sheets[i].getSheetname().equals( sheetName ) ) return i;
+            }
+            return -1;
+        }
+
+        private String format( Record record ) {
+            if ( record instanceof LabelSSTRecord ) {
+                return collector.getSSTRecord().getString( ( ( LabelSSTRecord ) record ).getSSTIndex() ).getString();
+            }
+            if ( record instanceof NumberRecord ) {
+                // WARNING not ideal for numbers, as in ExcelUtil.getValue.
+                return Double.toString( ( ( NumberRecord ) record ).getValue() );
+            }
+            if ( record instanceof FormulaRecord ) {
+                FormulaRecord fr = ( FormulaRecord ) record;
+                if ( fr.isSharedFormula() ) {
+                    // the text of shared formulas is kept elsewhere; fall back on the cached value.
+                    return Double.toString( fr.getValue() );
+                }
+                return HSSFFormulaParser.toFormulaString( collector.getStubHSSFWorkbook(), fr.getParsedExpression() );
+            }
+            if ( record instanceof LabelRecord ) {
+                return ( ( LabelRecord ) record ).getValue();
+            }
+            assert record instanceof BlankRecord || record instanceof BoolErrRecord;
+            return "";
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.excel;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+/**
+ * Writes a spreadsheet in the XML Spreadsheet 2003 format, which Excel and LibreOffice open directly. Unlike the
+ * binary .xls format, it can be written one row at a time.
+ *
+ * @author paul
+ */
+public class XmlSpreadSheetWriter extends SpreadSheetWriter {
+
+    private final Writer out;
+    private final String sheetName;
+
+    /**
+     * @param out
+     * @param schema
+     * @param windowSize number of rows to hold before writing them out
+     */
+    public XmlSpreadSheetWriter( Writer out, SpreadSheetSchema schema, int windowSize ) {
+        this( out, schema, windowSize, "Sheet1" );
+    }
+
+    /**
+     * @param out
+     * @param schema
+     * @param windowSize number of rows to hold before writing them out
+     * @param sheetName
+     */
+    public XmlSpreadSheetWriter( Writer out, SpreadSheetSchema schema, int windowSize, String sheetName ) {
+        super( schema, windowSize );
+        this.out = out;
+        this.sheetName = sheetName;
+    }
+
+    @Override
+    protected Writer getOut() {
+        return out;
+    }
+
+    @Override
+    protected void writeEnd() throws IOException {
+        out.write( "</Table>\n</Worksheet>\n</Workbook>\n" );
+    }
+
+    @Override
+    protected void writeHeader( String[] header ) throws IOException {
+        out.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<?mso-application progid=\"Excel.Sheet\"?>\n" );
+        out.write( "<Workbook xmlns=\"urn:schemas-microsoft-com:office:spreadsheet\""
+                + " xmlns:ss=\"urn:schemas-microsoft-com:office:spreadsheet\">\n" );
+        out.write( "<Worksheet ss:Name=\"" + escape( sheetName ) + "\">\n<Table>\n" );
+        writeRow( header, header.length );
+    }
+
+    @Override
+    protected void writeRow( Object[] values, int columns ) throws IOException {
+        out.write( "<Row>" );
+        boolean skipped = false;
+        for ( int i = 0; i < Math.min( columns, values.length ); i++ ) {
+            Object v = values[i];
+            if ( v == null ) {
+                skipped = true;
+                continue;
+            }
+            out.write( "<Cell" );
+            if ( skipped ) {
+                // cells are numbered from 1; the position is needed after a gap.
+                out.write( " ss:Index=\"" + ( i + 1 ) + "\"" );
+                skipped = false;
+            }
+            if ( v instanceof Number && !Double.isNaN( ( ( Number ) v ).doubleValue() )
+                    && !Double.isInfinite( ( ( Number ) v ).doubleValue() ) ) {
+                out.write( "><Data ss:Type=\"Number\">" + v + "</Data></Cell>" );
+            } else {
+                out.write( "><Data ss:Type=\"String\">" + escape( v.toString() ) + "</Data></Cell>" );
+            }
+        }
+        out.write( "</Row>\n" );
+    }
+
+    private String escape( String s ) {
+        return StringEscapeUtils.escapeXml( s );
+    }
+
+}
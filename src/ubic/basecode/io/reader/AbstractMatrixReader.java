@@ -68,6 +68,18 @@ public abstract class AbstractMatrixReader<M extends Matrix2D<String, String, V>
 
         if ( header == null ) return headerVec;
 
+        return parseHeader( header, skipColumns );
+    }
+
+    /**
+     * @param header the header line
+     * @param skipColumns how many data columns should be ignored
+     * @return the column names
+     * @throws IOException
+     */
+    protected List<String> parseHeader( String header, int skipColumns ) throws IOException {
+        List<String> headerVec = new Vector<String>();
+
         if ( header.startsWith( "\t" ) ) header = "c" + header;
 
         String[] tokens = StringUtils.splitPreserveAllTokens( header, "\t" );
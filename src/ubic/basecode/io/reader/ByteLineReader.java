@@ -0,0 +1,170 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads lines from a channel as ranges of a byte buffer, without making Strings. Lines end with "\n", "\r\n" or a
+ * lone "\r" (old Mac files); the line terminator is not included. The buffer grows as needed to hold the longest line.
+ *
+ * @author paul
+ */
+final class ByteLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private byte[] buf = new byte[BUFFER_SIZE];
+
+    /**
+     * Offset in the input of buf[0].
+     */
+    private long bufferOffset = 0;
+    private final ReadableByteChannel channel;
+    private int end;
+    private boolean eof = false;
+    private int limit = 0;
+    private int pos = 0;
+    private int start;
+
+    ByteLineReader( InputStream stream ) {
+        this( Channels.newChannel( stream ) );
+    }
+
+    ByteLineReader( ReadableByteChannel channel ) {
+        this.channel = channel;
+    }
+
+    /**
+     * @return the buffer holding the current line, from {@link #start()} to {@link #end()}. Only valid until the next
+     *         call to {@link #next()}.
+     */
+    byte[] buffer() {
+        return buf;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return the end (exclusive) of the current line in the buffer.
+     */
+    int end() {
+        return end;
+    }
+
+    /**
+     * @param charset
+     * @return the current line as a String.
+     */
+    String line( Charset charset ) {
+        return new String( buf, start, end - start, charset );
+    }
+
+    /**
+     * @return the offset of the start of the current line in the input, in bytes.
+     */
+    long lineOffset() {
+        return bufferOffset + start;
+    }
+
+    /**
+     * @return the offset in the input of the start of the line after the current one, in bytes.
+     */
+    long nextLineOffset() {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return false if there are no more lines.
+     * @throws IOException
+     */
+    boolean next() throws IOException {
+        int scan = pos;
+        while ( true ) {
+            for ( int i = scan; i < limit; i++ ) {
+                if ( buf[i] == '\n' ) {
+                    setLine( pos, i );
+                    pos = i + 1;
+                    return true;
+                }
+                if ( buf[i] == '\r' ) {
+                    if ( i + 1 == limit && !eof ) {
+                        // need the next byte to tell "\r\n" from a lone "\r"
+                        break;
+                    }
+                    setLine( pos, i );
+                    pos = i + 1 < limit && buf[i + 1] == '\n' ? i + 2 : i + 1;
+                    return true;
+                }
+            }
+            scan = limit > scan && buf[limit - 1] == '\r' ? limit - 1 : limit;
+
+            if ( eof ) {
+                if ( pos < limit ) {
+                    setLine( pos, limit );
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+
+            if ( pos > 0 ) {
+                System.arraycopy( buf, pos, buf, 0, limit - pos );
+                bufferOffset += pos;
+                limit -= pos;
+                scan -= pos;
+                pos = 0;
+            }
+            if ( limit == buf.length ) {
+                buf = Arrays.copyOf( buf, buf.length * 2 );
+            }
+            int n = channel.read( ByteBuffer.wrap( buf, limit, buf.length - limit ) );
+            if ( n < 0 ) {
+                eof = true;
+            } else {
+                limit += n;
+            }
+        }
+    }
+
+    /**
+     * @return the start of the current line in the buffer.
+     */
+    int start() {
+        return start;
+    }
+
+    private void setLine( int from, int to ) {
+        start = from;
+        end = to;
+    }
+
+}
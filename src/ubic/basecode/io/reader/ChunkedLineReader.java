@@ -0,0 +1,254 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import ubic.basecode.util.FileTools;
+import ubic.basecode.util.ParallelUtils;
+
+/**
+ * Reads an uncompressed line-oriented file in parallel. The header (the first line that is not blank or a comment) is
+ * read first; the rest of the file is split into chunks at line boundaries, and the chunks are read and parsed
+ * concurrently on the shared fork-join pool. The parsed chunks are returned in file order.
+ *
+ * @author paul
+ */
+final class ChunkedLineReader {
+
+    /**
+     * Receives the lines of one chunk, in order. A new instance is used for each chunk, so implementations need not be
+     * thread-safe.
+     */
+    static abstract class Chunk {
+
+        /**
+         * @param b
+         * @param start
+         * @param end exclusive; the line terminator is not included.
+         * @throws IOException
+         */
+        abstract void line( byte[] b, int start, int end ) throws IOException;
+    }
+
+    /**
+     * Makes the (empty) chunk that will receive the lines of each part of the file.
+     */
+    static abstract class ChunkFactory<T extends Chunk> {
+        abstract T newChunk();
+    }
+
+    private static final int MAX_CHUNK_SIZE = 1 << 26;
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private final Charset charset;
+    private final int chunkSize;
+    private long dataStart = 0;
+    private final File file;
+
+    /**
+     * @param file
+     * @param charset
+     * @param chunkSize approximate size of the chunks in bytes; if not positive, it is chosen based on the file size
+     *        and the number of threads.
+     */
+    ChunkedLineReader( File file, Charset charset, int chunkSize ) {
+        this.file = file;
+        this.charset = charset;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param filename
+     * @return true if the file can be read in chunks, that is, it is not compressed.
+     */
+    static boolean canSplit( String filename ) {
+        return !FileTools.isGZipped( filename ) && !FileTools.isZipped( filename );
+    }
+
+    /**
+     * Read the header; the chunks start after it. Blank lines and lines starting with "#" or "!" before it are
+     * skipped.
+     *
+     * @return the header line, or null if there is none.
+     * @throws IOException
+     */
+    String readHeader() throws IOException {
+        try (ByteLineReader lines = new ByteLineReader( new FileInputStream( file ) )) {
+            while ( lines.next() ) {
+                if ( !DoubleRowParser.isSkipped( lines.buffer(), lines.start(), lines.end() ) ) {
+                    dataStart = lines.nextLineOffset();
+                    return lines.line( charset );
+                }
+            }
+            dataStart = file.length();
+            return null;
+        }
+    }
+
+    /**
+     * Parse the lines after the header.
+     *
+     * @param factory
+     * @return the parsed chunks, in file order.
+     * @throws IOException
+     */
+    <T extends Chunk> List<T> readChunks( final ChunkFactory<T> factory ) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); final FileChannel channel = raf.getChannel()) {
+            final long[] bounds = split( channel );
+            int n = bounds.length - 1;
+            final List<T> chunks = new ArrayList<T>( n );
+            for ( int i = 0; i < n; i++ ) {
+                chunks.add( factory.newChunk() );
+            }
+
+            final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>( n );
+            for ( int i = 0; i < n; i++ ) {
+                final int k = i;
+                tasks.add( new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        try {
+                            parse( channel, bounds[k], bounds[k + 1], chunks.get( k ) );
+                        } catch ( IOException e ) {
+                            throw new ChunkException( e );
+                        }
+                    }
+                } );
+            }
+
+            try {
+                ParallelUtils.getPool().invoke( new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        invokeAll( tasks );
+                    }
+                } );
+            } catch ( ChunkException e ) {
+                throw ( IOException ) e.getCause();
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Read a chunk with positioned reads (which the channel allows concurrently) and pass its lines to the chunk.
+     */
+    private void parse( FileChannel channel, long from, long to, Chunk chunk ) throws IOException {
+        byte[] b = new byte[( int ) ( to - from )];
+        ByteBuffer buf = ByteBuffer.wrap( b );
+        while ( buf.hasRemaining() ) {
+            if ( channel.read( buf, from + buf.position() ) < 0 ) {
+                throw new IOException( file + " changed while it was being read" );
+            }
+        }
+
+        // lines end with "\n", "\r\n" or a lone "\r", as in ByteLineReader; chunks never split a "\r\n".
+        int start = 0;
+        for ( int i = 0; i < b.length; i++ ) {
+            if ( b[i] == '\n' || b[i] == '\r' ) {
+                chunk.line( b, start, i );
+                if ( b[i] == '\r' && i + 1 < b.length && b[i + 1] == '\n' ) i++;
+                start = i + 1;
+            }
+        }
+        if ( start < b.length ) {
+            chunk.line( b, start, b.length );
+        }
+    }
+
+    /**
+     * @return the chunk boundaries: each chunk runs from the start of a line to just after a line terminator (or the
+     *         end of the file).
+     */
+    private long[] split( FileChannel channel ) throws IOException {
+        long size = channel.size();
+        long target = chunkSize > 0 ? chunkSize : Math.max( MIN_CHUNK_SIZE,
+                Math.min( MAX_CHUNK_SIZE, ( size - dataStart ) / ( 4L * ParallelUtils.getParallelism() ) ) );
+
+        List<Long> bounds = new ArrayList<Long>();
+        bounds.add( dataStart );
+        long pos = dataStart;
+        ByteBuffer buf = ByteBuffer.allocate( 1 << 13 );
+        while ( pos < size ) {
+            long next = pos + target;
+            if ( next >= size ) {
+                pos = size;
+            } else {
+                // advance past the end of the line that contains 'next'.
+                pos = size;
+                boolean afterCr = false;
+                scan: while ( next < size ) {
+                    buf.clear();
+                    int n = channel.read( buf, next );
+                    if ( n <= 0 ) break;
+                    for ( int i = 0; i < n; i++ ) {
+                        byte c = buf.get( i );
+                        if ( c == '\n' ) {
+                            pos = next + i + 1;
+                            break scan;
+                        }
+                        if ( afterCr ) {
+                            // a lone "\r" ended the line
+                            pos = next + i;
+                            break scan;
+                        }
+                        afterCr = c == '\r';
+                    }
+                    next += n;
+                }
+            }
+            if ( pos - bounds.get( bounds.size() - 1 ) > Integer.MAX_VALUE ) {
+                throw new IOException( "Line too long in " + file );
+            }
+            bounds.add( pos );
+        }
+
+        long[] result = new long[bounds.size()];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[i] = bounds.get( i );
+        }
+        return result;
+    }
+
+    /**
+     * Carries an IOException out of a task.
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException( IOException cause ) {
+            super( cause );
+        }
+    }
+
+}
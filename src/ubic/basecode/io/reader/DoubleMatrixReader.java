@@ -23,9 +23,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.text.DecimalFormat;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -38,23 +43,30 @@ import ubic.basecode.dataStructure.matrix.DoubleMatrix;
 import ubic.basecode.dataStructure.matrix.DoubleMatrixFactory;
 import ubic.basecode.util.FileTools;
 import cern.colt.list.DoubleArrayList;
+import cern.colt.list.IntArrayList;
 
 /**
  * Reader for {@link basecode.dataStructure.matrix.DoubleMatrix}. Lines beginning with "#" or "!" will be ignored.
+ * <p>
+ * Lines are parsed directly from bytes; see {@link #setLocaleAwareParsing(boolean)} for reading numbers written in the
+ * default locale's format, and {@link #setParallel(boolean)} for reading large uncompressed files with several
+ * threads. To process the rows one at a time without building a matrix, use
+ * {@link #readRows(InputStream, Collection, int, int)}.
  * 
  * @author Paul Pavlidis
  * 
  */
 public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String, String>, Double> {
 
-    private static NumberFormat nf = NumberFormat.getInstance();
-    static {
-        if ( nf instanceof DecimalFormat ) {
-            // ( ( DecimalFormat ) nf ).setDecimalSeparatorAlwaysShown( true );
-        }
-    }
     private List<String> colNames;
+    private boolean localeAwareParsing = false;
     private int numHeadings;
+    private boolean parallel = false;
+
+    /**
+     * Size of the chunks for parallel reading; if not positive it is chosen based on the file size.
+     */
+    private int chunkSize = 0;
 
     /**
      * @param stream InputStream stream to read from
@@ -87,9 +99,216 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
      * @return matrix
      * @throws IOException
      */
-    @SuppressWarnings("resource")
     public DoubleMatrix<String, String> read( InputStream stream, Collection<String> wantedRowNames,
             boolean createEmptyRows, int skipColumns, int maxRows ) throws IOException {
+        if ( localeAwareParsing ) {
+            return readLocaleAware( stream, wantedRowNames, createEmptyRows, skipColumns, maxRows );
+        }
+
+        try (DoubleMatrixRowReader reader = readRows( stream, wantedRowNames, skipColumns, maxRows )) {
+            List<double[]> rows = new ArrayList<double[]>();
+            List<String> rowNames = new ArrayList<String>();
+            while ( reader.next() ) {
+                rows.add( reader.detachRow() );
+                rowNames.add( reader.getRowName() );
+            }
+            if ( createEmptyRows ) {
+                addEmptyRows( wantedRowNames, reader.getWantedRowsFound(), rows, rowNames );
+            }
+            return createMatrix( rows, rowNames );
+        }
+    }
+
+    /**
+     * Read the wanted rows of a large uncompressed file, using a row index (see {@link RowOffsetIndex}) to read only
+     * those rows. The index is loaded from next to the file, or built (by reading the file once) and saved if there is
+     * no current one. Compressed files are read as usual.
+     * 
+     * @param fileName data file to read from
+     * @param wantedRowNames names of rows we want to get; if null, all rows (in file order)
+     * @param createEmptyRows if a row contained in <code>wantedRowNames</code> is not found in the file, create an
+     *        empty row filled with Double.NaN iff this param is true.
+     * @param skipColumns how many data columns to skip
+     * @return matrix with the rows in file order
+     * @throws IOException
+     */
+    public DoubleMatrix<String, String> readIndexed( String fileName, Collection<String> wantedRowNames,
+            boolean createEmptyRows, int skipColumns ) throws IOException {
+        File infile = new File( fileName );
+        if ( !infile.exists() || !infile.canRead() ) {
+            throw new IOException( "Could not read from file " + fileName );
+        }
+        if ( !ChunkedLineReader.canSplit( fileName ) ) {
+            return read( fileName, wantedRowNames, createEmptyRows, skipColumns, -1 );
+        }
+        return readIndexed( infile, RowOffsetIndex.getIndex( infile ), wantedRowNames, createEmptyRows, skipColumns );
+    }
+
+    /**
+     * Read the wanted rows of an uncompressed file using an index that was already loaded, for example one kept by a
+     * service that reads from the same file many times.
+     * 
+     * @param file uncompressed data file
+     * @param index of the file
+     * @param wantedRowNames names of rows we want to get; if null, all rows in the index (in file order)
+     * @param createEmptyRows if a row contained in <code>wantedRowNames</code> is not found in the file, create an
+     *        empty row filled with Double.NaN iff this param is true.
+     * @param skipColumns how many data columns to skip
+     * @return matrix with the rows in file order
+     * @throws IOException if the index is not current for the file.
+     */
+    public DoubleMatrix<String, String> readIndexed( File file, RowOffsetIndex index,
+            Collection<String> wantedRowNames, boolean createEmptyRows, int skipColumns ) throws IOException {
+        if ( !index.isCurrent( file ) ) {
+            throw new IOException( "Row index is out of date for " + file );
+        }
+        Charset charset = Charset.defaultCharset();
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            if ( index.getHeaderLength() < 0 ) {
+                colNames = new Vector<String>();
+            } else {
+                byte[] header = readFully( channel, index.getHeaderOffset(), index.getHeaderLength() );
+                colNames = parseHeader( new String( header, charset ), skipColumns );
+            }
+            numHeadings = colNames.size();
+
+            DoubleRowParser parser = new DoubleRowParser( numHeadings, Math.max( skipColumns, 0 ), charset );
+            List<double[]> rows = new ArrayList<double[]>();
+            List<String> rowNames = new ArrayList<String>();
+            for ( int i : index.positionsOf( wantedRowNames ) ) {
+                byte[] b = readFully( channel, index.getOffset( i ), index.getLength( i ) );
+                rowNames.add( parser.parseName( b, 0, b.length ) );
+                double[] values = new double[numHeadings];
+                parser.parseValues( values );
+                rows.add( values );
+            }
+
+            if ( createEmptyRows ) {
+                addEmptyRows( wantedRowNames, new HashSet<String>( rowNames ), rows, rowNames );
+            }
+            return createMatrix( rows, rowNames );
+        }
+    }
+
+    /**
+     * Read the rows of a matrix one at a time, without keeping them. The header is read before this returns.
+     * 
+     * @param stream which is closed when the row reader is closed
+     * @param wantedRowNames if null, takes all rows
+     * @param skipColumns how many data columns to skip
+     * @param maxRows if positive, only this many rows of the file are read
+     * @return the row reader, which should be closed after use.
+     * @throws IOException
+     */
+    public DoubleMatrixRowReader readRows( InputStream stream, Collection<String> wantedRowNames, int skipColumns,
+            int maxRows ) throws IOException {
+        ByteLineReader lines = new ByteLineReader( stream );
+        try {
+            Charset charset = Charset.defaultCharset();
+            List<String> header = null;
+            while ( lines.next() ) {
+                if ( !DoubleRowParser.isSkipped( lines.buffer(), lines.start(), lines.end() ) ) {
+                    header = parseHeader( lines.line( charset ), skipColumns );
+                    break;
+                }
+            }
+            colNames = header == null ? new Vector<String>() : header;
+            numHeadings = colNames.size();
+            DoubleRowParser parser = new DoubleRowParser( numHeadings, Math.max( skipColumns, 0 ), charset );
+            return new DoubleMatrixRowReader( lines, colNames, parser, wantedRowNames, maxRows );
+        } catch ( IOException e ) {
+            lines.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param fileName data file to read from (can be compressed)
+     * @param wantedRowNames if null, takes all rows
+     * @param skipColumns how many data columns to skip
+     * @return the row reader, which should be closed after use.
+     * @throws IOException
+     * @see #readRows(InputStream, Collection, int, int)
+     */
+    @SuppressWarnings("resource")
+    public DoubleMatrixRowReader readRows( String fileName, Collection<String> wantedRowNames, int skipColumns )
+            throws IOException {
+        File infile = new File( fileName );
+        if ( !infile.exists() || !infile.canRead() ) {
+            throw new IOException( "Could not read from file " + fileName );
+        }
+        return readRows( FileTools.getInputStreamFromPlainOrCompressedFile( fileName ), wantedRowNames, skipColumns,
+                -1 );
+    }
+
+    /**
+     * Read a matrix from a file, subject to filtering criteria. If parallel reading is on (see
+     * {@link #setParallel(boolean)}), the file is read with several threads.
+     * 
+     * @param fileName data file to read from (can be compressed)
+     * @param wantedRowNames if null, takes all rows
+     * @param createEmptyRows if a row contained in <code>wantedRowNames</code> is not found in the file, create an
+     *        empty row filled with Double.NaN iff this param is true.
+     * @param skipColumns how many data columns to skip
+     * @param maxRows if positive, only this many rows of the file are read
+     * @return matrix
+     * @throws IOException
+     */
+    @SuppressWarnings("resource")
+    public DoubleMatrix<String, String> read( String fileName, Collection<String> wantedRowNames,
+            boolean createEmptyRows, int skipColumns, int maxRows ) throws IOException {
+        File infile = new File( fileName );
+        if ( !infile.exists() || !infile.canRead() ) {
+            throw new IOException( "Could not read from file " + fileName );
+        }
+        if ( parallel && !localeAwareParsing && ChunkedLineReader.canSplit( fileName ) ) {
+            return readParallel( infile, wantedRowNames, createEmptyRows, skipColumns, maxRows );
+        }
+        InputStream stream = FileTools.getInputStreamFromPlainOrCompressedFile( fileName, parallel );
+        return read( stream, wantedRowNames, createEmptyRows, skipColumns, maxRows );
+    }
+
+    /**
+     * If set, numbers are parsed with the NumberFormat of the default locale (so that, for example, "0,001" is read as
+     * a decimal in locales that use a decimal comma). This is much slower. By default, numbers are read as by
+     * Double.parseDouble, falling back on the NumberFormat only for values that cannot be parsed that way.
+     * 
+     * @param localeAwareParsing
+     */
+    public void setLocaleAwareParsing( boolean localeAwareParsing ) {
+        this.localeAwareParsing = localeAwareParsing;
+    }
+
+    /**
+     * If set, uncompressed files read by name are split into chunks at line boundaries, which are parsed at the same
+     * time on the shared fork-join pool (see {@link ubic.basecode.util.ParallelUtils}). The result is the same as
+     * reading the file sequentially, but the whole file is read even if all the wanted rows are found early.
+     * Compressed files are parsed sequentially while they are inflated on other threads (see
+     * {@link FileTools#getInputStreamFromPlainOrCompressedFile(String, boolean)}). Streams are always read
+     * sequentially, as is everything if locale-aware parsing is set.
+     * 
+     * @param parallel
+     */
+    public void setParallel( boolean parallel ) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param chunkSize approximate size in bytes of the chunks for parallel reading; if not positive, it is chosen
+     *        based on the file size.
+     */
+    void setChunkSize( int chunkSize ) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * The original reader, which parses each line as Strings with the locale's NumberFormat.
+     */
+    @SuppressWarnings("resource")
+    private DoubleMatrix<String, String> readLocaleAware( InputStream stream, Collection<String> wantedRowNames,
+            boolean createEmptyRows, int skipColumns, int maxRows ) throws IOException {
+
+        NumberFormat nf = NumberFormat.getInstance();
 
         BufferedReader dis = new BufferedReader( new InputStreamReader( stream ) );
 
@@ -117,7 +336,7 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
                 continue;
             }
 
-            String rowName = parseRow( row, rowNames, MTemp, wantedRowNames, skipColumns );
+            String rowName = parseRow( row, rowNames, MTemp, wantedRowNames, skipColumns, nf );
 
             if ( rowName == null ) {
                 // signals a blank or skipped row.
@@ -193,14 +412,8 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
      * @return NamedMatrix object constructed from the data file
      * @throws IOException
      */
-    @SuppressWarnings("resource")
     public DoubleMatrix<String, String> read( String filename, Collection<String> wantedRowNames ) throws IOException {
-        File infile = new File( filename );
-        if ( !infile.exists() || !infile.canRead() ) {
-            throw new IOException( "Could not read from file " + filename );
-        }
-        InputStream stream = FileTools.getInputStreamFromPlainOrCompressedFile( filename );
-        return read( stream, wantedRowNames, -1 );
+        return read( filename, wantedRowNames, true, -1, -1 );
     } // end read
 
     /**
@@ -211,15 +424,9 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
      * @return
      * @throws IOException
      */
-    @SuppressWarnings("resource")
     public DoubleMatrix<String, String> read( String fileName, Collection<String> wantedRowNames,
             int numberOfColumnsToSkip ) throws IOException {
-        File infile = new File( fileName );
-        if ( !infile.exists() || !infile.canRead() ) {
-            throw new IOException( "Could not read from file " + fileName );
-        }
-        InputStream stream = FileTools.getInputStreamFromPlainOrCompressedFile( fileName );
-        return read( stream, wantedRowNames, true, numberOfColumnsToSkip, -1 );
+        return read( fileName, wantedRowNames, true, numberOfColumnsToSkip, -1 );
     }
 
     @Override
@@ -270,6 +477,130 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
 
     } // end createMatrix
 
+    /**
+     * Add a row of NaNs for each wanted row that was not found.
+     */
+    private void addEmptyRows( Collection<String> wantedRowNames, Collection<String> wantedRowsFound,
+            List<double[]> rows, List<String> rowNames ) {
+        if ( wantedRowNames == null || wantedRowNames.size() == wantedRowsFound.size() ) return;
+        for ( String s : wantedRowNames ) {
+            if ( !wantedRowsFound.contains( s ) ) {
+                if ( log.isDebugEnabled() ) log.debug( s + " was not found, adding empty row" );
+                double[] emptyRow = new double[numHeadings];
+                Arrays.fill( emptyRow, Double.NaN );
+                rowNames.add( s );
+                rows.add( emptyRow );
+            }
+        }
+    }
+
+    /**
+     * @param rows which become the rows of the matrix; they are not copied.
+     * @param rowNames
+     * @return
+     */
+    private DoubleMatrix<String, String> createMatrix( List<double[]> rows, List<String> rowNames ) {
+        if ( rows.isEmpty() ) {
+            throw new IllegalArgumentException( "Must provide vectors" );
+        }
+        DoubleMatrix<String, String> matrix = DoubleMatrixFactory.fastrow( rows.toArray( new double[rows.size()][] ) );
+        matrix.setRowNames( rowNames );
+        matrix.setColumnNames( colNames );
+        return matrix;
+    }
+
+    /**
+     * Parse the chunks of the file concurrently, then put the rows together in file order, applying the limits the
+     * same way the sequential reader does.
+     */
+    private DoubleMatrix<String, String> readParallel( File file, final Collection<String> wantedRowNames,
+            boolean createEmptyRows, int skipColumns, int maxRows ) throws IOException {
+        final Charset charset = Charset.defaultCharset();
+        ChunkedLineReader reader = new ChunkedLineReader( file, charset, chunkSize );
+
+        String header = reader.readHeader();
+        colNames = header == null ? new Vector<String>() : parseHeader( header, skipColumns );
+        numHeadings = colNames.size();
+        final int numColumns = numHeadings;
+        final int skip = Math.max( skipColumns, 0 );
+
+        List<RowChunk> chunks = reader.readChunks( new ChunkedLineReader.ChunkFactory<RowChunk>() {
+            @Override
+            RowChunk newChunk() {
+                return new RowChunk( new DoubleRowParser( numColumns, skip, charset ), wantedRowNames );
+            }
+        } );
+
+        List<double[]> rows = new ArrayList<double[]>();
+        List<String> rowNames = new ArrayList<String>();
+        Collection<String> wantedRowsFound = new HashSet<String>();
+
+        // as in DoubleMatrixRowReader, stop once all the wanted rows are found.
+        int base = 0;
+        assemble: for ( RowChunk chunk : chunks ) {
+            for ( int k = 0; k < chunk.rows.size(); k++ ) {
+                if ( maxRows > 0 && base + chunk.rowNumbers.get( k ) >= maxRows ) break assemble;
+                if ( wantedRowNames != null && wantedRowsFound.size() >= wantedRowNames.size() ) break assemble;
+
+                String rowName = chunk.rowNames.get( k );
+                rows.add( chunk.rows.get( k ) );
+                rowNames.add( rowName );
+                if ( wantedRowNames != null ) wantedRowsFound.add( rowName );
+            }
+            base += chunk.numRows;
+        }
+
+        if ( createEmptyRows ) {
+            addEmptyRows( wantedRowNames, wantedRowsFound, rows, rowNames );
+        }
+        return createMatrix( rows, rowNames );
+    }
+
+    /**
+     * The wanted rows of one chunk of the file, with their positions among the rows of the chunk.
+     */
+    private static class RowChunk extends ChunkedLineReader.Chunk {
+        private int numRows = 0;
+        private final DoubleRowParser parser;
+        private final IntArrayList rowNumbers = new IntArrayList();
+        private final List<String> rowNames = new ArrayList<String>();
+        private final List<double[]> rows = new ArrayList<double[]>();
+        private final Collection<String> wantedRowNames;
+
+        RowChunk( DoubleRowParser parser, Collection<String> wantedRowNames ) {
+            this.parser = parser;
+            this.wantedRowNames = wantedRowNames;
+        }
+
+        @Override
+        void line( byte[] b, int start, int end ) throws IOException {
+            if ( DoubleRowParser.isSkipped( b, start, end ) ) return;
+            String rowName = parser.parseName( b, start, end );
+            if ( wantedRowNames == null || wantedRowNames.contains( rowName ) ) {
+                double[] values = new double[parser.numColumns()];
+                parser.parseValues( values );
+                rows.add( values );
+                rowNames.add( rowName );
+                rowNumbers.add( numRows );
+            }
+            numRows++;
+        }
+    }
+
+    /**
+     * Positioned read, which does not change the position of the channel.
+     */
+    private static byte[] readFully( FileChannel channel, long offset, int length ) throws IOException {
+        byte[] b = new byte[length];
+        ByteBuffer buf = ByteBuffer.wrap( b );
+        while ( buf.hasRemaining() ) {
+            if ( channel.read( buf, offset + buf.position() ) < 0 ) {
+                throw new IOException( "Unexpected end of file" );
+            }
+        }
+        return b;
+    }
+
     /**
      * @param row
      * @param rowNames
@@ -277,11 +608,12 @@ public class DoubleMatrixReader extends AbstractMatrixReader<DoubleMatrix<String
      * @param wantedRowNames
      * @param skipColumns the number of columns after the first to ignore (for example, Gemma output that includes gene
      *        information as well as numeric data)
+     * @param nf
      * @return
      * @throws IOException
      */
     private String parseRow( String row, Collection<String> rowNames, List<DoubleArrayList> MTemp,
-            Collection<String> wantedRowNames, int skipColumns ) throws IOException {
+            Collection<String> wantedRowNames, int skipColumns, NumberFormat nf ) throws IOException {
 
         if ( row.startsWith( "#" ) || row.startsWith( "!" ) ) {
             return null;
@@ -0,0 +1,197 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+
+/**
+ * Reads the rows of a numeric matrix file one at a time, so a file can be processed without holding the whole matrix
+ * in memory. Obtain one from {@link DoubleMatrixReader#readRows(java.io.InputStream, Collection, int, int)}; the
+ * header has already been read. Typical use:
+ *
+ * <pre>
+ * try (DoubleMatrixRowReader rows = reader.readRows( stream, null, 0, -1 )) {
+ *     while ( rows.next() ) {
+ *         process( rows.getRowName(), rows.getRow() );
+ *     }
+ * }
+ * </pre>
+ *
+ * If wanted row names are given, only those rows are returned, in file order, and reading stops once all of them
+ * have been found.
+ *
+ * @author paul
+ */
+public class DoubleMatrixRowReader implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger( DoubleMatrixRowReader.class );
+
+    private final List<String> colNames;
+
+    /**
+     * Set once there are no more rows, so that later calls to {@link #next()} return at once.
+     */
+    private boolean done = false;
+    private final ByteLineReader lines;
+    private final int maxRows;
+    private final DoubleRowParser parser;
+    private String rowName;
+    private int rowNumber = 0;
+    private double[] values;
+    private final Collection<String> wantedRowNames;
+    private final Collection<String> wantedRowsFound = new HashSet<String>();
+
+    /**
+     * @param lines positioned after the header
+     * @param colNames
+     * @param parser
+     * @param wantedRowNames if null, all rows are returned
+     * @param maxRows if positive, only this many rows of the file (wanted or not) are read.
+     */
+    DoubleMatrixRowReader( ByteLineReader lines, List<String> colNames, DoubleRowParser parser,
+            Collection<String> wantedRowNames, int maxRows ) {
+        this.lines = lines;
+        this.colNames = colNames;
+        this.parser = parser;
+        this.wantedRowNames = wantedRowNames;
+        this.maxRows = maxRows;
+        this.values = new double[colNames.size()];
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    /**
+     * @return the column names, not counting skipped columns.
+     */
+    public List<String> getColNames() {
+        return Collections.unmodifiableList( colNames );
+    }
+
+    /**
+     * @return the values of the current row. The same array is reused for every row, so copy it to keep it.
+     */
+    public double[] getRow() {
+        return values;
+    }
+
+    /**
+     * Hand over the array holding the current row, so it can be kept without copying; the next row is parsed into a
+     * new array.
+     *
+     * @return the values of the current row.
+     */
+    double[] detachRow() {
+        double[] row = values;
+        values = new double[row.length];
+        return row;
+    }
+
+    /**
+     * @return the name of the current row.
+     */
+    public String getRowName() {
+        return rowName;
+    }
+
+    /**
+     * Read the next rows into a matrix, for processing a file a block of rows at a time.
+     *
+     * @param maxRows the most rows to read
+     * @return a matrix of up to maxRows (wanted) rows, with row and column names, or null if there are no more rows.
+     * @throws IOException
+     */
+    public DoubleMatrix<String, String> nextBlock( int maxRows ) throws IOException {
+        if ( maxRows < 1 ) throw new IllegalArgumentException( "Block size must be at least 1" );
+        List<double[]> rows = new ArrayList<double[]>();
+        List<String> rowNames = new ArrayList<String>();
+        while ( rows.size() < maxRows && next() ) {
+            rows.add( detachRow() );
+            rowNames.add( rowName );
+        }
+        if ( rows.isEmpty() ) return null;
+
+        DoubleMatrix<String, String> block = new DenseDoubleMatrix<String, String>( rows.toArray( new double[rows
+                .size()][] ) );
+        block.setRowNames( rowNames );
+        block.setColumnNames( colNames );
+        return block;
+    }
+
+    /**
+     * @return the names of the wanted rows that were found so far; empty if all rows are wanted.
+     */
+    public Collection<String> getWantedRowsFound() {
+        return Collections.unmodifiableCollection( wantedRowsFound );
+    }
+
+    /**
+     * Advance to the next (wanted) row.
+     *
+     * @return false if there are no more rows.
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if ( done ) return false;
+        while ( true ) {
+            if ( maxRows > 0 && rowNumber >= maxRows ) {
+                done = true;
+                return false;
+            }
+            if ( wantedRowNames != null && wantedRowsFound.size() >= wantedRowNames.size() ) {
+                log.info( "Found all rows needed" );
+                done = true;
+                return false;
+            }
+            if ( !lines.next() ) {
+                done = true;
+                return false;
+            }
+
+            byte[] b = lines.buffer();
+            if ( DoubleRowParser.isSkipped( b, lines.start(), lines.end() ) ) {
+                continue;
+            }
+
+            rowNumber++;
+            String name = parser.parseName( b, lines.start(), lines.end() );
+            if ( wantedRowNames == null || wantedRowNames.contains( name ) ) {
+                parser.parseValues( values );
+                rowName = name;
+                if ( wantedRowNames != null ) wantedRowsFound.add( name );
+                return true;
+            }
+        }
+    }
+
+}
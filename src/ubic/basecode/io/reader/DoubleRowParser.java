@@ -0,0 +1,277 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Parses tab-delimited rows of a numeric matrix (a row name followed by values) straight from bytes. Blank fields,
+ * "NaN" and "NA" are missing values. Numbers are parsed without making Strings; fields that are not plain decimal
+ * numbers fall back to a NumberFormat, as DoubleMatrixReader used to do for every field. Not thread-safe; use one
+ * parser per thread.
+ *
+ * @author paul
+ */
+final class DoubleRowParser {
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final Charset charset;
+    private int end;
+    private byte[] line;
+    private NumberFormat nf;
+    private final int numColumns;
+
+    /**
+     * Start of the values in the current line; -1 if there are none.
+     */
+    private int pos;
+    private final int skipColumns;
+
+    /**
+     * @param numColumns the number of values (not counting skipped columns) expected per row.
+     * @param skipColumns the number of columns after the row name to ignore.
+     * @param charset of the row names.
+     */
+    DoubleRowParser( int numColumns, int skipColumns, Charset charset ) {
+        this.numColumns = numColumns;
+        this.skipColumns = skipColumns;
+        this.charset = charset;
+    }
+
+    /**
+     * Parse a double from bytes holding ASCII digits, an optional sign, decimal point and exponent, or "Infinity" (or
+     * "Inf"). Results are the same as from Double.parseDouble.
+     *
+     * @param b
+     * @param start
+     * @param end exclusive
+     * @return the value
+     * @throws NumberFormatException if the bytes are not a number in that form.
+     */
+    static double parseDouble( byte[] b, int start, int end ) {
+        int i = start;
+        boolean negative = false;
+        if ( i < end && ( b[i] == '-' || b[i] == '+' ) ) {
+            negative = b[i] == '-';
+            i++;
+        }
+        if ( i < end && ( b[i] == 'I' || b[i] == 'i' ) ) {
+            if ( matchesIgnoreCase( b, i, end, "inf" ) || matchesIgnoreCase( b, i, end, "infinity" ) ) {
+                return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            }
+            throw notANumber( b, start, end );
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean anyDigits = false;
+        for ( ; i < end && b[i] >= '0' && b[i] <= '9'; i++ ) {
+            anyDigits = true;
+            if ( digits < 18 ) {
+                mantissa = mantissa * 10 + ( b[i] - '0' );
+                if ( mantissa > 0 ) digits++;
+            } else {
+                digits++;
+                scale++;
+            }
+        }
+        if ( i < end && b[i] == '.' ) {
+            i++;
+            for ( ; i < end && b[i] >= '0' && b[i] <= '9'; i++ ) {
+                anyDigits = true;
+                if ( digits < 18 ) {
+                    mantissa = mantissa * 10 + ( b[i] - '0' );
+                    if ( mantissa > 0 ) digits++;
+                    scale--;
+                } else {
+                    digits++;
+                }
+            }
+        }
+        if ( !anyDigits ) throw notANumber( b, start, end );
+
+        int exponent = 0;
+        if ( i < end && ( b[i] == 'e' || b[i] == 'E' ) ) {
+            i++;
+            boolean negativeExponent = false;
+            if ( i < end && ( b[i] == '-' || b[i] == '+' ) ) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            if ( i == end ) throw notANumber( b, start, end );
+            for ( ; i < end && b[i] >= '0' && b[i] <= '9'; i++ ) {
+                if ( exponent < 100000 ) exponent = exponent * 10 + ( b[i] - '0' );
+            }
+            if ( negativeExponent ) exponent = -exponent;
+        }
+        if ( i != end ) throw notANumber( b, start, end );
+
+        double result;
+        int e10 = scale + exponent;
+        if ( mantissa == 0 ) {
+            result = 0.0;
+        } else if ( digits <= 15 && e10 >= -22 && e10 <= 22 ) {
+            // exact: both the mantissa and the power of ten are exactly representable.
+            result = e10 >= 0 ? mantissa * POWERS_OF_TEN[e10] : mantissa / POWERS_OF_TEN[-e10];
+        } else {
+            return Double.parseDouble( new String( b, start, end - start, StandardCharsets.ISO_8859_1 ) );
+        }
+        return negative ? -result : result;
+    }
+
+    private static boolean isBlank( byte[] b, int start, int end ) {
+        for ( int i = start; i < end; i++ ) {
+            if ( !isWhitespace( b[i] ) ) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true for the ASCII characters for which Character.isWhitespace is true.
+     */
+    private static boolean isWhitespace( byte c ) {
+        return c == ' ' || ( c >= 9 && c <= 13 ) || ( c >= 28 && c <= 31 );
+    }
+
+    private static boolean matches( byte[] b, int start, int end, String s ) {
+        if ( end - start != s.length() ) return false;
+        for ( int i = 0; i < s.length(); i++ ) {
+            if ( b[start + i] != s.charAt( i ) ) return false;
+        }
+        return true;
+    }
+
+    private static boolean matchesIgnoreCase( byte[] b, int start, int end, String s ) {
+        if ( end - start != s.length() ) return false;
+        for ( int i = 0; i < s.length(); i++ ) {
+            if ( Character.toLowerCase( ( char ) b[start + i] ) != s.charAt( i ) ) return false;
+        }
+        return true;
+    }
+
+    private static NumberFormatException notANumber( byte[] b, int start, int end ) {
+        return new NumberFormatException( "Not a number: "
+                + new String( b, start, end - start, StandardCharsets.ISO_8859_1 ) );
+    }
+
+    /**
+     * @return true if the line is blank or a comment (starting with "#" or "!").
+     */
+    static boolean isSkipped( byte[] b, int start, int end ) {
+        return start < end && ( b[start] == '#' || b[start] == '!' ) || isBlank( b, start, end );
+    }
+
+    /**
+     * @return the number of values per row.
+     */
+    int numColumns() {
+        return numColumns;
+    }
+
+    /**
+     * Start parsing a row.
+     *
+     * @param b
+     * @param start
+     * @param end
+     * @return the row name
+     * @throws IOException if the row name is missing.
+     */
+    String parseName( byte[] b, int start, int end ) throws IOException {
+        this.line = b;
+        this.end = end;
+        int tab = start;
+        while ( tab < end && b[tab] != '\t' ) {
+            tab++;
+        }
+        this.pos = tab < end ? tab + 1 : -1;
+        if ( isMissing( b, start, tab ) ) {
+            throw new IOException( "Missing values not allowed for row labels ("
+                    + StringUtils.abbreviate( new String( b, start, end - start, charset ), 20 ) + ")" );
+        }
+        return new String( b, start, tab - start, charset );
+    }
+
+    /**
+     * Parse the values of the row started with {@link #parseName(byte[], int, int)}. If there are fewer values than
+     * columns, the rest are set to NaN.
+     *
+     * @param values to fill in, of length at least the number of columns.
+     * @throws IOException if there are too many values.
+     */
+    void parseValues( double[] values ) throws IOException {
+        int count = 0;
+        int column = 0;
+        int p = pos;
+        while ( p >= 0 ) {
+            int q = p;
+            while ( q < end && line[q] != '\t' ) {
+                q++;
+            }
+            if ( column >= skipColumns ) {
+                if ( count < numColumns ) {
+                    values[count] = parseValue( line, p, q );
+                }
+                count++;
+            }
+            column++;
+            p = q < end ? q + 1 : -1;
+        }
+        if ( count > numColumns ) {
+            throw new IOException( "Too many values (" + count + ") in row  (based on headings count of "
+                    + numColumns + ")" );
+        }
+        if ( count < numColumns ) {
+            Arrays.fill( values, count, numColumns, Double.NaN );
+        }
+    }
+
+    private boolean isMissing( byte[] b, int start, int end ) {
+        return isBlank( b, start, end ) || matches( b, start, end, "NaN" ) || matches( b, start, end, "NA" );
+    }
+
+    private double parseValue( byte[] b, int start, int end ) {
+        if ( isMissing( b, start, end ) ) return Double.NaN;
+        try {
+            return parseDouble( b, start, end );
+        } catch ( NumberFormatException e ) {
+            // e.g. numbers with grouping separators.
+            if ( nf == null ) nf = NumberFormat.getInstance();
+            try {
+                return nf.parse( new String( b, start, end - start, charset ).toUpperCase() ).doubleValue();
+            } catch ( ParseException pe ) {
+                throw new RuntimeException( pe );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ubic.basecode.dataStructure.matrix.FrozenSparseDoubleMatrix;
+import ubic.basecode.util.FileTools;
+
+/**
+ * Reads a symmetric sparse matrix from an adjacency list ("item1 item2 weight" per line, separated by spaces or tabs;
+ * the weight defaults to 1) straight into compressed-row form. Item names are numbered in the order they are first
+ * seen and the edges are kept in primitive arrays, so there is no per-edge object.
+ * <p>
+ * Files are read twice: once to number the items and count the edges of each, and again to put the edges in place,
+ * so that only the finished matrix is held in memory. Streams, which can be read only once, collect the edges first
+ * and then sort them into rows, which needs about twice the memory.
+ *
+ * @author paul
+ */
+final class EdgeListReader {
+
+    /**
+     * Receives the edges of one pass.
+     */
+    private interface EdgeHandler {
+        void edge( int a, int b, byte[] line, int weightStart, int weightEnd );
+    }
+
+    private final Charset charset = Charset.defaultCharset();
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * @param fileName can be compressed
+     * @return the matrix, with the item names as row and column names.
+     * @throws IOException
+     */
+    FrozenSparseDoubleMatrix<String, String> read( String fileName ) throws IOException {
+        final int[][] counts = new int[][] { new int[1024] };
+        try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( fileName, true )) {
+            scan( is, new EdgeHandler() {
+                @Override
+                public void edge( int a, int b, byte[] line, int weightStart, int weightEnd ) {
+                    int max = Math.max( a, b );
+                    if ( max >= counts[0].length ) {
+                        counts[0] = Arrays.copyOf( counts[0], Math.max( max + 1, counts[0].length * 2 ) );
+                    }
+                    counts[0][a]++;
+                    if ( a != b ) counts[0][b]++;
+                }
+            } );
+        }
+
+        final FrozenSparseDoubleMatrix.Builder<String, String> builder = new FrozenSparseDoubleMatrix.Builder<String, String>(
+                Arrays.copyOf( counts[0], names.size() ) );
+        counts[0] = null;
+        try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( fileName, true )) {
+            scan( is, new EdgeHandler() {
+                @Override
+                public void edge( int a, int b, byte[] line, int weightStart, int weightEnd ) {
+                    addEdge( builder, a, b, line, weightStart, weightEnd );
+                }
+            } );
+        }
+        return build( builder );
+    }
+
+    /**
+     * @param stream
+     * @return the matrix, with the item names as row and column names.
+     * @throws IOException
+     */
+    FrozenSparseDoubleMatrix<String, String> read( InputStream stream ) throws IOException {
+        final FrozenSparseDoubleMatrix.Builder<String, String> builder = new FrozenSparseDoubleMatrix.Builder<String, String>();
+        try (InputStream is = stream) {
+            scan( is, new EdgeHandler() {
+                @Override
+                public void edge( int a, int b, byte[] line, int weightStart, int weightEnd ) {
+                    addEdge( builder, a, b, line, weightStart, weightEnd );
+                }
+            } );
+        }
+        return build( builder );
+    }
+
+    private void addEdge( FrozenSparseDoubleMatrix.Builder<String, String> builder, int a, int b, byte[] line,
+            int weightStart, int weightEnd ) {
+        double weight = 1.0;
+        if ( weightStart < weightEnd ) {
+            try {
+                weight = DoubleRowParser.parseDouble( line, weightStart, weightEnd );
+            } catch ( NumberFormatException e ) {
+                // NaN and other forms the fast parser doesn't handle.
+                weight = Double.parseDouble( new String( line, weightStart, weightEnd - weightStart, charset ) );
+            }
+        }
+        builder.add( a, b, weight );
+        if ( a != b ) builder.add( b, a, weight );
+    }
+
+    private FrozenSparseDoubleMatrix<String, String> build( FrozenSparseDoubleMatrix.Builder<String, String> builder ) {
+        FrozenSparseDoubleMatrix<String, String> matrix = builder.build( names.size(), names.size() );
+        matrix.setRowNames( names );
+        matrix.setColumnNameIndex( matrix.getRowNameIndex() );
+        return matrix;
+    }
+
+    /**
+     * @return the number of the item, numbering it if it is new.
+     */
+    private int intern( byte[] b, int start, int end ) {
+        String name = new String( b, start, end - start, charset );
+        Integer i = index.get( name );
+        if ( i == null ) {
+            i = names.size();
+            index.put( name, i );
+            names.add( name );
+        }
+        return i;
+    }
+
+    private boolean isSeparator( byte c ) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Read the lines, numbering the items; lines with fewer than two items are skipped.
+     */
+    private void scan( InputStream is, EdgeHandler handler ) throws IOException {
+        try (ByteLineReader lines = new ByteLineReader( is )) {
+            while ( lines.next() ) {
+                byte[] b = lines.buffer();
+                int end = lines.end();
+                int i = lines.start();
+
+                while ( i < end && isSeparator( b[i] ) ) i++;
+                int aStart = i;
+                while ( i < end && !isSeparator( b[i] ) ) i++;
+                int aEnd = i;
+                while ( i < end && isSeparator( b[i] ) ) i++;
+                int bStart = i;
+                while ( i < end && !isSeparator( b[i] ) ) i++;
+                int bEnd = i;
+                if ( aStart == aEnd || bStart == bEnd ) continue;
+                while ( i < end && isSeparator( b[i] ) ) i++;
+                int wStart = i;
+                while ( i < end && !isSeparator( b[i] ) ) i++;
+
+                handler.edge( intern( b, aStart, aEnd ), intern( b, bStart, bEnd ), b, wStart, i );
+            }
+        }
+    }
+
+}
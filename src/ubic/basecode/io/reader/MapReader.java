@@ -24,10 +24,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
 import ubic.basecode.util.FileTools;
+import ubic.basecode.util.MappedLineScanner;
 
 /**
  * Reads a tab-delimited file with keys in first column, values in second.
@@ -100,4 +102,81 @@ public class MapReader {
         return read( stream, hasHeader );
 
     }
+
+    /**
+     * Read a map from a file by memory-mapping it rather than reading it line by line, which is much faster for large
+     * files. Compressed files cannot be mapped and are read with {@link #read(String, boolean)}. Blank lines are
+     * skipped.
+     * 
+     * @param filename name of the tab-delimited file
+     * @param hasHeader boolean if a one-line header is present.
+     * @param parallel if true, parts of the file are read concurrently; where a key is repeated the last value is
+     *        kept, as in a sequential read.
+     * @return Map from the file.
+     * @throws IOException
+     * @see MappedLineScanner
+     */
+    public Map<String, String> readMapped( String filename, boolean hasHeader, boolean parallel ) throws IOException {
+        if ( FileTools.isGZipped( filename ) || FileTools.isZipped( filename ) ) {
+            return read( filename, hasHeader );
+        }
+        File infile = new File( filename );
+        if ( !infile.exists() || !infile.canRead() ) {
+            throw new IllegalArgumentException( "Could not read from " + filename );
+        }
+
+        MappedLineScanner scanner = new MappedLineScanner( infile );
+        scanner.setHeaderLines( hasHeader ? 1 : 0 );
+        if ( !parallel ) {
+            EntryCollector entries = new EntryCollector();
+            scanner.scan( entries );
+            return entries.map;
+        }
+
+        List<EntryCollector> parts = scanner.scanParallel( new MappedLineScanner.HandlerFactory<EntryCollector>() {
+            @Override
+            public EntryCollector newHandler() {
+                return new EntryCollector();
+            }
+        } );
+        int size = 0;
+        for ( EntryCollector part : parts ) {
+            size += part.map.size();
+        }
+        Map<String, String> result = new HashMap<String, String>( ( int ) ( size / 0.75 ) + 1 );
+        for ( EntryCollector part : parts ) {
+            result.putAll( part.map );
+        }
+        return result;
+    }
+
+    /**
+     * Takes the first two tab-delimited fields of each line; as with StringTokenizer, repeated tabs count as one.
+     */
+    private static class EntryCollector implements MappedLineScanner.LineHandler {
+
+        private final Map<String, String> map = new HashMap<String, String>();
+
+        @Override
+        public void handleLine( MappedLineScanner.Line line ) throws IOException {
+            int n = line.length();
+            int keyStart = skipTabs( line, 0 );
+            if ( keyStart == n ) return;
+            int keyEnd = line.indexOf( '\t', keyStart );
+            int valueStart = keyEnd < 0 ? n : skipTabs( line, keyEnd );
+            if ( valueStart == n ) {
+                throw new IOException( "No value for " + line.substring( keyStart, keyEnd < 0 ? n : keyEnd )
+                        + " at offset " + line.getOffset() );
+            }
+            int valueEnd = line.indexOf( '\t', valueStart );
+            map.put( line.substring( keyStart, keyEnd ), line.substring( valueStart, valueEnd < 0 ? n : valueEnd ) );
+        }
+
+        private int skipTabs( MappedLineScanner.Line line, int i ) {
+            while ( i < line.length() && line.charAt( i ) == '\t' ) {
+                i++;
+            }
+            return i;
+        }
+    }
 }
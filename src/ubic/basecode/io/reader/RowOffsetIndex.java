@@ -0,0 +1,352 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.io.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cern.colt.list.IntArrayList;
+import cern.colt.list.LongArrayList;
+
+/**
+ * Index of the rows of an uncompressed, tab-delimited matrix file: the byte offset and length of the header and of
+ * each row, by row name. With it, a few rows can be read from a large file without scanning it (see
+ * {@link DoubleMatrixReader#readIndexed(String, java.util.Collection, boolean, int)}).
+ * <p>
+ * The index is kept in a small file next to the data file (with the extension {@link #EXTENSION}). It records the size
+ * and modification time of the data file, and is rebuilt if either has changed. If a row name occurs more than once,
+ * the first row with that name is indexed.
+ *
+ * @author paul
+ */
+public class RowOffsetIndex {
+
+    /**
+     * Appended to the name of the data file to get the name of the index file.
+     */
+    public static final String EXTENSION = ".rowidx";
+
+    private static Logger log = LoggerFactory.getLogger( RowOffsetIndex.class );
+
+    private static final int MAGIC = 0x524f5749; // "ROWI"
+
+    /**
+     * Bytes in the index file before the rows, and the fewest bytes per row (an empty name, offset and length).
+     */
+    private static final int HEADER_BYTES = 40;
+    private static final int MIN_ROW_BYTES = 14;
+    private static final int VERSION = 1;
+
+    private final long dataLastModified;
+    private final long dataSize;
+
+    /**
+     * Offset and length of the header line; the length is -1 if there is no header.
+     */
+    private final long headerOffset;
+    private final int headerLength;
+
+    private final int[] lengths;
+    private final long[] offsets;
+    private final Map<String, Integer> positions;
+    private final List<String> rowNames;
+
+    private RowOffsetIndex( long dataSize, long dataLastModified, long headerOffset, int headerLength,
+            List<String> rowNames, long[] offsets, int[] lengths ) {
+        this.dataSize = dataSize;
+        this.dataLastModified = dataLastModified;
+        this.headerOffset = headerOffset;
+        this.headerLength = headerLength;
+        this.rowNames = rowNames;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.positions = new HashMap<String, Integer>( rowNames.size() * 2 );
+        for ( int i = rowNames.size() - 1; i >= 0; i-- ) {
+            positions.put( rowNames.get( i ), i );
+        }
+    }
+
+    /**
+     * Index a data file by reading it once; the index is not saved.
+     *
+     * @param dataFile uncompressed
+     * @return the index
+     * @throws IOException
+     */
+    public static RowOffsetIndex build( File dataFile ) throws IOException {
+        long size = dataFile.length();
+        long lastModified = dataFile.lastModified();
+        Charset charset = Charset.defaultCharset();
+
+        long headerOffset = 0;
+        int headerLength = -1;
+        List<String> names = new ArrayList<String>();
+        LongArrayList offsets = new LongArrayList();
+        IntArrayList lengths = new IntArrayList();
+        try (ByteLineReader lines = new ByteLineReader( new FileInputStream( dataFile ) )) {
+            while ( lines.next() ) {
+                byte[] b = lines.buffer();
+                if ( DoubleRowParser.isSkipped( b, lines.start(), lines.end() ) ) {
+                    continue;
+                }
+                if ( headerLength < 0 ) {
+                    headerOffset = lines.lineOffset();
+                    headerLength = lines.end() - lines.start();
+                    continue;
+                }
+                int tab = lines.start();
+                while ( tab < lines.end() && b[tab] != '\t' ) {
+                    tab++;
+                }
+                names.add( new String( b, lines.start(), tab - lines.start(), charset ) );
+                offsets.add( lines.lineOffset() );
+                lengths.add( lines.end() - lines.start() );
+            }
+        }
+        offsets.trimToSize();
+        lengths.trimToSize();
+        return new RowOffsetIndex( size, lastModified, headerOffset, headerLength, names, offsets.elements(),
+                lengths.elements() );
+    }
+
+    /**
+     * Load the index of a data file, building and saving it if there is no current one (or the saved one is damaged).
+     * If the index cannot be saved (for example, the directory is not writable), it is only kept in memory.
+     *
+     * @param dataFile uncompressed
+     * @return the index
+     * @throws IOException
+     */
+    public static RowOffsetIndex getIndex( File dataFile ) throws IOException {
+        RowOffsetIndex index = load( dataFile );
+        if ( index != null ) return index;
+
+        log.info( "Indexing rows of " + dataFile );
+        index = build( dataFile );
+        try {
+            index.write( indexFileFor( dataFile ) );
+        } catch ( IOException e ) {
+            log.warn( "Could not save row index for " + dataFile + ": " + e.getMessage() );
+        }
+        return index;
+    }
+
+    /**
+     * @param dataFile
+     * @return the file the index of the data file is saved in.
+     */
+    public static File indexFileFor( File dataFile ) {
+        return new File( dataFile.getPath() + EXTENSION );
+    }
+
+    /**
+     * @param dataFile
+     * @return the saved index of the data file, or null if there is none, it is out of date, or it is truncated or
+     *         damaged.
+     * @throws IOException if the index file cannot be read.
+     */
+    public static RowOffsetIndex load( File dataFile ) throws IOException {
+        File indexFile = indexFileFor( dataFile );
+        if ( !indexFile.canRead() ) return null;
+
+        try (DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ) ) )) {
+            if ( indexFile.length() < HEADER_BYTES || in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                log.warn( "Ignoring unrecognized row index " + indexFile );
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            if ( size != dataFile.length() || lastModified != dataFile.lastModified() ) {
+                log.info( "Row index " + indexFile + " is out of date" );
+                return null;
+            }
+            long headerOffset = in.readLong();
+            int headerLength = in.readInt();
+            int n = in.readInt();
+            if ( n < 0 || n > ( indexFile.length() - HEADER_BYTES ) / MIN_ROW_BYTES
+                    || !inData( headerOffset, Math.max( headerLength, 0 ), size ) ) {
+                log.warn( "Ignoring damaged row index " + indexFile );
+                return null;
+            }
+            List<String> names = new ArrayList<String>( n );
+            long[] offsets = new long[n];
+            int[] lengths = new int[n];
+            for ( int i = 0; i < n; i++ ) {
+                names.add( in.readUTF() );
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+                if ( !inData( offsets[i], lengths[i], size ) ) {
+                    log.warn( "Ignoring damaged row index " + indexFile );
+                    return null;
+                }
+            }
+            return new RowOffsetIndex( size, lastModified, headerOffset, headerLength, names, offsets, lengths );
+        } catch ( EOFException | UTFDataFormatException e ) {
+            log.warn( "Ignoring truncated or damaged row index " + indexFile );
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the range is within a data file of the given size.
+     */
+    private static boolean inData( long offset, int length, long size ) {
+        return offset >= 0 && length >= 0 && offset + length <= size;
+    }
+
+    /**
+     * @return the length of the header line in bytes (without the line terminator), or -1 if the file has no header.
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * @return the offset of the header line in the data file.
+     */
+    public long getHeaderOffset() {
+        return headerOffset;
+    }
+
+    /**
+     * @param row position of the row in the file, as from {@link #indexOf(String)}
+     * @return the length of the row in bytes, without the line terminator.
+     */
+    public int getLength( int row ) {
+        return lengths[row];
+    }
+
+    /**
+     * @param row position of the row in the file, as from {@link #indexOf(String)}
+     * @return the offset of the row in the data file.
+     */
+    public long getOffset( int row ) {
+        return offsets[row];
+    }
+
+    /**
+     * @return the names of the rows, in file order.
+     */
+    public List<String> getRowNames() {
+        return Collections.unmodifiableList( rowNames );
+    }
+
+    /**
+     * @param rowName
+     * @return the position of the (first) row with the name among the rows of the file, or -1 if there is none.
+     */
+    public int indexOf( String rowName ) {
+        Integer i = positions.get( rowName );
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @param dataFile
+     * @return true if the data file has the same size and modification time as when it was indexed.
+     */
+    public boolean isCurrent( File dataFile ) {
+        return dataFile.length() == dataSize && dataFile.lastModified() == dataLastModified;
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+        return rowNames.size();
+    }
+
+    /**
+     * Save the index. It is written to a temporary file that is then renamed, so a concurrent reader does not see a
+     * partial index.
+     *
+     * @param indexFile
+     * @throws IOException
+     */
+    public void write( File indexFile ) throws IOException {
+        File tmp = new File( indexFile.getPath() + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) )) {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( dataSize );
+            out.writeLong( dataLastModified );
+            out.writeLong( headerOffset );
+            out.writeInt( headerLength );
+            out.writeInt( rowNames.size() );
+            for ( int i = 0; i < rowNames.size(); i++ ) {
+                out.writeUTF( rowNames.get( i ) );
+                out.writeLong( offsets[i] );
+                out.writeInt( lengths[i] );
+            }
+        }
+        if ( !tmp.renameTo( indexFile ) ) {
+            // some platforms do not replace an existing file.
+            indexFile.delete();
+            if ( !tmp.renameTo( indexFile ) ) {
+                tmp.delete();
+                throw new IOException( "Could not save " + indexFile );
+            }
+        }
+    }
+
+    /**
+     * @param names if null, all rows
+     * @return the positions of the rows with the given names, in file order and without repeats; names that are not
+     *         in the index are ignored.
+     */
+    int[] positionsOf( Iterable<String> names ) {
+        if ( names == null ) {
+            int[] all = new int[size()];
+            for ( int i = 0; i < all.length; i++ ) {
+                all[i] = i;
+            }
+            return all;
+        }
+        IntArrayList result = new IntArrayList();
+        for ( String name : names ) {
+            int i = indexOf( name );
+            if ( i >= 0 ) result.add( i );
+        }
+        int[] sorted = Arrays.copyOf( result.elements(), result.size() );
+        Arrays.sort( sorted );
+        int n = 0;
+        for ( int i = 0; i < sorted.length; i++ ) {
+            if ( n == 0 || sorted[i] != sorted[n - 1] ) sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf( sorted, n );
+    }
+
+}
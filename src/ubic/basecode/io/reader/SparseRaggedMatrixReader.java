@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 
 import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.dataStructure.matrix.FrozenSparseDoubleMatrix;
 import ubic.basecode.dataStructure.matrix.RCDoubleMatrix1D;
 import ubic.basecode.dataStructure.matrix.SparseRaggedDoubleMatrix;
 import ubic.basecode.util.FileTools;
@@ -234,6 +235,27 @@ public class SparseRaggedMatrixReader extends DoubleMatrixReader {
         return readFromAdjList( stream );
     }
 
+    /**
+     * Read a sparse symmetric square matrix that is expressed as an adjacency list, as for
+     * {@link #readFromAdjList(String)}, into compressed-row form. Instead of a hash map per item, the edges are held in
+     * primitive arrays, and the matrix takes 12 bytes per stored value. The file is read twice, so that the edges can
+     * be put straight in place.
+     * <p>
+     * The items are in the order they are first seen in the file. If an edge is listed more than once, the last weight
+     * is used; edges with weight zero (including the diagonal, unless it is listed) are not stored.
+     * 
+     * @param fileName can be compressed
+     * @return the matrix
+     * @throws IOException
+     * @see SparseDoubleMatrixReader#readCompressed(InputStream)
+     */
+    public FrozenSparseDoubleMatrix<String, String> readFromAdjListCompressed( String fileName ) throws IOException {
+        if ( !FileTools.testFile( fileName ) ) {
+            throw new IOException( "Could not read from file " + fileName );
+        }
+        return new EdgeListReader().read( fileName );
+    }
+
     /**
      * Use this to read one row from a matrix (JW format). It does not close the reader. (this actually has to read
      * several lines to get the data for one matrix row)
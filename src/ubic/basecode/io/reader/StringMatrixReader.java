@@ -23,23 +23,34 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
 
 import org.apache.commons.lang3.StringUtils;
 
+import ubic.basecode.dataStructure.matrix.DictionaryStringMatrix;
 import ubic.basecode.dataStructure.matrix.StringMatrix;
 import ubic.basecode.util.FileTools;
 
 /**
- * Reader for {@link basecode.dataStructure.matrix.StringMatrix}
+ * Reader for {@link basecode.dataStructure.matrix.StringMatrix}. The matrix returned is a
+ * {@link DictionaryStringMatrix}, which is filled as the file is read; each read has its own symbol table. Large
+ * uncompressed files can be read with several threads; see {@link #setParallel(boolean)}.
  * 
  * @author Paul Pavlidis
  * 
  */
 public class StringMatrixReader extends AbstractMatrixReader<StringMatrix<String, String>, String> {
 
+    /**
+     * Size of the chunks for parallel reading; if not positive it is chosen based on the file size.
+     */
+    private int chunkSize = 0;
+    private boolean parallel = false;
+
     @Override
     public StringMatrix<String, String> read( InputStream stream ) throws IOException {
         return this.read( stream, -1, -1 );
@@ -56,83 +67,30 @@ public class StringMatrixReader extends AbstractMatrixReader<StringMatrix<String
     @SuppressWarnings("resource")
     public StringMatrix<String, String> read( InputStream stream, int maxRows, int numColumnsToSkip )
             throws IOException {
-        StringMatrix<String, String> matrix = null;
-        List<List<String>> MTemp = new Vector<List<String>>();
         List<String> rowNames = new Vector<String>();
         List<String> columnNames;
         BufferedReader dis = new BufferedReader( new InputStreamReader( stream ) );
         // BufferedReader dis = new BufferedReader( new FileReader( filename ) );
-        int columnNumber = 0;
         int rowNumber = 0;
         String row;
 
         columnNames = readHeader( dis, -1 );
         int numHeadings = columnNames.size();
+        DictionaryStringMatrix.Builder<String, String> builder = new DictionaryStringMatrix.Builder<String, String>(
+                numHeadings );
 
         while ( ( row = dis.readLine() ) != null ) {
-            StringTokenizer st = new StringTokenizer( row, "\t", true );
-            List<String> rowTemp = new Vector<String>();
-            columnNumber = 0;
-            String previousToken = "";
-
-            String rowName = st.nextToken();
-            if ( StringUtils.isBlank( rowName ) ) {
-                throw new IOException( "Missing values not allowed for row labels" );
-            }
-            rowNames.add( rowName );
-
-            while ( st.hasMoreTokens() ) {
-                String s = st.nextToken();
-
-                boolean missing = false;
-
-                if ( s.compareTo( "\t" ) == 0 ) {
-                    /* two tabs in a row */
-                    if ( previousToken.compareTo( "\t" ) == 0 ) {
-                        missing = true;
-                    } else if ( !st.hasMoreTokens() ) { // at end of line.
-                        missing = true;
-                    } else {
-                        previousToken = s;
-                        continue;
-                    }
-                }
-
-                if ( numColumnsToSkip >= 0 && columnNumber <= numColumnsToSkip ) {
-                    // do nothing.
-                } else if ( missing ) {
-                    rowTemp.add( "" );
-                } else {
-                    rowTemp.add( s );
-                }
-                columnNumber++;
-
-                previousToken = s;
-            }
-            MTemp.add( rowTemp );
-            if ( rowTemp.size() > numHeadings ) {
-                throw new IOException( "Warning: too many values (" + rowTemp.size() + ") in row " + rowNumber
-                        + " (based on headings count of " + numHeadings + ")" );
-            }
+            List<String> rowTemp = new ArrayList<String>( numHeadings );
+            rowNames.add( parseRow( row, numColumnsToSkip, rowTemp ) );
+            addRow( builder, rowTemp, rowNumber );
             rowNumber++;
 
             if ( maxRows > 0 && rowNumber == maxRows ) break;
         }
 
-        matrix = new StringMatrix<String, String>( rowNumber, numHeadings );
+        StringMatrix<String, String> matrix = builder.build();
         matrix.setColumnNames( columnNames );
         matrix.setRowNames( rowNames );
-
-        for ( int i = 0; i < matrix.rows(); i++ ) {
-            for ( int j = 0; j < matrix.columns(); j++ ) {
-                if ( MTemp.get( i ).size() < j + 1 ) {
-                    matrix.set( i, j, "" );
-                    // this allows the input file to have ragged ends.
-                } else {
-                    matrix.set( i, j, MTemp.get( i ).get( j ) );
-                }
-            }
-        }
         stream.close();
         return matrix;
     }
@@ -165,8 +123,156 @@ public class StringMatrixReader extends AbstractMatrixReader<StringMatrix<String
         if ( !infile.exists() || !infile.canRead() ) {
             throw new IllegalArgumentException( "Could not read from " + filename );
         }
-        InputStream stream = FileTools.getInputStreamFromPlainOrCompressedFile( filename );
-        return read( stream, maxRows, numColumnsToSkip );
+        if ( parallel && ChunkedLineReader.canSplit( filename ) ) {
+            return readParallel( infile, maxRows, numColumnsToSkip );
+        }
+        try (InputStream stream = FileTools.getInputStreamFromPlainOrCompressedFile( filename, parallel )) {
+            return read( stream, maxRows, numColumnsToSkip );
+        }
+    }
+
+    /**
+     * If set, uncompressed files read by name are split into chunks at line boundaries, which are tokenized at the same
+     * time on the shared fork-join pool (see {@link ubic.basecode.util.ParallelUtils}); the matrix is then filled in
+     * file order. Compressed files are tokenized sequentially while they are inflated on other threads (see
+     * {@link FileTools#getInputStreamFromPlainOrCompressedFile(String, boolean)}); streams are always read
+     * sequentially.
+     * 
+     * @param parallel
+     */
+    public void setParallel( boolean parallel ) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param chunkSize approximate size in bytes of the chunks for parallel reading; if not positive, it is chosen
+     *        based on the file size.
+     */
+    void setChunkSize( int chunkSize ) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param builder
+     * @param rowTemp values of the row, which may be fewer than the number of columns.
+     * @param rowNumber
+     * @throws IOException if there are too many values.
+     */
+    private void addRow( DictionaryStringMatrix.Builder<String, String> builder, List<String> rowTemp, int rowNumber )
+            throws IOException {
+        if ( rowTemp.size() > builder.columns() ) {
+            throw new IOException( "Warning: too many values (" + rowTemp.size() + ") in row " + rowNumber
+                    + " (based on headings count of " + builder.columns() + ")" );
+        }
+        // this allows the input file to have ragged ends.
+        builder.addRow( rowTemp );
+    }
+
+    /**
+     * Tokenize the lines of the file concurrently, then fill in the matrix in file order.
+     */
+    private StringMatrix<String, String> readParallel( File file, int maxRows, final int numColumnsToSkip )
+            throws IOException {
+        final Charset charset = Charset.defaultCharset();
+        ChunkedLineReader reader = new ChunkedLineReader( file, charset, chunkSize );
+
+        String header = reader.readHeader();
+        List<String> columnNames = header == null ? new Vector<String>() : parseHeader( header, -1 );
+        DictionaryStringMatrix.Builder<String, String> builder = new DictionaryStringMatrix.Builder<String, String>(
+                columnNames.size() );
+
+        List<RowChunk> chunks = reader.readChunks( new ChunkedLineReader.ChunkFactory<RowChunk>() {
+            @Override
+            RowChunk newChunk() {
+                return new RowChunk( charset, numColumnsToSkip );
+            }
+        } );
+
+        List<String> rowNames = new Vector<String>();
+        int rowNumber = 0;
+        assemble: for ( RowChunk chunk : chunks ) {
+            for ( int k = 0; k < chunk.rows.size(); k++ ) {
+                if ( maxRows > 0 && rowNumber == maxRows ) break assemble;
+                rowNames.add( chunk.rowNames.get( k ) );
+                addRow( builder, chunk.rows.get( k ), rowNumber );
+                rowNumber++;
+            }
+        }
+
+        StringMatrix<String, String> matrix = builder.build();
+        matrix.setColumnNames( columnNames );
+        matrix.setRowNames( rowNames );
+        return matrix;
+    }
+
+    /**
+     * @param row
+     * @param numColumnsToSkip
+     * @param rowTemp to add the values to
+     * @return the row name
+     * @throws IOException if the row name is missing.
+     */
+    private static String parseRow( String row, int numColumnsToSkip, List<String> rowTemp ) throws IOException {
+        StringTokenizer st = new StringTokenizer( row, "\t", true );
+        int columnNumber = 0;
+        String previousToken = "";
+
+        String rowName = st.nextToken();
+        if ( StringUtils.isBlank( rowName ) ) {
+            throw new IOException( "Missing values not allowed for row labels" );
+        }
+
+        while ( st.hasMoreTokens() ) {
+            String s = st.nextToken();
+
+            boolean missing = false;
+
+            if ( s.compareTo( "\t" ) == 0 ) {
+                /* two tabs in a row */
+                if ( previousToken.compareTo( "\t" ) == 0 ) {
+                    missing = true;
+                } else if ( !st.hasMoreTokens() ) { // at end of line.
+                    missing = true;
+                } else {
+                    previousToken = s;
+                    continue;
+                }
+            }
+
+            if ( numColumnsToSkip >= 0 && columnNumber <= numColumnsToSkip ) {
+                // do nothing.
+            } else if ( missing ) {
+                rowTemp.add( "" );
+            } else {
+                rowTemp.add( s );
+            }
+            columnNumber++;
+
+            previousToken = s;
+        }
+        return rowName;
+    }
+
+    /**
+     * The tokenized rows of one chunk of the file.
+     */
+    private static class RowChunk extends ChunkedLineReader.Chunk {
+        private final Charset charset;
+        private final int numColumnsToSkip;
+        private final List<String> rowNames = new ArrayList<String>();
+        private final List<List<String>> rows = new ArrayList<List<String>>();
+
+        RowChunk( Charset charset, int numColumnsToSkip ) {
+            this.charset = charset;
+            this.numColumnsToSkip = numColumnsToSkip;
+        }
+
+        @Override
+        void line( byte[] b, int start, int end ) throws IOException {
+            List<String> rowTemp = new ArrayList<String>();
+            rowNames.add( parseRow( new String( b, start, end - start, charset ), numColumnsToSkip, rowTemp ) );
+            rows.add( rowTemp );
+        }
     }
 
 }
\ No newline at end of file
@@ -18,23 +18,39 @@
  */
 package ubic.basecode.io.writer;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.Format;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix3D;
 import ubic.basecode.dataStructure.matrix.Matrix2D;
 import ubic.basecode.dataStructure.matrix.Matrix3D;
 import ubic.basecode.dataStructure.matrix.MatrixUtil;
+import ubic.basecode.util.BlockGzipOutputStream;
+import ubic.basecode.util.FileTools;
+import ubic.basecode.util.ParallelUtils;
 
 /**
  * Class for writing matrices to disk
+ * <p>
+ * Double matrices are written by a fast path that formats the values straight into a reused buffer (as
+ * Double.toString does, unless a formatter or a number of fraction digits is set); see also
+ * {@link #setParallel(boolean)}.
  * 
  * @author Raymond Lim
  * @author paul
@@ -44,9 +60,23 @@ public class MatrixWriter<R, C> {
 
     public static final String DEFAULT_SEP = "\t";
     public static final String DEFAULT_TOP_LEFT = "ID";
+
+    /**
+     * Rows formatted at a time by each task in parallel mode.
+     */
+    private static final int BLOCK_ROWS = 512;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int FILE_BUFFER_SIZE = 1 << 20;
+
+    private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L };
+
     protected Map<C, String> colNameMap = new HashMap<C, String>();
     protected Format formatter;
     protected Writer out;
+    private int fractionDigits = -1;
+    private boolean parallel = false;
 
     protected Map<R, String> rowNameMap = new HashMap<R, String>();
 
@@ -70,9 +100,15 @@ public class MatrixWriter<R, C> {
         this( fileName, formatter, DEFAULT_SEP );
     }
 
+    /**
+     * @param fileName if it ends in ".gz", the output is gzipped.
+     * @param formatter
+     * @param sep
+     * @throws IOException
+     */
     @SuppressWarnings("resource")
     public MatrixWriter( String fileName, Format formatter, String sep ) throws IOException {
-        this( new BufferedWriter( new FileWriter( fileName ) ), formatter, sep );
+        this( new OutputStreamWriter( openFile( fileName ) ), formatter, sep );
     }
 
     public MatrixWriter( Writer out ) {
@@ -103,6 +139,31 @@ public class MatrixWriter<R, C> {
         this.colNameMap = colNameMap;
     }
 
+    /**
+     * Write the values of double matrices with this many digits after the decimal point (rounded half up), rather
+     * than as by Double.toString. This is ignored if a formatter is set. Values too large to be rounded exactly as
+     * longs are formatted with BigDecimal.
+     * 
+     * @param fractionDigits from 0 to 15, or -1 for the default formatting
+     */
+    public void setFractionDigits( int fractionDigits ) {
+        if ( fractionDigits < -1 || fractionDigits >= POWERS_OF_TEN.length ) {
+            throw new IllegalArgumentException( "Fraction digits must be from 0 to " + ( POWERS_OF_TEN.length - 1 )
+                    + ", or -1" );
+        }
+        this.fractionDigits = fractionDigits;
+    }
+
+    /**
+     * If set, the rows of double matrices are formatted in blocks on the shared fork-join pool (see
+     * {@link ParallelUtils}) and written in order. Not used if a formatter is set, since Formats are not thread-safe.
+     * 
+     * @param parallel
+     */
+    public void setParallel( boolean parallel ) {
+        this.parallel = parallel;
+    }
+
     /**
      * Use to customize the labels instead of relying on the toString method of the row object
      * 
@@ -127,9 +188,11 @@ public class MatrixWriter<R, C> {
     /**
      * @param <V>
      * @param matrix
-     * @param printNames Should the row and column names be included; FIXME this fails if names aren't provided
+     * @param printNames Should the row and column names be included; FIXME this fails if names aren't provided (except
+     *        for double matrices written without names)
      * @throws IOException
      */
+    @SuppressWarnings("unchecked")
     public <V> void writeMatrix( Matrix2D<R, C, V> matrix, boolean printNames ) throws IOException {
         // write headers
         StringBuffer buf = new StringBuffer( topLeft );
@@ -147,6 +210,13 @@ public class MatrixWriter<R, C> {
             out.write( buf.toString() );
         }
 
+        if ( matrix instanceof DoubleMatrix && ( !printNames || matrix.hasRowNames() ) ) {
+            writeDoubles( ( DoubleMatrix<R, C> ) matrix, printNames );
+            out.flush();
+            out.close();
+            return;
+        }
+
         for ( Iterator<R> rowIt = matrix.getRowNames().iterator(); rowIt.hasNext(); ) {
             R rowName = rowIt.next();
             int rowIndex = matrix.getRowIndexByName( rowName );
@@ -180,7 +250,40 @@ public class MatrixWriter<R, C> {
     }
 
     /**
-     * Writes a 3d matrix, collapsing the rows and columns
+     * Close the output. Only needed after {@link #writeBlock(DoubleMatrix, boolean, boolean)}; the other methods close
+     * it themselves.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Write one block of rows of a larger matrix, leaving the output open for the next block; call {@link #close()}
+     * after the last.
+     * 
+     * @param block
+     * @param printNames Should the row and column names be included
+     * @param header if true (for the first block), the header is written before the rows.
+     * @throws IOException
+     */
+    public void writeBlock( DoubleMatrix<R, C> block, boolean printNames, boolean header ) throws IOException {
+        if ( printNames && header ) {
+            StringBuilder buf = new StringBuilder( topLeft );
+            for ( C colName : block.getColNames() ) {
+                buf.append( sep );
+                buf.append( colNameMap.containsKey( colName ) ? colNameMap.get( colName ) : colName );
+            }
+            buf.append( "\n" );
+            out.write( buf.toString() );
+        }
+        writeDoubles( block, printNames );
+    }
+
+    /**
+     * Writes a 3d matrix, collapsing the rows and columns. Double matrices are read one row (of every slice) at a time,
+     * so slices that are not on the heap are streamed rather than copied.
      * 
      * @param matrix
      * @param printNames
@@ -201,7 +304,12 @@ public class MatrixWriter<R, C> {
             buf.append( "\n" );
             out.write( buf.toString() );
         }
+        /*
+         * For double matrices, read one row of every slice at a time, rather than visiting every slice for each cell.
+         */
+        DoubleMatrix3D<?, ?, ?> doubles = matrix instanceof DoubleMatrix3D ? ( DoubleMatrix3D<?, ?, ?> ) matrix : null;
         for ( int i = 0; i < matrix.rows(); i++ ) {
+            double[][] rowBlock = doubles == null ? null : doubles.getRow( i );
             for ( int j = 0; j < matrix.columns(); j++ ) {
                 Object rowObj = matrix.getRowName( i );
                 Object colObj = matrix.getColName( j );
@@ -217,7 +325,7 @@ public class MatrixWriter<R, C> {
                 StringBuffer buf = new StringBuffer();
                 if ( printNames ) buf.append( name + sep );
                 for ( int k = 0; k < matrix.slices(); k++ ) {
-                    Object val = matrix.getObject( k, i, j );
+                    Object val = rowBlock == null ? matrix.getObject( k, i, j ) : Double.valueOf( rowBlock[k][j] );
                     if ( val != null ) {
                         String s = val.toString();
                         if ( formatter != null ) s = formatter.format( val );
@@ -234,4 +342,140 @@ public class MatrixWriter<R, C> {
         out.close();
     }
 
+    /**
+     * Append a value the way the slow path would (Double.toString or the formatter), or with a fixed number of
+     * fraction digits.
+     */
+    private void appendValue( StringBuilder buf, double v ) {
+        if ( formatter != null ) {
+            buf.append( formatter.format( v ) );
+        } else if ( fractionDigits < 0 || Double.isNaN( v ) || Double.isInfinite( v ) ) {
+            buf.append( v );
+        } else {
+            appendFixed( buf, v, fractionDigits );
+        }
+    }
+
+    /**
+     * Append row i, with its name if printNames is set. Safe to call from several threads if there is no formatter.
+     */
+    private void appendRow( StringBuilder buf, DoubleMatrix<R, C> matrix, int i, boolean printNames ) {
+        if ( printNames ) {
+            R rowName = matrix.getRowName( i );
+            if ( this.rowNameMap.containsKey( rowName ) ) {
+                buf.append( rowNameMap.get( rowName ) );
+            } else {
+                buf.append( rowName );
+            }
+            buf.append( sep );
+        }
+        int columns = matrix.columns();
+        for ( int j = 0; j < columns; j++ ) {
+            appendValue( buf, matrix.get( i, j ) );
+            if ( j + 1 < columns ) buf.append( sep );
+        }
+        buf.append( '\n' );
+    }
+
+    /**
+     * Rows of a double matrix, by index rather than by name.
+     */
+    private void writeDoubles( final DoubleMatrix<R, C> matrix, final boolean printNames ) throws IOException {
+        int rows = matrix.rows();
+        char[] chars = new char[BUFFER_SIZE];
+        if ( !parallel || formatter != null || rows <= BLOCK_ROWS ) {
+            StringBuilder buf = new StringBuilder( BUFFER_SIZE );
+            for ( int i = 0; i < rows; i++ ) {
+                appendRow( buf, matrix, i, printNames );
+                if ( buf.length() >= BUFFER_SIZE ) chars = write( buf, chars );
+            }
+            write( buf, chars );
+            return;
+        }
+
+        // format a window of blocks at a time, so memory use does not grow with the matrix.
+        int window = 2 * ParallelUtils.getParallelism();
+        for ( int first = 0; first < rows; first += window * BLOCK_ROWS ) {
+            final List<RecursiveTask<StringBuilder>> tasks = new ArrayList<RecursiveTask<StringBuilder>>( window );
+            for ( int start = first; start < Math.min( rows, first + window * BLOCK_ROWS ); start += BLOCK_ROWS ) {
+                final int from = start;
+                final int to = Math.min( rows, start + BLOCK_ROWS );
+                tasks.add( new RecursiveTask<StringBuilder>() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected StringBuilder compute() {
+                        StringBuilder buf = new StringBuilder( BUFFER_SIZE );
+                        for ( int i = from; i < to; i++ ) {
+                            appendRow( buf, matrix, i, printNames );
+                        }
+                        return buf;
+                    }
+                } );
+            }
+            ParallelUtils.getPool().invoke( new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll( tasks );
+                }
+            } );
+            for ( RecursiveTask<StringBuilder> task : tasks ) {
+                chars = write( task.join(), chars );
+            }
+        }
+    }
+
+    /**
+     * Write and clear the buffer, going through a char array rather than a String.
+     * 
+     * @return the char array, which is enlarged if needed.
+     */
+    private char[] write( StringBuilder buf, char[] chars ) throws IOException {
+        int n = buf.length();
+        if ( n > chars.length ) chars = new char[n];
+        buf.getChars( 0, n, chars, 0 );
+        out.write( chars, 0, n );
+        buf.setLength( 0 );
+        return chars;
+    }
+
+    /**
+     * @param fileName
+     * @return a buffered stream, gzipped (in parallel; see {@link BlockGzipOutputStream}) if the file name ends with
+     *         ".gz".
+     * @throws IOException
+     */
+    @SuppressWarnings("resource")
+    private static OutputStream openFile( String fileName ) throws IOException {
+        OutputStream os = new FileOutputStream( fileName );
+        if ( FileTools.isGZipped( fileName ) ) {
+            return new BufferedOutputStream( new BlockGzipOutputStream( os ), FILE_BUFFER_SIZE );
+        }
+        return new BufferedOutputStream( os, FILE_BUFFER_SIZE );
+    }
+
+    /**
+     * Append v rounded half up to the given number of fraction digits, without making Strings.
+     */
+    static void appendFixed( StringBuilder buf, double v, int digits ) {
+        double scaled = Math.abs( v ) * POWERS_OF_TEN[digits];
+        if ( scaled >= 1e15 ) {
+            buf.append( new BigDecimal( v ).setScale( digits, RoundingMode.HALF_UP ).toPlainString() );
+            return;
+        }
+        long n = ( long ) Math.floor( scaled + 0.5 );
+        if ( v < 0 && n > 0 ) buf.append( '-' );
+        long pow = POWERS_OF_TEN[digits];
+        buf.append( n / pow );
+        if ( digits == 0 ) return;
+        buf.append( '.' );
+        long fraction = n % pow;
+        for ( long p = pow / 10; p > fraction && p > 1; p /= 10 ) {
+            buf.append( '0' );
+        }
+        buf.append( fraction );
+    }
+
 }
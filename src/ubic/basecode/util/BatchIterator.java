@@ -62,6 +62,18 @@ public class BatchIterator<E> implements Iterable<Collection<E>>, Iterator<Colle
         return new BatchIterator<E>( collection, batchSize );
     }
 
+    /**
+     * Returns a BatchIterator over the elements of an iterator, such as the rows of a file being read, so the elements
+     * need not all be in memory.
+     * 
+     * @param iterator the elements over which to iterate
+     * @param batchSize the maximum size of each batch returned
+     * @return a BatchIterator over the elements
+     */
+    public static <E> BatchIterator<E> batches( Iterator<E> iterator, int batchSize ) {
+        return new BatchIterator<E>( iterator, batchSize );
+    }
+
     private int batchSize;
 
     private Iterator<E> individualIterator;
@@ -73,7 +85,18 @@ public class BatchIterator<E> implements Iterable<Collection<E>>, Iterator<Colle
      * @param batchSize the maximum size of each batch returned
      */
     public BatchIterator( Collection<E> collection, int batchSize ) {
-        individualIterator = collection.iterator();
+        this( collection.iterator(), batchSize );
+    }
+
+    /**
+     * Returns a BatchIterator over the elements of an iterator.
+     * 
+     * @param iterator the elements over which to iterate
+     * @param batchSize the maximum size of each batch returned
+     */
+    public BatchIterator( Iterator<E> iterator, int batchSize ) {
+        if ( batchSize < 1 ) throw new IllegalArgumentException( "Batch size must be at least 1" );
+        individualIterator = iterator;
         this.batchSize = batchSize;
     }
 
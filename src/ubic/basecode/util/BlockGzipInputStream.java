@@ -0,0 +1,248 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads gzip in the blocked (BGZF) layout, as written by {@link BlockGzipOutputStream} or bgzip. Because each block
+ * records its compressed size, the blocks can be read off the underlying stream without inflating them; several are
+ * then inflated in parallel on the {@link ParallelUtils#getPool() shared pool}, and their data is returned in order.
+ * <p>
+ * Use {@link #isBlockGzipped(File)} to check a file first: ordinary gzip cannot be read this way.
+ *
+ * @author paul
+ */
+public class BlockGzipInputStream extends InputStream {
+
+    /**
+     * Size of the fixed part of a gzip member header.
+     */
+    private static final int FIXED_HEADER_SIZE = 12;
+
+    private byte[] current = new byte[0];
+    private boolean eof = false;
+    private final InputStream in;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private int pos = 0;
+
+    /**
+     * @param in BGZF data
+     */
+    public BlockGzipInputStream( InputStream in ) {
+        this.in = in;
+        this.maxPending = 2 * ParallelUtils.getParallelism();
+    }
+
+    /**
+     * @param file
+     * @return true if the file starts with a BGZF block.
+     * @throws IOException
+     */
+    public static boolean isBlockGzipped( File file ) throws IOException {
+        byte[] header = new byte[BlockGzipOutputStream.HEADER_SIZE];
+        try (InputStream is = new FileInputStream( file )) {
+            int n = 0;
+            int r;
+            while ( n < header.length && ( r = is.read( header, n, header.length - n ) ) > 0 ) {
+                n += r;
+            }
+            if ( n < header.length ) return false;
+        }
+        return isGzipHeader( header ) && blockSize( header, FIXED_HEADER_SIZE, header.length ) > 0;
+    }
+
+    /**
+     * @return the size of the block from the BC subfield of the extra field, or -1 if there is none.
+     */
+    private static int blockSize( byte[] b, int start, int end ) {
+        int i = start;
+        while ( i + 4 <= end ) {
+            int length = ( b[i + 2] & 0xff ) | ( b[i + 3] & 0xff ) << 8;
+            if ( b[i] == 'B' && b[i + 1] == 'C' && length == 2 && i + 6 <= end ) {
+                return ( ( b[i + 4] & 0xff ) | ( b[i + 5] & 0xff ) << 8 ) + 1;
+            }
+            i += 4 + length;
+        }
+        return -1;
+    }
+
+    private static int getInt( byte[] b, int off ) {
+        return ( b[off] & 0xff ) | ( b[off + 1] & 0xff ) << 8 | ( b[off + 2] & 0xff ) << 16 | ( b[off + 3] & 0xff ) << 24;
+    }
+
+    /**
+     * Inflate one block, checking its length and CRC.
+     */
+    private static byte[] inflate( byte[] block, int dataStart ) throws IOException {
+        int size = getInt( block, block.length - 4 );
+        if ( size < 0 || size > BlockGzipOutputStream.MAX_BLOCK_SIZE ) {
+            throw new IOException( "Corrupt BGZF block: bad size " + size );
+        }
+        byte[] result = new byte[size];
+        Inflater inflater = new Inflater( true );
+        try {
+            inflater.setInput( block, dataStart, block.length - BlockGzipOutputStream.TRAILER_SIZE - dataStart );
+            int n = 0;
+            while ( n < size && !inflater.finished() ) {
+                int r = inflater.inflate( result, n, size - n );
+                if ( r == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) ) break;
+                n += r;
+            }
+            if ( n < size ) throw new IOException( "Corrupt BGZF block: truncated data" );
+        } catch ( DataFormatException e ) {
+            throw new IOException( "Corrupt BGZF block", e );
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update( result );
+        if ( ( int ) crc.getValue() != getInt( block, block.length - BlockGzipOutputStream.TRAILER_SIZE ) ) {
+            throw new IOException( "Corrupt BGZF block: CRC mismatch" );
+        }
+        return result;
+    }
+
+    private static boolean isGzipHeader( byte[] b ) {
+        return b[0] == 0x1f && b[1] == ( byte ) 0x8b && b[2] == 8 && ( b[3] & 4 ) != 0;
+    }
+
+    /**
+     * @return true if the whole buffer could be read; false if the stream ended before any of it was read.
+     */
+    private static boolean readFully( InputStream is, byte[] b, int off, int len ) throws IOException {
+        int n = 0;
+        while ( n < len ) {
+            int r = is.read( b, off + n, len - n );
+            if ( r < 0 ) {
+                if ( n == 0 ) return false;
+                throw new EOFException( "Truncated BGZF block" );
+            }
+            n += r;
+        }
+        return true;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if ( pos < current.length ) return current.length - pos;
+        return eof && pending.isEmpty() ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for ( Future<byte[]> f : pending ) {
+            f.cancel( false );
+        }
+        pending.clear();
+        eof = true;
+        current = new byte[0];
+        in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ( !next() ) return -1;
+        return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len == 0 ) return 0;
+        if ( !next() ) return -1;
+        int n = Math.min( len, current.length - pos );
+        System.arraycopy( current, pos, b, off, n );
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Read blocks from the underlying stream and start inflating them, until the window is full.
+     */
+    private void fillWindow() throws IOException {
+        while ( !eof && pending.size() < maxPending ) {
+            byte[] header = new byte[FIXED_HEADER_SIZE];
+            if ( !readFully( in, header, 0, header.length ) ) {
+                eof = true;
+                return;
+            }
+            if ( !isGzipHeader( header ) ) {
+                throw new IOException( "Not in BGZF format" );
+            }
+            int xlen = ( header[10] & 0xff ) | ( header[11] & 0xff ) << 8;
+            byte[] extra = new byte[xlen];
+            readFully( in, extra, 0, xlen );
+            int size = blockSize( extra, 0, xlen );
+            final int dataStart = FIXED_HEADER_SIZE + xlen;
+            if ( size < dataStart + BlockGzipOutputStream.TRAILER_SIZE ) {
+                throw new IOException( "Not in BGZF format" );
+            }
+            final byte[] block = new byte[size];
+            System.arraycopy( header, 0, block, 0, FIXED_HEADER_SIZE );
+            System.arraycopy( extra, 0, block, FIXED_HEADER_SIZE, xlen );
+            if ( !readFully( in, block, dataStart, size - dataStart ) && size > dataStart ) {
+                throw new EOFException( "Truncated BGZF block" );
+            }
+            pending.addLast( ParallelUtils.getPool().submit( new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return inflate( block, dataStart );
+                }
+            } ) );
+        }
+    }
+
+    /**
+     * Make sure the current block has data, skipping empty blocks.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean next() throws IOException {
+        while ( pos >= current.length ) {
+            fillWindow();
+            if ( pending.isEmpty() ) return false;
+            try {
+                current = pending.removeFirst().get();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch ( ExecutionException e ) {
+                if ( e.getCause() instanceof IOException ) throw ( IOException ) e.getCause();
+                throw new IOException( e.getCause() );
+            }
+            pos = 0;
+        }
+        return true;
+    }
+
+}
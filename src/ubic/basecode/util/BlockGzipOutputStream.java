@@ -0,0 +1,233 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip in the blocked (BGZF) layout used by samtools and tabix: the data is cut into blocks of at most 64 KB,
+ * each compressed as a separate gzip member whose header records its compressed size. The blocks are compressed in
+ * parallel on the {@link ParallelUtils#getPool() shared pool}. The output is ordinary multi-member gzip, so any gzip
+ * reader can read it; {@link BlockGzipInputStream} can also inflate it in parallel.
+ *
+ * @author paul
+ */
+public class BlockGzipOutputStream extends FilterOutputStream {
+
+    /**
+     * Largest amount of data in one block, chosen (as in htslib) so that even incompressible data fits in a block.
+     */
+    static final int BLOCK_DATA_SIZE = 0xff00;
+
+    /**
+     * Largest size of a compressed block.
+     */
+    static final int MAX_BLOCK_SIZE = 0x10000;
+
+    /**
+     * The empty block that marks the end of a BGZF file.
+     */
+    static final byte[] EOF_BLOCK = { 0x1f, ( byte ) 0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, ( byte ) 0xff, 0x06, 0, 0x42,
+            0x43, 0x02, 0, 0x1b, 0, 0x03, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    static final int HEADER_SIZE = 18;
+    static final int TRAILER_SIZE = 8;
+
+    private byte[] block = new byte[BLOCK_DATA_SIZE];
+    private int count = 0;
+    private boolean finished = false;
+    private final int level;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    /**
+     * @param out
+     */
+    public BlockGzipOutputStream( OutputStream out ) {
+        this( out, Deflater.DEFAULT_COMPRESSION );
+    }
+
+    /**
+     * @param out
+     * @param level compression level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public BlockGzipOutputStream( OutputStream out, int level ) {
+        super( out );
+        if ( level != Deflater.DEFAULT_COMPRESSION && ( level < 0 || level > 9 ) ) {
+            throw new IllegalArgumentException( "Invalid compression level " + level );
+        }
+        this.level = level;
+        this.maxPending = 2 * ParallelUtils.getParallelism();
+    }
+
+    /**
+     * Compress one block as a BGZF member.
+     */
+    static byte[] compress( byte[] data, int length, int level ) {
+        Deflater deflater = new Deflater( level, true );
+        try {
+            deflater.setInput( data, 0, length );
+            deflater.finish();
+            byte[] buf = new byte[MAX_BLOCK_SIZE];
+            int n = HEADER_SIZE;
+            while ( !deflater.finished() ) {
+                if ( n == buf.length - TRAILER_SIZE ) {
+                    // cannot happen for blocks of at most BLOCK_DATA_SIZE.
+                    throw new IllegalStateException( "Compressed block too large" );
+                }
+                n += deflater.deflate( buf, n, buf.length - TRAILER_SIZE - n );
+            }
+            CRC32 crc = new CRC32();
+            crc.update( data, 0, length );
+            int size = n + TRAILER_SIZE;
+
+            buf[0] = 0x1f;
+            buf[1] = ( byte ) 0x8b;
+            buf[2] = 8; // deflate
+            buf[3] = 4; // FEXTRA
+            buf[9] = ( byte ) 0xff; // unknown OS
+            buf[10] = 6; // XLEN
+            buf[12] = 'B';
+            buf[13] = 'C';
+            buf[14] = 2; // SLEN
+            putShort( buf, 16, size - 1 );
+            putInt( buf, n, ( int ) crc.getValue() );
+            putInt( buf, n + 4, length );
+            return size == buf.length ? buf : Arrays.copyOf( buf, size );
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void putInt( byte[] b, int off, int v ) {
+        putShort( b, off, v );
+        putShort( b, off + 2, v >>> 16 );
+    }
+
+    private static void putShort( byte[] b, int off, int v ) {
+        b[off] = ( byte ) v;
+        b[off + 1] = ( byte ) ( v >>> 8 );
+    }
+
+    /**
+     * Finish the output and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write the remaining data and the end-of-file block, without closing the underlying stream.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if ( finished ) return;
+        submit();
+        drain( 0 );
+        out.write( EOF_BLOCK );
+        finished = true;
+    }
+
+    /**
+     * Compresses the data written so far as a (possibly short) block, and writes all blocks.
+     */
+    @Override
+    public void flush() throws IOException {
+        submit();
+        drain( 0 );
+        out.flush();
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) throws IOException {
+        if ( finished ) throw new IOException( "Stream finished" );
+        while ( len > 0 ) {
+            int n = Math.min( len, block.length - count );
+            System.arraycopy( b, off, block, count, n );
+            count += n;
+            off += n;
+            len -= n;
+            if ( count == block.length ) {
+                submit();
+                drain( maxPending );
+            }
+        }
+    }
+
+    @Override
+    public void write( int b ) throws IOException {
+        if ( finished ) throw new IOException( "Stream finished" );
+        block[count++] = ( byte ) b;
+        if ( count == block.length ) {
+            submit();
+            drain( maxPending );
+        }
+    }
+
+    /**
+     * Write completed blocks, in order, until at most the given number are pending.
+     */
+    private void drain( int max ) throws IOException {
+        while ( pending.size() > max ) {
+            try {
+                out.write( pending.removeFirst().get() );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch ( ExecutionException e ) {
+                throw new IOException( e.getCause() );
+            }
+        }
+    }
+
+    /**
+     * Start compressing the current block.
+     */
+    private void submit() {
+        if ( count == 0 ) return;
+        final byte[] data = block;
+        final int length = count;
+        pending.addLast( ParallelUtils.getPool().submit( new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return compress( data, length, level );
+            }
+        } ) );
+        block = new byte[BLOCK_DATA_SIZE];
+        count = 0;
+    }
+
+}
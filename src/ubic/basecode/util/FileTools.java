@@ -18,6 +18,7 @@
  */
 package ubic.basecode.util;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
@@ -32,13 +33,13 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.zip.GZIPInputStream;
@@ -150,7 +151,7 @@ public class FileTools {
 
         if ( input.available() == 0 ) return;
 
-        byte[] buf = new byte[1024];
+        byte[] buf = new byte[1 << 16];
         int len;
         while ( ( len = input.read( buf ) ) > 0 ) {
             output.write( buf, 0, len );
@@ -160,6 +161,9 @@ public class FileTools {
     }
 
     /**
+     * Copy a file, uncompressing it if it is compressed. If the output file name ends in .gz, the output is gzipped
+     * (see {@link BlockGzipOutputStream}).
+     * 
      * @param sourcePath
      * @param outputFilePath
      * @return
@@ -183,8 +187,11 @@ public class FileTools {
         }
 
         OutputStream out = new FileOutputStream( outputFile );
+        if ( FileTools.isGZipped( outputFilePath ) ) {
+            out = new BlockGzipOutputStream( out );
+        }
 
-        InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( sourcePath );
+        InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( sourcePath, true );
 
         copy( is, out );
         return outputFile;
@@ -297,9 +304,27 @@ public class FileTools {
      * @throws IOException
      * @throws FileNotFoundException
      */
-    @SuppressWarnings("resource")
     public static InputStream getInputStreamFromPlainOrCompressedFile( String fileName )
             throws IOException, FileNotFoundException {
+        return getInputStreamFromPlainOrCompressedFile( fileName, false );
+    }
+
+    /**
+     * Open a non-compresed, zipped, or gzipped file. Uses the file name pattern to figure this out.
+     * <p>
+     * If readAhead is true, compressed files are inflated on other threads while the caller reads: BGZF files (see
+     * {@link BlockGzipInputStream}) are inflated in parallel, and other compressed files on a background thread (see
+     * {@link ReadAheadInputStream}). The stream must then be closed.
+     * 
+     * @param fileName. If Zipped, only the first file in the archive is used.
+     * @param readAhead
+     * @return
+     * @throws IOException
+     * @throws FileNotFoundException
+     */
+    @SuppressWarnings("resource")
+    public static InputStream getInputStreamFromPlainOrCompressedFile( String fileName, boolean readAhead )
+            throws IOException, FileNotFoundException {
         if ( !FileTools.testFile( fileName ) ) {
             throw new IOException( "Could not read from " + fileName );
         }
@@ -319,9 +344,16 @@ public class FileTools {
             }
 
             i = f.getInputStream( entry );
+            if ( readAhead ) i = new ReadAheadInputStream( i );
         } else if ( FileTools.isGZipped( fileName ) ) {
             log.debug( "Reading from gzipped file" );
-            i = new GZIPInputStream( new FileInputStream( fileName ) );
+            if ( !readAhead ) {
+                i = new GZIPInputStream( new FileInputStream( fileName ) );
+            } else if ( BlockGzipInputStream.isBlockGzipped( new File( fileName ) ) ) {
+                i = new BlockGzipInputStream( new BufferedInputStream( new FileInputStream( fileName ), 1 << 16 ) );
+            } else {
+                i = new ReadAheadInputStream( new GZIPInputStream( new FileInputStream( fileName ), 1 << 16 ) );
+            }
         } else {
             log.debug( "Reading from uncompressed file" );
             i = new FileInputStream( fileName );
@@ -337,7 +369,7 @@ public class FileTools {
      * @throws IOException
      */
     public static List<String> getLines( File file ) throws IOException {
-        List<String> lines = new LinkedList<String>();
+        List<String> lines = new ArrayList<String>();
         BufferedReader in = new BufferedReader( new FileReader( file ) );
         String line;
         while ( ( line = in.readLine() ) != null ) {
@@ -357,6 +389,39 @@ public class FileTools {
         return getLines( new File( filename ) );
     }
 
+    /**
+     * Pass the lines of a file to a handler without making a String for each, by memory-mapping the file. The file
+     * must not be compressed.
+     * 
+     * @param file
+     * @param handler receives each line; the line is only valid during the call.
+     * @throws IOException
+     * @see MappedLineScanner
+     */
+    public static void scanLines( File file, MappedLineScanner.LineHandler handler ) throws IOException {
+        new MappedLineScanner( file ).scan( handler );
+    }
+
+    /**
+     * Like {@link #getLines(File)}, but reads the file by memory-mapping it, which is faster for large files. The file
+     * must not be compressed.
+     * 
+     * @param file
+     * @return the lines, in order
+     * @throws IOException
+     * @see MappedLineScanner
+     */
+    public static List<String> getLinesMapped( File file ) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        scanLines( file, new MappedLineScanner.LineHandler() {
+            @Override
+            public void handleLine( MappedLineScanner.Line line ) {
+                lines.add( line.toString() );
+            }
+        } );
+        return lines;
+    }
+
     /**
      * Used for reading output generated by Collection.toString(). For example [a,b,c] stored in a file would be
      * converted to a new List containing "a", "b" and "c".
@@ -368,8 +433,8 @@ public class FileTools {
      * @throws Exception
      */
     public static List<String> getStringListFromFile( File f ) throws Exception {
-        List<String> result = new LinkedList<String>();
-        List<String> lines = FileTools.getLines( f );
+        List<String> result = new ArrayList<String>();
+        List<String> lines = FileTools.getLinesMapped( f );
         if ( lines.size() != 1 ) {
             throw new RuntimeException( "Too many lines in file" );
         }
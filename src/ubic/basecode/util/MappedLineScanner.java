@@ -0,0 +1,384 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scans the lines of an uncompressed file by memory-mapping it, passing each line to a {@link LineHandler} as a view
+ * over the mapped bytes instead of as a new String. Large files are mapped one region at a time, with the regions
+ * ending at line boundaries.
+ * <p>
+ * Lines end with "\n", "\r\n" or a lone "\r" (old Mac files), as for {@link java.io.BufferedReader#readLine()}; the
+ * terminator is not part of the line, and a final line need not have one. The
+ * lines can also be scanned in parallel with {@link #scanParallel(HandlerFactory)}: the file is split at line
+ * boundaries and the parts are scanned on the {@link ParallelUtils#getPool() shared pool}, each with its own handler.
+ *
+ * @author paul
+ */
+public class MappedLineScanner {
+
+    /**
+     * Makes the handler for each part of the file in a parallel scan.
+     */
+    public interface HandlerFactory<T extends LineHandler> {
+        T newHandler();
+    }
+
+    /**
+     * A line of the file. The same instance is reused for the following lines, so it is only valid during the call to
+     * {@link LineHandler#handleLine(Line)}; use {@link #toString()} to keep it.
+     * <p>
+     * As a CharSequence, each byte is one character (ISO-8859-1), which is exact for ASCII; {@link #toString()} and
+     * {@link #substring(int, int)} decode with the scanner's charset.
+     */
+    public static final class Line implements CharSequence {
+
+        private ByteBuffer buf;
+        private final Charset charset;
+        private int end;
+        private long offset;
+        private byte[] scratch = new byte[256];
+        private int start;
+
+        Line( Charset charset ) {
+            this.charset = charset;
+        }
+
+        /**
+         * @return the buffer holding the line, between {@link #start()} and {@link #end()}; do not change its position
+         *         or limit.
+         */
+        public ByteBuffer buffer() {
+            return buf;
+        }
+
+        @Override
+        public char charAt( int index ) {
+            if ( index < 0 || index >= length() ) throw new IndexOutOfBoundsException( "Index: " + index );
+            return ( char ) ( buf.get( start + index ) & 0xff );
+        }
+
+        /**
+         * @return position of the end of the line (exclusive) in the buffer
+         */
+        public int end() {
+            return end;
+        }
+
+        /**
+         * @return position of the start of the line in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @param b a byte value, such as '\t'
+         * @param from index in the line to start looking at
+         * @return index of the first occurrence in the line at or after from, or -1.
+         */
+        public int indexOf( int b, int from ) {
+            for ( int i = start + Math.max( from, 0 ); i < end; i++ ) {
+                if ( buf.get( i ) == b ) return i - start;
+            }
+            return -1;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        /**
+         * @return position of the start of the line in the buffer
+         */
+        public int start() {
+            return start;
+        }
+
+        @Override
+        public CharSequence subSequence( int from, int to ) {
+            checkRange( from, to );
+            Line l = new Line( charset );
+            l.set( buf, start + from, start + to, offset + from );
+            return l;
+        }
+
+        /**
+         * @param from index in the line
+         * @param to index in the line, exclusive
+         * @return the decoded part of the line.
+         */
+        public String substring( int from, int to ) {
+            checkRange( from, to );
+            int n = to - from;
+            if ( n > scratch.length ) scratch = new byte[Math.max( n, 2 * scratch.length )];
+            for ( int i = 0; i < n; i++ ) {
+                scratch[i] = buf.get( start + from + i );
+            }
+            return new String( scratch, 0, n, charset );
+        }
+
+        @Override
+        public String toString() {
+            return substring( 0, length() );
+        }
+
+        private void checkRange( int from, int to ) {
+            if ( from < 0 || to > length() || from > to ) {
+                throw new IndexOutOfBoundsException( "Range: " + from + "-" + to + " of " + length() );
+            }
+        }
+
+        private void set( ByteBuffer b, int s, int e, long o ) {
+            this.buf = b;
+            this.start = s;
+            this.end = e;
+            this.offset = o;
+        }
+    }
+
+    /**
+     * Receives the lines of the file (or of one part of it, in a parallel scan), in order.
+     */
+    public interface LineHandler {
+        void handleLine( Line line ) throws IOException;
+    }
+
+    /**
+     * Wraps IOExceptions thrown in pool tasks.
+     */
+    private static class ScanException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ScanException( IOException cause ) {
+            super( cause );
+        }
+    }
+
+    private static final int DEFAULT_REGION_SIZE = 1 << 30;
+    private static final int MIN_PART_SIZE = 1 << 20;
+
+    private final Charset charset;
+    private final File file;
+    private int headerLines = 0;
+    private final int regionSize;
+
+    /**
+     * Lines are decoded with the default charset, as by {@link java.io.FileReader}.
+     *
+     * @param file
+     */
+    public MappedLineScanner( File file ) {
+        this( file, Charset.defaultCharset() );
+    }
+
+    /**
+     * @param file
+     * @param charset used to decode the lines
+     */
+    public MappedLineScanner( File file, Charset charset ) {
+        this( file, charset, DEFAULT_REGION_SIZE );
+    }
+
+    /**
+     * @param regionSize largest amount of the file mapped at a time; lines cannot be longer than this.
+     */
+    MappedLineScanner( File file, Charset charset, int regionSize ) {
+        this.file = file;
+        this.charset = charset;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Pass the lines to the handler.
+     *
+     * @param handler
+     * @throws IOException
+     */
+    public void scan( LineHandler handler ) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); FileChannel channel = raf.getChannel()) {
+            scan( channel, skipHeader( channel ), channel.size(), handler );
+        }
+    }
+
+    /**
+     * Split the file into parts at line boundaries and scan the parts in parallel.
+     *
+     * @param factory makes a handler for each part
+     * @return the handlers, in file order, after they have received their lines.
+     * @throws IOException
+     */
+    public <T extends LineHandler> List<T> scanParallel( HandlerFactory<T> factory ) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile( file, "r" ); final FileChannel channel = raf.getChannel()) {
+            final long[] bounds = split( channel, skipHeader( channel ) );
+            int n = bounds.length - 1;
+            final List<T> handlers = new ArrayList<T>( n );
+            for ( int i = 0; i < n; i++ ) {
+                handlers.add( factory.newHandler() );
+            }
+
+            final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>( n );
+            for ( int i = 0; i < n; i++ ) {
+                final int k = i;
+                tasks.add( new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        try {
+                            scan( channel, bounds[k], bounds[k + 1], handlers.get( k ) );
+                        } catch ( IOException e ) {
+                            throw new ScanException( e );
+                        }
+                    }
+                } );
+            }
+
+            try {
+                ParallelUtils.getPool().invoke( new RecursiveAction() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected void compute() {
+                        invokeAll( tasks );
+                    }
+                } );
+            } catch ( ScanException e ) {
+                throw ( IOException ) e.getCause();
+            }
+            return handlers;
+        }
+    }
+
+    /**
+     * @param n number of lines at the start of the file to skip, such as a header; default 0.
+     */
+    public void setHeaderLines( int n ) {
+        if ( n < 0 ) throw new IllegalArgumentException( "Number of header lines cannot be negative" );
+        this.headerLines = n;
+    }
+
+    /**
+     * @return the position after the next line terminator at or after pos, or the end of the file.
+     */
+    private long nextLineStart( FileChannel channel, long pos ) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate( 1 << 16 );
+        long size = channel.size();
+        boolean afterCr = false;
+        while ( pos < size ) {
+            b.clear();
+            int r = channel.read( b, pos );
+            if ( r <= 0 ) break;
+            for ( int i = 0; i < r; i++ ) {
+                byte c = b.get( i );
+                if ( c == '\n' ) return pos + i + 1;
+                // a lone "\r" ended the line
+                if ( afterCr ) return pos + i;
+                afterCr = c == '\r';
+            }
+            pos += r;
+        }
+        return size;
+    }
+
+    /**
+     * Scan the lines between two line boundaries.
+     */
+    private void scan( FileChannel channel, long from, long to, LineHandler handler ) throws IOException {
+        Line line = new Line( charset );
+        long pos = from;
+        while ( pos < to ) {
+            int size = ( int ) Math.min( regionSize, to - pos );
+            MappedByteBuffer buf = channel.map( FileChannel.MapMode.READ_ONLY, pos, size );
+            int limit = size;
+            if ( pos + size < to ) {
+                // end the region after its last complete line; a "\r" in the last byte might be followed by "\n".
+                limit--;
+                while ( limit >= 0 && buf.get( limit ) != '\n' && ( buf.get( limit ) != '\r' || limit == size - 1 ) ) {
+                    limit--;
+                }
+                if ( limit < 0 ) throw new IOException( "Line longer than " + regionSize + " bytes at " + pos );
+                limit++;
+            }
+
+            int s = 0;
+            for ( int i = 0; i < limit; i++ ) {
+                byte c = buf.get( i );
+                if ( c == '\n' || c == '\r' ) {
+                    line.set( buf, s, i, pos + s );
+                    handler.handleLine( line );
+                    if ( c == '\r' && i + 1 < limit && buf.get( i + 1 ) == '\n' ) i++;
+                    s = i + 1;
+                }
+            }
+            if ( s < limit ) {
+                // last line of the range, without a terminator.
+                line.set( buf, s, limit, pos + s );
+                handler.handleLine( line );
+            }
+            pos += limit;
+        }
+    }
+
+    /**
+     * @return the position after the header lines.
+     */
+    private long skipHeader( FileChannel channel ) throws IOException {
+        long pos = 0;
+        for ( int i = 0; i < headerLines; i++ ) {
+            pos = nextLineStart( channel, pos );
+        }
+        return pos;
+    }
+
+    /**
+     * @return the boundaries of the parts, starting at from and ending at the end of the file.
+     */
+    private long[] split( FileChannel channel, long from ) throws IOException {
+        long size = channel.size();
+        long length = size - from;
+        int n = ( int ) Math.max( 1, Math.min( 4L * ParallelUtils.getParallelism(), length / MIN_PART_SIZE ) );
+
+        List<Long> bounds = new ArrayList<Long>( n + 1 );
+        bounds.add( from );
+        for ( int i = 1; i < n; i++ ) {
+            long b = nextLineStart( channel, from + length * i / n - 1 );
+            if ( b > bounds.get( bounds.size() - 1 ) && b < size ) bounds.add( b );
+        }
+        bounds.add( size );
+
+        long[] result = new long[bounds.size()];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[i] = bounds.get( i );
+        }
+        return result;
+    }
+
+}
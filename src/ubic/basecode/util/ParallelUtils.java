@@ -0,0 +1,58 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Access to the fork-join pool shared by the parallel algorithms in baseCode.
+ * <p>
+ * The pool is created on first use with one worker per available processor; its threads are daemons so it does not
+ * keep the JVM alive.
+ *
+ * @author paul
+ */
+public class ParallelUtils {
+
+    private static volatile ForkJoinPool pool;
+
+    /**
+     * @return the shared pool.
+     */
+    public static ForkJoinPool getPool() {
+        ForkJoinPool p = pool;
+        if ( p == null ) {
+            synchronized ( ParallelUtils.class ) {
+                p = pool;
+                if ( p == null ) {
+                    p = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * @return the number of threads the shared pool uses.
+     */
+    public static int getParallelism() {
+        return getPool().getParallelism();
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a job as a chain of stages over blocks of data, so that the stages overlap: while one block is being read, the
+ * previous one can be processed and the one before that written. Each stage has its own threads, and the stages are
+ * connected by bounded queues, so a stage that gets ahead waits for the next one to catch up rather than filling
+ * memory. The blocks reach the sink in the order the source produced them, whatever the number of threads; the number
+ * of blocks between the source and the sink is capped too, so a slow block in a stage with several threads holds back
+ * the source rather than letting finished blocks pile up behind it. Example,
+ * for a matrix file:
+ *
+ * <pre>
+ * final DoubleMatrixRowReader rows = reader.readRows( fileName, null, 0 );
+ * Pipeline.from( &quot;read&quot;, new Pipeline.Source&lt;DoubleMatrix&lt;String, String&gt;&gt;() {
+ *     public DoubleMatrix&lt;String, String&gt; next() throws IOException {
+ *         return rows.nextBlock( 1000 );
+ *     }
+ * } ).then( &quot;filter&quot;, 1, filterStage ).then( &quot;fit&quot;, 4, fitStage )
+ *         .run( &quot;write&quot;, writerSink );
+ * </pre>
+ *
+ * Use {@link #fromBatches(String, Iterator, int)} to cut a stream of items into blocks as {@link BatchIterator} does.
+ *
+ * @author paul
+ * @param <T> the type of the blocks produced by the last stage so far
+ */
+public class Pipeline<T> {
+
+    /**
+     * Receives the blocks at the end of the pipeline, one at a time and in order.
+     */
+    public interface Sink<T> {
+        void accept( T block ) throws Exception;
+    }
+
+    /**
+     * Produces the blocks, from a single thread.
+     */
+    public interface Source<T> {
+
+        /**
+         * @return the next block, or null if there are no more.
+         */
+        T next() throws Exception;
+    }
+
+    /**
+     * Processes a block. With more than one thread, several blocks are processed at once, so implementations must be
+     * thread-safe.
+     */
+    public interface Stage<I, O> {
+
+        /**
+         * @return the processed block, or null to drop the block.
+         */
+        O process( I block ) throws Exception;
+    }
+
+    /**
+     * Timings of a stage, collected as the pipeline runs. A stage that spends a long time waiting for input is
+     * starved by the stages before it; one that waits to pass on its output is held back by the stages after it.
+     */
+    public static class StageMetrics {
+        private final AtomicLong blocks = new AtomicLong();
+        private final AtomicLong busy = new AtomicLong();
+        private final AtomicLong inputWait = new AtomicLong();
+        private final String name;
+        private final AtomicLong outputWait = new AtomicLong();
+        private final int threads;
+
+        StageMetrics( String name, int threads ) {
+            this.name = name;
+            this.threads = threads;
+        }
+
+        /**
+         * @return the number of blocks processed.
+         */
+        public long getBlocks() {
+            return blocks.get();
+        }
+
+        /**
+         * @return time spent on the blocks, summed over the threads.
+         */
+        public long getBusyMillis() {
+            return TimeUnit.NANOSECONDS.toMillis( busy.get() );
+        }
+
+        /**
+         * @return time spent waiting for blocks from the previous stage, summed over the threads.
+         */
+        public long getInputWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis( inputWait.get() );
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return time spent waiting for room in the queue to the next stage, summed over the threads; for the source,
+         *         this includes waiting for earlier blocks to reach the sink.
+         */
+        public long getOutputWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis( outputWait.get() );
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + getBlocks() + " blocks on " + threads + " thread(s); busy " + getBusyMillis()
+                    + " ms, waiting for input " + getInputWaitMillis() + " ms, for output " + getOutputWaitMillis()
+                    + " ms";
+        }
+    }
+
+    /**
+     * A block with its position in the source's output.
+     */
+    private static class Block {
+        private final long seq;
+        private final Object value;
+
+        Block( long seq, Object value ) {
+            this.seq = seq;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The state of one run: its threads and the first failure.
+     */
+    private static class Run {
+        private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        private final List<Thread> threads = new ArrayList<Thread>();
+
+        void fail( Throwable t ) {
+            if ( failure.compareAndSet( null, t ) ) {
+                for ( Thread thread : threads ) {
+                    thread.interrupt();
+                }
+            }
+        }
+
+        void start( String name, final Runnable task ) {
+            Thread thread = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch ( Throwable t ) {
+                        fail( t );
+                    }
+                }
+            }, name );
+            thread.setDaemon( true );
+            threads.add( thread );
+        }
+    }
+
+    /**
+     * Wraps exceptions thrown by the stages, to get them out of Runnable.run.
+     */
+    private static class StageException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StageException( Exception cause ) {
+            super( cause );
+        }
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    /**
+     * Marks the end of the blocks in a queue.
+     */
+    private static final Object END = new Object();
+
+    private final String name;
+    private final Pipeline<?> previous;
+    private final int threads;
+
+    /**
+     * The {@link Source} or {@link Stage}.
+     */
+    private final Object work;
+
+    private Pipeline( Pipeline<?> previous, String name, int threads, Object work ) {
+        if ( threads < 1 ) throw new IllegalArgumentException( "Stage '" + name + "' needs at least one thread" );
+        this.previous = previous;
+        this.name = name;
+        this.threads = threads;
+        this.work = work;
+    }
+
+    /**
+     * @param name
+     * @param blocks
+     * @return a pipeline whose blocks are taken from the iterator.
+     */
+    public static <T> Pipeline<T> from( String name, final Iterator<T> blocks ) {
+        return from( name, new Source<T>() {
+            @Override
+            public T next() {
+                return blocks.hasNext() ? blocks.next() : null;
+            }
+        } );
+    }
+
+    /**
+     * @param name
+     * @param source
+     * @return a pipeline whose blocks come from the source.
+     */
+    public static <T> Pipeline<T> from( String name, Source<T> source ) {
+        return new Pipeline<T>( null, name, 1, source );
+    }
+
+    /**
+     * @param name
+     * @param items
+     * @param batchSize the maximum number of items in each block
+     * @return a pipeline whose blocks are batches of the items.
+     * @see BatchIterator
+     */
+    public static <E> Pipeline<Collection<E>> fromBatches( String name, Iterator<E> items, int batchSize ) {
+        return from( name, BatchIterator.batches( items, batchSize ) );
+    }
+
+    /**
+     * Run the pipeline, with the default queue capacity, and wait for it to finish.
+     *
+     * @param sinkName
+     * @param sink receives the blocks, in order
+     * @return the metrics of the stages, from the source to the sink.
+     * @throws ExecutionException if a stage fails; the other stages are then stopped.
+     * @throws InterruptedException
+     */
+    public List<StageMetrics> run( String sinkName, Sink<? super T> sink ) throws ExecutionException,
+            InterruptedException {
+        return run( sinkName, sink, DEFAULT_QUEUE_CAPACITY );
+    }
+
+    /**
+     * Run the pipeline and wait for it to finish.
+     *
+     * @param sinkName
+     * @param sink receives the blocks, in order
+     * @param queueCapacity the most blocks waiting between two stages
+     * @return the metrics of the stages, from the source to the sink.
+     * @throws ExecutionException if a stage fails; the other stages are then stopped.
+     * @throws InterruptedException
+     */
+    public List<StageMetrics> run( String sinkName, final Sink<? super T> sink, int queueCapacity )
+            throws ExecutionException, InterruptedException {
+        if ( queueCapacity < 1 ) throw new IllegalArgumentException( "Queue capacity must be at least 1" );
+
+        List<Pipeline<?>> chain = new ArrayList<Pipeline<?>>();
+        for ( Pipeline<?> p = this; p != null; p = p.previous ) {
+            chain.add( p );
+        }
+        Collections.reverse( chain );
+
+        // enough blocks in flight to fill every queue and keep every thread busy, and no more.
+        int permits = 1;
+        for ( Pipeline<?> p : chain ) {
+            permits += queueCapacity + p.threads;
+        }
+        Semaphore inFlight = new Semaphore( permits );
+
+        final Run run = new Run();
+        List<StageMetrics> metrics = new ArrayList<StageMetrics>();
+        BlockingQueue<Object> in = null;
+        for ( Pipeline<?> p : chain ) {
+            BlockingQueue<Object> out = new ArrayBlockingQueue<Object>( queueCapacity );
+            StageMetrics m = new StageMetrics( p.name, p.threads );
+            metrics.add( m );
+            if ( in == null ) {
+                startSource( run, ( Source<?> ) p.work, out, inFlight, m );
+            } else {
+                startStage( run, p.name, p.threads, ( Stage<?, ?> ) p.work, in, out, m );
+            }
+            in = out;
+        }
+        StageMetrics m = new StageMetrics( sinkName, 1 );
+        metrics.add( m );
+        startSink( run, sinkName, sink, in, inFlight, m );
+
+        for ( Thread thread : run.threads ) {
+            thread.start();
+        }
+        try {
+            for ( Thread thread : run.threads ) {
+                thread.join();
+            }
+        } catch ( InterruptedException e ) {
+            run.fail( e );
+            throw e;
+        }
+
+        Throwable failure = run.failure.get();
+        if ( failure != null ) {
+            throw new ExecutionException( failure instanceof StageException ? failure.getCause() : failure );
+        }
+        return metrics;
+    }
+
+    /**
+     * Add a stage.
+     *
+     * @param stageName
+     * @param stageThreads the number of threads that process blocks at the same time
+     * @param stage
+     * @return the pipeline with the stage added; this pipeline is not changed.
+     */
+    public <O> Pipeline<O> then( String stageName, int stageThreads, Stage<? super T, ? extends O> stage ) {
+        return new Pipeline<O>( this, stageName, stageThreads, stage );
+    }
+
+    private void put( BlockingQueue<Object> out, Object o, StageMetrics m ) throws InterruptedException {
+        long t = System.nanoTime();
+        out.put( o );
+        m.outputWait.addAndGet( System.nanoTime() - t );
+    }
+
+    /**
+     * The sink gives back a permit of inFlight for each block it delivers or drops.
+     */
+    private void startSink( Run run, String sinkName, final Sink<? super T> sink, final BlockingQueue<Object> in,
+            final Semaphore inFlight, final StageMetrics m ) {
+        run.start( sinkName, new Runnable() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public void run() {
+                // blocks from stages with several threads can arrive out of order.
+                Map<Long, Object> waiting = new HashMap<Long, Object>();
+                long next = 0;
+                try {
+                    while ( true ) {
+                        Object o = take( in, m );
+                        if ( o == END ) break;
+                        Block b = ( Block ) o;
+                        waiting.put( b.seq, b.value );
+                        while ( waiting.containsKey( next ) ) {
+                            Object value = waiting.remove( next++ );
+                            inFlight.release();
+                            if ( value == null ) continue;
+                            long t = System.nanoTime();
+                            sink.accept( ( T ) value );
+                            m.busy.addAndGet( System.nanoTime() - t );
+                            m.blocks.incrementAndGet();
+                        }
+                    }
+                } catch ( InterruptedException e ) {
+                    // stopped.
+                } catch ( Exception e ) {
+                    throw new StageException( e );
+                }
+            }
+        } );
+    }
+
+    /**
+     * The source takes a permit of inFlight before making each block, and waits if there are none.
+     */
+    private void startSource( Run run, final Source<?> source, final BlockingQueue<Object> out,
+            final Semaphore inFlight, final StageMetrics m ) {
+        run.start( m.getName(), new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for ( long seq = 0;; seq++ ) {
+                        long t = System.nanoTime();
+                        inFlight.acquire();
+                        m.outputWait.addAndGet( System.nanoTime() - t );
+
+                        t = System.nanoTime();
+                        Object value = source.next();
+                        m.busy.addAndGet( System.nanoTime() - t );
+                        if ( value == null ) {
+                            inFlight.release();
+                            break;
+                        }
+                        m.blocks.incrementAndGet();
+                        put( out, new Block( seq, value ), m );
+                    }
+                    put( out, END, m );
+                } catch ( InterruptedException e ) {
+                    // stopped.
+                } catch ( Exception e ) {
+                    throw new StageException( e );
+                }
+            }
+        } );
+    }
+
+    private void startStage( Run run, String stageName, int stageThreads, final Stage<?, ?> stage,
+            final BlockingQueue<Object> in, final BlockingQueue<Object> out, final StageMetrics m ) {
+        @SuppressWarnings("unchecked")
+        final Stage<Object, ?> s = ( Stage<Object, ?> ) stage;
+        final AtomicInteger running = new AtomicInteger( stageThreads );
+        for ( int i = 0; i < stageThreads; i++ ) {
+            run.start( stageName + "-" + i, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while ( true ) {
+                            Object o = take( in, m );
+                            if ( o == END ) {
+                                // let the other threads of this stage see it; the last one passes it on.
+                                in.put( END );
+                                if ( running.decrementAndGet() == 0 ) put( out, END, m );
+                                return;
+                            }
+                            Block b = ( Block ) o;
+                            Object result = null;
+                            if ( b.value != null ) {
+                                long t = System.nanoTime();
+                                result = s.process( b.value );
+                                m.busy.addAndGet( System.nanoTime() - t );
+                                m.blocks.incrementAndGet();
+                            }
+                            // dropped blocks are still passed on, so the sink can keep the order.
+                            put( out, new Block( b.seq, result ), m );
+                        }
+                    } catch ( InterruptedException e ) {
+                        // stopped.
+                    } catch ( Exception e ) {
+                        throw new StageException( e );
+                    }
+                }
+            } );
+        }
+    }
+
+    private Object take( BlockingQueue<Object> in, StageMetrics m ) throws InterruptedException {
+        long t = System.nanoTime();
+        Object o = in.take();
+        m.inputWait.addAndGet( System.nanoTime() - t );
+        return o;
+    }
+
+}
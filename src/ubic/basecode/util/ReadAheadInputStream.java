@@ -0,0 +1,194 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ubic.basecode.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads another stream on a background thread into a bounded ring of buffers, so that the work done by that stream
+ * (for example, inflating a gzipped file) overlaps with the work done by the reader of this one. The stream must be
+ * closed, or the background thread waits for it indefinitely.
+ *
+ * @author paul
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    /**
+     * A filled buffer, or the end of the stream or an error.
+     */
+    private static class Chunk {
+        final byte[] data;
+        final IOException error;
+        final int length;
+
+        Chunk( byte[] data, int length, IOException error ) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    private static final int DEFAULT_BUFFERS = 4;
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 18;
+
+    private volatile boolean closed = false;
+    private Chunk current = null;
+    private boolean eof = false;
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<byte[]> free;
+    private final InputStream in;
+    private int pos = 0;
+    private final Thread reader;
+
+    /**
+     * @param in
+     */
+    public ReadAheadInputStream( InputStream in ) {
+        this( in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS );
+    }
+
+    /**
+     * @param in
+     * @param bufferSize
+     * @param buffers the number of buffers in the ring; at least 2.
+     */
+    public ReadAheadInputStream( InputStream in, int bufferSize, int buffers ) {
+        if ( buffers < 2 || bufferSize < 1 ) {
+            throw new IllegalArgumentException( "Need at least two non-empty buffers" );
+        }
+        this.in = in;
+        this.free = new ArrayBlockingQueue<byte[]>( buffers );
+        this.filled = new ArrayBlockingQueue<Chunk>( buffers + 1 );
+        for ( int i = 0; i < buffers; i++ ) {
+            free.add( new byte[bufferSize] );
+        }
+        this.reader = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                fill();
+            }
+        }, "read-ahead" );
+        reader.setDaemon( true );
+        reader.start();
+    }
+
+    /**
+     * @return the number of bytes that can be read without waiting, or 1 if that is not known and the stream has not
+     *         ended.
+     */
+    @Override
+    public int available() throws IOException {
+        if ( current != null && pos < current.length ) return current.length - pos;
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if ( closed ) return;
+        closed = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ( !next() ) return -1;
+        return current.data[pos++] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if ( len == 0 ) return 0;
+        if ( !next() ) return -1;
+        int n = Math.min( len, current.length - pos );
+        System.arraycopy( current.data, pos, b, off, n );
+        pos += n;
+        return n;
+    }
+
+    /**
+     * Runs on the background thread.
+     */
+    private void fill() {
+        try {
+            while ( !closed ) {
+                byte[] buf = free.take();
+                int n = 0;
+                int r;
+                while ( n < buf.length && ( r = in.read( buf, n, buf.length - n ) ) > 0 ) {
+                    n += r;
+                }
+                if ( n > 0 ) filled.put( new Chunk( buf, n, null ) );
+                if ( n < buf.length ) {
+                    filled.put( new Chunk( null, -1, null ) );
+                    return;
+                }
+            }
+        } catch ( InterruptedException e ) {
+            // closed.
+        } catch ( IOException e ) {
+            filled.offer( new Chunk( null, -1, e ) );
+        } catch ( RuntimeException e ) {
+            if ( !closed ) filled.offer( new Chunk( null, -1, new IOException( e ) ) );
+        }
+    }
+
+    /**
+     * Make sure the current chunk has data.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean next() throws IOException {
+        if ( closed ) throw new IOException( "Stream closed" );
+        if ( current != null && pos < current.length ) return true;
+        if ( eof ) return false;
+        if ( current != null ) {
+            free.add( current.data );
+            current = null;
+        }
+        Chunk c;
+        try {
+            c = filled.take();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if ( c.error != null ) {
+            eof = true;
+            throw c.error;
+        }
+        if ( c.length < 0 ) {
+            eof = true;
+            return false;
+        }
+        current = c;
+        pos = 0;
+        return true;
+    }
+
+}
@@ -14,16 +14,20 @@
  */
 package ubic.basecode.dataStructure.matrix;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
 import ubic.basecode.io.reader.DoubleMatrixReader;
+import cern.colt.function.DoubleFunction;
 import cern.colt.list.DoubleArrayList;
 import cern.colt.matrix.DoubleMatrix1D;
 
@@ -42,6 +46,19 @@ public abstract class AbstractDoubleMatrixTest {
     /*
      * Test method for 'basecode.dataStructure.matrix.FastRowAccessDoubleMatrix2DNamed.columns()'
      */
+    @Test
+    public void testAssign() {
+        testM.assign( new DoubleFunction() {
+            @Override
+            public double apply( double v ) {
+                return 2 * v;
+            }
+        } );
+        assertEquals( 48.0, testM.get( 2, 3 ), 0.0 );
+        assertEquals( 2.0, testM.get( 0, 0 ), 0.0 );
+        assertTrue( testM.isMissing( 2, 1 ) );
+    }
+
     @Test
     public void testColumns() {
         assertEquals( 12, testdata.columns() );
@@ -66,6 +83,22 @@ public abstract class AbstractDoubleMatrixTest {
     /*
      * Test method for 'basecode.dataStructure.matrix.FastRowAccessDoubleMatrix2DNamed.get(int, int)'
      */
+    @Test
+    public void testForEachNonMissing() {
+        final AtomicInteger count = new AtomicInteger();
+        final double[] sum = new double[1];
+        testM.forEachNonMissing( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                assertEquals( testArray[row][column], value, 0.0 );
+                count.incrementAndGet();
+                sum[0] += value;
+            }
+        } );
+        assertEquals( 11, count.get() );
+        assertEquals( 128.0, sum[0], 0.0 );
+    }
+
     @Test
     public void testGet() {
         assertEquals( 27873.8, testdata.get( 2, 4 ), 0.0001 );
@@ -142,6 +175,8 @@ public abstract class AbstractDoubleMatrixTest {
         DoubleMatrix<String, String> range = testdata.getColRange( 1, 4 );
         assertEquals( 4, range.columns() );
         assertEquals( 30, range.rows() );
+        assertEquals( testdata.get( 2, 4 ), range.get( 2, 3 ), 0.0 );
+        assertEquals( testdata.getColName( 4 ), range.getColName( 3 ) );
     }
 
     /**
@@ -257,6 +292,7 @@ public abstract class AbstractDoubleMatrixTest {
         DoubleMatrix<String, String> rowRange = testdata.getRowRange( 1, 4 );
         assertEquals( 12, rowRange.columns() );
         assertEquals( 4, rowRange.rows() );
+        assertArrayEquals( testdata.getRow( 4 ), rowRange.getRow( 3 ), 0.0 );
     }
 
     /*
@@ -328,6 +364,22 @@ public abstract class AbstractDoubleMatrixTest {
         assertEquals( 3.0, testdata.get( 1, 2 ), 0.00001 );
     }
 
+    @Test
+    public void testSetRowAndColumn() {
+        testM.setRow( 1, new double[] { 5, 6, 7, 8 } );
+        assertArrayEquals( new double[] { 5, 6, 7, 8 }, testM.getRow( 1 ), 0.0 );
+        testM.setColumn( 3, new double[] { -1, -2, -3 } );
+        assertArrayEquals( new double[] { -1, -2, -3 }, testM.getColumn( 3 ), 0.0 );
+        testM.setQuick( 0, 0, 100.0 );
+        assertEquals( 100.0, testM.getByKeys( "a", "w" ), 0.0 );
+        assertEquals( 7.0, testM.get( 1, 2 ), 0.0 );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetRowWrongLength() {
+        testM.setRow( 1, new double[] { 5, 6 } );
+    }
+
     @Test
     public void testSize() {
         assertEquals( 12, testM.size() );
@@ -371,6 +423,12 @@ public abstract class AbstractDoubleMatrixTest {
         DoubleMatrix<String, String> s = testdata.subsetColumns( subList );
         assertEquals( 2, s.columns() );
         assertEquals( c.get( 1 ), s.getColNames().get( 0 ) );
+
+        DoubleMatrix<String, String> m = testM.subsetColumns( Arrays.asList( "z", "x" ) );
+        assertEquals( Arrays.asList( "z", "x" ), m.getColNames() );
+        assertEquals( 1, m.getColIndexByName( "x" ) );
+        assertArrayEquals( new double[] { 24, Double.NaN }, m.getRow( 2 ), 0.0 );
+        assertEquals( testM.getRowNames(), m.getRowNames() );
     }
 
     @Test
@@ -379,6 +437,11 @@ public abstract class AbstractDoubleMatrixTest {
         List<String> subList = rowNames.subList( 1, 3 );
         DoubleMatrix<String, String> subsetRows = testdata.subsetRows( subList );
         assertEquals( 2, subsetRows.rows() );
+
+        DoubleMatrix<String, String> m = testM.subsetRows( Arrays.asList( "c", "a" ) );
+        assertArrayEquals( testM.getRow( 2 ), m.getRow( 0 ), 0.0 );
+        assertArrayEquals( testM.getRow( 0 ), m.getRow( 1 ), 0.0 );
+        assertEquals( 24.0, m.getByKeys( "c", "z" ), 0.0 );
     }
 
     @Test
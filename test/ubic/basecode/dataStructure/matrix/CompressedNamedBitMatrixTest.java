@@ -127,6 +127,18 @@ public class CompressedNamedBitMatrixTest {
         assertEquals( 1, mat.overlap( 0, 0, 1, 1 ) );
     }
 
+    @Test
+    public final void testBulkOverlap() {
+        int[] rows = new int[] { 0, 0, 1, 1 };
+        int[] cols = new int[] { 0, 1, 0, 1 };
+        int[][] overlaps = mat.overlap( rows, cols, rows, cols );
+        for ( int i = 0; i < rows.length; i++ ) {
+            for ( int j = 0; j < rows.length; j++ ) {
+                assertEquals( mat.overlap( rows[i], cols[i], rows[j], cols[j] ), overlaps[i][j] );
+            }
+        }
+    }
+
     @Test
     public final void testTotalBitCount() {
         long actualValue = mat.totalBitCount();
@@ -0,0 +1,178 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cern.colt.matrix.ObjectMatrix1D;
+import ubic.basecode.io.reader.StringMatrixReader;
+
+/**
+ * @author paul
+ *
+ */
+public class DictionaryStringMatrixTest {
+
+    private DictionaryStringMatrix<String, String> flags;
+
+    @Before
+    public void setUp() {
+        DictionaryStringMatrix.Builder<String, String> builder = new DictionaryStringMatrix.Builder<String, String>( 3 );
+        builder.addRow( Arrays.asList( "P", "A", "P" ) );
+        builder.addRow( Arrays.asList( "M", "P" ) );
+        builder.addRow( Arrays.asList( "A", "A", "P" ) );
+        flags = builder.build();
+        flags.setRowNames( Arrays.asList( "r1", "r2", "r3" ) );
+        flags.setColumnNames( Arrays.asList( "s1", "s2", "s3" ) );
+    }
+
+    @Test
+    public void testBuilder() {
+        assertEquals( 3, flags.rows() );
+        assertEquals( 3, flags.columns() );
+        assertEquals( "M", flags.getByKeys( "r2", "s1" ) );
+        assertEquals( "", flags.get( 1, 2 ) );
+        assertTrue( flags.isMissing( 1, 2 ) );
+        assertArrayEquals( new String[] { "A", "A", "P" }, flags.getRow( 2 ) );
+        assertArrayEquals( new String[] { "A", "P", "A" }, flags.getColumn( 1 ) );
+    }
+
+    @Test
+    public void testCodes() {
+        int absent = flags.getCode( "A" );
+        assertEquals( "A", flags.getSymbol( absent ) );
+        assertEquals( absent, flags.getCode( 0, 1 ) );
+        assertEquals( -1, flags.getCode( "X" ) );
+        assertEquals( 1, flags.countMatches( 0, absent ) );
+        assertEquals( 2, flags.countMatches( 2, absent ) );
+        assertArrayEquals( new int[] { 0, 2 }, flags.getRowsMatching( 1, absent ) );
+        assertArrayEquals( new int[] {}, flags.getRowsMatching( 0, flags.getCode( "X" ) ) );
+    }
+
+    @Test
+    public void testSetAndWiden() {
+        DictionaryStringMatrix<String, String> m = new DictionaryStringMatrix<String, String>( 300, 300 );
+        assertNull( m.get( 5, 5 ) );
+        for ( int i = 0; i < 300; i++ ) {
+            for ( int j = 0; j < 300; j++ ) {
+                m.set( i, j, "v" + ( i * 300 + j ) % 70000 );
+            }
+        }
+        assertEquals( 70001, m.getNumSymbols() );
+        for ( int i = 0; i < 300; i += 17 ) {
+            for ( int j = 0; j < 300; j += 13 ) {
+                assertEquals( "v" + ( i * 300 + j ) % 70000, m.get( i, j ) );
+            }
+        }
+        m.set( 0, 0, null );
+        assertNull( m.get( 0, 0 ) );
+        assertTrue( m.isMissing( 0, 0 ) );
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testOutOfBounds() {
+        flags.get( 0, 3 );
+    }
+
+    @Test
+    public void testSubsets() {
+        ObjectMatrix<String, String, String> s = flags.subset( 1, 1, 2, 2 );
+        assertEquals( 2, s.rows() );
+        assertEquals( "P", s.get( 0, 0 ) );
+        assertEquals( "A", s.getByKeys( "r3", "s2" ) );
+
+        ObjectMatrix<String, String, String> cols = flags.subsetColumns( Arrays.asList( "s3", "s1" ) );
+        assertEquals( 3, cols.rows() );
+        assertEquals( "s1", cols.getColName( 1 ) );
+        assertEquals( "M", cols.getByKeys( "r2", "s1" ) );
+        assertEquals( "P", cols.get( 2, 0 ) );
+
+        // shared symbol table
+        DictionaryStringMatrix<String, String> d = ( DictionaryStringMatrix<String, String> ) cols;
+        assertEquals( flags.getCode( "M" ), d.getCode( 1, 1 ) );
+    }
+
+    @Test
+    public void testViews() {
+        ObjectMatrix1D row = flags.viewRow( 1 );
+        ObjectMatrix1D column = flags.viewColumn( 2 );
+        assertArrayEquals( new Object[] { "M", "P", "" }, row.toArray() );
+        assertArrayEquals( new Object[] { "P", "", "P" }, column.toArray() );
+
+        // changes go both ways.
+        row.set( 2, "X" );
+        assertEquals( "X", flags.get( 1, 2 ) );
+        assertEquals( "X", column.get( 1 ) );
+        flags.set( 2, 2, "Y" );
+        assertEquals( "Y", column.get( 2 ) );
+
+        assertArrayEquals( new Object[] { "Y", "X" }, column.viewFlip().viewPart( 0, 2 ).toArray() );
+        ObjectMatrix1D selection = row.viewSelection( new int[] { 2, 0 } );
+        assertArrayEquals( new Object[] { "X", "M" }, selection.toArray() );
+        selection.set( 1, "Z" );
+        assertEquals( "Z", flags.get( 1, 0 ) );
+    }
+
+    @Test
+    public void testConcurrentSymbols() throws Exception {
+        final DictionaryStringMatrix<String, String> a = new DictionaryStringMatrix<String, String>( 1000, 4 );
+        // shares the symbol table
+        final DictionaryStringMatrix<String, String> b = ( DictionaryStringMatrix<String, String> ) a.subset( 0, 0,
+                1000, 4 );
+        Thread other = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                for ( int i = 0; i < 1000; i++ ) {
+                    for ( int j = 0; j < 4; j++ ) {
+                        b.set( i, j, "v" + ( ( i * 4 + j ) % 700 ) );
+                    }
+                }
+            }
+        } );
+        other.start();
+        for ( int i = 0; i < 1000; i++ ) {
+            for ( int j = 0; j < 4; j++ ) {
+                a.set( i, j, "v" + ( ( i * 4 + j ) % 500 ) );
+            }
+        }
+        other.join();
+
+        // each value got one code.
+        assertEquals( 701, a.getNumSymbols() );
+        for ( int i = 0; i < 1000; i++ ) {
+            for ( int j = 0; j < 4; j++ ) {
+                assertEquals( "v" + ( ( i * 4 + j ) % 500 ), a.get( i, j ) );
+                assertEquals( "v" + ( ( i * 4 + j ) % 700 ), b.get( i, j ) );
+                assertEquals( a.getCode( a.get( i, j ) ), a.getCode( i, j ) );
+            }
+        }
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        StringMatrix<String, String> sm = new StringMatrixReader().read( this.getClass().getResourceAsStream(
+                "/data/testdata.txt" ) );
+        assertTrue( sm instanceof DictionaryStringMatrix );
+        assertEquals( "213.6", sm.getColObj( 3 )[3] );
+    }
+}
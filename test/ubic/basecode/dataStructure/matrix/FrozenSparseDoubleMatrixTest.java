@@ -0,0 +1,252 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author paul
+ *
+ */
+public class FrozenSparseDoubleMatrixTest {
+
+    private double[][] dense;
+    private FrozenSparseDoubleMatrix<String, String> frozen;
+    private CompressedSparseDoubleMatrix<String, String> matrix;
+
+    @Before
+    public void setUp() {
+        // enough non-zeros that the kernels run in parallel.
+        int rows = 2000;
+        int columns = 500;
+        Random r = new Random( 1 );
+        dense = new double[rows][columns];
+        matrix = new CompressedSparseDoubleMatrix<String, String>( rows, columns );
+        for ( int k = 0; k < 80000; k++ ) {
+            int i = r.nextInt( rows );
+            int j = r.nextInt( columns );
+            double v = r.nextInt( 100 ) / 10.0;
+            dense[i][j] = v;
+            matrix.set( i, j, v );
+        }
+        List<String> rowNames = new ArrayList<String>();
+        for ( int i = 0; i < rows; i++ ) {
+            rowNames.add( "r" + i );
+        }
+        List<String> colNames = new ArrayList<String>();
+        for ( int j = 0; j < columns; j++ ) {
+            colNames.add( "c" + j );
+        }
+        matrix.setRowNames( rowNames );
+        matrix.setColumnNames( colNames );
+        frozen = matrix.freeze();
+    }
+
+    @Test
+    public void testBuilder() {
+        // the same entries as in setUp, in the same order: some repeat and some are zero.
+        int[] counts = new int[dense.length];
+        FrozenSparseDoubleMatrix.Builder<String, String> builder = new FrozenSparseDoubleMatrix.Builder<String, String>();
+        Random r = new Random( 1 );
+        for ( int k = 0; k < 80000; k++ ) {
+            int i = r.nextInt( dense.length );
+            builder.add( i, r.nextInt( 500 ), r.nextInt( 100 ) / 10.0 );
+            counts[i]++;
+        }
+        FrozenSparseDoubleMatrix.Builder<String, String> counted = new FrozenSparseDoubleMatrix.Builder<String, String>(
+                counts );
+        r = new Random( 1 );
+        for ( int k = 0; k < 80000; k++ ) {
+            counted.add( r.nextInt( dense.length ), r.nextInt( 500 ), r.nextInt( 100 ) / 10.0 );
+        }
+
+        for ( FrozenSparseDoubleMatrix<String, String> built : Arrays.asList( builder.build( 2000, 500 ),
+                counted.build( 2000, 500 ) ) ) {
+            assertEquals( frozen.cardinality(), built.cardinality() );
+            for ( int i = 0; i < dense.length; i++ ) {
+                assertArrayEquals( dense[i], built.getRow( i ), 0.0 );
+            }
+        }
+    }
+
+    @Test
+    public void testFreeze() {
+        assertEquals( 2000, frozen.rows() );
+        assertEquals( 500, frozen.columns() );
+        assertEquals( matrix.getRowNames(), frozen.getRowNames() );
+        for ( int i = 0; i < dense.length; i += 7 ) {
+            assertArrayEquals( dense[i], frozen.getRow( i ), 0.0 );
+        }
+        assertEquals( dense[12][34], frozen.getByKeys( "r12", "c34" ), 0.0 );
+
+        int nonzero = 0;
+        for ( double[] row : dense ) {
+            for ( double v : row ) {
+                if ( v != 0.0 ) nonzero++;
+            }
+        }
+        assertEquals( nonzero, frozen.cardinality() );
+    }
+
+    @Test
+    public void testMult() {
+        Random r = new Random( 2 );
+        double[] x = new double[500];
+        for ( int j = 0; j < x.length; j++ ) {
+            x[j] = r.nextDouble();
+        }
+        double[] y = frozen.mult( x );
+        double[] rowSums = frozen.rowSums();
+        for ( int i = 0; i < dense.length; i++ ) {
+            double expected = 0.0;
+            double sum = 0.0;
+            for ( int j = 0; j < x.length; j++ ) {
+                expected += dense[i][j] * x[j];
+                sum += dense[i][j];
+            }
+            assertEquals( expected, y[i], 1e-9 );
+            assertEquals( sum, rowSums[i], 1e-9 );
+        }
+
+        double[][] b = new double[500][3];
+        for ( int j = 0; j < 500; j++ ) {
+            b[j][0] = x[j];
+            b[j][1] = 1.0;
+            b[j][2] = -x[j];
+        }
+        double[][] product = frozen.mult( b );
+        for ( int i = 0; i < dense.length; i++ ) {
+            assertEquals( y[i], product[i][0], 1e-9 );
+            assertEquals( rowSums[i], product[i][1], 1e-9 );
+            assertEquals( -y[i], product[i][2], 1e-9 );
+        }
+    }
+
+    @Test
+    public void testMultTranspose() {
+        double[] x = new double[2000];
+        for ( int i = 0; i < x.length; i++ ) {
+            x[i] = i % 3;
+        }
+        double[] expected = new double[500];
+        for ( int i = 0; i < dense.length; i++ ) {
+            for ( int j = 0; j < 500; j++ ) {
+                expected[j] += dense[i][j] * x[i];
+            }
+        }
+
+        assertFalse( frozen.hasColumnIndex() );
+        assertArrayEquals( expected, frozen.multTranspose( x ), 1e-9 );
+        double[] colSums = frozen.columnSums();
+
+        frozen.withColumnIndex();
+        assertTrue( frozen.hasColumnIndex() );
+        assertArrayEquals( expected, frozen.multTranspose( x ), 1e-9 );
+        assertArrayEquals( colSums, frozen.columnSums(), 1e-9 );
+
+        double[] column = new double[2000];
+        for ( int i = 0; i < 2000; i++ ) {
+            column[i] = dense[i][77];
+        }
+        assertArrayEquals( column, frozen.getColumn( 77 ), 0.0 );
+        assertArrayEquals( column, frozen.getColumnByName( "c77" ), 0.0 );
+
+        DoubleMatrix<String, String> t = frozen.transpose();
+        assertEquals( 500, t.rows() );
+        assertEquals( "c77", t.getRowName( 77 ) );
+        assertArrayEquals( column, t.getRow( 77 ), 0.0 );
+    }
+
+    @Test
+    public void testForEachNonZero() {
+        final AtomicInteger count = new AtomicInteger();
+        frozen.forEachNonZero( 9.0, new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                assertEquals( dense[row][column], value, 0.0 );
+                assertTrue( value >= 9.0 );
+                count.incrementAndGet();
+            }
+        } );
+        int expected = 0;
+        for ( double[] row : dense ) {
+            for ( double v : row ) {
+                if ( v >= 9.0 ) expected++;
+            }
+        }
+        assertEquals( expected, count.get() );
+    }
+
+    @Test
+    public void testNoRows() {
+        FrozenSparseDoubleMatrix<String, String> empty = new CompressedSparseDoubleMatrix<String, String>( 0, 3 )
+                .freeze();
+        assertEquals( 0, empty.mult( new double[3] ).length );
+        assertEquals( 0, empty.mult( new double[3][2] ).length );
+        assertArrayEquals( new double[3], empty.multTranspose( new double[0] ), 0.0 );
+        assertEquals( 0, empty.rowSums().length );
+        assertArrayEquals( new double[3], empty.columnSums(), 0.0 );
+        empty.forEachNonZero( 0.0, new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                fail( "No cells expected" );
+            }
+        } );
+
+        empty = new CompressedSparseDoubleMatrix<String, String>( 0, 0 ).freeze();
+        assertEquals( 0, empty.mult( new double[0] ).length );
+        assertEquals( 0, empty.rowSums().length );
+    }
+
+    @Test
+    public void testSubsets() {
+        DoubleMatrix<String, String> rows = frozen.subsetRows( Arrays.asList( "r5", "r1" ) );
+        assertArrayEquals( dense[5], rows.getRow( 0 ), 0.0 );
+        assertArrayEquals( dense[1], rows.getRow( 1 ), 0.0 );
+
+        DoubleMatrix<String, String> range = frozen.getRowRange( 10, 19 );
+        assertEquals( 10, range.rows() );
+        assertArrayEquals( dense[19], range.getRow( 9 ), 0.0 );
+        assertEquals( "r19", range.getRowName( 9 ) );
+
+        DoubleMatrix<String, String> cols = frozen.subsetColumns( Arrays.asList( "c3", "c2" ) );
+        assertEquals( dense[42][3], cols.get( 42, 0 ), 0.0 );
+        assertEquals( dense[42][2], cols.get( 42, 1 ), 0.0 );
+
+        CompressedSparseDoubleMatrix<String, String> thawed = frozen.thaw();
+        thawed.set( 0, 0, 1234.0 );
+        assertEquals( 1234.0, thawed.get( 0, 0 ), 0.0 );
+        assertEquals( dense[0][0], frozen.get( 0, 0 ), 0.0 );
+        assertArrayEquals( dense[3], thawed.getRow( 3 ), 0.0 );
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        frozen.set( 0, 0, 1.0 );
+    }
+}
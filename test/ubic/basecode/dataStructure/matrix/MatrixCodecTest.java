@@ -0,0 +1,204 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author paul
+ *
+ */
+public class MatrixCodecTest {
+
+    @Test
+    public void testDense() throws Exception {
+        Random r = new Random( 1 );
+        double[][] data = new double[500][30];
+        for ( double[] row : data ) {
+            for ( int j = 0; j < row.length; j++ ) {
+                row[j] = r.nextInt( 20 ) == 0 ? Double.NaN : r.nextGaussian();
+            }
+        }
+        DenseDoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( data );
+        m.setRowNames( names( "probe", 500 ) );
+        m.setColumnNames( names( "sample", 30 ) );
+
+        for ( boolean compress : new boolean[] { false, true } ) {
+            DoubleMatrix<String, String> read = roundTrip( m, compress );
+            assertTrue( read instanceof DenseDoubleMatrix );
+            assertEquals( m.getRowNames(), read.getRowNames() );
+            assertEquals( m.getColNames(), read.getColNames() );
+            assertEquals( 499, read.getRowIndexByName( "probe499" ) );
+            for ( int i = 0; i < m.rows(); i++ ) {
+                assertArrayEquals( m.getRow( i ), read.getRow( i ), 0.0 );
+            }
+        }
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        FastRowAccessDoubleMatrix<Integer, Integer> m = new FastRowAccessDoubleMatrix<Integer, Integer>(
+                new double[][] { { 1, 2 }, { 3, 4 } } );
+        m.setRowNames( Arrays.asList( 10, 20 ) );
+        File f = File.createTempFile( "matrix.", ".bin" );
+        try {
+            MatrixCodec.write( m, f, true );
+            DoubleMatrix<Integer, Integer> read = MatrixCodec.readDoubleMatrix( f );
+            assertTrue( read instanceof FastRowAccessDoubleMatrix );
+            assertEquals( Integer.valueOf( 20 ), read.getRowName( 1 ) );
+            assertEquals( 4.0, read.get( 1, 1 ), 0.0 );
+            assertTrue( !read.hasColNames() );
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testFollowedByData() throws Exception {
+        DenseDoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( new double[300][40] );
+        m.setRowNames( names( "probe", 300 ) );
+        m.set( 299, 39, 1.5 );
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MatrixCodec.write( m, bos, false );
+        bos.write( "after".getBytes( "US-ASCII" ) );
+
+        ByteArrayInputStream is = new ByteArrayInputStream( bos.toByteArray() );
+        Matrix2D<String, String, ?> read = MatrixCodec.read( is );
+        assertEquals( 1.5, ( ( DoubleMatrix<String, String> ) read ).get( 299, 39 ), 0.0 );
+        byte[] rest = new byte[5];
+        assertEquals( 5, is.read( rest ) );
+        assertEquals( "after", new String( rest, "US-ASCII" ) );
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAMatrix() throws Exception {
+        MatrixCodec.read( new ByteArrayInputStream( "this is not a matrix file".getBytes() ) );
+    }
+
+    @Test
+    public void testSparse() throws Exception {
+        SparseDoubleMatrix<String, String> m = new SparseDoubleMatrix<String, String>( 1000, 800 );
+        CompressedSparseDoubleMatrix<String, String> cm = new CompressedSparseDoubleMatrix<String, String>( 1000,
+                800 );
+        Random r = new Random( 2 );
+        for ( int k = 0; k < 3000; k++ ) {
+            int i = r.nextInt( 1000 );
+            int j = r.nextInt( 800 );
+            double v = r.nextDouble();
+            m.set( i, j, v );
+            cm.set( i, j, v );
+        }
+        m.setColumnNames( names( "c", 800 ) );
+        cm.setColumnNames( names( "c", 800 ) );
+
+        DoubleMatrix<String, String> read = roundTrip( m, false );
+        assertTrue( read instanceof SparseDoubleMatrix );
+        assertEquals( m.cardinality(), ( ( SparseDoubleMatrix<String, String> ) read ).cardinality() );
+
+        DoubleMatrix<String, String> cread = roundTrip( cm, true );
+        assertTrue( cread instanceof CompressedSparseDoubleMatrix );
+        assertEquals( cm.cardinality(), ( ( CompressedSparseDoubleMatrix<String, String> ) cread ).cardinality() );
+        assertEquals( "c799", cread.getColName( 799 ) );
+
+        for ( int i = 0; i < 1000; i++ ) {
+            assertArrayEquals( m.getRow( i ), read.getRow( i ), 0.0 );
+            assertArrayEquals( m.getRow( i ), cread.getRow( i ), 0.0 );
+        }
+    }
+
+    /**
+     * The rows of a CompressedSparseDoubleMatrix used to be lost on serialization.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testCompressedSparseSerializable() throws Exception {
+        CompressedSparseDoubleMatrix<String, String> cm = new CompressedSparseDoubleMatrix<String, String>( 3, 4 );
+        cm.set( 0, 1, 1.0 );
+        cm.set( 2, 3, 5.0 );
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream( bos )) {
+            oos.writeObject( cm );
+        }
+        CompressedSparseDoubleMatrix<String, String> read;
+        try (ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bos.toByteArray() ) )) {
+            read = ( CompressedSparseDoubleMatrix<String, String> ) ois.readObject();
+        }
+        assertEquals( 3, read.rows() );
+        assertEquals( 4, read.columns() );
+        assertEquals( 2, read.cardinality() );
+        assertEquals( 5.0, read.get( 2, 3 ), 0.0 );
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testStringAndObject() throws Exception {
+        StringMatrix<String, String> sm = new StringMatrix<String, String>( 2, 2 );
+        sm.set( 0, 0, "foo" );
+        sm.set( 1, 1, "b\u00e4r" );
+        sm.setRowNames( Arrays.asList( "a", "b" ) );
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MatrixCodec.write( sm, bos, false );
+        StringMatrix<String, String> sread = ( StringMatrix<String, String> ) MatrixCodec
+                .<String, String> read( new ByteArrayInputStream( bos.toByteArray() ) );
+        assertEquals( "foo", sread.get( 0, 0 ) );
+        assertEquals( "b\u00e4r", sread.get( 1, 1 ) );
+        assertEquals( 1, sread.getRowIndexByName( "b" ) );
+        assertNull( sread.get( 0, 1 ) );
+
+        ObjectMatrixImpl<String, String, List<Integer>> om = new ObjectMatrixImpl<String, String, List<Integer>>( 1,
+                2 );
+        om.set( 0, 1, Arrays.asList( 1, 2, 3 ) );
+        bos = new ByteArrayOutputStream();
+        MatrixCodec.write( om, bos, true );
+        ObjectMatrixImpl<String, String, List<Integer>> oread = ( ObjectMatrixImpl<String, String, List<Integer>> ) MatrixCodec
+                .<String, String> read( new ByteArrayInputStream( bos.toByteArray() ) );
+        assertNull( oread.get( 0, 0 ) );
+        assertEquals( Arrays.asList( 1, 2, 3 ), oread.get( 0, 1 ) );
+    }
+
+    private List<String> names( String prefix, int n ) {
+        List<String> result = new ArrayList<String>();
+        for ( int i = 0; i < n; i++ ) {
+            result.add( prefix + i );
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private DoubleMatrix<String, String> roundTrip( DoubleMatrix<String, String> m, boolean compress )
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MatrixCodec.write( m, bos, compress );
+        return ( DoubleMatrix<String, String> ) MatrixCodec.<String, String> read( new ByteArrayInputStream( bos
+                .toByteArray() ) );
+    }
+}
@@ -20,6 +20,7 @@ import static org.junit.Assert.fail;
 
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -111,4 +112,56 @@ public class MatrixUtilTest {
         assertArrayEquals( expected.toArray(), actual.toArray(), 0.1 );
     }
 
+    @Test
+    public void testMultWithMissingLarge() {
+        // big enough to be computed in parallel, in several blocks.
+        DoubleMatrix2D a = randomWithMissing( 300, 70, 1 );
+        DoubleMatrix2D b = randomWithMissing( 70, 150, 2 );
+
+        DoubleMatrix2D expected = multWithMissingNaive( a, b );
+        DoubleMatrix2D actual = MatrixUtil.multWithMissing( a, b );
+        assertEquals( 300, actual.rows() );
+        assertEquals( 150, actual.columns() );
+        for ( int i = 0; i < expected.rows(); i++ ) {
+            assertArrayEquals( expected.viewRow( i ).toArray(), actual.viewRow( i ).toArray(), 0.0 );
+        }
+    }
+
+    /**
+     * The straightforward triple loop, which multWithMissing should agree with exactly: the terms of each sum are
+     * added in the same order.
+     */
+    private static DoubleMatrix2D multWithMissingNaive( DoubleMatrix2D a, DoubleMatrix2D b ) {
+        DoubleMatrix2D c = new DenseDoubleMatrix2D( a.rows(), b.columns() );
+        for ( int i = 0; i < b.columns(); i++ ) {
+            for ( int j = 0; j < a.rows(); j++ ) {
+                double s = 0.0;
+                for ( int k = 0; k < a.columns(); k++ ) {
+                    double aval = a.getQuick( j, k );
+                    double bval = b.getQuick( k, i );
+                    if ( Double.isNaN( aval ) || Double.isNaN( bval ) ) {
+                        continue;
+                    }
+                    s += aval * bval;
+                }
+                c.setQuick( j, i, s );
+            }
+        }
+        return c;
+    }
+
+    /**
+     * @return a matrix of Gaussian values, with about one in 50 missing.
+     */
+    private static DoubleMatrix2D randomWithMissing( int rows, int columns, long seed ) {
+        Random r = new Random( seed );
+        DoubleMatrix2D m = new DenseDoubleMatrix2D( rows, columns );
+        for ( int i = 0; i < rows; i++ ) {
+            for ( int j = 0; j < columns; j++ ) {
+                m.set( i, j, r.nextInt( 50 ) == 0 ? Double.NaN : r.nextGaussian() );
+            }
+        }
+        return m;
+    }
+
 }
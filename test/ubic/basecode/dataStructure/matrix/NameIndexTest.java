@@ -0,0 +1,156 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author paul
+ *
+ */
+public class NameIndexTest {
+
+    @Test
+    public void testLookup() {
+        List<String> names = new ArrayList<String>();
+        for ( int i = 0; i < 10000; i++ ) {
+            names.add( "probe" + i );
+        }
+        NameIndex<String> index = new NameIndex<String>( names );
+        assertEquals( 10000, index.size() );
+        for ( int i = 0; i < 10000; i++ ) {
+            assertEquals( i, index.indexOf( "probe" + i ) );
+        }
+        assertEquals( -1, index.indexOf( "foo" ) );
+        assertEquals( -1, index.indexOf( null ) );
+        assertEquals( names, index.asList() );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicate() {
+        new NameIndex<String>( Arrays.asList( "a", "b", "a" ) );
+    }
+
+    @Test
+    public void testSubsetAndRange() {
+        NameIndex<String> index = new NameIndex<String>( Arrays.asList( "a", "b", "c", "d", "e" ) );
+        NameIndex<String> subset = index.subset( new int[] { 4, 0, 2 } );
+        assertEquals( Arrays.asList( "e", "a", "c" ), subset.asList() );
+        assertEquals( 1, subset.indexOf( "a" ) );
+        assertEquals( -1, subset.indexOf( "b" ) );
+
+        NameIndex<String> range = index.range( 1, 3 );
+        assertEquals( Arrays.asList( "b", "c", "d" ), range.asList() );
+        assertEquals( 0, range.indexOf( "b" ) );
+    }
+
+    @Test
+    public void testReplace() {
+        NameIndex<String> index = new NameIndex<String>( 4 );
+        for ( int i = 0; i < 100; i++ ) {
+            index.add( "n" + i );
+        }
+        for ( int i = 0; i < 100; i += 3 ) {
+            index.set( i, "m" + i );
+        }
+        for ( int i = 0; i < 100; i++ ) {
+            if ( i % 3 == 0 ) {
+                assertEquals( -1, index.indexOf( "n" + i ) );
+                assertEquals( i, index.indexOf( "m" + i ) );
+            } else {
+                assertEquals( i, index.indexOf( "n" + i ) );
+            }
+        }
+    }
+
+    @Test
+    public void testSharedBetweenMatrices() {
+        DoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( new double[][] { { 1, 2 }, { 3, 4 },
+                { 5, 6 } } );
+        m.setRowNames( Arrays.asList( "r1", "r2", "r3" ) );
+        m.setColumnNames( Arrays.asList( "c1", "c2" ) );
+
+        DoubleMatrix<String, String> copy = m.copy();
+        assertSame( m.getRowNameIndex(), copy.getRowNameIndex() );
+        assertSame( m.getColNameIndex(), copy.getColNameIndex() );
+
+        DoubleMatrix<String, String> t = m.transpose();
+        assertSame( m.getRowNameIndex(), t.getColNameIndex() );
+
+        // modifying one matrix must not affect the other.
+        copy.setRowName( "x", 1 );
+        assertNotSame( m.getRowNameIndex(), copy.getRowNameIndex() );
+        assertEquals( 1, copy.getRowIndexByName( "x" ) );
+        assertFalse( copy.containsRowName( "r2" ) );
+        assertTrue( m.containsRowName( "r2" ) );
+        assertEquals( "r2", m.getRowName( 1 ) );
+
+        DoubleMatrix<String, String> subset = m.subsetRows( Arrays.asList( "r3", "r1" ) );
+        assertEquals( Arrays.asList( "r3", "r1" ), subset.getRowNames() );
+        assertEquals( 5.0, subset.getByKeys( "r3", "c1" ), 0.0 );
+        assertSame( m.getColNameIndex(), subset.getColNameIndex() );
+    }
+
+    @Test
+    public void testIndexSizeMustMatch() {
+        DoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( new double[][] { { 1, 2 }, { 3, 4 },
+                { 5, 6 } } );
+        NameIndex<String> three = new NameIndex<String>( Arrays.asList( "a", "b", "c" ) );
+        try {
+            m.setColumnNameIndex( three );
+            fail( "Expected an IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+        m.setRowNameIndex( three );
+        try {
+            m.setRowNameIndex( new NameIndex<String>( Arrays.asList( "a", "b" ) ) );
+            fail( "Expected an IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+        m.setColumnNameIndex( new NameIndex<String>( Arrays.asList( "a", "b" ) ) );
+        assertEquals( 1, m.getColIndexByName( "b" ) );
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        NameIndex<String> index = new NameIndex<String>( Arrays.asList( "a", "b", "c" ) );
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream( bos );
+        oos.writeObject( index );
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bos.toByteArray() ) );
+        @SuppressWarnings("unchecked")
+        NameIndex<String> read = ( NameIndex<String> ) ois.readObject();
+        assertEquals( 2, read.indexOf( "c" ) );
+        assertEquals( index.asList(), read.asList() );
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ubic.basecode.io.writer.MatrixWriter;
+
+/**
+ * @author paul
+ *
+ */
+public class SlicedDouble3dMatrixTest {
+
+    private double[][][] data3d = { { { 1, 2 }, { 3, 4 } }, { { 5, 6 }, { 7, 8 } } };
+    private SlicedDouble3dMatrix<String, String, String> m3;
+
+    @Before
+    public void setUp() {
+        m3 = new SlicedDouble3dMatrix<String, String, String>( 2, 2, 2 );
+        fill( m3 );
+    }
+
+    @Test
+    public void testGet() {
+        assertEquals( 7, m3.get( 1, 1, 0 ), 0.0 );
+        assertArrayEquals( new double[] { 3, 4 }, m3.getRow( 1 )[0], 0.0 );
+        assertArrayEquals( new double[] { 6, 8 }, m3.getColumn( 1 )[1], 0.0 );
+        assertEquals( 8.0, m3.getRowObj( 1 )[1][1], 0.0 );
+        assertEquals( 0, m3.numMissing() );
+    }
+
+    @Test
+    public void testSliceViews() {
+        DoubleMatrix<String, String> slice = m3.getSliceMatrix( 1 );
+        assertEquals( "row2", slice.getRowName( 1 ) );
+        assertEquals( 7.0, slice.getByKeys( "row2", "col1" ), 0.0 );
+
+        // not a copy
+        slice.set( 0, 0, 99.0 );
+        assertEquals( 99.0, m3.get( 1, 0, 0 ), 0.0 );
+
+        Iterator<DoubleMatrix<String, String>> it = m3.sliceIterator();
+        assertEquals( 1.0, it.next().get( 0, 0 ), 0.0 );
+        assertTrue( it.next() == slice );
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        File f = File.createTempFile( "cube.", ".bin" );
+        try {
+            SlicedDouble3dMatrix<String, String, String> mapped = SlicedDouble3dMatrix.map( f, 2, 2, 2 );
+            fill( mapped );
+            assertEquals( 64, f.length() );
+
+            SlicedDouble3dMatrix<String, String, String> reopened = SlicedDouble3dMatrix.map( f, 2, 2, 2 );
+            assertEquals( 6.0, reopened.get( 1, 0, 1 ), 0.0 );
+            assertArrayEquals( data3d[1], reopened.getSlice( 1 ) );
+            assertEquals( 5.0, reopened.viewSlice( 1 ).get( 0, 0 ), 0.0 );
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        DenseDouble3dMatrix<String, String, String> dense = new DenseDouble3dMatrix<String, String, String>( data3d );
+        dense.setColumnNames( m3.getColNames() );
+        dense.setRowNames( m3.getRowNames() );
+        dense.setSliceNames( m3.getSliceNames() );
+
+        StringWriter expected = new StringWriter();
+        new MatrixWriter<String, String>( expected ).writeMatrix( dense, true );
+        StringWriter actual = new StringWriter();
+        new MatrixWriter<String, String>( actual ).writeMatrix( m3, true );
+        assertEquals( expected.toString(), actual.toString() );
+    }
+
+    private void fill( SlicedDouble3dMatrix<String, String, String> m ) {
+        for ( int k = 0; k < 2; k++ ) {
+            for ( int i = 0; i < 2; i++ ) {
+                for ( int j = 0; j < 2; j++ ) {
+                    m.set( k, i, j, data3d[k][i][j] );
+                }
+            }
+        }
+        m.setRowNames( Arrays.asList( "row1", "row2" ) );
+        m.setColumnNames( Arrays.asList( "col1", "col2" ) );
+        m.setSliceNames( Arrays.asList( "Slice1", "Slice2" ) );
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author paul
+ *
+ */
+public class SparseBitMatrixTest {
+
+    SparseBitMatrix<String, String> mat;
+
+    @Before
+    public void setup() {
+        mat = new SparseBitMatrix<String, String>( 2, 2, 2 );
+        mat.set( 0, 0, 0 );
+        mat.set( 0, 1, 1 );
+        mat.set( 1, 1, 0 );
+        mat.set( 1, 1, 1 );
+    }
+
+    @Test
+    public final void testBitCount() {
+        assertEquals( 1, mat.bitCount( 0, 0 ) );
+        assertEquals( 2, mat.bitCount( 1, 1 ) );
+        assertEquals( 0, mat.bitCount( 1, 0 ) );
+    }
+
+    @Test
+    public final void testGet() {
+        assertTrue( mat.get( 1, 1, 1 ) );
+        assertTrue( mat.get( 1, 1, 0 ) );
+        assertTrue( !mat.get( 1, 0, 0 ) );
+
+        mat.set( 0, 0, 1 );
+        assertTrue( mat.get( 0, 0, 1 ) );
+        mat.unset( 0, 0, 1 );
+        assertTrue( !mat.get( 0, 0, 1 ) );
+        mat.unset( 0, 0, 0 );
+        assertEquals( 2, mat.cardinality() );
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public final void testGetOutOfBounds() {
+        mat.get( 0, 1, 100 );
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public final void testOutOfBounds() {
+        mat.set( 2, 1, 1 );
+    }
+
+    @Test
+    public void testGetRowBitCount() {
+        int[] rowBitCount = mat.getRowBitCount( 1 );
+        assertEquals( 0, rowBitCount[0] );
+        assertEquals( 2, rowBitCount[1] );
+    }
+
+    @Test
+    public final void testOverlap() {
+        assertEquals( 1, mat.overlap( 0, 0, 1, 1 ) );
+        assertEquals( 0, mat.overlap( 0, 0, 1, 0 ) );
+    }
+
+    @Test
+    public void testBulkOverlap() {
+        Random r = new Random( 1 );
+        SparseBitMatrix<String, String> m = new SparseBitMatrix<String, String>( 50, 40, 200 );
+        for ( int k = 0; k < 20000; k++ ) {
+            m.set( r.nextInt( 50 ), r.nextInt( 40 ), r.nextInt( 200 ) );
+        }
+        int n = 300;
+        int[] rows = new int[n];
+        int[] cols = new int[n];
+        for ( int k = 0; k < n; k++ ) {
+            rows[k] = r.nextInt( 50 );
+            cols[k] = r.nextInt( 40 );
+        }
+
+        int[][] overlaps = m.overlap( rows, cols, rows, cols );
+        for ( int i = 0; i < n; i++ ) {
+            for ( int j = 0; j < n; j++ ) {
+                assertEquals( m.overlap( rows[i], cols[i], rows[j], cols[j] ), overlaps[i][j] );
+            }
+        }
+
+        final int threshold = 12;
+        int expected = 0;
+        for ( int i = 0; i < n; i++ ) {
+            for ( int j = i + 1; j < n; j++ ) {
+                if ( overlaps[i][j] >= threshold ) expected++;
+            }
+        }
+        assertTrue( expected > 0 );
+        final AtomicInteger found = new AtomicInteger();
+        final int[][] o = overlaps;
+        m.overlap( rows, cols, threshold, new CellOverlapHandler() {
+            @Override
+            public void handle( int i, int j, int overlap ) {
+                assertTrue( i < j );
+                assertEquals( o[i][j], overlap );
+                found.incrementAndGet();
+            }
+        } );
+        assertEquals( expected, found.get() );
+    }
+
+    @Test
+    public final void testTotalBitCount() {
+        assertEquals( 4, mat.totalBitCount() );
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        SparseBitMatrix<Long, Long> matrix = new SparseBitMatrix<Long, Long>( 21, 11, 125 );
+        for ( int i = 0; i < 21; i++ )
+            matrix.addRowName( new Long( i ) );
+        for ( int i = 0; i < 11; i++ )
+            matrix.addColumnName( new Long( i ) );
+        matrix.set( 0, 10, 0 );
+        matrix.set( 0, 10, 64 );
+        matrix.set( 0, 0, 124 );
+        matrix.set( 20, 3, 63 );
+
+        File f = File.createTempFile( "bittest.", ".bin" );
+        try {
+            matrix.toFile( f.getAbsolutePath() );
+            SparseBitMatrix<String, String> read = SparseBitMatrix.readFile( f.getAbsolutePath() );
+            assertEquals( 21, read.rows() );
+            assertEquals( 11, read.columns() );
+            assertEquals( 125, read.getBitNum() );
+            assertEquals( "20", read.getRowName( 20 ) );
+            assertEquals( 4, read.totalBitCount() );
+            assertTrue( read.get( 0, 10, 64 ) );
+            assertTrue( read.get( 0, 0, 124 ) );
+            assertTrue( read.get( 20, 3, 63 ) );
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testReadLegacyTextFile() throws Exception {
+        CompressedBitMatrix<String, String> legacy = new CompressedBitMatrix<String, String>( 3, 4, 130 );
+        legacy.setRowNames( Arrays.asList( "a", "b", "c" ) );
+        legacy.setColumnNames( Arrays.asList( "w", "x", "y", "z" ) );
+        legacy.set( 0, 0, 0 );
+        legacy.set( 0, 0, 62 );
+        legacy.set( 0, 0, 63 );
+        legacy.set( 2, 3, 129 );
+        legacy.set( 1, 2, 70 );
+
+        File f = File.createTempFile( "bittest.", ".txt" );
+        try {
+            legacy.toFile( f.getAbsolutePath() );
+            SparseBitMatrix<String, String> read = SparseBitMatrix.readFile( f.getAbsolutePath() );
+            assertEquals( 3, read.rows() );
+            assertEquals( 4, read.columns() );
+            assertEquals( "z", read.getColName( 3 ) );
+            assertEquals( 5, read.totalBitCount() );
+            assertTrue( read.get( 0, 0, 0 ) );
+            assertTrue( read.get( 0, 0, 62 ) );
+            assertTrue( read.get( 0, 0, 63 ) );
+            assertTrue( read.get( 2, 3, 129 ) );
+            assertTrue( read.get( 1, 2, 70 ) );
+            assertEquals( legacy.overlap( 0, 0, 1, 2 ), read.overlap( 0, 0, 1, 2 ) );
+
+            SparseBitMatrix<String, String> converted = new SparseBitMatrix<String, String>( legacy );
+            assertEquals( 5, converted.totalBitCount() );
+            assertTrue( converted.get( 0, 0, 63 ) );
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testSubset() {
+        mat.setRowNames( Arrays.asList( "r1", "r2" ) );
+        mat.setColumnNames( Arrays.asList( "c1", "c2" ) );
+        ObjectMatrix<String, String, long[]> s = mat.subsetColumns( Arrays.asList( "c2" ) );
+        assertEquals( 1, s.columns() );
+        assertEquals( 3L, s.getByKeys( "r2", "c2" )[0] );
+        assertEquals( 2L, s.get( 0, 0 )[0] );
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package ubic.basecode.dataStructure.matrix;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -234,6 +235,43 @@ public class SparseDoubleMatrixTest {
         assertEquals( 666.0, actual[2], 0.00001 );
     }
 
+    @Test
+    public void testSetRow() {
+        testM.setRow( 1, new double[] { 0, 5, 0, 6 } );
+        assertArrayEquals( new double[] { 0, 5, 0, 6 }, testM.getRow( 1 ), 0.0 );
+        assertEquals( 10, testM.cardinality() );
+    }
+
+    @Test
+    public void testForEachNonZero() {
+        final double[] sum = new double[1];
+        ( ( SparseDoubleMatrix<String, String> ) testMatrix ).forEachNonZero( new RowColValueConsumer() {
+            @Override
+            public void accept( int row, int column, double value ) {
+                assertEquals( testMatrix.get( row, column ), value, 0.0 );
+                sum[0] += value;
+            }
+        } );
+        double expected = 0.0;
+        for ( double[] row : testMatrix.asArray() ) {
+            for ( double v : row ) {
+                expected += v;
+            }
+        }
+        assertEquals( expected, sum[0], 1e-10 );
+    }
+
+    @Test
+    public void testTranspose() {
+        DoubleMatrix<String, String> t = testM.transpose();
+        assertEquals( 4, t.rows() );
+        assertEquals( 3, t.columns() );
+        assertEquals( "z", t.getRowName( 3 ) );
+        assertEquals( 24.0, t.getByKeys( "z", "c" ), 0.0 );
+        assertTrue( t.isMissing( 1, 2 ) );
+        assertEquals( testM.cardinality(), ( ( SparseDoubleMatrix<String, String> ) t ).cardinality() );
+    }
+
     @Test
     public void testSize() {
         assertEquals( 12, testM.size() );
@@ -244,6 +282,10 @@ public class SparseDoubleMatrixTest {
         DoubleMatrix<String, String> subset = testMatrix.subsetColumns( Arrays.asList( new String[] { "2", "1" } ) );
         assertEquals( 3, subset.rows() );
         assertEquals( 2, subset.columns() );
+
+        DoubleMatrix<String, String> s = testM.subsetColumns( Arrays.asList( "z", "x" ) );
+        assertArrayEquals( new double[] { 24, Double.NaN }, s.getRow( 2 ), 0.0 );
+        assertArrayEquals( new double[] { 14, 12 }, s.getRow( 1 ), 0.0 );
     }
 
     @Test
@@ -251,6 +293,14 @@ public class SparseDoubleMatrixTest {
         DoubleMatrix<String, String> subset = testMatrix.subsetRows( Arrays.asList( new String[] { "1", "3" } ) );
         assertEquals( 2, subset.rows() );
         assertEquals( 3, subset.columns() );
+
+        DoubleMatrix<String, String> s = testM.subsetRows( Arrays.asList( "c", "a" ) );
+        assertArrayEquals( testArray[2], s.getRow( 0 ), 0.0 );
+        assertArrayEquals( testArray[0], s.getRow( 1 ), 0.0 );
+
+        DoubleMatrix<String, String> range = testM.getColRange( 1, 2 );
+        assertArrayEquals( new double[] { 12, 13 }, range.getRow( 1 ), 0.0 );
+        assertEquals( "y", range.getColName( 1 ) );
     }
 
     @Test
@@ -0,0 +1,124 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.dataStructure.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author paul
+ *
+ */
+public class TiledDoubleMatrixTest extends AbstractDoubleMatrixTest {
+
+    private double[][] big;
+
+    @Before
+    public void setUp() throws Exception {
+        DoubleMatrix<String, String> read = f.read( TiledDoubleMatrixTest.class
+                .getResourceAsStream( "/data/testdata.txt" ) );
+        testdata = DoubleMatrixFactory.tiled( read.asArray() );
+        testdata.setRowNameIndex( read.getRowNameIndex() );
+        testdata.setColumnNameIndex( read.getColNameIndex() );
+        testM = DoubleMatrixFactory.tiled( testArray );
+        testM.setRowNames( java.util.Arrays.asList( new String[] { "a", "b", "c" } ) );
+        testM.setColumnNames( java.util.Arrays.asList( new String[] { "w", "x", "y", "z" } ) );
+
+        // spans several tiles, with partial tiles at the edges.
+        Random r = new Random( 1 );
+        big = new double[150][70];
+        for ( double[] row : big ) {
+            for ( int j = 0; j < row.length; j++ ) {
+                row[j] = r.nextGaussian();
+            }
+        }
+    }
+
+    @Test
+    public void testRowsAndColumns() {
+        TiledDoubleMatrix<String, String> m = DoubleMatrixFactory.tiled( big );
+        for ( int i = 0; i < big.length; i++ ) {
+            assertArrayEquals( big[i], m.getRow( i ), 0.0 );
+        }
+        double[] column = new double[150];
+        for ( int i = 0; i < 150; i++ ) {
+            column[i] = big[i][66];
+        }
+        assertArrayEquals( column, m.getColumn( 66 ), 0.0 );
+        assertEquals( big[149][69], m.get( 149, 69 ), 0.0 );
+
+        m.setColumn( 66, new double[150] );
+        assertEquals( 0.0, m.get( 130, 66 ), 0.0 );
+        assertEquals( big[130][65], m.get( 130, 65 ), 0.0 );
+    }
+
+    @Test
+    public void testIterators() {
+        TiledDoubleMatrix<String, String> m = DoubleMatrixFactory.tiled( big );
+        Iterator<double[]> rows = m.rowIterator();
+        int i = 0;
+        while ( rows.hasNext() ) {
+            assertArrayEquals( big[i++], rows.next(), 0.0 );
+        }
+        assertEquals( 150, i );
+
+        Iterator<double[]> columns = m.columnIterator();
+        int j = 0;
+        while ( columns.hasNext() ) {
+            assertArrayEquals( m.getColumn( j++ ), columns.next(), 0.0 );
+        }
+        assertEquals( 70, j );
+        assertFalse( columns.hasNext() );
+    }
+
+    @Test
+    public void testTransposeViews() {
+        TiledDoubleMatrix<String, String> m = DoubleMatrixFactory.tiled( big );
+        TiledDoubleMatrix<String, String> t = m.transpose();
+        assertEquals( 70, t.rows() );
+        assertEquals( 150, t.columns() );
+        assertEquals( big[140][3], t.get( 3, 140 ), 0.0 );
+        assertArrayEquals( big[77], t.getColumn( 77 ), 0.0 );
+
+        // the view shares storage
+        t.set( 3, 140, 42.0 );
+        assertEquals( 42.0, m.get( 140, 3 ), 0.0 );
+
+        TiledDoubleMatrix<String, String> t2 = m.transposeInPlace();
+        assertEquals( 150, m.rows() );
+        assertEquals( 42.0, m.get( 140, 3 ), 0.0 );
+        assertEquals( 42.0, t.get( 3, 140 ), 0.0 );
+        assertEquals( 42.0, t2.get( 3, 140 ), 0.0 );
+        for ( int i = 0; i < 150; i += 7 ) {
+            assertArrayEquals( m.getRow( i ), t2.getColumn( i ), 0.0 );
+        }
+        Iterator<double[]> columns = t2.columnIterator();
+        for ( int i = 0; i < 150; i++ ) {
+            assertArrayEquals( m.getRow( i ), columns.next(), 0.0 );
+        }
+
+        DoubleMatrix<String, String> copy = t2.copy();
+        copy.set( 0, 0, -1.0 );
+        assertEquals( big[0][0], t2.get( 0, 0 ), 0.0 );
+        assertArrayEquals( t2.getRow( 69 ), copy.getRow( 69 ), 0.0 );
+    }
+}
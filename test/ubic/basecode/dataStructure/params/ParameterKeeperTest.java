@@ -15,11 +15,13 @@
 package ubic.basecode.dataStructure.params;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 /**
@@ -40,5 +42,36 @@ public class ParameterKeeperTest {
         File tmp = File.createTempFile( "paramkeepertest.", ".xls" );
         k.writeExcel( tmp.getAbsolutePath() );
         tmp.delete();
+
+        params = new HashMap<String, String>();
+        params.put( "foo", "1.5" );
+        k.addParamInstance( params );
+        tmp = File.createTempFile( "paramkeepertest.", ".csv" );
+        k.write( tmp.getAbsolutePath() );
+        assertEquals( "\"bar\",\"foo\"\n\"b\",\"f\"\n\"\",\"1.5\"\n", FileUtils.readFileToString( tmp ) );
+        tmp.delete();
+
+        // values are written as given, except that numbers are typed in XML.
+        params = new HashMap<String, String>();
+        params.put( "foo", "5" );
+        params.put( "bar", "007" );
+        k.addParamInstance( params );
+        params = new HashMap<String, String>();
+        params.put( "foo", "1e3" );
+        params.put( "bar", "2f" );
+        k.addParamInstance( params );
+        tmp = File.createTempFile( "paramkeepertest.", ".tsv" );
+        k.write( tmp.getAbsolutePath() );
+        assertEquals( "bar\tfoo\nb\tf\n\t1.5\n007\t5\n2f\t1e3\n", FileUtils.readFileToString( tmp ) );
+        tmp.delete();
+
+        tmp = File.createTempFile( "paramkeepertest.", ".xml" );
+        k.write( tmp.getAbsolutePath() );
+        String xml = FileUtils.readFileToString( tmp );
+        assertTrue( xml.contains( "<Row><Cell><Data ss:Type=\"Number\">7.0</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">5.0</Data></Cell></Row>" ) );
+        assertTrue( xml.contains( "<Row><Cell><Data ss:Type=\"String\">2f</Data></Cell>"
+                + "<Cell><Data ss:Type=\"Number\">1000.0</Data></Cell></Row>" ) );
+        tmp.delete();
     }
 }
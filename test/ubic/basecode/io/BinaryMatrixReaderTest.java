@@ -0,0 +1,155 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ReadOnlyBufferException;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleBufferMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.io.reader.DoubleMatrixReader;
+
+/**
+ * @author paul
+ *
+ */
+public class BinaryMatrixReaderTest {
+
+    private File f;
+    private DoubleMatrix<String, String> matrix;
+
+    @Before
+    public void setUp() throws Exception {
+        matrix = new DoubleMatrixReader().read( BinaryMatrixReaderTest.class
+                .getResourceAsStream( "/data/testdatamissing.txt" ) );
+        f = File.createTempFile( "matrix.", ".bin" );
+    }
+
+    @After
+    public void tearDown() {
+        f.delete();
+    }
+
+    @Test
+    public void testMap() throws Exception {
+        BinaryMatrixWriter.write( matrix, f );
+        BinaryMatrixReader reader = new BinaryMatrixReader( f );
+        assertEquals( 30, reader.getRows() );
+        assertEquals( 12, reader.getColumns() );
+        assertTrue( !reader.hasMissingBitmap() );
+
+        DoubleMatrix<String, String> mapped = reader.map();
+        assertTrue( mapped instanceof DoubleBufferMatrix );
+        assertSame( matrix, mapped );
+        try {
+            mapped.set( 0, 0, 1.0 );
+            throw new AssertionError( "Expected a read-only matrix" );
+        } catch ( ReadOnlyBufferException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadColumnMajor() throws Exception {
+        BinaryMatrixWriter.write( matrix, f, BinaryMatrixWriter.COLUMN_MAJOR, BinaryMatrixWriter.DOUBLE, true );
+        BinaryMatrixReader reader = new BinaryMatrixReader( f );
+        assertEquals( BinaryMatrixWriter.COLUMN_MAJOR, reader.getLayout() );
+        assertSame( matrix, reader.read() );
+
+        long[] missing = reader.readMissingBitmap();
+        for ( int i = 0; i < matrix.rows(); i++ ) {
+            for ( int j = 0; j < matrix.columns(); j++ ) {
+                long bit = ( long ) i * matrix.columns() + j;
+                assertEquals( matrix.isMissing( i, j ), ( missing[( int ) ( bit >>> 6 )] & 1L << ( bit & 63 ) ) != 0 );
+            }
+        }
+    }
+
+    @Test
+    public void testReadColumnMajorManyRows() throws Exception {
+        Random r = new Random( 1 );
+        DenseDoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( 600, 7 );
+        for ( int i = 0; i < m.rows(); i++ ) {
+            for ( int j = 0; j < m.columns(); j++ ) {
+                m.set( i, j, r.nextGaussian() );
+            }
+            m.addRowName( "r" + i );
+        }
+        BinaryMatrixWriter.write( m, f, BinaryMatrixWriter.COLUMN_MAJOR, BinaryMatrixWriter.DOUBLE, false );
+        assertSame( m, new BinaryMatrixReader( f ).read() );
+    }
+
+    @Test
+    public void testReadFloat() throws Exception {
+        BinaryMatrixWriter.write( matrix, f, BinaryMatrixWriter.ROW_MAJOR, BinaryMatrixWriter.FLOAT, false );
+        DoubleMatrix<String, String> read = new BinaryMatrixReader( f ).read();
+        assertEquals( matrix.getRowNames(), read.getRowNames() );
+        for ( int i = 0; i < matrix.rows(); i++ ) {
+            for ( int j = 0; j < matrix.columns(); j++ ) {
+                assertEquals( ( float ) matrix.get( i, j ), read.get( i, j ), 0.0 );
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownLayout() throws Exception {
+        BinaryMatrixWriter.write( matrix, f, BinaryMatrixWriter.ROW_MAJOR, BinaryMatrixWriter.DOUBLE, false );
+        try (RandomAccessFile raf = new RandomAccessFile( f, "rw" )) {
+            // after the magic number, version and element type.
+            raf.seek( 6 );
+            raf.write( 7 );
+        }
+        new BinaryMatrixReader( f );
+    }
+
+    @Test
+    public void testUnnamed() throws Exception {
+        DenseDoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( new double[][] { { 1, 2, 3 },
+                { 4, 5, 6 } } );
+        try (BinaryMatrixWriter writer = new BinaryMatrixWriter( f, null, 3, 2, BinaryMatrixWriter.COLUMN_MAJOR,
+                BinaryMatrixWriter.DOUBLE )) {
+            writer.writeRow( null, m.getRow( 0 ) );
+            writer.writeRow( null, m.getRow( 1 ) );
+        }
+        BinaryMatrixReader reader = new BinaryMatrixReader( f );
+        assertNull( reader.getRowNames() );
+        assertNull( reader.getColumnNames() );
+        DoubleMatrix<String, String> read = reader.read();
+        assertArrayEquals( new double[] { 4, 5, 6 }, read.getRow( 1 ), 0.0 );
+        assertArrayEquals( new double[] { 3, 6 }, read.getColumn( 2 ), 0.0 );
+    }
+
+    private void assertSame( DoubleMatrix<String, String> expected, DoubleMatrix<String, String> actual ) {
+        assertEquals( expected.getRowNames(), actual.getRowNames() );
+        assertEquals( expected.getColNames(), actual.getColNames() );
+        for ( int i = 0; i < expected.rows(); i++ ) {
+            assertArrayEquals( expected.getRow( i ), actual.getRow( i ), 0.0 );
+        }
+    }
+
+}
@@ -18,11 +18,19 @@
  */
 package ubic.basecode.io;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -30,6 +38,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
 import cern.colt.list.DoubleArrayList;
 
 /**
@@ -231,6 +241,135 @@ public class TestByteArrayConverter {
         }
     }
 
+    @Test
+    public void testDoubleArrayCodecsLossless() {
+        double[] special = new double[] { 0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, 1.0, 1.0, 1.0, 2.5, -1e-300 };
+        for ( int codec : new int[] { ByteArrayConverter.CODEC_SHUFFLE_DEFLATE, ByteArrayConverter.CODEC_XOR_DELTA } ) {
+            for ( double[] values : new double[][] { wholeBunchOfDoubles, special, testD, new double[0] } ) {
+                byte[] bytes = bac.doubleArrayToBytes( values, codec );
+                assertEquals( codec, bac.getCodec( bytes ) );
+                assertTrue( bytes.length % 8 != 0 );
+                assertArrayEquals( values, bac.byteArrayToDoubles( bytes ), 0.0 );
+            }
+            assertTrue( bac.doubleArrayToBytes( wholeBunchOfDoubles, codec ).length < wholeBunchOfDoubles.length * 8 );
+        }
+    }
+
+    @Test
+    public void testDoubleArrayCodecsLossy() {
+        byte[] bytes = bac.doubleArrayToBytes( wholeBunchOfDoubles, ByteArrayConverter.CODEC_FLOAT32 );
+        assertEquals( ByteArrayConverter.CODEC_FLOAT32, bac.getCodec( bytes ) );
+        double[] actual = bac.byteArrayToDoubles( bytes );
+        for ( int i = 0; i < actual.length; i++ ) {
+            assertEquals( ( float ) wholeBunchOfDoubles[i], actual[i], 0.0 );
+        }
+
+        double[] values = new double[] { 0.0, 1.0, -2.5, 0.1, 1000.3, 65504, 1e6, 1e-6, Double.NaN };
+        actual = bac.byteArrayToDoubles( bac.doubleArrayToBytes( values, ByteArrayConverter.CODEC_FLOAT16 ) );
+        for ( int i = 0; i < 6; i++ ) {
+            assertEquals( values[i], actual[i], Math.abs( values[i] ) / 1024 );
+        }
+        assertEquals( Double.POSITIVE_INFINITY, actual[6], 0.0 );
+        assertEquals( 1e-6, actual[7], 1e-7 );
+        assertTrue( Double.isNaN( actual[8] ) );
+    }
+
+    @Test
+    public void testDoubleArrayCodecsMatrix() {
+        double[][] testm = new double[][] { { 1, 2 }, { 3, 4 }, { 5, 6 } };
+        byte[] bytes = bac.doubleArrayToBytes( new double[] { 1, 2, 3, 4, 5, 6 }, ByteArrayConverter.CODEC_XOR_DELTA );
+        double[][] actual = bac.byteArrayToDoubleMatrix( bytes, 2 );
+        for ( int i = 0; i < testm.length; i++ ) {
+            assertArrayEquals( testm[i], actual[i], 0.0 );
+        }
+    }
+
+    @Test
+    public void testDoubleArrayRawUnchanged() {
+        assertArrayEquals( expectedBfD, bac.doubleArrayToBytes( testD, ByteArrayConverter.CODEC_RAW ) );
+        assertEquals( ByteArrayConverter.CODEC_RAW, bac.getCodec( expectedBfD ) );
+        assertArrayEquals( testD, bac.byteArrayToDoubles( expectedBfD ), 0.0 );
+    }
+
+    @Test
+    public void testByteArraysToDoubleMatrix() {
+        List<byte[]> rows = new ArrayList<byte[]>();
+        rows.add( bac.doubleArrayToBytes( new double[] { 1, 2, 3 } ) );
+        rows.add( bac.doubleArrayToBytes( new double[] { 4, 5, 6 }, ByteArrayConverter.CODEC_SHUFFLE_DEFLATE ) );
+        rows.add( bac.doubleArrayToBytes( new double[] { 7, 8, 9 }, ByteArrayConverter.CODEC_XOR_DELTA ) );
+        DoubleMatrix<String, String> matrix = bac.byteArraysToDoubleMatrix( rows, 3 );
+        assertEquals( 3, matrix.rows() );
+        assertArrayEquals( new double[] { 4, 5, 6 }, matrix.getRow( 1 ), 0.0 );
+        assertArrayEquals( new double[] { 3, 6, 9 }, matrix.getColumn( 2 ), 0.0 );
+
+        DenseDoubleMatrix<String, String> dense = new DenseDoubleMatrix<String, String>( 3, 3 );
+        for ( int i = 0; i < rows.size(); i++ ) {
+            bac.byteArrayToDoubleMatrixRow( rows.get( i ), dense, i );
+        }
+        assertArrayEquals( new double[] { 7, 8, 9 }, dense.getRow( 2 ), 0.0 );
+
+        try {
+            bac.byteArrayToDoubleMatrixRow( bac.doubleArrayToBytes( testD ), new DenseDoubleMatrix<String, String>( 1,
+                    2 ), 0 );
+            fail( "Expected an IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testByteBufferRoundTrip() {
+        ByteBuffer buf = ByteBuffer.allocateDirect( 100 ).order( ByteOrder.LITTLE_ENDIAN );
+        buf.position( 4 );
+        bac.doubleArrayToByteBuffer( testD, 1, 2, buf );
+        bac.intArrayToByteBuffer( testI, 0, 3, buf );
+        bac.longArrayToByteBuffer( testlong, 0, 2, buf );
+        assertEquals( 4 + 16 + 12 + 16, buf.position() );
+
+        double[] d = new double[3];
+        bac.byteBufferToDoubles( buf, 4, d, 1, 2 );
+        assertArrayEquals( new double[] { 0, y, z }, d, 0.0 );
+        int[] ints = new int[3];
+        bac.byteBufferToInts( buf, 20, ints, 0, 3 );
+        assertArrayEquals( testI, ints );
+        long[] longs = new long[2];
+        bac.byteBufferToLongs( buf, 32, longs, 0, 2 );
+        assertArrayEquals( new long[] { testlong[0], testlong[1] }, longs );
+        assertEquals( 48, buf.position() );
+
+        // the same bytes as the array methods.
+        byte[] bytes = new byte[16];
+        buf.position( 4 );
+        buf.get( bytes );
+        byte[] expected = new byte[16];
+        System.arraycopy( expectedBfD, 8, expected, 0, 16 );
+        assertArrayEquals( expected, bytes );
+
+        try {
+            bac.doubleArrayToByteBuffer( testD, 0, 3, ByteBuffer.allocate( 20 ) );
+            fail( "Expected a BufferOverflowException" );
+        } catch ( BufferOverflowException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testByteArrayToDoublesInto() {
+        double[] dest = new double[5];
+        assertEquals( 3, bac.byteArrayToDoubles( bac.doubleArrayToBytes( testD ), dest, 2 ) );
+        assertArrayEquals( new double[] { 0, 0, x, y, z }, dest, 0.0 );
+        assertEquals( 3, bac.byteArrayToDoubles( bac.doubleArrayToBytes( testD, ByteArrayConverter.CODEC_XOR_DELTA ),
+                dest, 0 ) );
+        assertArrayEquals( new double[] { x, y, z, y, z }, dest, 0.0 );
+    }
+
+    @Test
+    public void testLongObjectsToBytes() {
+        Long[] values = new Long[] { 1L << 40, -5L };
+        assertArrayEquals( new long[] { 1L << 40, -5L }, bac.byteArrayToLongs( bac.toBytes( values ) ) );
+    }
+
     // test double[] -> delimited string.
     @Test
     public void testDoubleArrayToDelimitedStringConversionSpeed() {
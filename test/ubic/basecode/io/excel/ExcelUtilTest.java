@@ -54,6 +54,10 @@ public class ExcelUtilTest {
         List<String> grabColumnValuesList = ExcelUtil.grabColumnValuesList( sheetFromFile, 2, true, false );
         assertEquals( "-0.157", grabColumnValuesList.get( 3 ) );
 
+        assertEquals( grabColumnValuesList, ExcelUtil.grabColumnValuesList( f, s, 2, true, false ) );
+        assertEquals( ExcelUtil.grabColumnValues( sheetFromFile, 0, true, true ),
+                ExcelUtil.grabColumnValues( f, s, 0, true, true ) );
+
         ExcelUtil.setValue( sheetFromFile, 10, 10, 0.44 );
         assertEquals( "0.44", ExcelUtil.getValue( sheetFromFile, 10, 10 ) );
     }
@@ -0,0 +1,159 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.io.excel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import ubic.basecode.util.FileTools;
+
+/**
+ * @author paul
+ */
+public class SpreadSheetWriterTest {
+
+    private SpreadSheetSchema schema;
+
+    @Before
+    public void setUp() {
+        Map<String, Integer> positions = new HashMap<String, Integer>();
+        positions.put( "name", 0 );
+        positions.put( "score", 1 );
+        positions.put( "note", 2 );
+        schema = new SpreadSheetSchema( positions );
+    }
+
+    @Test
+    public void testCsvWindow() throws Exception {
+        StringWriter out = new StringWriter();
+        try (SpreadSheetWriter w = new DelimitedSpreadSheetWriter( out, schema, 3, ',' )) {
+            w.addRow( "a", 1.5, "x,y" );
+            w.addRow( "b", 2 );
+            assertEquals( "", out.toString() );
+            w.addRow( "c", null, "say \"hi\"" );
+            assertEquals( 4, out.toString().split( "\n" ).length );
+            Map<String, Object> row = new HashMap<String, Object>();
+            row.put( "note", "n" );
+            row.put( "name", "d" );
+            w.addRow( row );
+            assertEquals( 4, w.getRowCount() );
+        }
+        assertEquals( "\"name\",\"score\",\"note\"\n\"a\",\"1.5\",\"x,y\"\n\"b\",\"2\",\"\"\n"
+                + "\"c\",\"\",\"say \"\"hi\"\"\"\n\"d\",\"\",\"n\"\n", out.toString() );
+    }
+
+    @Test
+    public void testCsvLineBreak() throws Exception {
+        StringWriter out = new StringWriter();
+        try (SpreadSheetWriter w = new DelimitedSpreadSheetWriter( out, schema, 3, ',' )) {
+            w.addRow( "a", 1, "two\nlines" );
+        }
+        assertEquals( "\"name\",\"score\",\"note\"\n\"a\",\"1\",\"two\nlines\"\n", out.toString() );
+    }
+
+    @Test
+    public void testTsvFields() throws Exception {
+        StringWriter out = new StringWriter();
+        SpreadSheetWriter w = new DelimitedSpreadSheetWriter( out, schema, 3, '\t' );
+        w.addRow( "a", 1, "say \"hi\"" );
+        for ( String bad : new String[] { "x\ty", "two\nlines", "old\rmac" } ) {
+            try {
+                w.addRow( "b", 2, bad );
+                fail( "Expected an IllegalArgumentException for " + bad );
+            } catch ( IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        w.addRow( "c", 3, "it's, fine" );
+        w.close();
+        w.flush();
+        w.close();
+        assertEquals( 2, w.getRowCount() );
+        assertEquals( "name\tscore\tnote\na\t1\tsay \"hi\"\nc\t3\tit's, fine\n", out.toString() );
+    }
+
+    @Test
+    public void testOpenGzippedTsv() throws Exception {
+        File f = File.createTempFile( "spreadsheetwriter.", ".tsv.gz" );
+        try {
+            try (SpreadSheetWriter w = SpreadSheetWriter.open( f.getAbsolutePath(), schema )) {
+                for ( int i = 0; i < 2500; i++ ) {
+                    w.addRow( "row" + i, i, null );
+                }
+            }
+            try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( f.getAbsolutePath() )) {
+                String[] lines = IOUtils.toString( is, "UTF-8" ).split( "\n" );
+                assertEquals( 2501, lines.length );
+                assertEquals( "name\tscore\tnote", lines[0] );
+                assertEquals( "row2499\t2499\t", lines[2500] );
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testOpenUnsupported() throws Exception {
+        try {
+            SpreadSheetWriter.open( "foo.xls", schema );
+            fail( "Expected an IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testXml() throws Exception {
+        StringWriter out = new StringWriter();
+        try (SpreadSheetWriter w = new XmlSpreadSheetWriter( out, schema, 2 )) {
+            w.addRow( "a<b", 1.5, "x" );
+            w.addRow( null, Double.NaN, "y & z" );
+            w.addRow( "c" );
+        }
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse( new ByteArrayInputStream( out.toString().getBytes( StandardCharsets.UTF_8 ) ) );
+        NodeList rows = doc.getElementsByTagName( "Row" );
+        assertEquals( 4, rows.getLength() );
+
+        NodeList cells = ( ( Element ) rows.item( 1 ) ).getElementsByTagName( "Data" );
+        assertEquals( "a<b", cells.item( 0 ).getTextContent() );
+        assertEquals( "Number", ( ( Element ) cells.item( 1 ) ).getAttribute( "ss:Type" ) );
+
+        Element second = ( Element ) ( ( Element ) rows.item( 2 ) ).getElementsByTagName( "Cell" ).item( 0 );
+        assertEquals( "2", second.getAttribute( "ss:Index" ) );
+        assertEquals( "NaN", second.getTextContent() );
+        assertTrue( out.toString().endsWith( "</Workbook>\n" ) );
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.io.excel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ubic.basecode.dataStructure.matrix.DictionaryStringMatrix;
+
+/**
+ * @author paul
+ */
+public class StreamingSheetReaderTest {
+
+    private File f;
+
+    @Before
+    public void setUp() throws Exception {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        HSSFSheet other = workbook.createSheet( "other" );
+        ExcelUtil.setValue( other, 0, 0, "not this one" );
+
+        HSSFSheet sheet = workbook.createSheet( "data" );
+        ExcelUtil.setValue( sheet, 0, 0, "id" );
+        ExcelUtil.setValue( sheet, 0, 1, "name" );
+        ExcelUtil.setValue( sheet, 0, 2, "value" );
+        for ( int i = 1; i <= 500; i++ ) {
+            ExcelUtil.setValue( sheet, i, 0, i );
+            ExcelUtil.setValue( sheet, i, 1, "Sample " + i % 7 );
+            if ( i % 10 != 0 ) ExcelUtil.setValue( sheet, i, 2, i / 4.0 );
+        }
+        ExcelUtil.setFormula( sheet, 3, 3, "SUM(A1:A3)" );
+        // an empty row and a row with only a late column.
+        ExcelUtil.setValue( sheet, 503, 2, "last" );
+
+        f = File.createTempFile( "streaming.", ".xls" );
+        try (FileOutputStream os = new FileOutputStream( f )) {
+            workbook.write( os );
+        }
+    }
+
+    @After
+    public void tearDown() {
+        f.delete();
+    }
+
+    @Test
+    public void testMissingSheet() throws Exception {
+        try {
+            new StreamingSheetReader( f.getAbsolutePath(), "nope" ).readMatrix( false );
+            fail( "Expected an IllegalArgumentException" );
+        } catch ( IllegalArgumentException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        final HSSFSheet sheet = ExcelUtil.getSheetFromFile( f.getAbsolutePath(), "data" );
+        final List<Integer> rows = new ArrayList<Integer>();
+        new StreamingSheetReader( f.getAbsolutePath(), "data" ).read( new SpreadSheetRowHandler() {
+            @Override
+            public void handleRow( int row, String[] values ) {
+                rows.add( row );
+                for ( int j = 0; j < values.length; j++ ) {
+                    assertEquals( ExcelUtil.getValue( sheet, row, j ), values[j] );
+                }
+            }
+        } );
+        assertEquals( 502, rows.size() );
+        assertEquals( 503, rows.get( rows.size() - 1 ).intValue() );
+    }
+
+    @Test
+    public void testReadMatrix() throws Exception {
+        StreamingSheetReader reader = new StreamingSheetReader( f.getAbsolutePath(), "data" );
+        reader.setColumns( 2, 1 );
+        DictionaryStringMatrix<Integer, String> m = reader.readMatrix( true );
+        assertEquals( 501, m.rows() );
+        assertEquals( 2, m.columns() );
+        assertEquals( "value", m.getColName( 0 ) );
+        assertEquals( "name", m.getColName( 1 ) );
+        assertArrayEquals( new String[] { "0.25", "Sample 1" }, m.getRow( m.getRowIndexByName( 1 ) ) );
+        assertNull( m.getByKeys( 10, "value" ) );
+        assertEquals( "last", m.getByKeys( 503, "value" ) );
+    }
+
+    @Test
+    public void testReadMatrixAllColumns() throws Exception {
+        DictionaryStringMatrix<Integer, String> m = new StreamingSheetReader( f.getAbsolutePath(), "data" )
+                .readMatrix( false );
+        assertEquals( 502, m.rows() );
+        assertEquals( 4, m.columns() );
+        assertEquals( "id", m.get( 0, 0 ) );
+        assertEquals( "SUM(A1:A3)", m.getByKeys( 3, "3" ) );
+    }
+
+}
@@ -18,15 +18,23 @@
  */
 package ubic.basecode.io.reader;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
 import java.util.zip.ZipInputStream;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -236,4 +244,225 @@ public class TestDoubleMatrixReader {
         assertEquals( 2.6e-10, matrix.get( 206, 0 ), 1e-11 );
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLocaleAwareParsingSameResult() throws Exception {
+        matrix = reader.read( isbig );
+        DoubleMatrixReader localeAware = new DoubleMatrixReader();
+        localeAware.setLocaleAwareParsing( true );
+        ZipInputStream again = new ZipInputStream(
+                TestStringMatrixReader.class.getResourceAsStream( "/data/melanoma_and_sarcomaMAS5.zip" ) );
+        again.getNextEntry();
+        DoubleMatrix<String, String> expected = localeAware.read( again );
+        assertEquals( expected.getRowNames(), matrix.getRowNames() );
+        assertEquals( expected.getColNames(), matrix.getColNames() );
+        for ( int i = 0; i < expected.rows(); i++ ) {
+            assertArrayEquals( expected.getRow( i ), matrix.getRow( i ), 0.0 );
+        }
+    }
+
+    @Test
+    public void testParseDouble() {
+        Random r = new Random( 1 );
+        for ( int k = 0; k < 10000; k++ ) {
+            double v = r.nextGaussian() * Math.pow( 10, r.nextInt( 40 ) - 20 );
+            String s = k % 2 == 0 ? Double.toString( v ) : String.format( Locale.ENGLISH, "%.4f", v );
+            byte[] b = s.getBytes();
+            assertEquals( s, Double.parseDouble( s ), DoubleRowParser.parseDouble( b, 0, b.length ), 0.0 );
+        }
+        for ( String s : new String[] { "0", "-0.0", "1e5", "+2.5E-3", ".5", "7.", "123456789012345678901234",
+                "-Infinity", "1e400", "4.9e-324" } ) {
+            byte[] b = s.getBytes();
+            assertEquals( s, Double.parseDouble( s ), DoubleRowParser.parseDouble( b, 0, b.length ), 0.0 );
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseDoubleInvalid() {
+        byte[] b = "9101001_at".getBytes();
+        DoubleRowParser.parseDouble( b, 0, b.length );
+    }
+
+    @Test
+    public void testReadParallelSameResult() throws Exception {
+        String fn = FileTools.resourceToPath( "/data/testdatamissing.txt" );
+        DoubleMatrixReader parallel = new DoubleMatrixReader();
+        parallel.setParallel( true );
+        parallel.setChunkSize( 100 );
+
+        Collection<String> wanted = new HashSet<String>();
+        wanted.add( "gene11_at" );
+        wanted.add( "dadadad" );
+        wanted.add( "gene6_at" );
+        wanted.add( "AFFXgene30_at" );
+
+        assertSameMatrix( reader.read( fn ), parallel.read( fn ) );
+        assertSameMatrix( reader.read( fn, wanted, 4 ), parallel.read( fn, wanted, 4 ) );
+        assertSameMatrix( reader.read( fn, wanted, false, 0, -1 ), parallel.read( fn, wanted, false, 0, -1 ) );
+        assertSameMatrix( reader.read( fn, null, true, 0, 7 ), parallel.read( fn, null, true, 0, 7 ) );
+        assertEquals( 7, parallel.read( fn, null, true, 0, 7 ).rows() );
+
+        // compressed: read sequentially.
+        String zipped = FileTools.resourceToPath( "/data/melanoma_and_sarcomaMAS5.zip" );
+        assertSameMatrix( reader.read( zipped ), parallel.read( zipped ) );
+    }
+
+    @Test
+    public void testReadRows() throws Exception {
+        String fn = FileTools.resourceToPath( "/data/testdatamissing.txt" );
+        DoubleMatrix<String, String> expected = reader.read( fn, null, 4 );
+        try (DoubleMatrixRowReader rows = reader.readRows( fn, null, 4 )) {
+            assertEquals( expected.getColNames(), rows.getColNames() );
+            int i = 0;
+            double[] previous = null;
+            while ( rows.next() ) {
+                assertEquals( expected.getRowName( i ), rows.getRowName() );
+                assertArrayEquals( expected.getRow( i ), rows.getRow(), 0.0 );
+                if ( previous != null ) assertTrue( previous == rows.getRow() );
+                previous = rows.getRow();
+                i++;
+            }
+            assertEquals( expected.rows(), i );
+        }
+
+        Collection<String> wanted = new HashSet<String>();
+        wanted.add( "gene6_at" );
+        wanted.add( "gene2_at" );
+        wanted.add( "dadadad" );
+        try (DoubleMatrixRowReader rows = reader.readRows( fn, wanted, 0 )) {
+            assertTrue( rows.next() );
+            assertEquals( "gene2_at", rows.getRowName() );
+            assertTrue( rows.next() );
+            assertEquals( "gene6_at", rows.getRowName() );
+            assertTrue( !rows.next() );
+            assertEquals( 2, rows.getWantedRowsFound().size() );
+        }
+
+        // a detached row is kept as it is; the next row goes into a new array.
+        try (DoubleMatrixRowReader rows = reader.readRows( fn, null, 0 )) {
+            assertTrue( rows.next() );
+            double[] first = rows.getRow();
+            double[] copy = first.clone();
+            assertTrue( first == rows.detachRow() );
+            assertTrue( rows.next() );
+            assertTrue( first != rows.getRow() );
+            assertArrayEquals( copy, first, 0.0 );
+        }
+
+        // all wanted rows found: stays finished.
+        wanted.remove( "dadadad" );
+        try (DoubleMatrixRowReader rows = reader.readRows( fn, wanted, 0 )) {
+            assertEquals( 2, rows.nextBlock( 10 ).rows() );
+            assertTrue( !rows.next() );
+            assertTrue( !rows.next() );
+            assertTrue( rows.nextBlock( 10 ) == null );
+        }
+    }
+
+    @Test
+    public void testReadIndexed() throws Exception {
+        File dir = Files.createTempDirectory( "rowindex" ).toFile();
+        File f = new File( dir, "data.txt" );
+        try {
+            Files.copy( new File( FileTools.resourceToPath( "/data/testdatamissing.txt" ) ).toPath(), f.toPath() );
+            Collection<String> wanted = new HashSet<String>();
+            wanted.add( "gene11_at" );
+            wanted.add( "dadadad" );
+            wanted.add( "gene6_at" );
+            wanted.add( "AFFXgene30_at" );
+
+            assertSameMatrix( reader.read( f.getPath(), wanted, 4 ),
+                    reader.readIndexed( f.getPath(), wanted, true, 4 ) );
+            assertTrue( RowOffsetIndex.indexFileFor( f ).exists() );
+            RowOffsetIndex index = RowOffsetIndex.load( f );
+            assertEquals( 30, index.size() );
+            assertEquals( "gene6_at", index.getRowNames().get( index.indexOf( "gene6_at" ) ) );
+            assertEquals( -1, index.indexOf( "dadadad" ) );
+
+            // saved index is used.
+            assertSameMatrix( reader.read( f.getPath(), wanted, false, 0, -1 ),
+                    reader.readIndexed( f.getPath(), wanted, false, 0 ) );
+
+            // all rows.
+            assertSameMatrix( reader.read( f.getPath(), null, false, 0, -1 ),
+                    reader.readIndexed( f.getPath(), null, true, 0 ) );
+
+            // a truncated or damaged index is rebuilt and saved again.
+            File indexFile = RowOffsetIndex.indexFileFor( f );
+            long indexSize = indexFile.length();
+            byte[] saved = Files.readAllBytes( indexFile.toPath() );
+            Files.write( indexFile.toPath(), Arrays.copyOf( saved, saved.length / 2 ) );
+            assertTrue( RowOffsetIndex.load( f ) == null );
+            assertSameMatrix( reader.read( f.getPath(), wanted, false, 0, -1 ),
+                    reader.readIndexed( f.getPath(), wanted, false, 0 ) );
+            assertEquals( indexSize, indexFile.length() );
+            Files.write( indexFile.toPath(), Arrays.copyOf( saved, 6 ) );
+            assertSameMatrix( reader.read( f.getPath(), wanted, false, 0, -1 ),
+                    reader.readIndexed( f.getPath(), wanted, false, 0 ) );
+            assertEquals( 30, RowOffsetIndex.load( f ).size() );
+
+            // changing the file invalidates the index.
+            FileTools.stringToFile( "dadadad\t1\t2\t3\t4\t5\t6\t7\t8\t9\t10\t11\t12\n", f, true );
+            assertTrue( !index.isCurrent( f ) );
+            assertTrue( RowOffsetIndex.load( f ) == null );
+            matrix = reader.readIndexed( f.getPath(), wanted, true, 0 );
+            assertEquals( 12.0, matrix.getByKeys( "dadadad", matrix.getColName( 11 ) ), 0.0 );
+        } finally {
+            FileUtils.deleteDirectory( dir );
+        }
+    }
+
+    @Test
+    public void testReadCarriageReturns() throws Exception {
+        String data = "# comment\r\nID\ta\tb\r\n\r\nr1\t1.5\tNA\r\nr2\t-2\r\n!skip\r\nr3\t\t3e2";
+        matrix = reader.read( new ByteArrayInputStream( data.getBytes() ) );
+        assertEquals( 3, matrix.rows() );
+        assertEquals( "b", matrix.getColName( 1 ) );
+        assertEquals( 1.5, matrix.get( 0, 0 ), 0.0 );
+        assertTrue( Double.isNaN( matrix.get( 0, 1 ) ) );
+        assertTrue( Double.isNaN( matrix.get( 1, 1 ) ) );
+        assertTrue( Double.isNaN( matrix.get( 2, 0 ) ) );
+        assertEquals( 300.0, matrix.getByKeys( "r3", "b" ), 0.0 );
+    }
+
+    @Test
+    public void testReadOldMacLineEndings() throws Exception {
+        String data = "# comment\rID\ta\tb\r\rr1\t1.5\tNA\rr2\t-2\r\nr3\t\t3e2\r";
+        matrix = reader.read( new ByteArrayInputStream( data.getBytes() ) );
+        assertEquals( 3, matrix.rows() );
+        assertEquals( 1.5, matrix.get( 0, 0 ), 0.0 );
+        assertEquals( -2.0, matrix.getByKeys( "r2", "a" ), 0.0 );
+        assertEquals( 300.0, matrix.getByKeys( "r3", "b" ), 0.0 );
+
+        // one byte per read, so that "\r\n" is split between reads
+        DoubleMatrix<String, String> trickled = reader.read( new ByteArrayInputStream( data.getBytes() ) {
+            @Override
+            public synchronized int read( byte[] b, int off, int len ) {
+                return super.read( b, off, Math.min( len, 1 ) );
+            }
+        } );
+        assertSameMatrix( matrix, trickled );
+
+        // parallel, with chunk boundaries falling around the terminators
+        File f = File.createTempFile( "oldmac", ".txt" );
+        try {
+            Files.write( f.toPath(), data.getBytes() );
+            DoubleMatrixReader parallel = new DoubleMatrixReader();
+            parallel.setParallel( true );
+            for ( int chunkSize = 1; chunkSize < 12; chunkSize++ ) {
+                parallel.setChunkSize( chunkSize );
+                assertSameMatrix( matrix, parallel.read( f.getPath() ) );
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    private void assertSameMatrix( DoubleMatrix<String, String> expected, DoubleMatrix<String, String> actual ) {
+        assertEquals( expected.getRowNames(), actual.getRowNames() );
+        assertEquals( expected.getColNames(), actual.getColNames() );
+        for ( int i = 0; i < expected.rows(); i++ ) {
+            assertArrayEquals( expected.getRow( i ), actual.getRow( i ), 0.0 );
+        }
+    }
+
+}
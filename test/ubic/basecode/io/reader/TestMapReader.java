@@ -22,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 
 import org.junit.After;
 import org.junit.Before;
@@ -72,4 +73,13 @@ public class TestMapReader {
         assertEquals( "return value", expectedReturn, actualReturn );
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testReadMapped() throws Exception {
+        String f = FileTools.resourceToPath( "/data/testmap.txt" );
+        Map<String, String> expected = mapReader.read( f, true );
+        assertEquals( expected, mapReader.readMapped( f, true, false ) );
+        assertEquals( expected, mapReader.readMapped( f, true, true ) );
+        assertEquals( 101, mapReader.readMapped( f, false, true ).size() );
+    }
+
+}
@@ -18,15 +18,19 @@
  */
 package ubic.basecode.io.reader;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.dataStructure.matrix.FrozenSparseDoubleMatrix;
 import ubic.basecode.dataStructure.matrix.SparseDoubleMatrix;
 import ubic.basecode.math.Constants;
 
@@ -57,6 +61,28 @@ public class TestSparseDoubleMatrixReader {
         assertEquals( 0.0, matrix.get( 0, 2 ), Constants.SMALL );
     }
 
+    @Test
+    public void testReadCompressed() throws Exception {
+        FrozenSparseDoubleMatrix<String, String> m = reader.readCompressed( isa );
+        assertEquals( 3, m.rows() );
+        assertEquals( 3, m.columns() );
+        assertEquals( Arrays.asList( "1", "2", "3" ), m.getRowNames() );
+        assertEquals( m.getRowNames(), m.getColNames() );
+        assertEquals( 0.1, m.getByKeys( "2", "2" ), Constants.SMALL );
+        assertEquals( 0.3, m.getByKeys( "3", "1" ), Constants.SMALL );
+        assertEquals( 0.3, m.getByKeys( "1", "3" ), Constants.SMALL );
+        assertEquals( 0.8, m.getByKeys( "3", "3" ), Constants.SMALL );
+        assertEquals( 0.0, m.getByKeys( "2", "3" ), Constants.SMALL );
+        assertEquals( 7, m.cardinality() );
+
+        String file = new File( TestSparseDoubleMatrixReader.class.getResource( "/data/adjacencylist-testmatrix.txt" )
+                .toURI() ).getAbsolutePath();
+        FrozenSparseDoubleMatrix<String, String> fromFile = reader.readCompressed( file );
+        for ( int i = 0; i < 3; i++ ) {
+            assertArrayEquals( m.getRow( i ), fromFile.getRow( i ), 0.0 );
+        }
+    }
+
     /*
      * Class under test for NamedMatrix read(String)
      */
@@ -21,6 +21,7 @@ package ubic.basecode.io.reader;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,6 +31,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.dataStructure.matrix.FrozenSparseDoubleMatrix;
 import ubic.basecode.dataStructure.matrix.SparseRaggedDoubleMatrix;
 import ubic.basecode.util.RegressionTesting;
 
@@ -94,6 +96,22 @@ public class TestSparseRaggedDouble2DNamedMatrixReader {
 
     }
 
+    @Test
+    public void testReadAdjListCompressedBig() throws Exception {
+        matrix = ( SparseRaggedDoubleMatrix<String, String> ) reader.readFromAdjList( isbig );
+        String file = new File( TestSparseRaggedDouble2DNamedMatrixReader.class.getResource(
+                "/data/adjacency_list.7ormore.txt" ).toURI() ).getAbsolutePath();
+        FrozenSparseDoubleMatrix<String, String> compressed = reader.readFromAdjListCompressed( file );
+
+        assertEquals( matrix.getRowNames(), compressed.getRowNames() );
+        assertEquals( matrix.rows(), compressed.columns() );
+        for ( int i = 0; i < matrix.rows(); i += 7 ) {
+            for ( int j = 0; j < matrix.rows(); j++ ) {
+                assertEquals( matrix.get( i, j ), compressed.get( i, j ), 0.0 );
+            }
+        }
+    }
+
     /*
      * Class under test for NamedMatrix readFromAdjList(InputStream) - bigger matrix
      */
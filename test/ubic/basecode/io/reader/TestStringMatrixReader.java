@@ -18,6 +18,7 @@
  */
 package ubic.basecode.io.reader;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
@@ -27,6 +28,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import ubic.basecode.dataStructure.matrix.StringMatrix;
+import ubic.basecode.util.FileTools;
 
 /**
  * @author pavlidis
@@ -98,4 +100,23 @@ public class TestStringMatrixReader {
         }
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testReadParallel() throws Exception {
+        String fn = FileTools.resourceToPath( "/data/testdata.txt" );
+        StringMatrixReader parallel = new StringMatrixReader();
+        parallel.setParallel( true );
+        parallel.setChunkSize( 100 );
+
+        StringMatrix<String, String> expected = reader.read( fn );
+        StringMatrix<String, String> actual = parallel.read( fn );
+        assertEquals( expected.getRowNames(), actual.getRowNames() );
+        assertEquals( expected.getColNames(), actual.getColNames() );
+        for ( int i = 0; i < expected.rows(); i++ ) {
+            assertArrayEquals( expected.getRow( i ), actual.getRow( i ) );
+        }
+
+        assertEquals( 10, parallel.read( fn, 10 ).rows() );
+        assertArrayEquals( reader.read( fn, -1, 0 ).getRow( 3 ), parallel.read( fn, -1, 0 ).getRow( 3 ) );
+    }
+
+}
@@ -20,6 +20,7 @@ package ubic.basecode.io.writer;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.InputStream;
@@ -28,12 +29,16 @@ import java.io.PrintStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import ubic.basecode.dataStructure.matrix.DenseDouble3dMatrix;
+import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
 import ubic.basecode.dataStructure.matrix.DoubleMatrix;
 import ubic.basecode.dataStructure.matrix.DoubleMatrix3D;
 import ubic.basecode.io.reader.DoubleMatrixReader;
@@ -113,4 +118,65 @@ public class MatrixWriterTest {
         assertEquals( expected, actual );
 
     }
+
+    @Test
+    public void testWriteMatrixFractionDigits() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        MatrixWriter.appendFixed( buf, 1.5, 2 );
+        buf.append( ' ' );
+        MatrixWriter.appendFixed( buf, -0.004, 2 );
+        buf.append( ' ' );
+        MatrixWriter.appendFixed( buf, -123.456, 1 );
+        buf.append( ' ' );
+        MatrixWriter.appendFixed( buf, 0.05, 3 );
+        buf.append( ' ' );
+        MatrixWriter.appendFixed( buf, 2.5, 0 );
+        buf.append( ' ' );
+        MatrixWriter.appendFixed( buf, 1e20, 2 );
+        assertEquals( "1.50 0.00 -123.5 0.050 3 100000000000000000000.00", buf.toString() );
+
+        MatrixWriter<String, String> writer = new MatrixWriter<String, String>( w );
+        writer.setFractionDigits( 3 );
+        writer.writeMatrix( matrix, false );
+        String firstLine = w.toString().substring( 0, w.toString().indexOf( '\n' ) );
+        String[] fields = firstLine.split( "\t" );
+        assertEquals( matrix.columns(), fields.length );
+        assertEquals( String.format( Locale.ENGLISH, "%.3f", matrix.get( 0, 1 ) ), fields[1] );
+    }
+
+    @Test
+    public void testWriteMatrixGzipped() throws Exception {
+        File file = File.createTempFile( "matrix", ".txt.gz" );
+        try {
+            MatrixWriter<String, String> writer = new MatrixWriter<String, String>( file.getPath(), null );
+            writer.setTopLeft( "gene" );
+            writer.writeMatrix( matrix, true );
+            DoubleMatrix<String, String> read = new DoubleMatrixReader().read( file.getPath() );
+            assertEquals( matrix.getRowNames(), read.getRowNames() );
+            assertEquals( matrix.get( 3, 4 ), read.get( 3, 4 ), 0.0 );
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWriteMatrixParallel() throws Exception {
+        Random r = new Random( 1 );
+        DenseDoubleMatrix<String, String> m = new DenseDoubleMatrix<String, String>( 3000, 5 );
+        for ( int i = 0; i < m.rows(); i++ ) {
+            for ( int j = 0; j < m.columns(); j++ ) {
+                m.set( i, j, r.nextGaussian() );
+            }
+            m.addRowName( "r" + i );
+        }
+        m.setColumnNames( Arrays.asList( "a", "b", "c", "d", "e" ) );
+
+        new MatrixWriter<String, String>( w ).writeMatrix( m, true );
+        StringWriter parallelOut = new StringWriter();
+        MatrixWriter<String, String> writer = new MatrixWriter<String, String>( parallelOut );
+        writer.setParallel( true );
+        writer.writeMatrix( m, true );
+        assertEquals( w.toString(), parallelOut.toString() );
+        assertTrue( w.toString().startsWith( "ID\ta\tb\tc\td\te\nr0\t" + m.get( 0, 0 ) + "\t" ) );
+    }
 }
@@ -29,6 +29,7 @@ import org.junit.Test;
 import ubic.basecode.dataStructure.matrix.DenseDoubleMatrix;
 import ubic.basecode.dataStructure.matrix.DoubleMatrix;
 import ubic.basecode.dataStructure.matrix.DoubleMatrixFactory;
+import ubic.basecode.dataStructure.matrix.SparseDoubleMatrix;
 import ubic.basecode.datafilter.AbstractTestFilter;
 import ubic.basecode.io.reader.DoubleMatrixReader;
 import ubic.basecode.util.RegressionTesting;
@@ -127,23 +128,28 @@ public class TestMatrixStats {
         DoubleMatrixReader f = new DoubleMatrixReader();
         DoubleMatrix<String, String> expectedReturn = f.read( AbstractTestFilter.class
                 .getResourceAsStream( "/data/correlation-matrix-testoutput.txt" ) );
+        int stored = 0;
         for ( int i = 0; i < expectedReturn.rows(); i++ ) {
 
             for ( int j = 0; j < expectedReturn.columns(); j++ ) {
 
                 if ( i == j ) {
-                    expectedReturn.set( i, j, Double.NaN );
+                    expectedReturn.set( i, j, 0.0 );
                     continue;
                 }
 
                 double v = Math.abs( expectedReturn.get( i, j ) );
                 if ( v <= threshold ) {
-                    expectedReturn.set( i, j, Double.NaN );
+                    expectedReturn.set( i, j, 0.0 );
+                } else {
+                    stored++;
                 }
             }
         }
 
         assertTrue( RegressionTesting.closeEnough( expectedReturn, actualReturn, 0.001 ) );
+        // cells below the threshold are not stored.
+        assertEquals( stored, ( ( SparseDoubleMatrix<String, String> ) actualReturn ).cardinality() );
 
     }
 
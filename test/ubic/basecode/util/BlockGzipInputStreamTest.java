@@ -0,0 +1,161 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Also tests {@link BlockGzipOutputStream} and {@link ReadAheadInputStream}.
+ *
+ * @author paul
+ */
+public class BlockGzipInputStreamTest {
+
+    private byte[] data;
+    private File f;
+
+    @Before
+    public void setUp() throws Exception {
+        // compressible text, several blocks long, followed by random bytes that do not compress.
+        StringBuilder buf = new StringBuilder();
+        Random r = new Random( 1 );
+        for ( int i = 0; i < 20000; i++ ) {
+            buf.append( "gene" ).append( i ).append( '\t' ).append( r.nextGaussian() ).append( '\n' );
+        }
+        byte[] text = buf.toString().getBytes( "US-ASCII" );
+        data = new byte[text.length + 200000];
+        System.arraycopy( text, 0, data, 0, text.length );
+        for ( int i = text.length; i < data.length; i++ ) {
+            data[i] = ( byte ) r.nextInt();
+        }
+        f = File.createTempFile( "blockgzip.", ".gz" );
+    }
+
+    @After
+    public void tearDown() {
+        f.delete();
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        byte[] compressed = compress( data );
+        compressed[100] ^= 0x55;
+        try (InputStream is = new BlockGzipInputStream( new ByteArrayInputStream( compressed ) )) {
+            IOUtils.toByteArray( is );
+            fail( "Expected an IOException" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIsBlockGzipped() throws Exception {
+        try (OutputStream os = new BlockGzipOutputStream( new FileOutputStream( f ) )) {
+            os.write( data );
+        }
+        assertTrue( BlockGzipInputStream.isBlockGzipped( f ) );
+
+        try (OutputStream os = new GZIPOutputStream( new FileOutputStream( f ) )) {
+            os.write( data );
+        }
+        assertFalse( BlockGzipInputStream.isBlockGzipped( f ) );
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        try (InputStream is = new ReadAheadInputStream( new ByteArrayInputStream( data ), 1000, 3 )) {
+            assertArrayEquals( data, IOUtils.toByteArray( is ) );
+            assertTrue( is.read() < 0 );
+        }
+    }
+
+    @Test
+    public void testReadAheadClosedEarly() throws Exception {
+        InputStream is = new ReadAheadInputStream( new ByteArrayInputStream( data ), 1000, 2 );
+        is.read( new byte[10] );
+        is.close();
+        try {
+            is.read();
+            fail( "Expected an IOException" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadEmpty() throws Exception {
+        byte[] compressed = compress( new byte[0] );
+        try (InputStream is = new BlockGzipInputStream( new ByteArrayInputStream( compressed ) )) {
+            assertTrue( is.read() < 0 );
+        }
+        try (InputStream is = new GZIPInputStream( new ByteArrayInputStream( compressed ) )) {
+            assertTrue( is.read() < 0 );
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] compressed = compress( data );
+        try (InputStream is = new BlockGzipInputStream( new ByteArrayInputStream( compressed ) )) {
+            assertArrayEquals( data, IOUtils.toByteArray( is ) );
+        }
+        // readable as ordinary multi-member gzip.
+        try (InputStream is = new GZIPInputStream( new ByteArrayInputStream( compressed ) )) {
+            assertArrayEquals( data, IOUtils.toByteArray( is ) );
+        }
+    }
+
+    @Test
+    public void testRoundTripWithFlushes() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new BlockGzipOutputStream( bos, 1 )) {
+            for ( int i = 0; i < data.length; i += 7777 ) {
+                os.write( data, i, Math.min( 7777, data.length - i ) );
+                if ( i % 3 == 0 ) os.flush();
+            }
+        }
+        try (InputStream is = new BlockGzipInputStream( new ByteArrayInputStream( bos.toByteArray() ) )) {
+            assertArrayEquals( data, IOUtils.toByteArray( is ) );
+        }
+    }
+
+    private byte[] compress( byte[] b ) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new BlockGzipOutputStream( bos )) {
+            os.write( b );
+        }
+        return bos.toByteArray();
+    }
+
+}
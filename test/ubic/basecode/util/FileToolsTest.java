@@ -40,6 +40,7 @@ import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -276,6 +277,29 @@ public class FileToolsTest {
         is.close();
     }
 
+    @Test
+    public void testCopyToGzippedAndReadAhead() throws Exception {
+        String source = new File( this.getClass().getResource( "/data/testdata.gz" ).toURI() ).getAbsolutePath();
+        File copy = File.createTempFile( "copy.", ".txt.gz" );
+        try {
+            FileTools.copyPlainOrCompressedFile( source, copy.getAbsolutePath() );
+            assertTrue( BlockGzipInputStream.isBlockGzipped( copy ) );
+
+            String expected;
+            try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( source )) {
+                expected = IOUtils.toString( is );
+            }
+            try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( copy.getAbsolutePath(), true )) {
+                assertEquals( expected, IOUtils.toString( is ) );
+            }
+            try (InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile( source, true )) {
+                assertEquals( expected, IOUtils.toString( is ) );
+            }
+        } finally {
+            copy.delete();
+        }
+    }
+
     @Test
     public void testGetCompressedFileZip() throws Exception {
         InputStream is = FileTools.getInputStreamFromPlainOrCompressedFile(
@@ -311,6 +335,7 @@ public class FileToolsTest {
         FileTools.stringsToFile( lines, tmp );
         lines = FileTools.getLines( tmp );
         assertEquals( 31, lines.size() );
+        assertEquals( lines, FileTools.getLinesMapped( tmp ) );
     }
 
     @Test
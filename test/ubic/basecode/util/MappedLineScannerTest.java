@@ -0,0 +1,174 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author paul
+ */
+public class MappedLineScannerTest {
+
+    /**
+     * Collects the lines it is given.
+     */
+    private static class Collector implements MappedLineScanner.LineHandler {
+        private final List<String> lines = new ArrayList<String>();
+
+        @Override
+        public void handleLine( MappedLineScanner.Line line ) {
+            lines.add( line.toString() );
+        }
+    }
+
+    private File f;
+
+    @Before
+    public void setUp() throws Exception {
+        f = File.createTempFile( "mappedlines.", ".txt" );
+    }
+
+    @After
+    public void tearDown() {
+        f.delete();
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        write( "" );
+        Collector c = new Collector();
+        new MappedLineScanner( f ).scan( c );
+        assertEquals( 0, c.lines.size() );
+    }
+
+    @Test
+    public void testHeaderAndLineViews() throws Exception {
+        write( "header\r\nabc\tdéf\r\n\nlast" );
+        MappedLineScanner scanner = new MappedLineScanner( f, StandardCharsets.UTF_8 );
+        scanner.setHeaderLines( 1 );
+        final List<String> got = new ArrayList<String>();
+        scanner.scan( new MappedLineScanner.LineHandler() {
+            @Override
+            public void handleLine( MappedLineScanner.Line line ) {
+                if ( line.getOffset() == 8 ) {
+                    assertEquals( 3, line.indexOf( '\t', 0 ) );
+                    assertEquals( "abc", line.subSequence( 0, 3 ).toString() );
+                    assertEquals( "déf", line.substring( 4, line.length() ) );
+                    assertEquals( 'a', line.charAt( 0 ) );
+                }
+                got.add( line.toString() );
+            }
+        } );
+        assertEquals( "[abc\tdéf, , last]", got.toString() );
+    }
+
+    @Test
+    public void testLineTooLong() throws Exception {
+        write( "short\n0123456789012345678901234567890123456789\nshort\n" );
+        try {
+            new MappedLineScanner( f, StandardCharsets.UTF_8, 16 ).scan( new Collector() );
+            fail( "Expected an IOException" );
+        } catch ( IOException e ) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOldMacLineEndings() throws Exception {
+        write( "header\rabc\r\rdef\r" );
+        MappedLineScanner scanner = new MappedLineScanner( f );
+        scanner.setHeaderLines( 1 );
+        Collector c = new Collector();
+        scanner.scan( c );
+        assertEquals( "[abc, , def]", c.lines.toString() );
+
+        // lone "\r" mixed with the other endings; small regions put their boundaries on every kind of ending, the
+        // large file is split into parts for scanParallel.
+        String[] endings = new String[] { "\r", "\r\n", "\n", "\r\r", "\r\n\r" };
+        Random r = new Random( 2 );
+        for ( int n : new int[] { 5000, 200000 } ) {
+            StringBuilder buf = new StringBuilder();
+            for ( int i = 0; i < n; i++ ) {
+                buf.append( r.nextInt( 100000 ) ).append( endings[r.nextInt( endings.length )] );
+            }
+            write( buf.toString() );
+            assertScansAsReader( n < 10000 ? 16 : 1000 );
+        }
+    }
+
+    @Test
+    public void testRegionsAndParallel() throws Exception {
+        StringBuilder buf = new StringBuilder();
+        Random r = new Random( 1 );
+        for ( int i = 0; i < 200000; i++ ) {
+            buf.append( "line" ).append( i ).append( '\t' ).append( r.nextInt( 1000 ) ).append( i % 3 == 0 ? "\r\n" : "\n" );
+        }
+        write( buf.toString() );
+        assertScansAsReader( 1000 );
+    }
+
+    /**
+     * Checks that both scan and scanParallel give the same lines as BufferedReader.readLine.
+     */
+    private void assertScansAsReader( int regionSize ) throws IOException {
+        List<String> expected = new ArrayList<String>();
+        try (BufferedReader in = new BufferedReader( new FileReader( f ) )) {
+            String line;
+            while ( ( line = in.readLine() ) != null ) {
+                expected.add( line );
+            }
+        }
+
+        Collector c = new Collector();
+        new MappedLineScanner( f, StandardCharsets.UTF_8, regionSize ).scan( c );
+        assertEquals( expected, c.lines );
+
+        List<Collector> parts = new MappedLineScanner( f, StandardCharsets.UTF_8, regionSize )
+                .scanParallel( new MappedLineScanner.HandlerFactory<Collector>() {
+                    @Override
+                    public Collector newHandler() {
+                        return new Collector();
+                    }
+                } );
+        List<String> lines = new ArrayList<String>();
+        for ( Collector part : parts ) {
+            lines.addAll( part.lines );
+        }
+        assertEquals( expected, lines );
+    }
+
+    private void write( String s ) throws IOException {
+        try (OutputStream os = new FileOutputStream( f )) {
+            os.write( s.getBytes( StandardCharsets.UTF_8 ) );
+        }
+    }
+
+}
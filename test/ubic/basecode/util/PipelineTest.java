@@ -0,0 +1,221 @@
+/*
+ * The baseCode project
+ *
+ * Copyright (c) 2026 University of British Columbia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package ubic.basecode.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ubic.basecode.dataStructure.matrix.DoubleMatrix;
+import ubic.basecode.io.reader.DoubleMatrixReader;
+import ubic.basecode.io.reader.DoubleMatrixRowReader;
+import ubic.basecode.io.writer.MatrixWriter;
+
+/**
+ * @author paul
+ */
+public class PipelineTest {
+
+    private static List<Integer> range( int n ) {
+        List<Integer> items = new ArrayList<Integer>();
+        for ( int i = 0; i < n; i++ ) {
+            items.add( i );
+        }
+        return items;
+    }
+
+    @Test(timeout = 30000)
+    public void testBackpressure() throws Exception {
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger consumed = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        Pipeline.from( "source", new Pipeline.Source<Integer>() {
+            @Override
+            public Integer next() {
+                int i = produced.get();
+                if ( i == 200 ) return null;
+                maxAhead.set( Math.max( maxAhead.get(), i - consumed.get() ) );
+                return produced.incrementAndGet();
+            }
+        } ).then( "copy", 1, new Pipeline.Stage<Integer, Integer>() {
+            @Override
+            public Integer process( Integer block ) {
+                return block;
+            }
+        } ).run( "slow", new Pipeline.Sink<Integer>() {
+            @Override
+            public void accept( Integer block ) throws InterruptedException {
+                Thread.sleep( 1 );
+                consumed.incrementAndGet();
+            }
+        }, 1 );
+        assertEquals( 200, consumed.get() );
+        // one block in each queue, one in each stage, and one being made.
+        assertTrue( "Source got " + maxAhead.get() + " blocks ahead", maxAhead.get() <= 5 );
+    }
+
+    @Test(timeout = 30000)
+    public void testBackpressureWithSlowBlock() throws Exception {
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger producedDuringStall = new AtomicInteger();
+        final List<Integer> result = new ArrayList<Integer>();
+        Pipeline.from( "source", new Pipeline.Source<Integer>() {
+            @Override
+            public Integer next() {
+                int i = produced.get();
+                if ( i == 500 ) return null;
+                return produced.getAndIncrement();
+            }
+        } ).then( "stall", 4, new Pipeline.Stage<Integer, Integer>() {
+            @Override
+            public Integer process( Integer block ) throws InterruptedException {
+                if ( block == 0 ) {
+                    // the other threads carry on, but their blocks must wait for this one to reach the sink.
+                    Thread.sleep( 500 );
+                    producedDuringStall.set( produced.get() );
+                }
+                return block;
+            }
+        } ).run( "collect", new Pipeline.Sink<Integer>() {
+            @Override
+            public void accept( Integer block ) {
+                result.add( block );
+            }
+        }, 2 );
+        assertEquals( range( 500 ), result );
+        // two queues, five threads and the sink.
+        assertTrue( "Source got " + producedDuringStall.get() + " blocks ahead", producedDuringStall.get() <= 10 );
+    }
+
+    @Test(timeout = 30000)
+    public void testFailure() throws Exception {
+        try {
+            Pipeline.fromBatches( "source", range( 100000 ).iterator(), 10 )
+                    .then( "fail", 3, new Pipeline.Stage<Collection<Integer>, Collection<Integer>>() {
+                        @Override
+                        public Collection<Integer> process( Collection<Integer> block ) throws IOException {
+                            if ( block.contains( 555 ) ) throw new IOException( "bad block" );
+                            return block;
+                        }
+                    } ).run( "sink", new Pipeline.Sink<Collection<Integer>>() {
+                        @Override
+                        public void accept( Collection<Integer> block ) {
+                            // nothing
+                        }
+                    } );
+            fail( "Expected an ExecutionException" );
+        } catch ( ExecutionException e ) {
+            assertTrue( e.getCause() instanceof IOException );
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testMatrixJob() throws Exception {
+        String fn = FileTools.resourceToPath( "/data/testdata.txt" );
+        DoubleMatrixReader reader = new DoubleMatrixReader();
+
+        DoubleMatrix<String, String> whole = reader.read( fn );
+        StringWriter expected = new StringWriter();
+        new MatrixWriter<String, String>( expected ).writeMatrix( whole.copy(), true );
+
+        final StringWriter actual = new StringWriter();
+        final MatrixWriter<String, String> writer = new MatrixWriter<String, String>( actual );
+        try (final DoubleMatrixRowReader rows = reader.readRows( fn, null, 0 )) {
+            Pipeline.Source<DoubleMatrix<String, String>> read = new Pipeline.Source<DoubleMatrix<String, String>>() {
+                @Override
+                public DoubleMatrix<String, String> next() throws IOException {
+                    return rows.nextBlock( 4 );
+                }
+            };
+            Pipeline.Stage<DoubleMatrix<String, String>, DoubleMatrix<String, String>> copy =
+                    new Pipeline.Stage<DoubleMatrix<String, String>, DoubleMatrix<String, String>>() {
+                @Override
+                public DoubleMatrix<String, String> process( DoubleMatrix<String, String> block ) {
+                    return block.copy();
+                }
+            };
+            Pipeline.Sink<DoubleMatrix<String, String>> write = new Pipeline.Sink<DoubleMatrix<String, String>>() {
+                private boolean first = true;
+
+                @Override
+                public void accept( DoubleMatrix<String, String> block ) throws IOException {
+                    writer.writeBlock( block, true, first );
+                    first = false;
+                }
+            };
+
+            List<Pipeline.StageMetrics> metrics = Pipeline.from( "read", read ).then( "copy", 2, copy )
+                    .run( "write", write );
+            writer.close();
+
+            assertEquals( 3, metrics.size() );
+            assertEquals( ( whole.rows() + 3 ) / 4, metrics.get( 2 ).getBlocks() );
+        }
+        assertEquals( expected.toString(), actual.toString() );
+    }
+
+    @Test(timeout = 30000)
+    public void testOrderWithThreads() throws Exception {
+        final Random r = new Random( 1 );
+        final List<Integer> result = new ArrayList<Integer>();
+        List<Pipeline.StageMetrics> metrics = Pipeline.fromBatches( "source", range( 10000 ).iterator(), 100 )
+                .then( "square", 4, new Pipeline.Stage<Collection<Integer>, List<Integer>>() {
+                    @Override
+                    public List<Integer> process( Collection<Integer> block ) throws InterruptedException {
+                        Thread.sleep( r.nextInt( 3 ) );
+                        List<Integer> squares = new ArrayList<Integer>();
+                        for ( Integer i : block ) {
+                            squares.add( i * i );
+                        }
+                        return squares;
+                    }
+                } ).then( "drop", 2, new Pipeline.Stage<List<Integer>, List<Integer>>() {
+                    @Override
+                    public List<Integer> process( List<Integer> block ) {
+                        // drop the blocks that start at a multiple of 7 (squared).
+                        return Math.sqrt( block.get( 0 ) ) / 100 % 7 == 0 ? null : block;
+                    }
+                } ).run( "collect", new Pipeline.Sink<List<Integer>>() {
+                    @Override
+                    public void accept( List<Integer> block ) {
+                        result.addAll( block );
+                    }
+                } );
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for ( int i = 0; i < 10000; i++ ) {
+            if ( i / 100 % 7 != 0 ) expected.add( i * i );
+        }
+        assertEquals( expected, result );
+
+        assertEquals( 4, metrics.size() );
+        assertEquals( 100, metrics.get( 0 ).getBlocks() );
+        assertEquals( 100, metrics.get( 1 ).getBlocks() );
+        assertEquals( 4, metrics.get( 1 ).getThreads() );
+        assertEquals( 100 - 15, metrics.get( 3 ).getBlocks() );
+    }
+
+}